@@ -3,8 +3,11 @@ package bfst20.data;
 import bfst20.logic.entities.Address;
 import bfst20.logic.routing.TernarySearchTree;
 
+import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.Map;
 import java.util.Queue;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -12,6 +15,8 @@ public class AddressData {
     private String addressRegex = "[,. ]*(?<street>[\\D]+)[,. ]+(?<house>[\\d][\\w]*)[,. ]*(?<postcode>[\\w]*)[,.\\V]*";
     private static AddressData addressData;
     private TernarySearchTree ternarySearchTree;
+    private Supplier<TernarySearchTree> unloadedTST;
+    private Map<Long, Integer> nodeAddresses;
 
     private AddressData() {
         ternarySearchTree = new TernarySearchTree();
@@ -29,21 +34,68 @@ public class AddressData {
         return this.addressRegex;
     }
 
-    public void saveAddress(Address address) {
+    public void saveAddress(long nodeId, Address address) {
         if (address.getStreet() == null) return;
-        ternarySearchTree.put(address.getStreet().replaceAll(" ", ""), address);
+        int row = getTST().put(address.getStreet().replaceAll(" ", ""), address);
+
+        if (nodeAddresses != null) nodeAddresses.put(nodeId, row);
+    }
+
+    // Remembers the row of the address each node came with, so changes to the node can replace it.
+    public void keepNodeAddresses(boolean keep) {
+        nodeAddresses = keep ? new HashMap<>() : null;
+    }
+
+    public boolean isKeepingNodeAddresses() {
+        return nodeAddresses != null;
     }
 
-    public TernarySearchTree getTST() {
+    public Address getNodeAddress(long nodeId) {
+        Integer row = nodeAddresses == null ? null : nodeAddresses.get(nodeId);
+
+        return row == null ? null : getTST().getAddresses().get(row);
+    }
+
+    public Address removeNodeAddress(long nodeId) {
+        if (nodeAddresses == null) return null;
+
+        Integer row = nodeAddresses.remove(nodeId);
+        if (row == null) return null;
+
+        Address address = getTST().getAddresses().get(row);
+        getTST().remove(address.getStreet().replaceAll(" ", ""), row);
+
+        return address;
+    }
+
+    public synchronized TernarySearchTree getTST() {
+        if (unloadedTST != null) {
+            ternarySearchTree = unloadedTST.get();
+            unloadedTST = null;
+        }
+
         return ternarySearchTree;
     }
 
-    public void clearData() {
+    public synchronized boolean isTSTLoaded() {
+        return unloadedTST == null;
+    }
+
+    public synchronized void clearData() {
         ternarySearchTree = new TernarySearchTree();
+        unloadedTST = null;
+        if (nodeAddresses != null) nodeAddresses = new HashMap<>();
     }
 
 
-    public void saveTST(TernarySearchTree ternarySearchTree) {
+    public synchronized void saveTST(TernarySearchTree ternarySearchTree) {
         this.ternarySearchTree = ternarySearchTree;
+        unloadedTST = null;
+    }
+
+    // The tree is only built when the addresses are first searched.
+    public synchronized void saveUnloadedTST(Supplier<TernarySearchTree> ternarySearchTree) {
+        this.ternarySearchTree = null;
+        unloadedTST = ternarySearchTree;
     }
 }
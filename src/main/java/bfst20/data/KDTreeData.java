@@ -4,17 +4,21 @@ import bfst20.logic.misc.OSMType;
 import bfst20.logic.kdtree.KDTree;
 import bfst20.logic.kdtree.Rect;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Supplier;
 
 public class KDTreeData {
     private static boolean isLoaded = false;
     private static KDTreeData kdTreeData;
     private Map<OSMType, KDTree> kdTrees;
+    private Map<OSMType, Supplier<KDTree>> unloadedKDTrees;
     private Rect rect;
 
     private KDTreeData() {
         kdTrees = new HashMap<>();
+        unloadedKDTrees = new HashMap<>();
         rect = new Rect();
     }
 
@@ -38,24 +42,42 @@ public class KDTreeData {
         rect.setMaxLon(maxLon);
     }
 
-    public void saveKDTree(OSMType OSMType, KDTree kdTree) {
+    public synchronized void saveKDTree(OSMType OSMType, KDTree kdTree) {
+        unloadedKDTrees.remove(OSMType);
         kdTrees.put(OSMType, kdTree);
     }
 
-    public KDTree getKDTree(OSMType OSMType) {
+    public synchronized KDTree getKDTree(OSMType OSMType) {
+        Supplier<KDTree> unloaded = unloadedKDTrees.remove(OSMType);
+        if (unloaded != null) kdTrees.put(OSMType, unloaded.get());
+
         return kdTrees.get(OSMType);
     }
 
-    public void clearData() {
+    // Trees that are only built when they are first asked for, like the layers of a mapped .bin file.
+    public synchronized void saveUnloadedKDTrees(Map<OSMType, Supplier<KDTree>> trees) {
         kdTrees = new HashMap<>();
+        unloadedKDTrees = new HashMap<>(trees);
+    }
+
+    public synchronized boolean isKDTreeLoaded(OSMType OSMType) {
+        return kdTrees.containsKey(OSMType);
+    }
+
+    public synchronized void clearData() {
+        kdTrees = new HashMap<>();
+        unloadedKDTrees = new HashMap<>();
         System.gc();
     }
 
-    public Map<OSMType, KDTree> getAllLKDTrees() {
+    public synchronized Map<OSMType, KDTree> getAllLKDTrees() {
+        for (OSMType type : new ArrayList<>(unloadedKDTrees.keySet())) getKDTree(type);
+
         return kdTrees;
     }
 
-    public void saveAllKDTrees(Map<OSMType, KDTree> tree){
+    public synchronized void saveAllKDTrees(Map<OSMType, KDTree> tree){
         this.kdTrees = tree;
+        unloadedKDTrees = new HashMap<>();
     }
 }
@@ -0,0 +1,80 @@
+package bfst20.data;
+
+import bfst20.logic.entities.LinePath;
+import bfst20.logic.entities.Way;
+import bfst20.logic.nodestore.NodeStore;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+// What an import normally throws away once the map is built, kept so change files
+// can be applied: the node store, whose Node objects the routing graph uses, and
+// every way that became a LinePath together with that LinePath.
+public class MapIndexData {
+    private static boolean isLoaded = false;
+    private static MapIndexData mapIndexData;
+    private Map<Long, LinePath> linePaths;
+    private Map<Long, Way> ways;
+    private NodeStore nodes;
+
+    private MapIndexData() {
+        linePaths = new HashMap<>();
+        ways = new HashMap<>();
+    }
+
+    public static MapIndexData getInstance() {
+        if (!isLoaded) {
+            isLoaded = true;
+            mapIndexData = new MapIndexData();
+        }
+
+        return mapIndexData;
+    }
+
+    public void saveNodes(NodeStore nodes) {
+        if (this.nodes != null) this.nodes.close();
+
+        this.nodes = nodes;
+    }
+
+    public NodeStore getNodes() {
+        return nodes;
+    }
+
+    public boolean isIndexed() {
+        return nodes != null;
+    }
+
+    public void saveWay(Way way, LinePath linePath) {
+        ways.put(way.getId(), way);
+        linePaths.put(way.getId(), linePath);
+    }
+
+    public Way getWay(long id) {
+        return ways.get(id);
+    }
+
+    public LinePath getLinePath(long wayId) {
+        return linePaths.get(wayId);
+    }
+
+    public Collection<Way> getWays() {
+        return ways.values();
+    }
+
+    public void removeWay(long id) {
+        ways.remove(id);
+        linePaths.remove(id);
+    }
+
+    public void clearData() {
+        if (nodes != null) nodes.close();
+
+        nodes = null;
+        linePaths = new HashMap<>();
+        ways = new HashMap<>();
+
+        System.gc();
+    }
+}
@@ -1,24 +1,22 @@
 package bfst20.data;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 
 import bfst20.logic.entities.*;
+import bfst20.logic.nodestore.NodeStore;
 
 public class OSMElementData {
     private static OSMElementData OSMElementData;
     private static boolean isLoaded = false;
     private List<Relation> OSMRelations;
-    private Map<Long, Node> nodeMap;
+    private NodeStore nodeStore;
     private List<Way> OSMWays;
     private Bounds bounds;
 
 
     private OSMElementData() {
         OSMWays = new ArrayList<>();
-        nodeMap = new HashMap<>();
+        nodeStore = NodeStore.create(0);
         OSMRelations = new ArrayList<>();
     }
 
@@ -39,15 +37,29 @@ public class OSMElementData {
     }
 
     public Node getNode(long id) {
-        return nodeMap.get(id);
+        return nodeStore.get(id);
     }
 
-    public Map<Long, Node> getNodes() {
-        return nodeMap;
+    // Replaces the node store with one sized for the coming import.
+    public void prepareNodeStore(long expectedNodes) {
+        nodeStore.close();
+        nodeStore = NodeStore.create(expectedNodes);
     }
 
-    public void addToNodeMap(long id, Node node) {
-        nodeMap.put(id, node);
+    public NodeStore getNodes() {
+        return nodeStore;
+    }
+
+    // Hands the node store to the caller, who closes it, and starts an empty one.
+    public NodeStore detachNodeStore() {
+        NodeStore nodes = nodeStore;
+        nodeStore = NodeStore.create(0);
+
+        return nodes;
+    }
+
+    public void addToNodeStore(long id, Node node) {
+        nodeStore.put(id, node.getLatitude(), node.getLongitude());
     }
 
     public void saveWay(Way way) {
@@ -66,10 +78,31 @@ public class OSMElementData {
         return OSMRelations;
     }
 
+    // Used when several sources are loaded after each other. LinePathService
+    // binary searches the ways, so they are sorted by id and duplicates are dropped.
+    public void mergeElements() {
+        OSMWays.sort(Comparator.comparingLong(Way::getId));
+
+        List<Way> ways = new ArrayList<>(OSMWays.size());
+        for (Way way : OSMWays) {
+            if (ways.isEmpty() || ways.get(ways.size() - 1).getId() != way.getId()) ways.add(way);
+        }
+
+        Set<Long> relationIds = new HashSet<>();
+        List<Relation> relations = new ArrayList<>(OSMRelations.size());
+        for (Relation relation : OSMRelations) {
+            if (relationIds.add(relation.getId())) relations.add(relation);
+        }
+
+        OSMWays = ways;
+        OSMRelations = relations;
+    }
+
     public void clearNodeData() {
         OSMRelations = new ArrayList<>();
         OSMWays = new ArrayList<>();
-        nodeMap = new HashMap<>();
+        nodeStore.close();
+        nodeStore = NodeStore.create(0);
 
         System.gc();
     }
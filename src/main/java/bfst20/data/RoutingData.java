@@ -7,6 +7,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
 public class RoutingData {
     private static boolean isLoaded = false;
@@ -14,6 +15,7 @@ public class RoutingData {
     private Map<String, Double> routeInfo;
     private List<Edge> route;
     private Graph graph;
+    private Supplier<Graph> unloadedGraph;
 
     private RoutingData() {
     }
@@ -26,14 +28,30 @@ public class RoutingData {
         return routingData;
     }
 
-    public void saveGraph(Graph graph) {
+    public synchronized void saveGraph(Graph graph) {
         this.graph = graph;
+        unloadedGraph = null;
     }
 
-    public Graph getGraph() {
+    // The graph is only built when the first route is searched.
+    public synchronized void saveUnloadedGraph(Supplier<Graph> graph) {
+        this.graph = null;
+        unloadedGraph = graph;
+    }
+
+    public synchronized Graph getGraph() {
+        if (unloadedGraph != null) {
+            graph = unloadedGraph.get();
+            unloadedGraph = null;
+        }
+
         return graph;
     }
 
+    public synchronized boolean isGraphLoaded() {
+        return unloadedGraph == null;
+    }
+
     public void saveRoute(List<Edge> route) {
         this.route = route;
     }
@@ -7,6 +7,7 @@ import bfst20.logic.routing.TernarySearchTree;
 import bfst20.logic.services.AddressService;
 
 import java.util.Queue;
+import java.util.function.Supplier;
 
 public class AddressController implements AddressAPI {
     private AddressService addressService;
@@ -18,8 +19,8 @@ public class AddressController implements AddressAPI {
     }
 
     @Override
-    public void saveAddressData(Address address) {
-        addressData.saveAddress(address);
+    public void saveAddressData(long nodeId, Address address) {
+        addressData.saveAddress(nodeId, address);
 
     }
 
@@ -28,6 +29,11 @@ public class AddressController implements AddressAPI {
         addressData.saveTST(ternarySearchTree);
     }
 
+    @Override
+    public void saveUnloadedTSTData(Supplier<TernarySearchTree> ternarySearchTree) {
+        addressData.saveUnloadedTST(ternarySearchTree);
+    }
+
     @Override
     public TernarySearchTree fetchTSTData() {
         return addressData.getTST();
@@ -0,0 +1,49 @@
+package bfst20.logic.controllers;
+
+import bfst20.data.MapIndexData;
+import bfst20.logic.controllers.interfaces.ChangeAPI;
+import bfst20.logic.entities.LinePath;
+import bfst20.logic.entities.Way;
+import bfst20.logic.filehandling.ChangeSet;
+import bfst20.logic.nodestore.NodeStore;
+import bfst20.logic.services.ChangeReport;
+import bfst20.logic.services.ChangeService;
+
+import java.util.List;
+
+public class ChangeController implements ChangeAPI {
+    private ChangeService changeService;
+    private MapIndexData mapIndexData;
+    private ChangeReport changeReport;
+
+    public ChangeController(ChangeService changeService) {
+        this.changeService = changeService;
+        this.mapIndexData = MapIndexData.getInstance();
+    }
+
+    @Override
+    public void indexMap(List<Way> ways, NodeStore nodes, List<LinePath> linePaths) {
+        changeService.indexMap(ways, nodes, linePaths);
+    }
+
+    @Override
+    public boolean isMapIndexed() {
+        return mapIndexData.isIndexed();
+    }
+
+    @Override
+    public void applyChanges(ChangeSet changes) {
+        changeReport = changeService.applyChanges(changes);
+    }
+
+    @Override
+    public ChangeReport fetchChangeReport() {
+        return changeReport;
+    }
+
+    @Override
+    public void clearData() {
+        changeReport = null;
+        mapIndexData.clearData();
+    }
+}
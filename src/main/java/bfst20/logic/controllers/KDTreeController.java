@@ -10,6 +10,7 @@ import bfst20.logic.misc.OSMType;
 
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
 public class KDTreeController implements KDTreeAPI {
 
@@ -56,6 +57,16 @@ public class KDTreeController implements KDTreeAPI {
         kdTreeData.saveAllKDTrees(trees);
     }
 
+    @Override
+    public void saveUnloadedKDTrees(Map<OSMType, Supplier<KDTree>> trees) {
+        kdTreeData.saveUnloadedKDTrees(trees);
+    }
+
+    @Override
+    public boolean isKDTreeLoaded(OSMType type) {
+        return kdTreeData.isKDTreeLoaded(type);
+    }
+
     @Override
     public Map<OSMType, KDTree> fetchAllKDTrees() {
         return kdTreeData.getAllLKDTrees();
@@ -4,10 +4,10 @@ package bfst20.logic.controllers;
 import bfst20.data.LinePathData;
 import bfst20.logic.controllers.interfaces.LinePathAPI;
 import bfst20.logic.entities.LinePath;
-import bfst20.logic.entities.Node;
 import bfst20.logic.entities.Relation;
 import bfst20.logic.entities.Way;
 import bfst20.logic.misc.OSMType;
+import bfst20.logic.nodestore.NodeStore;
 import bfst20.logic.services.LinePathService;
 
 import java.util.ArrayList;
@@ -26,7 +26,7 @@ public class LinePathController implements LinePathAPI {
 
 
     @Override
-    public void init(List<Way> ways, Map<Long, Node> nodes, List<Relation> relations) {
+    public void init(List<Way> ways, NodeStore nodes, List<Relation> relations) {
         linePathService.convertWaysToLinePaths(ways, nodes);
         linePathService.convertRelationsToLinePaths(relations);
         linePathService.clearData();
@@ -0,0 +1,43 @@
+package bfst20.logic.controllers;
+
+import bfst20.logic.controllers.interfaces.MemoryAPI;
+import bfst20.logic.services.MemoryReport;
+import bfst20.logic.services.MemoryService;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Keeps the reports measured since the map was opened, in the order of the phases.
+public class MemoryController implements MemoryAPI {
+    private MemoryService memoryService;
+    private List<MemoryReport> memoryReports;
+
+    public MemoryController(MemoryService memoryService) {
+        this.memoryService = memoryService;
+        this.memoryReports = new ArrayList<>();
+    }
+
+    @Override
+    public synchronized MemoryReport measureMemory(String phase) {
+        MemoryReport report = memoryService.measure(phase);
+        memoryReports.add(report);
+
+        return report;
+    }
+
+    @Override
+    public synchronized List<MemoryReport> fetchMemoryReports() {
+        return Collections.unmodifiableList(new ArrayList<>(memoryReports));
+    }
+
+    @Override
+    public String fetchMemoryReportsJson() {
+        return MemoryReport.toJson(fetchMemoryReports());
+    }
+
+    @Override
+    public synchronized void clearData() {
+        memoryReports = new ArrayList<>();
+    }
+}
@@ -6,9 +6,9 @@ import bfst20.logic.entities.Bounds;
 import bfst20.logic.entities.Node;
 import bfst20.logic.entities.Relation;
 import bfst20.logic.entities.Way;
+import bfst20.logic.nodestore.NodeStore;
 
 import java.util.List;
-import java.util.Map;
 
 public class OSMElementController implements OSMElementAPI {
     private OSMElementData osmElementData;
@@ -39,7 +39,7 @@ public class OSMElementController implements OSMElementAPI {
 
     @Override
     public void saveNodeData(long id, Node node) {
-        osmElementData.addToNodeMap(id, node);
+        osmElementData.addToNodeStore(id, node);
     }
 
     @Override
@@ -58,12 +58,27 @@ public class OSMElementController implements OSMElementAPI {
     }
 
     @Override
-    public Map<Long, Node> fetchAllNodes() {
+    public NodeStore fetchAllNodes() {
         return osmElementData.getNodes();
     }
 
+    @Override
+    public NodeStore detachNodeData() {
+        return osmElementData.detachNodeStore();
+    }
+
+    @Override
+    public void prepareNodeData(long expectedNodes) {
+        osmElementData.prepareNodeStore(expectedNodes);
+    }
+
     @Override
     public void clearNodeData() {
         osmElementData.clearNodeData();
     }
+
+    @Override
+    public void mergeElementData() {
+        osmElementData.mergeElements();
+    }
 }
@@ -12,6 +12,7 @@ import bfst20.logic.services.RoutingService;
 
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
 public class RoutingController implements RoutingAPI {
     private RoutingService routingService;
@@ -34,6 +35,11 @@ public class RoutingController implements RoutingAPI {
         routingData.saveGraph(graph);
     }
 
+    @Override
+    public void saveUnloadedGraph(Supplier<Graph> graph) {
+        routingData.saveUnloadedGraph(graph);
+    }
+
     @Override
     public Graph fetchGraph() {
         return routingData.getGraph();
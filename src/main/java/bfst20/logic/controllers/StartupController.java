@@ -2,21 +2,30 @@ package bfst20.logic.controllers;
 
 import bfst20.data.*;
 import bfst20.logic.filehandling.FileHandler;
+import bfst20.logic.filehandling.MapCache;
 import bfst20.logic.filehandling.Parser;
 import bfst20.logic.controllers.interfaces.AddressAPI;
+import bfst20.logic.controllers.interfaces.ChangeAPI;
 import bfst20.logic.controllers.interfaces.KDTreeAPI;
 import bfst20.logic.controllers.interfaces.LinePathAPI;
+import bfst20.logic.controllers.interfaces.MemoryAPI;
 import bfst20.logic.controllers.interfaces.OSMElementAPI;
 import bfst20.logic.services.AddressService;
+import bfst20.logic.services.ChangeService;
 import bfst20.logic.services.LinePathService;
+import bfst20.logic.services.MemoryService;
 import bfst20.logic.services.RoutingService;
 import bfst20.presentation.AlertHandler;
 import bfst20.presentation.View;
+import javafx.application.Platform;
 import javafx.scene.control.Alert;
 
 import javax.xml.stream.XMLStreamException;
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 
 public class StartupController {
     private RoutingController routingController;
@@ -28,14 +37,27 @@ public class StartupController {
     private RoutingService routingService;
     private AddressAPI addressController;
     private KDTreeAPI kdTreeController;
+    private ChangeAPI changeController;
+    private MemoryAPI memoryController;
 
     private LinePathData linePathData;
     private FileHandler fileHandler;
+    private MapCache mapCache;
     private RoutingData routingData;
     private AddressData addressData;
     private KDTreeData kdTreeData;
 
     private boolean isBinary = false;
+    private boolean trackChanges;
+    private boolean isCached;
+    private String cacheKey;
+    // The file that is open and the cache entry it was loaded from, if any.
+    private View view;
+    private File openedFile;
+    private String cachedKey;
+    private boolean verbose;
+    private boolean reportMemory;
+    private String memoryReportFile;
 
     private Parser parser;
 
@@ -56,9 +78,27 @@ public class StartupController {
         routingService = new RoutingService(routingData);
         routingController = new RoutingController(routingService, addressService);
         linePathController = new LinePathController(linePathService);
+        changeController = new ChangeController(new ChangeService(MapIndexData.getInstance(), routingService));
+        memoryController = new MemoryController(new MemoryService(osmElementData, linePathData, kdTreeData, routingData,
+                addressData));
+
+        // Prints what each import and change file did to standard output.
+        verbose = Boolean.getBoolean("bfst20.verbose");
+
+        // Prints the heap of every part of the map after each phase of opening it, and writes
+        // the reports as JSON to the file bfst20.memory.json names.
+        memoryReportFile = System.getProperty("bfst20.memory.json");
+        reportMemory = Boolean.getBoolean("bfst20.memory") || memoryReportFile != null;
+
+        // Keeps the node store and the ways after an import, so .osc files can be applied to the map.
+        trackChanges = Boolean.getBoolean("bfst20.changes");
+        addressData.keepNodeAddresses(trackChanges);
 
         parser = new Parser(osmElementController, addressController);
 
+        // A map imported with changes tracked has to be imported again to be indexed.
+        mapCache = trackChanges ? null : MapCache.fromSystemProperties();
+
         fileHandler = new FileHandler.Builder()
                 .withParser(parser)
                 .withKDTreeAPI(kdTreeController)
@@ -66,33 +106,98 @@ public class StartupController {
                 .withAddressAPI(addressController)
                 .withLinePathAPI(linePathController)
                 .withOSMElementAPI(osmElementController)
+                .withChangeAPI(changeController)
+                .withMemoryAPI(memoryController)
+                .withDamagedMapHandler(this::reimportDamagedMap)
                 .build();
 
     }
 
     public void initialize(View view, File file) {
+        long start = System.nanoTime();
+        this.view = view;
+        openedFile = file;
+
         loadFile(file);
+        measureMemory("load");
         if (!isBinary) {
             linePathController.init(osmElementController.fetchAllWays(), osmElementController.fetchAllNodes(),
                     osmElementController.fetchAllRelations());
+            measureMemory("linePaths");
+
+            if (trackChanges) {
+                changeController.indexMap(osmElementController.fetchAllWays(), osmElementController.detachNodeData(),
+                        linePathController.fetchHighways());
+                measureMemory("changeIndex");
+            }
 
             osmElementController.clearNodeData();
+            measureMemory("nodesCleared");
             routingController.buildRoutingGraph(linePathController.fetchHighways());
+            measureMemory("routingGraph");
             kdTreeController.constructKDTrees(linePathController.fetchLinePathData(), osmElementController.fetchBoundsData());
+            measureMemory("kdTrees");
+
+            // The KD-trees have their own copy of the paths; applying changes needs the LinePaths.
+            if (!trackChanges) {
+                linePathController.clearLinePathData();
+                measureMemory("linePathsCleared");
+            }
+
+            if (cacheKey != null) storeInCache(cacheKey);
         }
+        exportMemoryReports();
 
         view.initialize(isBinary);
+        if (verbose) System.out.println("Opened " + file.getName() + (isCached ? " from the map cache" : "") + " in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
         System.gc();
     }
 
+    public MemoryAPI getMemoryAPI() {
+        return memoryController;
+    }
+
+    private void measureMemory(String phase) {
+        if (reportMemory) System.out.println(memoryController.measureMemory(phase));
+    }
+
+    private void exportMemoryReports() {
+        if (memoryReportFile == null) return;
+
+        try {
+            Files.write(Paths.get(memoryReportFile), memoryController.fetchMemoryReportsJson().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            System.err.println("Could not write the memory report: " + e.getMessage());
+        }
+    }
+
     private void loadFile(File file) {
         clearExistingData();
         try {
             isBinary = file.getName().endsWith(".bin") ? true : false;
+            isCached = false;
+            cacheKey = null;
+            cachedKey = null;
+
+            if (mapCache != null && MapCache.isCacheable(file)) {
+                cacheKey = mapCache.keyOf(file);
+
+                File cached = mapCache.find(cacheKey);
+                if (cached != null && loadCached(cached)) {
+                    isBinary = true;
+                    isCached = true;
+                    cachedKey = cacheKey;
+                    cacheKey = null;
+                    return;
+                }
+            }
 
             fileHandler.load(file);
+
+            if (verbose && !isBinary && parser.getParseReport() != null) System.out.println(parser.getParseReport());
         } catch (IOException ioException) {
-            AlertHandler.alertOK(Alert.AlertType.ERROR, "Invalid xml data, exiting.", true);
+            AlertHandler.alertOK(Alert.AlertType.ERROR, isBinary ? "Error loading the binary file, exiting." : "Invalid xml data, exiting.", true);
             System.exit(1);
         } catch (XMLStreamException xmlStreamException) {
             AlertHandler.alertOK(Alert.AlertType.ERROR, "Invalid xml data, exiting.", true);
@@ -103,8 +208,47 @@ public class StartupController {
         }
     }
 
+    // A damaged map in the cache is deleted, and the file it was made from imported again.
+    private boolean loadCached(File cached) throws XMLStreamException {
+        try {
+            fileHandler.load(cached);
+            return true;
+        } catch (IOException e) {
+            System.err.println("The cached map is damaged, importing again: " + e.getMessage());
+            mapCache.discard(cacheKey);
+            clearExistingData();
+            return false;
+        }
+    }
+
+    // A section of a cached map that turns out damaged only when it is first used: the map
+    // is deleted from the cache and the file it was made from imported again, once.
+    private void reimportDamagedMap(IOException e) {
+        if (!isCached) {
+            AlertHandler.alertOK(Alert.AlertType.ERROR, "The binary file is damaged, part of the map is left out.", false);
+            return;
+        }
+        if (cachedKey == null) return;
+
+        System.err.println("The cached map is damaged, importing again: " + e.getMessage());
+        mapCache.discard(cachedKey);
+        cachedKey = null;
+        Platform.runLater(() -> initialize(view, openedFile));
+    }
+
+    // Applies an osmChange file to the loaded map. A file that does not fit the map leaves it as it was.
+    public void applyChanges(File file) {
+        try {
+            fileHandler.load(file);
+            if (verbose) System.out.println(changeController.fetchChangeReport());
+        } catch (IOException | XMLStreamException exception) {
+            AlertHandler.alertOK(Alert.AlertType.ERROR, "Error loading the change file: " + exception.getMessage(), false);
+        } catch (IllegalStateException exception) {
+            AlertHandler.alertOK(Alert.AlertType.ERROR, "The changes do not fit the map: " + exception.getMessage(), false);
+        }
+    }
+
     public void generateBinary() {
-        clearAllNonBinData();
         try {
             fileHandler.generateBinary();
         } catch (Exception e) {
@@ -112,6 +256,21 @@ public class StartupController {
         }
     }
 
+    // The map is written while it is already shown; a failed write only means the next open imports again.
+    private void storeInCache(String key) {
+        FileHandler.BinaryMap map = fileHandler.prepareBinary();
+
+        Thread thread = new Thread(() -> {
+            try {
+                mapCache.store(key, map);
+            } catch (IOException e) {
+                System.err.println("Could not write the map cache: " + e.getMessage());
+            }
+        }, "bfst20-map-cache");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
     private void clearExistingData() {
         linePathData.clearMotorways();
         linePathData.clearCoastlines();
@@ -124,11 +283,7 @@ public class StartupController {
         interestPointData.clearData();
 
         osmElementController.clearNodeData();
-    }
-
-    private void clearAllNonBinData() {
-        osmElementController.clearNodeData();
-        linePathController.clearLinePathData();
-        routingData.clearData();
+        changeController.clearData();
+        memoryController.clearData();
     }
 }
\ No newline at end of file
@@ -4,13 +4,16 @@ import bfst20.logic.entities.Address;
 import bfst20.logic.routing.TernarySearchTree;
 
 import java.util.Queue;
+import java.util.function.Supplier;
 
 public interface AddressAPI {
 
-    void saveAddressData(Address address);
+    void saveAddressData(long nodeId, Address address);
 
     void saveTSTData(TernarySearchTree ternarySearchTree);
 
+    void saveUnloadedTSTData(Supplier<TernarySearchTree> ternarySearchTree);
+
     TernarySearchTree fetchTSTData();
 
     Address findAddress(String input);
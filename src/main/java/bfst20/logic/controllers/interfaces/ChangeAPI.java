@@ -0,0 +1,22 @@
+package bfst20.logic.controllers.interfaces;
+
+import bfst20.logic.entities.LinePath;
+import bfst20.logic.entities.Way;
+import bfst20.logic.filehandling.ChangeSet;
+import bfst20.logic.nodestore.NodeStore;
+import bfst20.logic.services.ChangeReport;
+
+import java.util.List;
+
+public interface ChangeAPI {
+
+    void indexMap(List<Way> ways, NodeStore nodes, List<LinePath> linePaths);
+
+    boolean isMapIndexed();
+
+    void applyChanges(ChangeSet changes);
+
+    ChangeReport fetchChangeReport();
+
+    void clearData();
+}
@@ -8,6 +8,7 @@ import bfst20.logic.misc.OSMType;
 
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
 public interface KDTreeAPI {
 
@@ -23,5 +24,9 @@ public interface KDTreeAPI {
 
     void saveAllKDTrees(Map<OSMType, KDTree> trees);
 
+    void saveUnloadedKDTrees(Map<OSMType, Supplier<KDTree>> trees);
+
+    boolean isKDTreeLoaded(OSMType type);
+
     Map<OSMType, KDTree> fetchAllKDTrees();
 }
@@ -0,0 +1,16 @@
+package bfst20.logic.controllers.interfaces;
+
+import bfst20.logic.services.MemoryReport;
+
+import java.util.List;
+
+public interface MemoryAPI {
+
+    MemoryReport measureMemory(String phase);
+
+    List<MemoryReport> fetchMemoryReports();
+
+    String fetchMemoryReportsJson();
+
+    void clearData();
+}
@@ -4,9 +4,9 @@ import bfst20.logic.entities.Bounds;
 import bfst20.logic.entities.Node;
 import bfst20.logic.entities.Relation;
 import bfst20.logic.entities.Way;
+import bfst20.logic.nodestore.NodeStore;
 
 import java.util.List;
-import java.util.Map;
 
 public interface OSMElementAPI {
 
@@ -26,9 +26,15 @@ public interface OSMElementAPI {
 
     Node fetchNodeById(long id);
 
-    Map<Long, Node> fetchAllNodes();
+    NodeStore fetchAllNodes();
+
+    NodeStore detachNodeData();
+
+    void prepareNodeData(long expectedNodes);
 
     void clearNodeData();
 
+    void mergeElementData();
+
 
 }
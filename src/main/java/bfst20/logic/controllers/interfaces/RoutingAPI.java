@@ -8,6 +8,7 @@ import bfst20.logic.routing.Graph;
 
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
 public interface RoutingAPI {
 
@@ -15,6 +16,8 @@ public interface RoutingAPI {
 
     void saveGraph(Graph graph);
 
+    void saveUnloadedGraph(Supplier<Graph> graph);
+
     Graph fetchGraph();
 
     double initializeRouting(String sourceQuery, String targetQuery, Vehicle vehicle);
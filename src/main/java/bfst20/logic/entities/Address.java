@@ -1,6 +1,7 @@
 package bfst20.logic.entities;
 
 import java.io.Serializable;
+import java.util.Objects;
 
 public class Address implements Serializable {
     private String city,
@@ -47,6 +48,24 @@ public class Address implements Serializable {
         return lon;
     }
 
+    // Addresses are made anew from their table row for every search, so two with the same
+    // fields are the same address.
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) return true;
+        if (!(other instanceof Address)) return false;
+
+        Address address = (Address) other;
+        return Float.compare(lat, address.lat) == 0 && Float.compare(lon, address.lon) == 0
+                && Objects.equals(city, address.city) && Objects.equals(houseNumber, address.houseNumber)
+                && Objects.equals(postcode, address.postcode) && Objects.equals(street, address.street);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(city, houseNumber, postcode, street, lat, lon);
+    }
+
     @Override
     public String toString() {
         return street + " " + houseNumber + " " + postcode;
@@ -28,4 +28,11 @@ public class Bounds implements Serializable {
         return minLat;
     }
 
+    public Bounds union(Bounds other) {
+        if (other == null) return this;
+
+        return new Bounds(Math.max(maxLat, other.maxLat), Math.min(minLat, other.minLat),
+                Math.max(maxLon, other.maxLon), Math.min(minLon, other.minLon));
+    }
+
 }
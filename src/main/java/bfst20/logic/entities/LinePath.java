@@ -1,10 +1,10 @@
 package bfst20.logic.entities;
 
 import java.io.Serializable;
-import java.util.List;
-import java.util.Map;
 
 import bfst20.logic.misc.OSMType;
+import bfst20.logic.nodestore.IdList;
+import bfst20.logic.nodestore.NodeStore;
 
 public class LinePath implements Serializable {
     private float minY, minX, maxY, maxX, centerLatitude, centerLongitude;
@@ -27,7 +27,7 @@ public class LinePath implements Serializable {
         centerLongitude = (maxY - minY) / 2 + minY;
     }
 
-    public LinePath(Way way, OSMType OSMType, Map<Long, Node> OSMNodes, Boolean fill) {
+    public LinePath(Way way, OSMType OSMType, NodeStore OSMNodes, Boolean fill) {
         name = way.getName();
         wayId = way.getId();
         this.way = way;
@@ -39,8 +39,34 @@ public class LinePath implements Serializable {
         calculateCenterCoordinates();
     }
 
-    public void calculateMinMaxCoordinates(Map<Long, Node> OSMNodes, Way way){
-        List<Long> nodeIds = way.getNodeIds();
+    // Used when a map file is read. The bounding box and the center follow from the coordinates.
+    public LinePath(OSMType OSMType, float[] coords, boolean fill, boolean multipolygon, String name, long wayId) {
+        this.OSMType = OSMType;
+        this.coords = coords;
+        this.fill = fill;
+        this.multipolygon = multipolygon;
+        this.name = name;
+        this.wayId = wayId;
+
+        minY = Float.POSITIVE_INFINITY;
+        minX = Float.POSITIVE_INFINITY;
+
+        maxY = Float.NEGATIVE_INFINITY;
+        maxX = Float.NEGATIVE_INFINITY;
+
+        for (int i = 0; i < coords.length; i += 2) {
+            if (minX > coords[i + 1]) minX = coords[i + 1];
+            if (minY > coords[i]) minY = coords[i];
+
+            if (maxX < coords[i + 1]) maxX = coords[i + 1];
+            if (maxY < coords[i]) maxY = coords[i];
+        }
+
+        calculateCenterCoordinates();
+    }
+
+    public void calculateMinMaxCoordinates(NodeStore OSMNodes, Way way){
+        IdList nodeIds = way.getNodeIds();
 
         minY = Float.POSITIVE_INFINITY;
         minX = Float.POSITIVE_INFINITY;
@@ -50,8 +76,12 @@ public class LinePath implements Serializable {
 
         coords = new float[nodeIds.size() * 2];
         for (int i = 0; i < nodeIds.size(); i++) {
-            coords[i * 2] = OSMNodes.get(nodeIds.get(i)).getLongitude();
-            coords[i * 2 + 1] = OSMNodes.get(nodeIds.get(i)).getLatitude();
+            long id = nodeIds.get(i);
+            int index = OSMNodes.indexOf(id);
+            if (index == -1) throw new IllegalStateException("Way " + way.getId() + " references missing node " + id);
+
+            coords[i * 2] = OSMNodes.longitudeAt(index);
+            coords[i * 2 + 1] = OSMNodes.latitudeAt(index);
 
             if (minX > coords[i * 2 + 1]) minX = coords[i * 2 + 1];
             if (minY > coords[i * 2]) minY = coords[i * 2];
@@ -4,11 +4,12 @@ import bfst20.logic.misc.OSMType;
 
 import java.io.Serializable;
 
-public class Node implements OSMElement, Comparable, Serializable {
-    protected float longitude;
-    protected float latitude;
-    private double distTo;
-    private long id;
+// A point of the map. Nodes do not change once created; route searches keep their
+// distances in a SearchContext instead.
+public class Node implements OSMElement, Serializable {
+    private final float longitude;
+    private final float latitude;
+    private final long id;
 
     public Node(long id, float latitude, float longitude) {
         this.id = id;
@@ -17,8 +18,7 @@ public class Node implements OSMElement, Comparable, Serializable {
     }
 
     public Node(float latitude, float longitude) {
-        this.latitude = latitude;
-        this.longitude = longitude;
+        this(0, latitude, longitude);
     }
 
     public long getId() {
@@ -33,19 +33,6 @@ public class Node implements OSMElement, Comparable, Serializable {
         return longitude;
     }
 
-    public void setDistTo(double distTo) {
-        this.distTo = distTo;
-    }
-
-    public double getDistTo() {
-        return distTo;
-    }
-
-    @Override
-    public int compareTo(Object other) {
-        return Double.compare(this.distTo, ((Node) other).getDistTo());
-    }
-
     @Override
     public void setName(String name) {
     }
@@ -1,12 +1,10 @@
 package bfst20.logic.entities;
 
 import bfst20.logic.misc.OSMType;
-
-import java.util.ArrayList;
-import java.util.List;
+import bfst20.logic.nodestore.IdList;
 
 public class Relation implements OSMElement {
-    private List<Long> members;
+    private IdList members;
     private boolean multipolygon;
     private OSMType OSMType;
     private String name;
@@ -14,7 +12,7 @@ public class Relation implements OSMElement {
 
     public Relation(long id) {
         this.id = id;
-        members = new ArrayList<>();
+        members = new IdList();
     }
 
     public void setName(String name) {
@@ -47,10 +45,14 @@ public class Relation implements OSMElement {
         members.add(member);
     }
 
-    public List<Long> getMembers() {
+    public IdList getMembers() {
         return members;
     }
 
+    public void trimMembers() {
+        members.trim();
+    }
+
     public long getId() {
         return id;
     }
@@ -1,14 +1,16 @@
 package bfst20.logic.entities;
 
 import bfst20.logic.misc.OSMType;
+import bfst20.logic.nodestore.IdList;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class Way implements OSMElement, Serializable {
     private boolean multipolygon;
-    private List<Long> nodeIds;
+    private IdList nodeIds;
     private boolean isOneWay;
     private List<Node> nodes;
     private OSMType OSMType;
@@ -17,21 +19,19 @@ public class Way implements OSMElement, Serializable {
     private long id;
 
     public Way() {
-        nodeIds = new ArrayList<>();
-        nodes = new ArrayList<>();
+        nodeIds = new IdList();
     }
 
     public Way(long id) {
         this.id = id;
-        nodeIds = new ArrayList<>();
-        nodes = new ArrayList<>();
+        nodeIds = new IdList();
     }
 
     //Used to make a temp copy of a way in LinePathGenerator.
     public Way(Way way) {
         this.id = way.getId();
-        this.nodeIds = new ArrayList<>(way.getNodeIds());
-        nodes = way.getNodes();
+        this.nodeIds = new IdList(way.getNodeIds());
+        nodes = way.nodes;
     }
 
     public int getMaxSpeed() {
@@ -75,7 +75,7 @@ public class Way implements OSMElement, Serializable {
         return OSMType;
     }
 
-    public List<Long> getNodeIds() {
+    public IdList getNodeIds() {
         return nodeIds;
     }
 
@@ -88,23 +88,35 @@ public class Way implements OSMElement, Serializable {
     }
 
     public long getFirstNodeId() {
-        return nodeIds.get(0);
+        return nodeIds.first();
     }
 
     public long getLastNodeId() {
-        return nodeIds.get(nodeIds.size() - 1);
+        return nodeIds.last();
     }
 
     public void addAllNodeIds(Way way) {
         nodeIds.addAll(way.getNodeIds());
     }
 
+    // Drops the spare capacity of the node ids once the way is built.
+    public void trimNodeIds() {
+        nodeIds.trim();
+    }
+
+    // Only ways that are routed resolve their nodes, so the list is made on the first add.
     public void addNode(Node node) {
+        if (nodes == null) nodes = new ArrayList<>(nodeIds.size());
         nodes.add(node);
     }
 
     public List<Node> getNodes() {
-        return nodes;
+        return nodes == null ? Collections.emptyList() : nodes;
+    }
+
+    // The graph holds the nodes once its edges are made.
+    public void releaseNodes() {
+        nodes = null;
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,340 @@
+package bfst20.logic.filehandling;
+
+import bfst20.logic.controllers.interfaces.OSMElementAPI;
+import bfst20.logic.entities.Bounds;
+import bfst20.logic.entities.Node;
+import bfst20.logic.entities.Relation;
+import bfst20.logic.entities.Way;
+import bfst20.logic.nodestore.IdList;
+import bfst20.logic.nodestore.IdSet;
+import bfst20.logic.nodestore.NodeStore;
+import bfst20.logic.nodestore.SortedNodeStore;
+
+import java.util.*;
+
+// Cuts an import down to a box, in the committer. Nodes inside the box are stored
+// as usual; the coordinates of the others are only kept until the ways are cut.
+// Ways without a segment in the box are dropped. Closed ways that are not highways
+// are clipped as polygons, everything else as lines: a line that leaves and enters
+// the box again becomes several ways with the same id. Where a way crosses the
+// edge a node with a new negative id is added, so highways still end at the edge
+// and can be routed on. Relations lose the ways that were dropped.
+class BoxClipper {
+    private float minLat, maxLat, minLon, maxLon;
+    private Bounds box;
+
+    private NodeStore outsideNodes;
+    private IdSet droppedWays;
+
+    // Nodes added at the edge, written to the node store once the parse is done:
+    // putting them between the ways would make the store sort itself again and again.
+    private List<Node> edgeNodes;
+    private long nextEdgeId;
+
+    private long outsideNodeCount;
+    private long droppedWayCount;
+    private long cutWayCount;
+
+    // The box in the coordinates of the stores, see ElementBuilder.
+    BoxClipper(Bounds box) {
+        this.box = box;
+        minLat = box.getMinLat();
+        maxLat = box.getMaxLat();
+        minLon = box.getMinLon();
+        maxLon = box.getMaxLon();
+
+        outsideNodes = new SortedNodeStore();
+        droppedWays = new IdSet();
+        edgeNodes = new ArrayList<>();
+        nextEdgeId = -1;
+    }
+
+    Bounds getBox() {
+        return box;
+    }
+
+    boolean contains(float latitude, float longitude) {
+        return latitude >= minLat && latitude <= maxLat && longitude >= minLon && longitude <= maxLon;
+    }
+
+    void addOutsideNode(Node node) {
+        outsideNodes.put(node.getId(), node.getLatitude(), node.getLongitude());
+        outsideNodeCount++;
+    }
+
+    // The parts of the way in the box: none, the way itself, or new ways.
+    List<Way> clip(Way way, NodeStore nodes, boolean highway) {
+        IdList ids = way.getNodeIds();
+        Point[] points = new Point[ids.size()];
+        int count = 0;
+        boolean allInside = true;
+
+        for (int i = 0; i < ids.size(); i++) {
+            Point point = point(ids.get(i), nodes);
+
+            if (point == null) continue;
+
+            allInside &= point.inside;
+            points[count++] = point;
+        }
+
+        if (allInside && count == ids.size()) return Collections.singletonList(way);
+
+        boolean closed = count >= 4 && points[0].id == points[count - 1].id;
+        List<List<Point>> parts = closed && !highway
+                ? clipPolygon(Arrays.asList(points).subList(0, count))
+                : clipLine(points, count);
+
+        if (parts.isEmpty()) {
+            droppedWays.add(way.getId());
+            droppedWayCount++;
+            return Collections.emptyList();
+        }
+
+        cutWayCount++;
+        List<Way> result = new ArrayList<>(parts.size());
+
+        for (List<Point> part : parts) {
+            Way piece = result.isEmpty() ? way : copyTags(way);
+            piece.getNodeIds().clear();
+
+            for (Point point : part) piece.addNodeId(idOf(point));
+            piece.trimNodeIds();
+            result.add(piece);
+        }
+
+        return result;
+    }
+
+    private Point point(long id, NodeStore nodes) {
+        int index = nodes.indexOf(id);
+        if (index != -1) return new Point(id, nodes.latitudeAt(index), nodes.longitudeAt(index), true);
+
+        index = outsideNodes.indexOf(id);
+        if (index == -1) return null;
+
+        float latitude = outsideNodes.latitudeAt(index);
+        float longitude = outsideNodes.longitudeAt(index);
+
+        return new Point(id, latitude, longitude, contains(latitude, longitude));
+    }
+
+    private static Way copyTags(Way way) {
+        Way copy = new Way(way.getId());
+        copy.setOSMType(way.getOSMType());
+        copy.setName(way.getName());
+        copy.setMaxSpeed(way.getMaxSpeed());
+        copy.setOneWay(way.isOneWay());
+        copy.setMultipolygon(way.isMultipolygon());
+
+        return copy;
+    }
+
+    // The runs of the line inside the box, each cut at the edge (Liang-Barsky per segment).
+    private List<List<Point>> clipLine(Point[] points, int count) {
+        List<List<Point>> parts = new ArrayList<>();
+        List<Point> part = null;
+
+        if (count == 1 && points[0].inside) parts.add(Collections.singletonList(points[0]));
+
+        for (int i = 1; i < count; i++) {
+            Point from = points[i - 1];
+            Point to = points[i];
+            double[] range = clipSegment(from, to);
+
+            if (range == null) {
+                part = null;
+                continue;
+            }
+
+            if (part == null) {
+                part = new ArrayList<>();
+                part.add(range[0] == 0 ? from : edgePoint(from, to, range[0]));
+                parts.add(part);
+            }
+
+            part.add(range[1] == 1 ? to : edgePoint(from, to, range[1]));
+            if (range[1] < 1) part = null;
+        }
+
+        parts.removeIf(p -> p.size() < 2 && count > 1);
+
+        return parts;
+    }
+
+    // The part of the segment in the box as {t0, t1} along it, or null if there is none.
+    private double[] clipSegment(Point from, Point to) {
+        if (from.inside && to.inside) return new double[]{0, 1};
+
+        double dLat = to.latitude - from.latitude;
+        double dLon = to.longitude - from.longitude;
+        double[] range = {0, 1};
+
+        if (!clipRange(-dLon, from.longitude - minLon, range)) return null;
+        if (!clipRange(dLon, maxLon - from.longitude, range)) return null;
+        if (!clipRange(-dLat, from.latitude - minLat, range)) return null;
+        if (!clipRange(dLat, maxLat - from.latitude, range)) return null;
+
+        if (from.inside) range[0] = 0;
+        if (to.inside) range[1] = 1;
+
+        return range;
+    }
+
+    private static boolean clipRange(double p, double q, double[] range) {
+        if (p == 0) return q >= 0;
+
+        double t = q / p;
+
+        if (p < 0) {
+            if (t > range[1]) return false;
+            if (t > range[0]) range[0] = t;
+        } else {
+            if (t < range[0]) return false;
+            if (t < range[1]) range[1] = t;
+        }
+
+        return true;
+    }
+
+    // The polygon cut to the box edge by edge (Sutherland-Hodgman), as a closed ring.
+    private List<List<Point>> clipPolygon(List<Point> ring) {
+        List<Point> polygon = new ArrayList<>(ring.subList(0, ring.size() - 1));
+
+        for (int edge = 0; edge < 4 && !polygon.isEmpty(); edge++) {
+            List<Point> clipped = new ArrayList<>();
+
+            for (int i = 0; i < polygon.size(); i++) {
+                Point from = polygon.get((i + polygon.size() - 1) % polygon.size());
+                Point to = polygon.get(i);
+                boolean fromInside = insideEdge(from, edge);
+                boolean toInside = insideEdge(to, edge);
+
+                if (toInside) {
+                    if (!fromInside) clipped.add(edgePoint(from, to, crossing(from, to, edge)));
+                    clipped.add(to);
+                } else if (fromInside) {
+                    clipped.add(edgePoint(from, to, crossing(from, to, edge)));
+                }
+            }
+
+            polygon = clipped;
+        }
+
+        if (polygon.size() < 3) return Collections.emptyList();
+
+        polygon.add(polygon.get(0));
+        return Collections.singletonList(polygon);
+    }
+
+    private boolean insideEdge(Point point, int edge) {
+        switch (edge) {
+            case 0:
+                return point.longitude >= minLon;
+            case 1:
+                return point.longitude <= maxLon;
+            case 2:
+                return point.latitude >= minLat;
+            default:
+                return point.latitude <= maxLat;
+        }
+    }
+
+    private double crossing(Point from, Point to, int edge) {
+        switch (edge) {
+            case 0:
+                return (minLon - from.longitude) / (to.longitude - from.longitude);
+            case 1:
+                return (maxLon - from.longitude) / (to.longitude - from.longitude);
+            case 2:
+                return (minLat - from.latitude) / (to.latitude - from.latitude);
+            default:
+                return (maxLat - from.latitude) / (to.latitude - from.latitude);
+        }
+    }
+
+    // A crossing on the segment. It only gets an id and a node once it is in a part that is
+    // kept: a later edge of a polygon may still cut it away, so it is not clamped yet either.
+    private Point edgePoint(Point from, Point to, double t) {
+        float latitude = (float) (from.latitude + t * (to.latitude - from.latitude));
+        float longitude = (float) (from.longitude + t * (to.longitude - from.longitude));
+
+        return new Point(latitude, longitude);
+    }
+
+    // The id of a point of a kept part. A crossing becomes a node, clamped to the box against rounding.
+    private long idOf(Point point) {
+        if (point.onEdge && point.id == 0) {
+            point.id = nextEdgeId--;
+            edgeNodes.add(new Node(point.id, clamp(point.latitude, minLat, maxLat), clamp(point.longitude, minLon, maxLon)));
+        }
+
+        return point.id;
+    }
+
+    private static float clamp(float value, float min, float max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    void clipMembers(Relation relation) {
+        relation.getMembers().removeIf(droppedWays::contains);
+        relation.trimMembers();
+    }
+
+    // Way pieces with nodes of their own, which can only be resolved after finish().
+    static boolean hasEdgeNodes(Way way) {
+        IdList ids = way.getNodeIds();
+        for (int i = 0; i < ids.size(); i++) if (ids.get(i) < 0) return true;
+
+        return false;
+    }
+
+    // Writes the edge nodes into the store, in ascending id order, and forgets the nodes outside the box.
+    void finish(OSMElementAPI osmElementAPI) {
+        for (int i = edgeNodes.size() - 1; i >= 0; i--) {
+            Node node = edgeNodes.get(i);
+            osmElementAPI.saveNodeData(node.getId(), node);
+        }
+
+        edgeNodes = new ArrayList<>();
+
+        outsideNodes.close();
+        outsideNodes = new SortedNodeStore();
+    }
+
+    long getOutsideNodeCount() {
+        return outsideNodeCount;
+    }
+
+    long getDroppedWayCount() {
+        return droppedWayCount;
+    }
+
+    long getCutWayCount() {
+        return cutWayCount;
+    }
+
+    private static class Point {
+        // Set by idOf for a point on the edge.
+        private long id;
+        private final float latitude;
+        private final float longitude;
+        private final boolean inside;
+        private final boolean onEdge;
+
+        Point(long id, float latitude, float longitude, boolean inside) {
+            this.id = id;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.inside = inside;
+            onEdge = false;
+        }
+
+        Point(float latitude, float longitude) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            inside = true;
+            onEdge = true;
+        }
+    }
+}
@@ -0,0 +1,537 @@
+package bfst20.logic.filehandling;
+
+import bfst20.logic.misc.OSMTypeTable;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+
+import static bfst20.logic.filehandling.ElementBatch.*;
+
+// Reader stage for OSM XML that scans the UTF-8 bytes itself instead of going
+// through StAX. OSM files only use a small part of XML: elements with quoted
+// attributes, character references in attribute values, comments and declarations.
+// That is all this reader understands; text and other elements are skipped.
+// Ids and coordinates are parsed straight from the buffer, and only the tags the
+// parser uses become Strings. Fills the same batches as XMLElementReader.
+class ByteXMLReader implements ElementReader {
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int MAX_CACHED_LENGTH = 32;
+
+    // Element codes, after the record kinds of ElementBatch.
+    private static final int OTHER_ELEMENT = -1;
+    private static final int ND_ELEMENT = 4;
+    private static final int MEMBER_ELEMENT = 5;
+    private static final int TAG_ELEMENT = 6;
+
+    private static final byte[] BOUNDS_NAME = ascii("bounds");
+    private static final byte[] NODE_NAME = ascii("node");
+    private static final byte[] WAY_NAME = ascii("way");
+    private static final byte[] ND_NAME = ascii("nd");
+    private static final byte[] RELATION_NAME = ascii("relation");
+    private static final byte[] MEMBER_NAME = ascii("member");
+    private static final byte[] TAG_NAME = ascii("tag");
+
+    private static final String[] ATTRIBUTES = {"id", "lat", "lon", "minlat", "minlon", "maxlat", "maxlon", "ref", "type", "k", "v"};
+    private static final int ID_ATTRIBUTE = 0;
+    private static final int LAT_ATTRIBUTE = 1;
+    private static final int LON_ATTRIBUTE = 2;
+    private static final int MIN_LAT_ATTRIBUTE = 3;
+    private static final int MIN_LON_ATTRIBUTE = 4;
+    private static final int MAX_LAT_ATTRIBUTE = 5;
+    private static final int MAX_LON_ATTRIBUTE = 6;
+    private static final int REF_ATTRIBUTE = 7;
+    private static final int TYPE_ATTRIBUTE = 8;
+    private static final int K_ATTRIBUTE = 9;
+    private static final int V_ATTRIBUTE = 10;
+    private static final byte[][] ATTRIBUTE_NAMES = new byte[ATTRIBUTES.length][];
+
+    static {
+        for (int i = 0; i < ATTRIBUTES.length; i++) ATTRIBUTE_NAMES[i] = ascii(ATTRIBUTES[i]);
+    }
+
+    private ReadableByteChannel channel;
+    private byte[] bytes;
+    private ByteBuffer buffer;
+    private int position;
+    private int limit;
+    private boolean endOfInput;
+    // Input offset of bytes[0], for error messages.
+    private long bufferOffset;
+
+    // Value range of each attribute of the current element, start -1 if missing.
+    // Values with references or line breaks are decoded the slow way.
+    private int[] attributeStarts;
+    private int[] attributeEnds;
+    private boolean[] attributeEscaped;
+    private int nameEnd;
+
+    private boolean elementStarted;
+    private boolean finished;
+    private String firstTagKey;
+    private ElementTags tagKeys;
+    private StringCache strings;
+
+    private BlockingQueue<ElementBatch> pool;
+    private ThreadLocal<ElementBuilder> builders;
+
+    // At most batchCount batches are in flight, the reader waits for the committer to release one.
+    ByteXMLReader(ReadableByteChannel channel, int batchSize, int batchCount, ValueDictionary dictionary,
+                  OSMTypeTable typeTable) {
+        this.channel = channel;
+
+        bytes = new byte[BUFFER_SIZE];
+        buffer = ByteBuffer.wrap(bytes);
+        attributeStarts = new int[ATTRIBUTES.length];
+        attributeEnds = new int[ATTRIBUTES.length];
+        attributeEscaped = new boolean[ATTRIBUTES.length];
+
+        tagKeys = new ElementTags(dictionary, typeTable);
+        strings = new StringCache();
+
+        pool = new ArrayBlockingQueue<>(batchCount);
+        for (int i = 0; i < batchCount; i++) pool.add(new ElementBatch(batchSize, pool));
+
+        builders = ThreadLocal.withInitial(() -> new ElementBuilder(dictionary, typeTable));
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public Callable<ElementBatch> next() throws IOException, XMLStreamException, InterruptedException {
+        if (finished) return null;
+
+        ElementBatch batch = pool.take();
+        finished = !read(batch);
+
+        return () -> {
+            builders.get().build(batch);
+            return batch;
+        };
+    }
+
+    @Override
+    public String getFirstTagKey() {
+        return firstTagKey;
+    }
+
+    // Fills the batch until it is full or the document ends. Returns false at the end of the document.
+    private boolean read(ElementBatch batch) throws IOException, XMLStreamException {
+        if (firstTagKey != null) batch.setFirstTag(firstTagKey, 0);
+
+        while (true) {
+            int end = nextMarkup();
+            if (end == -1) return false;
+
+            int start = position;
+            position = end + 1;
+
+            byte second = bytes[start + 1];
+            if (second == '?' || second == '!') continue;
+
+            if (second == '/') {
+                if (batch.isFull() && isRecordElement(element(start + 2, end))) return true;
+                continue;
+            }
+
+            int element = element(start + 1, end);
+            readStartElement(batch, element, end);
+
+            boolean empty = bytes[end - 1] == '/';
+            if (empty && batch.isFull() && isRecordElement(element)) return true;
+        }
+    }
+
+    // Skips text up to the next '<' and makes sure the markup starting there is in the
+    // buffer. Returns the index of the '>' that ends it, or -1 at the end of the input.
+    private int nextMarkup() throws IOException, XMLStreamException {
+        while (true) {
+            int i = position;
+            while (i < limit && bytes[i] != '<') i++;
+            position = i;
+
+            if (i < limit) {
+                int end = markupEnd(i);
+                if (end != -1) return end;
+            }
+
+            if (endOfInput) {
+                if (position < limit) throw error("Unexpected end of document", position);
+                return -1;
+            }
+
+            fill();
+        }
+    }
+
+    // Moves the unread bytes to the front of the buffer and reads more input after them.
+    private void fill() throws IOException {
+        bufferOffset += position;
+        System.arraycopy(bytes, position, bytes, 0, limit - position);
+        limit -= position;
+        position = 0;
+
+        if (limit == bytes.length) {
+            bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            buffer = ByteBuffer.wrap(bytes);
+        }
+
+        buffer.limit(bytes.length).position(limit);
+
+        int read;
+        do {
+            read = channel.read(buffer);
+        } while (read == 0);
+
+        if (read == -1) endOfInput = true;
+
+        else limit += read;
+    }
+
+    // Index of the '>' that ends the markup at start, or -1 if the buffer ends first.
+    private int markupEnd(int start) {
+        if (limit - start < 9 && !endOfInput) return -1;
+
+        if (startsWith(start, "<?")) return find("?>", start + 2);
+
+        if (startsWith(start, "<!--")) return find("-->", start + 4);
+
+        if (startsWith(start, "<![CDATA[")) return find("]]>", start + 9);
+
+        // Elements and declarations; '>' may appear in quoted values and in the brackets of a DOCTYPE.
+        byte quote = 0;
+        int depth = 0;
+
+        for (int i = start + 1; i < limit; i++) {
+            byte b = bytes[i];
+
+            if (quote != 0) {
+                if (b == quote) quote = 0;
+            } else if (b == '"' || b == '\'') {
+                quote = b;
+            } else if (b == '[') {
+                depth++;
+            } else if (b == ']') {
+                depth--;
+            } else if (b == '>' && depth <= 0) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private boolean startsWith(int start, String prefix) {
+        if (limit - start < prefix.length()) return false;
+
+        for (int i = 0; i < prefix.length(); i++) {
+            if (bytes[start + i] != prefix.charAt(i)) return false;
+        }
+
+        return true;
+    }
+
+    // Index of the last byte of the terminator, or -1.
+    private int find(String terminator, int from) {
+        for (int i = from; i + terminator.length() <= limit; i++) {
+            if (startsWith(i, terminator)) return i + terminator.length() - 1;
+        }
+
+        return -1;
+    }
+
+    // Code of the element whose name starts at start. Sets nameEnd.
+    private int element(int start, int end) {
+        int i = start;
+        while (i < end && !isWhitespace(bytes[i]) && bytes[i] != '/' && bytes[i] != '>') i++;
+        nameEnd = i;
+
+        switch (i - start) {
+            case 2:
+                return matches(start, ND_NAME) ? ND_ELEMENT : OTHER_ELEMENT;
+            case 3:
+                if (matches(start, WAY_NAME)) return WAY;
+                return matches(start, TAG_NAME) ? TAG_ELEMENT : OTHER_ELEMENT;
+            case 4:
+                return matches(start, NODE_NAME) ? NODE : OTHER_ELEMENT;
+            case 6:
+                if (matches(start, BOUNDS_NAME)) return BOUNDS;
+                return matches(start, MEMBER_NAME) ? MEMBER_ELEMENT : OTHER_ELEMENT;
+            case 8:
+                return matches(start, RELATION_NAME) ? RELATION : OTHER_ELEMENT;
+            default:
+                return OTHER_ELEMENT;
+        }
+    }
+
+    private boolean matches(int start, byte[] name) {
+        for (int i = 0; i < name.length; i++) {
+            if (bytes[start + i] != name[i]) return false;
+        }
+
+        return true;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\t' || b == '\r';
+    }
+
+    private static boolean isRecordElement(int element) {
+        return element == BOUNDS || element == NODE || element == WAY || element == RELATION;
+    }
+
+    private void readStartElement(ElementBatch batch, int element, int end) throws XMLStreamException {
+        switch (element) {
+            case BOUNDS:
+                batch.startRecord(BOUNDS);
+                readAttributes(end);
+                addFloat(batch, MAX_LAT, MAX_LAT_ATTRIBUTE);
+                addFloat(batch, MAX_LON, MAX_LON_ATTRIBUTE);
+                addFloat(batch, MIN_LAT, MIN_LAT_ATTRIBUTE);
+                addFloat(batch, MIN_LON, MIN_LON_ATTRIBUTE);
+                break;
+            case NODE:
+                elementStarted = true;
+                batch.startRecord(NODE);
+                readAttributes(end);
+                addLong(batch, ID, null, ID_ATTRIBUTE);
+                addFloat(batch, LAT, LAT_ATTRIBUTE);
+                addFloat(batch, LON, LON_ATTRIBUTE);
+                break;
+            case WAY:
+                elementStarted = true;
+                batch.startRecord(WAY);
+                readAttributes(end);
+                addLong(batch, ID, null, ID_ATTRIBUTE);
+                break;
+            case ND_ELEMENT:
+                if (batch.lastKind() == WAY) {
+                    readAttributes(end);
+                    addLong(batch, ND, null, REF_ATTRIBUTE);
+                }
+                break;
+            case RELATION:
+                elementStarted = true;
+                batch.startRecord(RELATION);
+                readAttributes(end);
+                addLong(batch, ID, null, ID_ATTRIBUTE);
+                break;
+            case MEMBER_ELEMENT:
+                if (batch.lastKind() == RELATION) {
+                    readAttributes(end);
+                    addLong(batch, MEMBER, value(TYPE_ATTRIBUTE), REF_ATTRIBUTE);
+                }
+                break;
+            case TAG_ELEMENT:
+                readTag(batch, end);
+                break;
+        }
+    }
+
+    private void readTag(ElementBatch batch, int end) throws XMLStreamException {
+        if (!elementStarted) return;
+
+        readAttributes(end);
+        String key = value(K_ATTRIBUTE);
+
+        if (firstTagKey == null) {
+            firstTagKey = key;
+            batch.setFirstTag(key, Math.max(0, batch.size() - 1));
+        }
+
+        // The builder ignores the other keys, so their values are not decoded.
+        if (batch.lastKind() != BOUNDS && batch.size() > 0 && (key == null || tagKeys.code(key) != ElementTags.NONE)) {
+            batch.addField(TAG, key, value(V_ATTRIBUTE));
+        }
+    }
+
+    // Finds the attributes of the element in the markup between nameEnd and end.
+    private void readAttributes(int end) throws XMLStreamException {
+        Arrays.fill(attributeStarts, -1);
+        int i = nameEnd;
+
+        while (true) {
+            while (i < end && isWhitespace(bytes[i])) i++;
+            if (i >= end || bytes[i] == '/') return;
+
+            int nameStart = i;
+            while (i < end && bytes[i] != '=' && !isWhitespace(bytes[i])) i++;
+            int attributeNameEnd = i;
+
+            while (i < end && isWhitespace(bytes[i])) i++;
+            if (i >= end || bytes[i] != '=') throw error("Expected '=' after attribute name", i);
+            i++;
+
+            while (i < end && isWhitespace(bytes[i])) i++;
+            if (i >= end || (bytes[i] != '"' && bytes[i] != '\'')) throw error("Expected quoted attribute value", i);
+
+            byte quote = bytes[i++];
+            int valueStart = i;
+            boolean escaped = false;
+
+            while (i < end && bytes[i] != quote) {
+                if (bytes[i] == '&' || (bytes[i] >= 0 && bytes[i] < ' ')) escaped = true;
+                i++;
+            }
+            if (i >= end) throw error("Unterminated attribute value", valueStart);
+
+            int attribute = attribute(nameStart, attributeNameEnd);
+            if (attribute != -1) {
+                attributeStarts[attribute] = valueStart;
+                attributeEnds[attribute] = i;
+                attributeEscaped[attribute] = escaped;
+            }
+
+            i++;
+        }
+    }
+
+    private int attribute(int start, int end) {
+        int length = end - start;
+
+        for (int attribute = 0; attribute < ATTRIBUTE_NAMES.length; attribute++) {
+            byte[] name = ATTRIBUTE_NAMES[attribute];
+            if (name.length == length && matches(start, name)) return attribute;
+        }
+
+        return -1;
+    }
+
+    // Adds the attribute parsed as a long, or as text the builder parses if the fast way does not apply.
+    private void addLong(ElementBatch batch, byte type, String key, int attribute) throws XMLStreamException {
+        int start = attributeStarts[attribute];
+
+        if (start == -1 || attributeEscaped[attribute]) {
+            batch.addField(type, key, value(attribute));
+        } else {
+            batch.addLongField(type, key, NumberParser.parseLong(bytes, start, attributeEnds[attribute]));
+        }
+    }
+
+    private void addFloat(ElementBatch batch, byte type, int attribute) throws XMLStreamException {
+        int start = attributeStarts[attribute];
+
+        if (start == -1 || attributeEscaped[attribute]) {
+            batch.addField(type, null, value(attribute));
+        } else {
+            batch.addFloatField(type, NumberParser.parseFloat(bytes, start, attributeEnds[attribute]));
+        }
+    }
+
+    // The attribute value as StAX reports it, or null if the element does not have it.
+    private String value(int attribute) throws XMLStreamException {
+        int start = attributeStarts[attribute];
+        if (start == -1) return null;
+
+        int end = attributeEnds[attribute];
+        if (!attributeEscaped[attribute]) return strings.get(bytes, start, end);
+
+        return unescape(new String(bytes, start, end - start, StandardCharsets.UTF_8), start);
+    }
+
+    // Resolves character and entity references and turns line breaks and tabs into spaces.
+    private String unescape(String raw, int offset) throws XMLStreamException {
+        StringBuilder builder = new StringBuilder(raw.length());
+
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+
+            if (c == '\r') {
+                if (i + 1 < raw.length() && raw.charAt(i + 1) == '\n') i++;
+                builder.append(' ');
+            } else if (c == '\n' || c == '\t') {
+                builder.append(' ');
+            } else if (c == '&') {
+                int semicolon = raw.indexOf(';', i);
+                if (semicolon == -1) throw unescapeError(raw, offset);
+
+                String name = raw.substring(i + 1, semicolon);
+                i = semicolon;
+
+                switch (name) {
+                    case "lt":
+                        builder.append('<');
+                        break;
+                    case "gt":
+                        builder.append('>');
+                        break;
+                    case "amp":
+                        builder.append('&');
+                        break;
+                    case "quot":
+                        builder.append('"');
+                        break;
+                    case "apos":
+                        builder.append('\'');
+                        break;
+                    default:
+                        builder.appendCodePoint(codePoint(name, raw, offset));
+                }
+            } else {
+                builder.append(c);
+            }
+        }
+
+        return builder.toString();
+    }
+
+    private int codePoint(String reference, String raw, int offset) throws XMLStreamException {
+        try {
+            if (reference.startsWith("#x")) return Integer.parseInt(reference.substring(2), 16);
+            if (reference.startsWith("#")) return Integer.parseInt(reference.substring(1));
+        } catch (NumberFormatException e) {
+            // Reported below.
+        }
+
+        throw unescapeError(raw, offset);
+    }
+
+    private XMLStreamException unescapeError(String raw, int offset) {
+        return error("Invalid reference in attribute value \"" + raw + "\"", offset);
+    }
+
+    private XMLStreamException error(String message, int index) {
+        return new XMLStreamException(message + " at byte " + (bufferOffset + index));
+    }
+
+    // Strings for short values that repeat, like tag keys, member types and common
+    // tag values. Stops taking new entries when half full.
+    private static class StringCache {
+        private static final int CAPACITY = 1 << 14;
+
+        private byte[][] keys = new byte[CAPACITY][];
+        private String[] strings = new String[CAPACITY];
+        private int size;
+
+        String get(byte[] bytes, int start, int end) {
+            int length = end - start;
+            if (length > MAX_CACHED_LENGTH) return new String(bytes, start, length, StandardCharsets.UTF_8);
+
+            int hash = 0;
+            for (int i = start; i < end; i++) hash = 31 * hash + bytes[i];
+
+            int slot = (hash ^ (hash >>> 16)) & (CAPACITY - 1);
+            for (; keys[slot] != null; slot = (slot + 1) & (CAPACITY - 1)) {
+                if (Arrays.equals(keys[slot], 0, keys[slot].length, bytes, start, end)) return strings[slot];
+            }
+
+            String string = new String(bytes, start, length, StandardCharsets.UTF_8);
+
+            if (size < CAPACITY / 2) {
+                keys[slot] = Arrays.copyOfRange(bytes, start, end);
+                strings[slot] = string;
+                size++;
+            }
+
+            return string;
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package bfst20.logic.filehandling;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+// Decodes one bzip2 block: the Huffman coded move-to-front symbols, the inverse
+// Burrows-Wheeler transform and the final run-length step. A block only depends on
+// its own bits, which is what lets Bzip2InputStream decode several at once. Each
+// worker thread keeps one decoder, since the tables take a few megabytes.
+class Bzip2BlockDecoder {
+    private static final int RUN_A = 0;
+    private static final int RUN_B = 1;
+    private static final int GROUP_SIZE = 50;
+    private static final int MAX_GROUPS = 6;
+    private static final int MAX_ALPHA_SIZE = 258;
+    private static final int MAX_CODE_LENGTH = 23;
+    private static final int MAX_SELECTORS = 18002;
+
+    static final int[] CRC_TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i << 24;
+            for (int bit = 0; bit < 8; bit++) crc = (crc & 0x80000000) != 0 ? (crc << 1) ^ 0x04c11db7 : crc << 1;
+
+            CRC_TABLE[i] = crc;
+        }
+    }
+
+    private int[] tt = new int[0];
+    private final int[] counts = new int[256];
+    private final int[] seqToUnseq = new int[256];
+    private final byte[] selectors = new byte[MAX_SELECTORS];
+    private final int[][] limits = new int[MAX_GROUPS][MAX_CODE_LENGTH + 1];
+    private final int[][] bases = new int[MAX_GROUPS][MAX_CODE_LENGTH + 1];
+    private final int[][] perms = new int[MAX_GROUPS][MAX_ALPHA_SIZE];
+    private final int[] minLengths = new int[MAX_GROUPS];
+    private final byte[][] lengths = new byte[MAX_GROUPS][MAX_ALPHA_SIZE];
+
+    // The bits of a block after its magic number. maxBlockSize comes from the stream header.
+    Block decode(byte[] data, long startBit, long endBit, int maxBlockSize) throws IOException {
+        BitReader bits = new BitReader(data, startBit, endBit);
+        if (tt.length < maxBlockSize) tt = new int[maxBlockSize];
+
+        int expectedCrc = bits.read(32);
+        if (bits.read(1) != 0) throw new IOException("Randomised bzip2 blocks are not supported");
+
+        int origPtr = bits.read(24);
+        int length = readSymbols(bits, maxBlockSize);
+        if (origPtr < 0 || origPtr >= length) throw new IOException("Corrupt bzip2 block: bad origin pointer");
+
+        byte[] output = inverseTransform(length, origPtr);
+        int crc = crc(output, output.length);
+        if (crc != expectedCrc) throw new IOException("Corrupt bzip2 block: CRC mismatch");
+
+        return new Block(output, crc);
+    }
+
+    // Huffman and move-to-front decoding into tt. Returns the length of the block.
+    private int readSymbols(BitReader bits, int maxBlockSize) throws IOException {
+        int used = bits.read(16);
+        int symbols = 0;
+
+        for (int i = 0; i < 16; i++) {
+            if ((used & (0x8000 >>> i)) == 0) continue;
+
+            int usedBytes = bits.read(16);
+            for (int j = 0; j < 16; j++) if ((usedBytes & (0x8000 >>> j)) != 0) seqToUnseq[symbols++] = i * 16 + j;
+        }
+        if (symbols == 0) throw new IOException("Corrupt bzip2 block: no symbols");
+
+        int alphaSize = symbols + 2;
+        int groups = bits.read(3);
+        int selectorCount = bits.read(15);
+        if (groups < 2 || groups > MAX_GROUPS || selectorCount < 1) throw new IOException("Corrupt bzip2 block: bad tables");
+
+        readSelectors(bits, groups, selectorCount);
+        readCodeLengths(bits, groups, alphaSize);
+
+        int[] mtf = new int[256];
+        for (int i = 0; i < 256; i++) mtf[i] = i;
+        Arrays.fill(counts, 0);
+
+        int endOfBlock = symbols + 1;
+        int group = -1;
+        int groupLeft = 0;
+        int length = 0;
+        int runLength = -1;
+        int runWeight = 1;
+
+        while (true) {
+            if (groupLeft == 0) {
+                if (++group >= Math.min(selectorCount, MAX_SELECTORS)) throw new IOException("Corrupt bzip2 block: too many symbols");
+                groupLeft = GROUP_SIZE;
+            }
+            groupLeft--;
+
+            int symbol = readSymbol(bits, selectors[group]);
+
+            if (symbol == RUN_A || symbol == RUN_B) {
+                runLength += (symbol + 1) * runWeight;
+                runWeight <<= 1;
+                if (runLength >= maxBlockSize) throw new IOException("Corrupt bzip2 block: run too long");
+                continue;
+            }
+
+            if (runLength >= 0) {
+                int value = seqToUnseq[mtf[0]];
+                if (length + runLength + 1 > maxBlockSize) throw new IOException("Corrupt bzip2 block: block too long");
+
+                counts[value] += runLength + 1;
+                Arrays.fill(tt, length, length + runLength + 1, value);
+                length += runLength + 1;
+                runLength = -1;
+                runWeight = 1;
+            }
+
+            if (symbol == endOfBlock) return length;
+            if (length >= maxBlockSize) throw new IOException("Corrupt bzip2 block: block too long");
+
+            int index = symbol - 1;
+            int front = mtf[index];
+            System.arraycopy(mtf, 0, mtf, 1, index);
+            mtf[0] = front;
+
+            int value = seqToUnseq[front];
+            counts[value]++;
+            tt[length++] = value;
+        }
+    }
+
+    private void readSelectors(BitReader bits, int groups, int selectorCount) throws IOException {
+        byte[] order = new byte[MAX_GROUPS];
+        for (int i = 0; i < groups; i++) order[i] = (byte) i;
+
+        for (int i = 0; i < selectorCount; i++) {
+            int index = 0;
+            while (bits.read(1) != 0) {
+                if (++index >= groups) throw new IOException("Corrupt bzip2 block: bad selector");
+            }
+
+            // Selectors past the limit are read and ignored, like bzip2 1.0.8 does.
+            if (i >= MAX_SELECTORS) continue;
+
+            byte selector = order[index];
+            System.arraycopy(order, 0, order, 1, index);
+            order[0] = selector;
+            selectors[i] = selector;
+        }
+    }
+
+    private void readCodeLengths(BitReader bits, int groups, int alphaSize) throws IOException {
+        for (int group = 0; group < groups; group++) {
+            int length = bits.read(5);
+            byte[] groupLengths = lengths[group];
+
+            for (int symbol = 0; symbol < alphaSize; symbol++) {
+                while (true) {
+                    if (length < 1 || length > 20) throw new IOException("Corrupt bzip2 block: bad code length");
+                    if (bits.read(1) == 0) break;
+
+                    length += bits.read(1) == 0 ? 1 : -1;
+                }
+                groupLengths[symbol] = (byte) length;
+            }
+
+            createDecodeTable(group, alphaSize);
+        }
+    }
+
+    // Canonical Huffman tables as in bzip2: codes of each length are consecutive numbers.
+    private void createDecodeTable(int group, int alphaSize) {
+        byte[] groupLengths = lengths[group];
+        int[] limit = limits[group];
+        int[] base = bases[group];
+        int[] perm = perms[group];
+
+        int minLength = 32, maxLength = 0;
+        for (int i = 0; i < alphaSize; i++) {
+            minLength = Math.min(minLength, groupLengths[i]);
+            maxLength = Math.max(maxLength, groupLengths[i]);
+        }
+
+        int next = 0;
+        for (int length = minLength; length <= maxLength; length++) {
+            for (int symbol = 0; symbol < alphaSize; symbol++) if (groupLengths[symbol] == length) perm[next++] = symbol;
+        }
+
+        Arrays.fill(base, 0);
+        for (int i = 0; i < alphaSize; i++) base[groupLengths[i] + 1]++;
+        for (int i = 1; i < base.length; i++) base[i] += base[i - 1];
+
+        Arrays.fill(limit, -1);
+        int code = 0;
+        for (int length = minLength; length <= maxLength; length++) {
+            code += base[length + 1] - base[length];
+            limit[length] = code - 1;
+            code <<= 1;
+        }
+        for (int length = minLength + 1; length <= maxLength; length++) {
+            base[length] = ((limit[length - 1] + 1) << 1) - base[length];
+        }
+
+        minLengths[group] = minLength;
+    }
+
+    private int readSymbol(BitReader bits, int group) throws IOException {
+        int[] limit = limits[group];
+        int length = minLengths[group];
+        int code = bits.read(length);
+
+        while (code > limit[length]) {
+            if (++length > 20) throw new IOException("Corrupt bzip2 block: bad Huffman code");
+            code = (code << 1) | bits.read(1);
+        }
+
+        int index = code - bases[group][length];
+        if (index < 0 || index >= MAX_ALPHA_SIZE) throw new IOException("Corrupt bzip2 block: bad Huffman code");
+
+        return perms[group][index];
+    }
+
+    // Undoes the Burrows-Wheeler transform and the initial run-length encoding.
+    private byte[] inverseTransform(int length, int origPtr) {
+        int[] starts = new int[256];
+        for (int i = 1; i < 256; i++) starts[i] = starts[i - 1] + counts[i - 1];
+
+        for (int i = 0; i < length; i++) {
+            int value = tt[i] & 0xff;
+            tt[starts[value]++] |= i << 8;
+        }
+
+        byte[] output = new byte[length + (length >> 2) + 16];
+        int size = 0;
+        int position = tt[origPtr] >>> 8;
+        int last = -1;
+        int repeats = 0;
+
+        for (int i = 0; i < length; i++) {
+            position = tt[position];
+            int value = position & 0xff;
+            position >>>= 8;
+
+            // Four equal bytes are followed by the number of further copies.
+            if (repeats == 4) {
+                if (size + value > output.length) output = Arrays.copyOf(output, Math.max(output.length * 2, size + value));
+
+                Arrays.fill(output, size, size + value, (byte) last);
+                size += value;
+                repeats = 0;
+                last = -1;
+                continue;
+            }
+
+            if (value == last) repeats++;
+
+            else {
+                last = value;
+                repeats = 1;
+            }
+
+            if (size == output.length) output = Arrays.copyOf(output, output.length * 2);
+            output[size++] = (byte) value;
+        }
+
+        return Arrays.copyOf(output, size);
+    }
+
+    static int crc(byte[] data, int length) {
+        int crc = 0xffffffff;
+        for (int i = 0; i < length; i++) crc = (crc << 8) ^ CRC_TABLE[((crc >>> 24) ^ data[i]) & 0xff];
+
+        return ~crc;
+    }
+
+    static class Block {
+        final byte[] data;
+        final int crc;
+
+        Block(byte[] data, int crc) {
+            this.data = data;
+            this.crc = crc;
+        }
+    }
+
+    // Reads bits most significant first from a range of the array, through a 64-bit buffer.
+    static class BitReader {
+        private final byte[] data;
+        private int nextByte;
+        private long remaining;
+        private long buffer;
+        private int bufferBits;
+
+        BitReader(byte[] data, long startBit, long endBit) {
+            this.data = data;
+            nextByte = (int) (startBit >>> 3);
+            remaining = endBit - startBit;
+
+            int skip = (int) (startBit & 7);
+            if (skip != 0 && remaining > 0) {
+                buffer = data[nextByte++] & (0xff >>> skip);
+                bufferBits = 8 - skip;
+            }
+        }
+
+        int read(int count) throws IOException {
+            if (count > remaining) throw new IOException("Truncated bzip2 block");
+            remaining -= count;
+
+            while (bufferBits < count) {
+                buffer = (buffer << 8) | (data[nextByte++] & 0xff);
+                bufferBits += 8;
+            }
+
+            bufferBits -= count;
+            return (int) ((buffer >>> bufferBits) & ((1L << count) - 1));
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package bfst20.logic.filehandling;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.*;
+
+// Decompresses bzip2 with several threads. The blocks of a bzip2 stream are coded
+// independently and start with a 48-bit magic number at any bit offset, so a reader
+// thread finds the block boundaries and hands each block to a pool of decoders.
+// Decoded blocks are read back in order, and at most readAhead of them are waiting,
+// which keeps decompression ahead of the parser without holding the whole file.
+// Concatenated streams, as written by pbzip2, are read one after the other.
+//
+// Data that happens to contain the magic number would split a block in two; the
+// block CRCs catch that, it is as rare as a 48-bit collision.
+public class Bzip2InputStream extends InputStream {
+    private static final long BLOCK_MAGIC = 0x314159265359L;
+    private static final long END_MAGIC = 0x177245385090L;
+    private static final long MAGIC_MASK = 0xffffffffffffL;
+
+    // Marks the end of the input in the queue.
+    private static final Future<Bzip2BlockDecoder.Block> END = CompletableFuture.completedFuture(null);
+
+    private final InputStream in;
+    private final ExecutorService workers;
+    private final BlockingQueue<Future<Bzip2BlockDecoder.Block>> decoded;
+    private final Thread readerThread;
+    private volatile Throwable readFailure;
+
+    private byte[] current;
+    private int position;
+    private int combinedCrc;
+    private boolean finished;
+
+    public Bzip2InputStream(InputStream in) {
+        this(in, Integer.getInteger("bfst20.bzip2.threads", Math.max(1, Runtime.getRuntime().availableProcessors() - 1)));
+    }
+
+    public Bzip2InputStream(InputStream in, int threadCount) {
+        this(in, threadCount, threadCount * 2 + 1);
+    }
+
+    // readAhead is the number of blocks, decoded or being decoded, the reader may be ahead of the caller.
+    public Bzip2InputStream(InputStream in, int threadCount, int readAhead) {
+        this.in = in;
+
+        ThreadLocal<Bzip2BlockDecoder> decoders = ThreadLocal.withInitial(Bzip2BlockDecoder::new);
+        workers = Executors.newFixedThreadPool(Math.max(1, threadCount), runnable -> {
+            Thread thread = new Thread(runnable, "bzip2-decoder");
+            thread.setDaemon(true);
+            return thread;
+        });
+        decoded = new ArrayBlockingQueue<>(Math.max(1, readAhead));
+
+        readerThread = new Thread(() -> {
+            try {
+                new BlockScanner(decoders).scan();
+            } catch (InterruptedException e) {
+                return;
+            } catch (Throwable e) {
+                readFailure = e;
+            }
+
+            try {
+                decoded.put(END);
+            } catch (InterruptedException e) {
+                // The stream has been closed.
+            }
+        }, "bzip2-reader");
+
+        readerThread.setDaemon(true);
+        readerThread.start();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) return -1;
+
+        return current[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) return 0;
+        if (!fill()) return -1;
+
+        int count = Math.min(length, current.length - position);
+        System.arraycopy(current, position, buffer, offset, count);
+        position += count;
+
+        return count;
+    }
+
+    // Takes the next decoded block if the current one is used up. Returns false at the end.
+    private boolean fill() throws IOException {
+        while (current == null || position == current.length) {
+            if (finished) return false;
+
+            Bzip2BlockDecoder.Block block = take();
+
+            if (block == null) {
+                finished = true;
+                if (readFailure != null) throw failure(readFailure);
+
+                return false;
+            }
+
+            // End of one stream: its CRC combines those of its blocks.
+            if (block.data == null) {
+                if (block.crc != combinedCrc) throw new IOException("Corrupt bzip2 stream: CRC mismatch");
+
+                combinedCrc = 0;
+                continue;
+            }
+
+            combinedCrc = ((combinedCrc << 1) | (combinedCrc >>> 31)) ^ block.crc;
+            current = block.data;
+            position = 0;
+        }
+
+        return true;
+    }
+
+    private Bzip2BlockDecoder.Block take() throws IOException {
+        try {
+            return decoded.take().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Decompression was interrupted");
+        } catch (ExecutionException e) {
+            finished = true;
+            throw failure(e.getCause());
+        }
+    }
+
+    private static IOException failure(Throwable throwable) {
+        if (throwable instanceof IOException) return (IOException) throwable;
+
+        return new IOException(throwable);
+    }
+
+    @Override
+    public int available() {
+        return current == null ? 0 : current.length - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        finished = true;
+        readerThread.interrupt();
+        workers.shutdownNow();
+        in.close();
+    }
+
+    // Runs on the reader thread: looks for the magic numbers at every bit offset and
+    // submits the bits between them. Bytes are kept from the start of the open block.
+    private class BlockScanner {
+        private final ThreadLocal<Bzip2BlockDecoder> decoders;
+        private final byte[] input = new byte[1 << 16];
+
+        private byte[] pending = new byte[1 << 20];
+        private long pendingStart;
+        private int pendingSize;
+
+        private boolean inStream;
+        private boolean blockOpen;
+        private long blockStart;
+        private long crcStart = -1;
+        private int maxBlockSize;
+        private int streams;
+
+        BlockScanner(ThreadLocal<Bzip2BlockDecoder> decoders) {
+            this.decoders = decoders;
+        }
+
+        void scan() throws IOException, InterruptedException {
+            long window = 0;
+            long bytes = 0;
+            int read;
+
+            while ((read = in.read(input)) != -1) {
+                if (Thread.interrupted()) throw new InterruptedException();
+
+                append(input, read);
+
+                for (int i = 0; i < read; i++) {
+                    window = (window << 8) | (input[i] & 0xff);
+                    bytes++;
+
+                    // The magic number could end at any of the 8 bits of this byte.
+                    for (int shift = 7; shift >= 0; shift--) {
+                        long candidate = (window >>> shift) & MAGIC_MASK;
+                        if (candidate != BLOCK_MAGIC && candidate != END_MAGIC) continue;
+
+                        long start = bytes * 8 - shift - 48;
+                        if (start >= 0) found(start, candidate == BLOCK_MAGIC);
+                    }
+                }
+            }
+
+            if (blockOpen || inStream) throw new IOException("Truncated bzip2 stream");
+            finishStream(bytes * 8);
+            if (streams == 0) throw new IOException("Not a bzip2 stream");
+        }
+
+        private void found(long start, boolean block) throws IOException, InterruptedException {
+            finishStream(start);
+            if (blockOpen) submit(blockStart, start);
+
+            if (!inStream) readHeader(start);
+
+            if (block) {
+                blockOpen = true;
+                blockStart = start + 48;
+            } else {
+                blockOpen = false;
+                inStream = false;
+                crcStart = start + 48;
+                streams++;
+            }
+
+            discard((block ? blockStart : crcStart) >>> 3);
+        }
+
+        // A stream starts with "BZh" and the block size in 100k, right before the first magic number.
+        private void readHeader(long start) throws IOException {
+            long headerStart = (start >>> 3) - 4 - pendingStart;
+
+            if ((start & 7) != 0 || headerStart < 0 || pending[(int) headerStart] != 'B' || pending[(int) headerStart + 1] != 'Z'
+                    || pending[(int) headerStart + 2] != 'h' || pending[(int) headerStart + 3] < '1'
+                    || pending[(int) headerStart + 3] > '9') {
+                throw new IOException("Not a bzip2 stream");
+            }
+
+            maxBlockSize = (pending[(int) headerStart + 3] - '0') * 100_000;
+            inStream = true;
+        }
+
+        // Queues the CRC of the stream that ended before this position, once its bits have been read.
+        private void finishStream(long end) throws IOException, InterruptedException {
+            if (crcStart < 0) return;
+            if (end < crcStart + 32) throw new IOException("Truncated bzip2 stream");
+
+            long offset = crcStart - pendingStart * 8;
+            int crc = new Bzip2BlockDecoder.BitReader(pending, offset, pendingSize * 8L).read(32);
+            crcStart = -1;
+
+            decoded.put(CompletableFuture.completedFuture(new Bzip2BlockDecoder.Block(null, crc)));
+        }
+
+        private void submit(long startBit, long endBit) throws InterruptedException {
+            long firstByte = startBit >>> 3;
+            int from = (int) (firstByte - pendingStart);
+            int to = (int) (((endBit + 7) >>> 3) - pendingStart);
+
+            byte[] data = Arrays.copyOfRange(pending, from, to);
+            long start = startBit - firstByte * 8;
+            long end = endBit - firstByte * 8;
+            int blockSize = maxBlockSize;
+
+            decoded.put(workers.submit(() -> decoders.get().decode(data, start, end, blockSize)));
+        }
+
+        private void append(byte[] bytes, int length) {
+            if (pendingSize + length > pending.length) {
+                pending = Arrays.copyOf(pending, Math.max(pending.length * 2, pendingSize + length));
+            }
+
+            System.arraycopy(bytes, 0, pending, pendingSize, length);
+            pendingSize += length;
+        }
+
+        // Drops the bytes before the given position in the input.
+        private void discard(long keepFrom) {
+            int count = (int) Math.min(pendingSize, keepFrom - pendingStart);
+            if (count <= 0) return;
+
+            System.arraycopy(pending, count, pending, 0, pendingSize - count);
+            pendingSize -= count;
+            pendingStart += count;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package bfst20.logic.filehandling;
+
+import bfst20.logic.entities.Address;
+import bfst20.logic.entities.Node;
+import bfst20.logic.entities.Way;
+
+import java.util.*;
+
+// The contents of an osmChange file, reduced to the final state of each element:
+// create and modify both replace the element, and a later change of the same
+// element wins over an earlier one. Relations are only counted.
+public class ChangeSet {
+    private Map<Long, Node> nodes;
+    private Map<Long, Address> addresses;
+    private Set<Long> deletedNodes;
+
+    private Map<Long, Way> ways;
+    private Set<Long> highways;
+    private Set<Long> deletedWays;
+
+    private int relationChanges;
+
+    ChangeSet() {
+        nodes = new LinkedHashMap<>();
+        addresses = new HashMap<>();
+        deletedNodes = new HashSet<>();
+        ways = new LinkedHashMap<>();
+        highways = new HashSet<>();
+        deletedWays = new HashSet<>();
+    }
+
+    void putNode(Node node, Address address) {
+        deletedNodes.remove(node.getId());
+        nodes.put(node.getId(), node);
+
+        if (address != null) addresses.put(node.getId(), address);
+
+        else addresses.remove(node.getId());
+    }
+
+    void deleteNode(long id) {
+        nodes.remove(id);
+        addresses.remove(id);
+        deletedNodes.add(id);
+    }
+
+    void putWay(Way way, boolean highway) {
+        deletedWays.remove(way.getId());
+        ways.put(way.getId(), way);
+
+        if (highway) highways.add(way.getId());
+
+        else highways.remove(way.getId());
+    }
+
+    void deleteWay(long id) {
+        ways.remove(id);
+        highways.remove(id);
+        deletedWays.add(id);
+    }
+
+    void addRelationChange() {
+        relationChanges++;
+    }
+
+    // Created and modified nodes in the coordinates of the stores.
+    public Collection<Node> getNodes() {
+        return nodes.values();
+    }
+
+    // The address of a created or modified node, null if it has none.
+    public Address getAddress(long nodeId) {
+        return addresses.get(nodeId);
+    }
+
+    public Set<Long> getDeletedNodes() {
+        return deletedNodes;
+    }
+
+    // Created and modified ways. Highways have not had their nodes resolved.
+    public Collection<Way> getWays() {
+        return ways.values();
+    }
+
+    public boolean isHighway(long wayId) {
+        return highways.contains(wayId);
+    }
+
+    public Set<Long> getDeletedWays() {
+        return deletedWays;
+    }
+
+    public int getRelationChanges() {
+        return relationChanges;
+    }
+
+    public int size() {
+        return nodes.size() + deletedNodes.size() + ways.size() + deletedWays.size() + relationChanges;
+    }
+}
@@ -0,0 +1,244 @@
+package bfst20.logic.filehandling;
+
+import bfst20.logic.entities.Address;
+
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+
+// A batch of raw OSM records in file order. The reader fills it, a worker turns
+// the raw fields into entities and the committer writes them into the stores.
+// Batches are recycled through their pool, so the arrays only grow.
+class ElementBatch {
+    static final byte BOUNDS = 0;
+    static final byte NODE = 1;
+    static final byte WAY = 2;
+    static final byte RELATION = 3;
+
+    static final byte ID = 0;
+    static final byte LAT = 1;
+    static final byte LON = 2;
+    static final byte MIN_LAT = 3;
+    static final byte MAX_LAT = 4;
+    static final byte MIN_LON = 5;
+    static final byte MAX_LON = 6;
+    static final byte ND = 7;
+    static final byte MEMBER = 8;
+    static final byte TAG = 9;
+
+    // Section of an osmChange file a record is in, NONE in plain OSM files.
+    static final byte NONE = 0;
+    static final byte CREATE = 1;
+    static final byte MODIFY = 2;
+    static final byte DELETE = 3;
+
+    private byte[] kinds;
+    private byte[] actions;
+    private int[] fieldStarts;
+    private int size;
+
+    private byte[] fieldTypes;
+    private String[] fieldKeys;
+    private String[] fieldValues;
+    // Values the reader already parsed, as longs or float bits.
+    private long[] fieldNumbers;
+    private boolean[] numericFields;
+    private int fieldCount;
+
+    // The first tag key of the whole document and the record it appeared in.
+    private String firstTagKey;
+    private int firstTagRecord;
+
+    private Object[] elements;
+    private Address[] addresses;
+    private boolean[] resolveNodes;
+
+    private BlockingQueue<ElementBatch> pool;
+
+    ElementBatch(int capacity) {
+        this(capacity, null);
+    }
+
+    ElementBatch(int capacity, BlockingQueue<ElementBatch> pool) {
+        this.pool = pool;
+
+        kinds = new byte[capacity];
+        actions = new byte[capacity];
+        fieldStarts = new int[capacity];
+        elements = new Object[capacity];
+        addresses = new Address[capacity];
+        resolveNodes = new boolean[capacity];
+
+        fieldTypes = new byte[capacity * 4];
+        fieldKeys = new String[capacity * 4];
+        fieldValues = new String[capacity * 4];
+        fieldNumbers = new long[capacity * 4];
+        numericFields = new boolean[capacity * 4];
+    }
+
+    int capacity() {
+        return kinds.length;
+    }
+
+    boolean isFull() {
+        return size == kinds.length;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void startRecord(byte kind) {
+        startRecord(kind, NONE);
+    }
+
+    void startRecord(byte kind, byte action) {
+        kinds[size] = kind;
+        actions[size] = action;
+        fieldStarts[size] = fieldCount;
+        size++;
+    }
+
+    // Adds a record that was decoded straight into an entity, growing the batch if needed.
+    void addElement(byte kind, Object element, Address address, boolean resolveNodes) {
+        if (size == kinds.length) growRecords();
+
+        kinds[size] = kind;
+        actions[size] = NONE;
+        fieldStarts[size] = fieldCount;
+        setElement(size, element, address, resolveNodes);
+        size++;
+    }
+
+    private void growRecords() {
+        int capacity = kinds.length * 2;
+
+        kinds = Arrays.copyOf(kinds, capacity);
+        actions = Arrays.copyOf(actions, capacity);
+        fieldStarts = Arrays.copyOf(fieldStarts, capacity);
+        elements = Arrays.copyOf(elements, capacity);
+        addresses = Arrays.copyOf(addresses, capacity);
+        resolveNodes = Arrays.copyOf(resolveNodes, capacity);
+    }
+
+    void addField(byte type, String key, String value) {
+        if (fieldCount == fieldTypes.length) growFields();
+
+        fieldTypes[fieldCount] = type;
+        fieldKeys[fieldCount] = key;
+        fieldValues[fieldCount] = value;
+        numericFields[fieldCount] = false;
+        fieldCount++;
+    }
+
+    void addLongField(byte type, String key, long value) {
+        if (fieldCount == fieldTypes.length) growFields();
+
+        fieldTypes[fieldCount] = type;
+        fieldKeys[fieldCount] = key;
+        fieldNumbers[fieldCount] = value;
+        numericFields[fieldCount] = true;
+        fieldCount++;
+    }
+
+    void addFloatField(byte type, float value) {
+        addLongField(type, null, Float.floatToRawIntBits(value));
+    }
+
+    private void growFields() {
+        int capacity = fieldTypes.length * 2;
+
+        fieldTypes = Arrays.copyOf(fieldTypes, capacity);
+        fieldKeys = Arrays.copyOf(fieldKeys, capacity);
+        fieldValues = Arrays.copyOf(fieldValues, capacity);
+        fieldNumbers = Arrays.copyOf(fieldNumbers, capacity);
+        numericFields = Arrays.copyOf(numericFields, capacity);
+    }
+
+    // Kind of the record currently being read, or -1 if the batch is empty.
+    byte lastKind() {
+        return size == 0 ? -1 : kinds[size - 1];
+    }
+
+    byte getKind(int record) {
+        return kinds[record];
+    }
+
+    byte getAction(int record) {
+        return actions[record];
+    }
+
+    int getFieldStart(int record) {
+        return fieldStarts[record];
+    }
+
+    int getFieldEnd(int record) {
+        return record + 1 < size ? fieldStarts[record + 1] : fieldCount;
+    }
+
+    byte getFieldType(int field) {
+        return fieldTypes[field];
+    }
+
+    String getFieldKey(int field) {
+        return fieldKeys[field];
+    }
+
+    String getFieldValue(int field) {
+        return fieldValues[field];
+    }
+
+    long getLongField(int field) {
+        return numericFields[field] ? fieldNumbers[field] : NumberParser.parseLong(fieldValues[field]);
+    }
+
+    float getFloatField(int field) {
+        return numericFields[field] ? Float.intBitsToFloat((int) fieldNumbers[field]) : NumberParser.parseFloat(fieldValues[field]);
+    }
+
+    void setFirstTag(String key, int record) {
+        firstTagKey = key;
+        firstTagRecord = record;
+    }
+
+    // The key of the first tag in the document, as it was known when the record ended.
+    String getFirstTagKey(int record) {
+        return record >= firstTagRecord ? firstTagKey : null;
+    }
+
+    void setElement(int record, Object element, Address address, boolean resolveNodes) {
+        elements[record] = element;
+        addresses[record] = address;
+        this.resolveNodes[record] = resolveNodes;
+    }
+
+    Object getElement(int record) {
+        return elements[record];
+    }
+
+    Address getAddress(int record) {
+        return addresses[record];
+    }
+
+    boolean shouldResolveNodes(int record) {
+        return resolveNodes[record];
+    }
+
+    void clear() {
+        Arrays.fill(elements, 0, size, null);
+        Arrays.fill(addresses, 0, size, null);
+        Arrays.fill(fieldKeys, 0, fieldCount, null);
+        Arrays.fill(fieldValues, 0, fieldCount, null);
+
+        size = 0;
+        fieldCount = 0;
+        firstTagKey = null;
+        firstTagRecord = 0;
+    }
+
+    // Clears the batch and hands it back to the reader that owns it.
+    void release() {
+        clear();
+
+        if (pool != null) pool.add(this);
+    }
+}
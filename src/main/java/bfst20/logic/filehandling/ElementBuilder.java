@@ -0,0 +1,132 @@
+package bfst20.logic.filehandling;
+
+import bfst20.logic.entities.*;
+import bfst20.logic.misc.OSMTypeTable;
+
+import static bfst20.logic.filehandling.ElementBatch.*;
+
+// Worker stage for XML input: turns the raw fields of a batch into entities.
+// Does not touch the stores, so several builders can run at once.
+class ElementBuilder {
+    private ElementTags tags;
+
+    ElementBuilder(ValueDictionary dictionary, OSMTypeTable typeTable) {
+        tags = new ElementTags(dictionary, typeTable);
+    }
+
+    void build(ElementBatch batch) {
+        for (int record = 0; record < batch.size(); record++) {
+            switch (batch.getKind(record)) {
+                case BOUNDS:
+                    batch.setElement(record, buildBounds(batch, record), null, false);
+                    break;
+                case NODE:
+                    buildNode(batch, record);
+                    break;
+                case WAY:
+                    buildWay(batch, record);
+                    break;
+                case RELATION:
+                    buildRelation(batch, record);
+                    break;
+            }
+        }
+    }
+
+    private Bounds buildBounds(ElementBatch batch, int record) {
+        float minLat = 0, maxLon = 0, maxLat = 0, minLon = 0;
+
+        for (int field = batch.getFieldStart(record); field < batch.getFieldEnd(record); field++) {
+            float value = batch.getFloatField(field);
+
+            switch (batch.getFieldType(field)) {
+                case MAX_LAT:
+                    minLat = -value;
+                    break;
+                case MAX_LON:
+                    maxLon = 0.56f * value;
+                    break;
+                case MIN_LAT:
+                    maxLat = -value;
+                    break;
+                case MIN_LON:
+                    minLon = 0.56f * value;
+                    break;
+            }
+        }
+
+        return new Bounds(maxLat, minLat, maxLon, minLon);
+    }
+
+    private void buildNode(ElementBatch batch, int record) {
+        long id = 0;
+        float lat = 0;
+        float lon = 0;
+        tags.clear();
+
+        for (int field = batch.getFieldStart(record); field < batch.getFieldEnd(record); field++) {
+            switch (batch.getFieldType(field)) {
+                case ID:
+                    id = batch.getLongField(field);
+                    break;
+                case LAT:
+                    lat = -batch.getFloatField(field);
+                    break;
+                case LON:
+                    lon = 0.56f * batch.getFloatField(field);
+                    break;
+                case TAG:
+                    tags.put(batch.getFieldKey(field), batch.getFieldValue(field));
+                    break;
+            }
+        }
+
+        batch.setElement(record, new Node(id, lat, lon), tags.toAddress(lon, lat), false);
+    }
+
+    private void buildWay(ElementBatch batch, int record) {
+        Way way = null;
+        tags.clear();
+
+        for (int field = batch.getFieldStart(record); field < batch.getFieldEnd(record); field++) {
+            switch (batch.getFieldType(field)) {
+                case ID:
+                    way = new Way(batch.getLongField(field));
+                    break;
+                case ND:
+                    way.addNodeId(batch.getLongField(field));
+                    break;
+                case TAG:
+                    tags.put(batch.getFieldKey(field), batch.getFieldValue(field));
+                    break;
+            }
+        }
+
+        way.trimNodeIds();
+        boolean resolveNodes = tags.classify(way, batch.getFirstTagKey(record));
+        batch.setElement(record, way, null, resolveNodes);
+    }
+
+    private void buildRelation(ElementBatch batch, int record) {
+        Relation relation = null;
+        tags.clear();
+
+        for (int field = batch.getFieldStart(record); field < batch.getFieldEnd(record); field++) {
+            switch (batch.getFieldType(field)) {
+                case ID:
+                    relation = new Relation(batch.getLongField(field));
+                    break;
+                case MEMBER:
+                    relation.addMember(batch.getLongField(field), batch.getFieldKey(field));
+                    break;
+                case TAG:
+                    tags.put(batch.getFieldKey(field), batch.getFieldValue(field));
+                    break;
+            }
+        }
+
+        relation.trimMembers();
+        tags.classify(relation, batch.getFirstTagKey(record));
+        batch.setElement(record, relation, null, false);
+    }
+}
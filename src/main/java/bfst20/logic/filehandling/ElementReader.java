@@ -0,0 +1,14 @@
+package bfst20.logic.filehandling;
+
+import java.util.concurrent.Callable;
+
+// Reader stage of the parser. Runs on a single thread and splits the input into
+// independent pieces of work that the worker pool turns into finished batches.
+interface ElementReader {
+
+    // Returns the work for the next piece of input, or null at the end of the input.
+    Callable<ElementBatch> next() throws Exception;
+
+    // The key of the first tag in the input so far, or null if there was none.
+    String getFirstTagKey();
+}
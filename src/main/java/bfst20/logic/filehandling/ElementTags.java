@@ -0,0 +1,228 @@
+package bfst20.logic.filehandling;
+
+import bfst20.logic.entities.Address;
+import bfst20.logic.entities.OSMElement;
+import bfst20.logic.entities.Way;
+import bfst20.logic.misc.OSMType;
+import bfst20.logic.misc.OSMTypeTable;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// The tags of the element being built, and the rules that turn them into an
+// address or an OSMType. Shared by the XML and PBF decoders. Only the keys the
+// rules read are kept, in a buffer indexed by key code that is reused for every
+// element. Values that end up in an entity are shared through the dictionary.
+// The type comes from the OSMTypeTable; keys of the table that are not listed
+// here get the codes after the fixed ones.
+class ElementTags {
+    static final int NONE = -1;
+    static final int HIGHWAY = 0;
+    static final int NAME = 1;
+    static final int ADDR_CITY = 2;
+    static final int ADDR_HOUSENUMBER = 3;
+    static final int ADDR_POSTCODE = 4;
+    static final int ADDR_STREET = 5;
+    static final int MAXSPEED = 6;
+    static final int ONEWAY = 7;
+    static final int LANDUSE = 8;
+    static final int NATURAL = 9;
+    static final int BUILDING = 10;
+    static final int TYPE = 11;
+    static final int ROUTE = 12;
+    private static final int FIXED_KEY_COUNT = 13;
+    private static final int MAX_KEY_COUNT = 32;
+
+    private ValueDictionary dictionary;
+    private OSMTypeTable typeTable;
+    private Map<String, Integer> tableKeyCodes;
+    // Code of each key of the type table, in the order they are tried.
+    private int[] decidingCodes;
+
+    private String[] values;
+    // Bit per key code. A tag may be present with a null value.
+    private int present;
+
+    ElementTags(ValueDictionary dictionary, OSMTypeTable typeTable) {
+        this.dictionary = dictionary;
+        this.typeTable = typeTable;
+
+        tableKeyCodes = new HashMap<>();
+        decidingCodes = new int[typeTable.getKeys().size()];
+
+        for (int i = 0; i < decidingCodes.length; i++) {
+            String key = typeTable.getKeys().get(i);
+            int code = fixedCode(key);
+
+            if (code == NONE) {
+                code = FIXED_KEY_COUNT + tableKeyCodes.size();
+                if (code == MAX_KEY_COUNT) throw new IllegalArgumentException("Too many keys in the style file");
+
+                tableKeyCodes.put(key, code);
+            }
+
+            decidingCodes[i] = code;
+        }
+
+        values = new String[FIXED_KEY_COUNT + tableKeyCodes.size()];
+    }
+
+    int code(String key) {
+        int code = fixedCode(key);
+        if (code != NONE || tableKeyCodes.isEmpty()) return code;
+
+        return tableKeyCodes.getOrDefault(key, NONE);
+    }
+
+    private static int fixedCode(String key) {
+        switch (key) {
+            case "highway":
+                return HIGHWAY;
+            case "name":
+                return NAME;
+            case "addr:city":
+                return ADDR_CITY;
+            case "addr:housenumber":
+                return ADDR_HOUSENUMBER;
+            case "addr:postcode":
+                return ADDR_POSTCODE;
+            case "addr:street":
+                return ADDR_STREET;
+            case "maxspeed":
+                return MAXSPEED;
+            case "oneway":
+                return ONEWAY;
+            case "landuse":
+                return LANDUSE;
+            case "natural":
+                return NATURAL;
+            case "building":
+                return BUILDING;
+            case "type":
+                return TYPE;
+            case "route":
+                return ROUTE;
+            default:
+                return NONE;
+        }
+    }
+
+    void clear() {
+        if (present == 0) return;
+
+        Arrays.fill(values, null);
+        present = 0;
+    }
+
+    void put(String key, String value) {
+        put(code(key), value);
+    }
+
+    // A later tag with the same key replaces the earlier one.
+    void put(int code, String value) {
+        if (code == NONE) return;
+
+        values[code] = value;
+        present |= 1 << code;
+    }
+
+    private boolean has(int code) {
+        return (present & (1 << code)) != 0;
+    }
+
+    Address toAddress(float lon, float lat) {
+        String city = values[ADDR_CITY];
+        String housenumber = values[ADDR_HOUSENUMBER];
+        String postcode = values[ADDR_POSTCODE];
+        String street = values[ADDR_STREET];
+
+        if (city == null) return null;
+        if (housenumber == null) return null;
+        if (postcode == null) return null;
+        if (street == null) return null;
+
+        return new Address(
+                dictionary.get(city),
+                dictionary.get(housenumber),
+                dictionary.get(postcode),
+                dictionary.get(street),
+                lat, lon);
+    }
+
+    // Returns true if the element is a highway way whose nodes the committer must resolve.
+    // A tag without a value stops the classification where the old rules threw.
+    boolean classify(OSMElement element, String firstTag) {
+        if (has(ROUTE)) return false;
+
+        if (has(NAME)) {
+            if (values[NAME] == null) return false;
+
+            element.setName(dictionary.get(values[NAME]));
+        }
+
+        if (has(TYPE)) {
+            if (values[TYPE] == null) return false;
+
+            if (values[TYPE].equals("multipolygon")) element.setMultipolygon(true);
+        }
+
+        for (int key = 0; key < decidingCodes.length; key++) {
+            int code = decidingCodes[key];
+            if (!has(code)) continue;
+
+            if (code == HIGHWAY) return element instanceof Way && classifyHighway((Way) element, key);
+
+            setType(element, typeTable.classify(key, values[code]));
+            return false;
+        }
+
+        setType(element, OSMTypeTable.byName(firstTag));
+        return false;
+    }
+
+    // Still a highway when a maxspeed or oneway tag stops the classification, as before.
+    private boolean classifyHighway(Way way, int key) {
+        if (has(MAXSPEED)) {
+            if (!isInteger(values[MAXSPEED])) return true;
+
+            way.setMaxSpeed(Integer.parseInt(values[MAXSPEED]));
+        }
+
+        if (has(ONEWAY)) {
+            if (values[ONEWAY] == null) return true;
+
+            if (values[ONEWAY].equals("yes")) way.setOneWay(true);
+
+            else way.setOneWay(false);
+        }
+
+        setType(way, typeTable.classify(key, values[HIGHWAY]));
+        return true;
+    }
+
+    // True if Integer.parseInt accepts the value. Values like "50 mph" or "DK:urban" are common.
+    static boolean isInteger(String value) {
+        if (value == null || value.isEmpty()) return false;
+
+        int start = value.charAt(0) == '-' || value.charAt(0) == '+' ? 1 : 0;
+        if (start == value.length()) return false;
+
+        long limit = value.charAt(0) == '-' ? -(long) Integer.MIN_VALUE : Integer.MAX_VALUE;
+        long magnitude = 0;
+
+        for (int i = start; i < value.length(); i++) {
+            int digit = Character.digit(value.charAt(i), 10);
+            if (digit < 0) return false;
+
+            magnitude = magnitude * 10 + digit;
+            if (magnitude > limit) return false;
+        }
+
+        return true;
+    }
+
+    private static void setType(OSMElement element, OSMType type) {
+        if (type != null) element.setOSMType(type);
+    }
+}
@@ -13,21 +13,38 @@ import bfst20.logic.kdtree.*;
 import javax.xml.parsers.FactoryConfigurationError;
 import javax.xml.stream.XMLStreamException;
 import java.io.*;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
 public class FileHandler {
+    // Rough file bytes per node, used to pick the node store before parsing.
+    private static final int XML_BYTES_PER_NODE = 100;
+    private static final int PBF_BYTES_PER_NODE = 8;
+    private static final int GZIP_BYTES_PER_NODE = 12;
+    private static final int BZIP2_BYTES_PER_NODE = 8;
+
     private OSMElementAPI osmElementAPI;
     private LinePathAPI linePathAPI;
     private AddressAPI addressAPI;
     private RoutingAPI routingAPI;
     private KDTreeAPI kdTreeAPI;
+    private ChangeAPI changeAPI;
+    private MemoryAPI memoryAPI;
     private static File file;
     private Parser parser;
-
+    private SectionLoader sectionLoader;
+    private Consumer<IOException> damagedMapHandler;
 
     private FileHandler() {
 
@@ -40,6 +57,9 @@ public class FileHandler {
         private AddressAPI addressAPI;
         private LinePathAPI linePathAPI;
         private RoutingAPI routingAPI;
+        private ChangeAPI changeAPI;
+        private MemoryAPI memoryAPI;
+        private Consumer<IOException> damagedMapHandler;
 
         public Builder() {
 
@@ -81,6 +101,25 @@ public class FileHandler {
             return this;
         }
 
+        public Builder withChangeAPI(ChangeAPI changeAPI) {
+            this.changeAPI = changeAPI;
+
+            return this;
+        }
+
+        public Builder withMemoryAPI(MemoryAPI memoryAPI) {
+            this.memoryAPI = memoryAPI;
+
+            return this;
+        }
+
+        // Told when a section of a .bin map turns out damaged as it is first used.
+        public Builder withDamagedMapHandler(Consumer<IOException> damagedMapHandler) {
+            this.damagedMapHandler = damagedMapHandler;
+
+            return this;
+        }
+
         public FileHandler build() {
             FileHandler fileHandler = new FileHandler();
             fileHandler.parser = this.parser;
@@ -89,6 +128,9 @@ public class FileHandler {
             fileHandler.kdTreeAPI = this.kdTreeAPI;
             fileHandler.addressAPI = this.addressAPI;
             fileHandler.routingAPI = this.routingAPI;
+            fileHandler.changeAPI = this.changeAPI;
+            fileHandler.memoryAPI = this.memoryAPI;
+            fileHandler.damagedMapHandler = this.damagedMapHandler;
 
             return fileHandler;
         }
@@ -98,24 +140,122 @@ public class FileHandler {
         try {
             String filename = file.getName();
             String fileExt = filename.substring(filename.lastIndexOf("."));
+
+            // What the pool has not decoded of the previous map is not needed any more.
+            if (sectionLoader != null && !fileExt.equals(".osc")) sectionLoader.cancel();
+
             switch (fileExt) {
                 case ".bin":
                     loadBinary(file);
                     break;
                 case ".osm":
+                    if (parser.isNodeFiltering()) parser.scanOSMFile(file);
+
+                    osmElementAPI.prepareNodeData(expectedNodes(file.length() / XML_BYTES_PER_NODE));
                     parser.parseOSMFile(file);
+                    parser.clearNodeFilter();
+                    break;
+                case ".pbf":
+                    if (parser.isNodeFiltering()) parser.scanPBFFile(file);
+
+                    osmElementAPI.prepareNodeData(expectedNodes(file.length() / PBF_BYTES_PER_NODE));
+                    parser.parsePBFFile(file);
+                    parser.clearNodeFilter();
                     break;
                 case ".zip":
                     loadZip(file);
                     break;
+                case ".gz":
+                case ".bz2":
+                    loadCompressed(file, fileExt);
+                    break;
+                case ".osc":
+                    // Applied to the loaded map instead of replacing it.
+                    if (changeAPI == null || !changeAPI.isMapIndexed()) {
+                        throw new IOException("Changes can only be applied to a map imported with bfst20.changes");
+                    }
+
+                    changeAPI.applyChanges(parser.parseChangeFile(file));
+                    break;
             }
         } catch (OutOfMemoryError e) {
+            reportOutOfMemory();
             AlertHandler.alertOK(Alert.AlertType.ERROR, "Error loading, out of memory, exiting.", true);
             System.exit(1);
         }
     }
 
-    private void loadBinary(File file) {
+    // Shows what held the heap when it ran out. The failed allocation is free again, so the
+    // little the estimate needs usually fits; if not, there is nothing to show.
+    private void reportOutOfMemory() {
+        if (memoryAPI == null) return;
+
+        try {
+            System.err.println(memoryAPI.measureMemory("out of memory"));
+        } catch (OutOfMemoryError e) {
+            System.err.println("Out of memory, no heap report");
+        }
+    }
+
+    // A map file with damaged bounds or coastlines is rejected before anything of it is
+    // used, so the map that was loaded is left as it was.
+    private void loadBinary(File file) throws IOException {
+        if (!MapFileReader.isMapFile(file)) {
+            loadSerializedBinary(file);
+            return;
+        }
+
+        MapFileReader reader = new MapFileReader(file);
+        Bounds bounds = reader.readBounds();
+        List<LinePath> coastlines = reader.readCoastlines();
+
+        osmElementAPI.saveBoundsData(bounds);
+        linePathAPI.saveCoastlines(coastlines);
+
+        // The first frame only needs the bounds and the coastlines. The layers, the address
+        // search and the graph are decoded from the mapped file on a pool meanwhile, the
+        // layers shown when zoomed out first and the graph last. Whatever is used before
+        // the pool has it ready is decoded when it is used.
+        sectionLoader = new SectionLoader(Integer.getInteger("bfst20.binary.threads",
+                Runtime.getRuntime().availableProcessors() - 1));
+
+        List<OSMType> types = reader.kdTreeTypes();
+        types.sort(Comparator.comparingDouble(OSMType::getZoomLevel));
+
+        Map<OSMType, Supplier<KDTree>> trees = new HashMap<>();
+        for (OSMType type : types) {
+            trees.put(type, whenUsed(sectionLoader.add(() -> reader.readKDTree(type)), () -> new KDTree(null, new PathStore(0))));
+        }
+
+        kdTreeAPI.saveUnloadedKDTrees(trees);
+        addressAPI.saveUnloadedTSTData(whenUsed(sectionLoader.add(reader::readAddresses), TernarySearchTree::new));
+        routingAPI.saveUnloadedGraph(whenUsed(sectionLoader.add(reader::readGraph), () -> new Graph(new ArrayList<>())));
+        sectionLoader.finish();
+
+        if (Boolean.getBoolean("bfst20.binary.eager")) {
+            kdTreeAPI.fetchAllKDTrees();
+            addressAPI.fetchTSTData();
+            routingAPI.fetchGraph();
+        }
+    }
+
+    // A section that turns out damaged when it is used is left empty, so the map can still
+    // be shown, and handed to the damaged map handler to decide what to do about it.
+    private <T> Supplier<T> whenUsed(SectionLoader.Read<T> read, Supplier<T> empty) {
+        return () -> {
+            try {
+                return read.read();
+            } catch (IOException e) {
+                if (damagedMapHandler != null) damagedMapHandler.accept(e);
+                else AlertHandler.alertOK(Alert.AlertType.ERROR, "The binary file is damaged, part of the map is left out.", false);
+
+                return empty.get();
+            }
+        };
+    }
+
+    // .bin files from before the map file format, written with Java serialization.
+    private void loadSerializedBinary(File file) {
         try (var in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
             Bounds bounds = (Bounds) in.readObject();
             Map<OSMType, KDTree> trees = (Map<OSMType, KDTree>) in.readObject();
@@ -137,23 +277,48 @@ public class FileHandler {
         }
     }
 
+    // Every .osm entry is parsed straight from the archive. Archives with several
+    // entries are merged: bounds are combined and elements shared by the entries kept once.
     private void loadZip(File file) {
-        try {
-            ZipFile zipFile = new ZipFile(file.toString());
+        try (ZipFile zipFile = new ZipFile(file)) {
+            if (parser.isNodeFiltering()) {
+                Enumeration<? extends ZipEntry> entries = zipFile.entries();
+
+                while (entries.hasMoreElements()) {
+                    ZipEntry entry = entries.nextElement();
+                    if (!entry.getName().endsWith(".osm")) continue;
+
+                    try (InputStream stream = zipFile.getInputStream(entry)) {
+                        parser.scanStream(stream);
+                    }
+                }
+            }
+
+            osmElementAPI.prepareNodeData(expectedNodes(uncompressedSize(zipFile) / XML_BYTES_PER_NODE));
+
             Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            Bounds bounds = null;
+            int osmEntries = 0;
 
             while (entries.hasMoreElements()) {
                 ZipEntry entry = entries.nextElement();
                 String name = entry.getName();
 
                 if (name.endsWith(".osm")) {
-                    InputStream stream = zipFile.getInputStream(entry);
-                    String toBeParsed = new String(stream.readAllBytes());
-                    parser.parseString(toBeParsed);
+                    try (InputStream stream = zipFile.getInputStream(entry)) {
+                        parser.parseStream(stream);
+                    }
+
+                    bounds = bounds == null ? osmElementAPI.fetchBoundsData() : bounds.union(osmElementAPI.fetchBoundsData());
+                    osmEntries++;
                 }
             }
 
-            zipFile.close();
+            if (osmEntries > 1) {
+                osmElementAPI.saveBoundsData(bounds);
+                osmElementAPI.mergeElementData();
+            }
+            parser.clearNodeFilter();
 
         } catch (IOException | XMLStreamException ex) {
             AlertHandler.alertOK(Alert.AlertType.ERROR, "Error loading zip file, exiting.", true);
@@ -161,31 +326,102 @@ public class FileHandler {
         }
     }
 
+    // .osm.gz and .osm.bz2 are decompressed while they are parsed, never to disk.
+    private void loadCompressed(File file, String fileExt) throws IOException, XMLStreamException {
+        if (!file.getName().endsWith(".osm" + fileExt)) throw new IOException("Only compressed .osm files can be opened");
+
+        if (parser.isNodeFiltering()) {
+            try (InputStream stream = openCompressed(file, fileExt)) {
+                parser.scanStream(stream);
+            }
+        }
+
+        int bytesPerNode = fileExt.equals(".gz") ? GZIP_BYTES_PER_NODE : BZIP2_BYTES_PER_NODE;
+        osmElementAPI.prepareNodeData(expectedNodes(file.length() / bytesPerNode));
+
+        try (InputStream stream = openCompressed(file, fileExt)) {
+            parser.parseStream(stream);
+        }
+        parser.clearNodeFilter();
+    }
+
+    // Gzip is inflated on a thread ahead of the parser, bzip2 blocks are decoded by a pool of threads.
+    static InputStream openCompressed(File file, String fileExt) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(file), 1 << 16);
+
+        try {
+            if (fileExt.equals(".gz")) return new ReadAheadInputStream(new GZIPInputStream(in, 1 << 16), 1 << 16, 16);
+
+            return new Bzip2InputStream(in);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    // Nodes found by the reference scan of a filtered import, otherwise the estimate from the file size.
+    private long expectedNodes(long estimate) {
+        long referenced = parser.getReferencedNodeCount();
+
+        return referenced < 0 ? estimate : referenced;
+    }
+
+    private long uncompressedSize(ZipFile zipFile) {
+        long size = 0;
+        Enumeration<? extends ZipEntry> entries = zipFile.entries();
+
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            if (entry.getName().endsWith(".osm")) size += Math.max(entry.getSize(), entry.getCompressedSize());
+        }
+
+        return size;
+    }
+
     public void generateBinary() throws IOException {
-        File file = new File("samsoe.bin");
-        file.createNewFile();
-        writeToFile(file);
+        generateBinary(new File("samsoe.bin"));
     }
 
-    private void writeToFile(File file) throws IOException {
-        FileOutputStream fileOut = new FileOutputStream(file, false);
-        ObjectOutputStream objectOut = new ObjectOutputStream(fileOut);
+    public void generateBinary(File file) throws IOException {
+        prepareBinary().writeTo(file);
+    }
 
-        objectOut.writeObject(osmElementAPI.fetchBoundsData());
-        objectOut.writeObject(kdTreeAPI.fetchAllKDTrees());
-        objectOut.writeObject(linePathAPI.fetchCoastlines());
+    // Takes hold of the loaded map, so it can be written later or on another thread even
+    // if another map has been loaded meanwhile. Everything is fetched before a file is
+    // opened: the map may still be read lazily from the very file that is overwritten.
+    public BinaryMap prepareBinary() {
+        Bounds bounds = osmElementAPI.fetchBoundsData();
+        Map<OSMType, KDTree> trees = kdTreeAPI.fetchAllKDTrees();
+        List<LinePath> coastlines = linePathAPI.fetchCoastlines();
+        TernarySearchTree ternarySearchTree = addressAPI.fetchTSTData();
+        Graph graph = routingAPI.fetchGraph();
+
+        return file -> {
+            try (MapFileWriter writer = new MapFileWriter(file)) {
+                writer.writeBounds(bounds);
+                writer.writeKDTrees(trees);
+                writer.writeCoastlines(coastlines);
+                writer.writeAddresses(ternarySearchTree);
+                writer.writeGraph(graph);
+                writer.commit();
+            }
+        };
+    }
 
-        objectOut.writeObject(addressAPI.fetchTSTData());
-        objectOut.writeObject(routingAPI.fetchGraph());
-        objectOut.close();
+    public interface BinaryMap {
+        // Replaces the file only once the whole map is written.
+        void writeTo(File file) throws IOException;
     }
 
     public File getResourceAsFile(String resourcePath) {
         try {
             String suffix = resourcePath.endsWith(".osm") ? ".osm" : ".bin";
 
-            InputStream in = ClassLoader.getSystemClassLoader().getResourceAsStream(resourcePath);
-            if (in == null) return null;
+            URL resource = ClassLoader.getSystemClassLoader().getResource(resourcePath);
+            if (resource == null) return null;
+
+            URLConnection connection = resource.openConnection();
+            InputStream in = connection.getInputStream();
 
             File tempFile = File.createTempFile(String.valueOf(in.hashCode()), suffix);
             tempFile.deleteOnExit();
@@ -197,7 +433,13 @@ public class FileHandler {
                 while ((bytesRead = in.read(buffer)) != -1) {
                     out.write(buffer, 0, bytesRead);
                 }
+            } finally {
+                in.close();
             }
+
+            // The copy keeps the time of the resource, so the map cache knows it again next time.
+            if (connection.getLastModified() > 0) tempFile.setLastModified(connection.getLastModified());
+
             return tempFile;
         } catch (IOException e) {
             AlertHandler.alertOK(Alert.AlertType.ERROR, "Error loading file stream, exiting.", true);
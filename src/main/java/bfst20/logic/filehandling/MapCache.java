@@ -0,0 +1,148 @@
+package bfst20.logic.filehandling;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+// A directory of .bin maps of imported files, so a file that has been opened before is
+// loaded as a map file instead of being imported again. A map is found by a key made
+// from the size, modification time and a sample of the content of its source, and from
+// the settings that change what an import makes. The least recently used maps are
+// deleted when the directory grows past its size limit.
+public class MapCache {
+    private static final int SAMPLES = 16;
+    private static final int SAMPLE_SIZE = 4096;
+    private static final long STALE_TEMP_MILLIS = 24 * 60 * 60 * 1000L;
+    // The settings an import depends on besides the file.
+    private static final String[] IMPORT_PROPERTIES = {"bfst20.parser.bbox", "bfst20.parser.filterNodes", "bfst20.style"};
+
+    private final File directory;
+    private final long maxBytes;
+
+    public MapCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    // The cache set up by the bfst20.cache properties, or null if it is turned off.
+    public static MapCache fromSystemProperties() {
+        if (!Boolean.parseBoolean(System.getProperty("bfst20.cache", "true"))) return null;
+
+        File directory = new File(System.getProperty("bfst20.cache.dir",
+                System.getProperty("user.home") + File.separator + ".bfst20" + File.separator + "cache"));
+
+        return new MapCache(directory, Long.getLong("bfst20.cache.maxMB", 1024) * 1024 * 1024);
+    }
+
+    // Map files are not cached again, and change files are not maps.
+    public static boolean isCacheable(File source) {
+        String name = source.getName();
+
+        return !name.endsWith(".bin") && !name.endsWith(".osc");
+    }
+
+    public String keyOf(File source) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+
+        long size = source.length();
+        String name = source.getName();
+
+        update(digest, "map file " + MapFile.VERSION);
+        update(digest, name.substring(name.lastIndexOf('.') + 1));
+        update(digest, size + " " + source.lastModified());
+
+        for (String property : IMPORT_PROPERTIES) update(digest, property + "=" + System.getProperty(property));
+
+        String style = System.getProperty("bfst20.style");
+        if (style != null) update(digest, new File(style).length() + " " + new File(style).lastModified());
+
+        // Samples spread evenly over the file, the first at the start and the last at the end.
+        byte[] sample = new byte[SAMPLE_SIZE];
+        try (RandomAccessFile in = new RandomAccessFile(source, "r")) {
+            for (int i = 0; i < SAMPLES; i++) {
+                long position = Math.max(0, (size - SAMPLE_SIZE) * i / (SAMPLES - 1));
+                in.seek(position);
+
+                int length = in.read(sample, 0, (int) Math.min(SAMPLE_SIZE, size - position));
+                if (length > 0) digest.update(sample, 0, length);
+            }
+        }
+
+        StringBuilder key = new StringBuilder();
+        for (byte b : digest.digest()) key.append(String.format("%02x", b));
+
+        return key.toString();
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    // The map stored under the key, marked as just used, or null.
+    public File find(String key) {
+        File file = fileOf(key);
+        if (!file.isFile()) return null;
+
+        file.setLastModified(System.currentTimeMillis());
+
+        return file;
+    }
+
+    // Writes the map under the key. The map is only put in place once it is complete, so
+    // a map that is found is never half written.
+    public File store(String key, FileHandler.BinaryMap map) throws IOException {
+        Files.createDirectories(directory.toPath());
+
+        map.writeTo(fileOf(key));
+        evict();
+
+        return fileOf(key);
+    }
+
+    public void discard(String key) {
+        fileOf(key).delete();
+    }
+
+    // Deletes the least recently used maps until the rest fit in the limit, but never the
+    // most recent one. Maps left half written by a run that was stopped go as well.
+    void evict() {
+        File[] files = directory.listFiles();
+        if (files == null) return;
+
+        List<File> maps = new ArrayList<>();
+        for (File file : files) {
+            if (file.getName().endsWith(".bin")) maps.add(file);
+            else if (file.getName().endsWith(".tmp") && file.lastModified() < System.currentTimeMillis() - STALE_TEMP_MILLIS) {
+                file.delete();
+            }
+        }
+        maps.sort(Comparator.comparingLong(File::lastModified).reversed());
+
+        long total = 0;
+        for (int i = 0; i < maps.size(); i++) {
+            total += maps.get(i).length();
+            if (i > 0 && total > maxBytes) maps.get(i).delete();
+        }
+    }
+
+    private File fileOf(String key) {
+        return new File(directory, key + ".bin");
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+}
@@ -0,0 +1,44 @@
+package bfst20.logic.filehandling;
+
+// Layout of a .bin map file. All numbers are big-endian.
+//
+//   header    magic "BFST", format version, flags (none yet)
+//   sections  one after the other, each a string table and a body
+//   table     section count, then the name, offset, length and CRC-32C of every section
+//   trailer   CRC-32C of the table, offset of the table, magic
+//
+// The table comes last so that a section can be appended as soon as it is encoded.
+// Readers find sections by name and skip names they do not know, so new sections
+// can be added without a new version; the version changes when an existing section
+// is encoded differently.
+final class MapFile {
+    static final int MAGIC = 0x42465354;
+    static final int VERSION = 3;
+    // The oldest version that can still be read.
+    static final int MIN_VERSION = VERSION;
+    static final int HEADER_SIZE = 12;
+    static final int TRAILER_SIZE = 16;
+    // A reader maps each section as one buffer, which cannot be larger than this.
+    static final long MAX_SECTION_SIZE = Integer.MAX_VALUE;
+
+    static final String BOUNDS = "bounds";
+    static final String COASTLINES = "coastlines";
+    static final String ADDRESSES = "addresses";
+    static final String GRAPH = "graph";
+    // Followed by the name of the OSMType of the layer.
+    static final String KD_TREE = "kdtree/";
+
+    // Flags of a path in a path table. The coordinates follow as FixedPoint deltas, see
+    // SectionWriter.writeFixedPoint.
+    static final int FILL = 1;
+    static final int MULTIPOLYGON = 2;
+
+    // Flags of a KD-tree node.
+    static final int LONGITUDINAL = 1;
+    static final int REMOVED = 2;
+    static final int LEFT = 4;
+    static final int RIGHT = 8;
+
+    private MapFile() {
+    }
+}
@@ -0,0 +1,347 @@
+package bfst20.logic.filehandling;
+
+import bfst20.logic.entities.Bounds;
+import bfst20.logic.entities.LinePath;
+import bfst20.logic.entities.Node;
+import bfst20.logic.kdtree.Direction;
+import bfst20.logic.kdtree.KDNode;
+import bfst20.logic.kdtree.KDTree;
+import bfst20.logic.kdtree.PathStore;
+import bfst20.logic.misc.OSMType;
+import bfst20.logic.routing.AddressTable;
+import bfst20.logic.routing.Edge;
+import bfst20.logic.routing.EdgeList;
+import bfst20.logic.routing.Graph;
+import bfst20.logic.routing.TernarySearchTree;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32C;
+
+// Reads a map file written by MapFileWriter. Every section is mapped into memory on
+// its own and decoded from that mapping only when it is read, so sections that are
+// never read are never paged in, and the file as a whole may be larger than a buffer.
+// The mappings live as long as the reader.
+class MapFileReader {
+    private final Map<String, ByteBuffer> sections;
+    private final Map<String, Integer> checksums;
+
+    MapFileReader(File file) throws IOException {
+        sections = new LinkedHashMap<>();
+        checksums = new HashMap<>();
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < MapFile.HEADER_SIZE + MapFile.TRAILER_SIZE) throw new IOException("Not a map file");
+
+            ByteBuffer header = read(channel, 0, MapFile.HEADER_SIZE);
+            if (header.getInt(0) != MapFile.MAGIC) throw new IOException("Not a map file");
+
+            int version = header.getInt(4);
+            if (version < MapFile.MIN_VERSION || version > MapFile.VERSION) throw new IOException("Unsupported map file version " + version);
+
+            long trailer = size - MapFile.TRAILER_SIZE;
+            ByteBuffer end = read(channel, trailer, MapFile.TRAILER_SIZE);
+            if (end.getInt(12) != MapFile.MAGIC) throw new IOException("Truncated map file");
+
+            long tableOffset = end.getLong(4);
+            if (tableOffset < MapFile.HEADER_SIZE || tableOffset > trailer || trailer - tableOffset > Integer.MAX_VALUE) {
+                throw new IOException("Corrupt map file");
+            }
+
+            ByteBuffer table = read(channel, tableOffset, (int) (trailer - tableOffset));
+            if (checksum(table.duplicate()) != end.getInt(0)) {
+                throw new IOException("Corrupt map file: the table of sections does not match its checksum");
+            }
+
+            int count = table.getInt();
+
+            for (int i = 0; i < count; i++) {
+                String name = readUTF(table);
+                long offset = table.getLong();
+                long length = table.getLong();
+                if (offset < MapFile.HEADER_SIZE || length < 0 || offset + length > tableOffset) {
+                    throw new IOException("Corrupt map file: section " + name + " is out of bounds");
+                }
+                if (length > MapFile.MAX_SECTION_SIZE) throw new IOException("Section " + name + " is larger than 2 GB");
+
+                sections.put(name, channel.map(FileChannel.MapMode.READ_ONLY, offset, length));
+                checksums.put(name, table.getInt());
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Corrupt map file", e);
+        }
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) throw new IOException("Truncated map file");
+        }
+
+        return buffer.flip();
+    }
+
+    // A string as written by DataOutput.writeUTF; section names are plain ASCII.
+    private static String readUTF(ByteBuffer in) {
+        byte[] bytes = new byte[in.getShort() & 0xFFFF];
+        in.get(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int checksum(ByteBuffer data) {
+        CRC32C checksum = new CRC32C();
+        checksum.update(data);
+
+        return (int) checksum.getValue();
+    }
+
+    // Map files start with the magic number, files written with Java serialization do not.
+    static boolean isMapFile(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return file.length() >= 4 && in.readInt() == MapFile.MAGIC;
+        }
+    }
+
+    // The checksum is checked as a section is first read, not when the file is opened, so
+    // sections that are never read are not paged in for it either.
+    private SectionReader section(String name) throws IOException {
+        ByteBuffer section = sections.get(name);
+        if (section == null) return null;
+
+        if (checksum(section.duplicate()) != checksums.get(name)) {
+            throw new IOException("Corrupt map file: section " + name + " does not match its checksum");
+        }
+
+        return new SectionReader(section.duplicate());
+    }
+
+    private static IOException corrupt(String name, RuntimeException cause) {
+        return new IOException("Corrupt map file: section " + name + " cannot be read", cause);
+    }
+
+    Bounds readBounds() throws IOException {
+        try {
+            SectionReader section = section(MapFile.BOUNDS);
+            if (section == null) return null;
+
+            ByteBuffer in = section.in();
+            return new Bounds(in.getFloat(), in.getFloat(), in.getFloat(), in.getFloat());
+        } catch (RuntimeException e) {
+            throw corrupt(MapFile.BOUNDS, e);
+        }
+    }
+
+    List<LinePath> readCoastlines() throws IOException {
+        try {
+            SectionReader section = section(MapFile.COASTLINES);
+            if (section == null) return null;
+
+            PathStore paths = readPaths(section);
+            List<LinePath> coastlines = new ArrayList<>(paths.size());
+            for (int i = 0; i < paths.size(); i++) coastlines.add(paths.getLinePath(i));
+
+            return coastlines;
+        } catch (RuntimeException e) {
+            throw corrupt(MapFile.COASTLINES, e);
+        }
+    }
+
+    private static PathStore readPaths(SectionReader section) {
+        ByteBuffer in = section.in();
+        int count = in.getInt();
+        PathStore paths = new PathStore(count);
+
+        for (int i = 0; i < count; i++) {
+            OSMType type = type(section.readString());
+            int flags = in.get();
+            String name = section.readString();
+            long wayId = in.getLong();
+            int length = in.getInt();
+            boolean fill = (flags & MapFile.FILL) != 0;
+            boolean multipolygon = (flags & MapFile.MULTIPOLYGON) != 0;
+
+            paths.add(type, section.readFixedPoint(length), fill, multipolygon, name, wayId);
+        }
+
+        paths.trimToSize();
+
+        return paths;
+    }
+
+    // A type this version does not know is drawn as UNKNOWN rather than failing the whole file.
+    private static OSMType type(String name) {
+        if (name == null) return null;
+
+        try {
+            return OSMType.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            return OSMType.UNKNOWN;
+        }
+    }
+
+    // The layers in the file. Layers of types this version does not know are left out.
+    List<OSMType> kdTreeTypes() {
+        List<OSMType> types = new ArrayList<>();
+
+        for (String name : sections.keySet()) {
+            if (!name.startsWith(MapFile.KD_TREE)) continue;
+
+            try {
+                types.add(OSMType.valueOf(name.substring(MapFile.KD_TREE.length())));
+            } catch (IllegalArgumentException e) {
+            }
+        }
+
+        return types;
+    }
+
+    KDTree readKDTree(OSMType type) throws IOException {
+        String name = MapFile.KD_TREE + type.name();
+
+        try {
+            SectionReader section = section(name);
+
+            return section == null ? null : readKDTree(section);
+        } catch (RuntimeException e) {
+            throw corrupt(name, e);
+        }
+    }
+
+    private static KDTree readKDTree(SectionReader section) {
+        PathStore paths = readPaths(section);
+        ByteBuffer in = section.in();
+
+        int count = in.getInt();
+        if (count == 0) return new KDTree(null, paths);
+
+        // Nodes still waiting for a child: the right one is pushed first, so the left one is read first.
+        KDNode[] parents = new KDNode[64];
+        boolean[] leftSlots = new boolean[64];
+        int depth = 0;
+
+        KDNode root = null;
+        KDNode parent = null;
+        boolean left = false;
+
+        for (int i = 0; i < count; i++) {
+            int flags = in.get();
+            KDNode node = new KDNode();
+            node.setDirection((flags & MapFile.LONGITUDINAL) != 0 ? Direction.Longitudinal : Direction.Latitudinal);
+            node.setRemoved((flags & MapFile.REMOVED) != 0);
+            node.setSplit(in.getFloat());
+
+            int path = in.getInt();
+            if (path < -1 || path >= paths.size()) throw new IllegalStateException("KD-tree node with path " + path);
+            node.setPath(path);
+
+            if (parent == null) root = node;
+            else if (left) parent.setLeftNode(node);
+            else parent.setRightNode(node);
+
+            if (depth + 2 > parents.length) {
+                parents = Arrays.copyOf(parents, parents.length * 2);
+                leftSlots = Arrays.copyOf(leftSlots, leftSlots.length * 2);
+            }
+
+            if ((flags & MapFile.RIGHT) != 0) {
+                parents[depth] = node;
+                leftSlots[depth++] = false;
+            }
+            if ((flags & MapFile.LEFT) != 0) {
+                parents[depth] = node;
+                leftSlots[depth++] = true;
+            }
+
+            if (depth == 0) {
+                if (i != count - 1) throw new IllegalStateException("KD-tree nodes after the last one");
+                break;
+            }
+
+            parent = parents[--depth];
+            left = leftSlots[depth];
+        }
+
+        if (depth != 0) throw new IllegalStateException("KD-tree ends early");
+
+        return new KDTree(root, paths);
+    }
+
+    TernarySearchTree readAddresses() throws IOException {
+        try {
+            SectionReader section = section(MapFile.ADDRESSES);
+            if (section == null) return null;
+
+            ByteBuffer in = section.in();
+            int count = in.getInt();
+            AddressTable addresses = new AddressTable(count);
+
+            for (int i = 0; i < count; i++) {
+                String city = section.readString();
+                String houseNumber = section.readString();
+                String postcode = section.readString();
+                String street = section.readString();
+
+                addresses.add(city, houseNumber, postcode, street, in.getFloat(), in.getFloat());
+            }
+
+            return TernarySearchTree.read(in, addresses);
+        } catch (RuntimeException e) {
+            throw corrupt(MapFile.ADDRESSES, e);
+        }
+    }
+
+    Graph readGraph() throws IOException {
+        try {
+            SectionReader section = section(MapFile.GRAPH);
+            if (section == null) return null;
+
+            ByteBuffer in = section.in();
+            Node[] nodes = new Node[in.getInt()];
+            for (int i = 0; i < nodes.length; i++) nodes[i] = new Node(in.getLong(), in.getFloat(), in.getFloat());
+
+            int listSize = in.getInt();
+            List<Node> nodeList = new ArrayList<>(listSize);
+            for (int i = 0; i < listSize; i++) nodeList.add(nodes[in.getInt()]);
+
+            int edgeCount = in.getInt();
+            Edge[] edges = new Edge[edgeCount];
+
+            for (int i = 0; i < edgeCount; i++) {
+                OSMType type = type(section.readString());
+                Node source = nodes[in.getInt()];
+                Node target = nodes[in.getInt()];
+                double length = in.getDouble();
+                String street = section.readString();
+                int maxSpeed = in.getInt();
+                boolean oneWay = in.get() != 0;
+
+                edges[i] = new Edge(type, source, target, length, street, maxSpeed, oneWay);
+            }
+
+            Map<Node, EdgeList> adj = new HashMap<>(nodes.length * 4 / 3 + 1);
+            for (Node node : nodes) {
+                int count = in.getInt();
+                if (count == -1) continue;
+
+                EdgeList adjacent = new EdgeList(count);
+                for (int i = 0; i < count; i++) adjacent.add(edges[in.getInt()]);
+                adj.put(node, adjacent);
+            }
+
+            return new Graph(nodeList, new ArrayList<>(Arrays.asList(edges)), adj);
+        } catch (RuntimeException e) {
+            throw corrupt(MapFile.GRAPH, e);
+        }
+    }
+}
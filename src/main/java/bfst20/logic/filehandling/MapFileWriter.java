@@ -0,0 +1,333 @@
+package bfst20.logic.filehandling;
+
+import bfst20.logic.entities.Bounds;
+import bfst20.logic.entities.LinePath;
+import bfst20.logic.entities.Node;
+import bfst20.logic.kdtree.Direction;
+import bfst20.logic.kdtree.KDNode;
+import bfst20.logic.kdtree.KDTree;
+import bfst20.logic.kdtree.PathStore;
+import bfst20.logic.misc.OSMType;
+import bfst20.logic.routing.AddressTable;
+import bfst20.logic.routing.Edge;
+import bfst20.logic.routing.Graph;
+import bfst20.logic.routing.TernarySearchTree;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+// Writes a map file as laid out in MapFile. Each section is encoded in memory and
+// streamed to the file as soon as it is done, so only one section is held at a time;
+// commit() adds the table of sections. Objects that are shared inside a section, like
+// a node used by several edges, are written once and referred to by their index.
+//
+// The file is written next to its place and only moved there by commit(), so a reader
+// always finds the old file or the whole new one, never half of it.
+class MapFileWriter implements Closeable {
+    private final File file;
+    private final File temp;
+    private final FileChannel channel;
+    private final DataOutputStream out;
+    private final List<String> names;
+    private final List<long[]> ranges;
+    private long position;
+    private boolean committed;
+
+    MapFileWriter(File file) throws IOException {
+        this.file = file;
+        temp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+        channel = FileChannel.open(temp.toPath(), StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+        names = new ArrayList<>();
+        ranges = new ArrayList<>();
+
+        out.writeInt(MapFile.MAGIC);
+        out.writeInt(MapFile.VERSION);
+        out.writeInt(0);
+        position = MapFile.HEADER_SIZE;
+    }
+
+    private void addSection(String name, SectionWriter section) throws IOException {
+        CRC32C checksum = new CRC32C();
+        long length = section.writeTo(new CheckedOutputStream(out, checksum));
+        // A file the reader cannot map is not written, so it does not take the place of one it can.
+        if (length > MapFile.MAX_SECTION_SIZE) throw new IOException("Section " + name + " is larger than 2 GB");
+
+        names.add(name);
+        ranges.add(new long[]{position, length, checksum.getValue()});
+        position += length;
+    }
+
+    void writeBounds(Bounds bounds) throws IOException {
+        if (bounds == null) return;
+
+        SectionWriter section = new SectionWriter();
+        DataOutputStream body = section.out();
+        body.writeFloat(bounds.getMaxLat());
+        body.writeFloat(bounds.getMinLat());
+        body.writeFloat(bounds.getMaxLon());
+        body.writeFloat(bounds.getMinLon());
+
+        addSection(MapFile.BOUNDS, section);
+    }
+
+    void writeCoastlines(List<LinePath> coastlines) throws IOException {
+        if (coastlines == null) return;
+
+        PathStore paths = new PathStore(coastlines.size());
+        for (LinePath path : coastlines) paths.add(path);
+
+        int[] order = new int[paths.size()];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+
+        SectionWriter section = new SectionWriter();
+        writePaths(section, paths, order);
+
+        addSection(MapFile.COASTLINES, section);
+    }
+
+    // The paths as a table, in the given order: type, flags, name, way id and coordinates of each.
+    private void writePaths(SectionWriter section, PathStore paths, int[] order) throws IOException {
+        DataOutputStream body = section.out();
+        body.writeInt(order.length);
+
+        for (int path : order) {
+            OSMType type = paths.getType(path);
+
+            section.writeString(type == null ? null : type.name());
+            body.writeByte((paths.getFill(path) ? MapFile.FILL : 0) | (paths.isMultipolygon(path) ? MapFile.MULTIPOLYGON : 0));
+            section.writeString(paths.getName(path));
+            body.writeLong(paths.getWayId(path));
+            body.writeInt(paths.getLength(path));
+
+            section.writeFixedPoint(paths.getFixedCoords(path));
+        }
+    }
+
+    // One section per layer, so a reader can decode the layers independently. The layers
+    // are written in the order of their types, so the same map gives the same file.
+    void writeKDTrees(Map<OSMType, KDTree> trees) throws IOException {
+        if (trees == null) return;
+
+        Map<OSMType, KDTree> sorted = new EnumMap<>(OSMType.class);
+        for (Map.Entry<OSMType, KDTree> entry : trees.entrySet()) {
+            if (entry.getKey() != null && entry.getValue() != null) sorted.put(entry.getKey(), entry.getValue());
+        }
+
+        for (Map.Entry<OSMType, KDTree> entry : sorted.entrySet()) {
+
+            SectionWriter section = new SectionWriter();
+            writeKDTree(section, entry.getValue());
+
+            addSection(MapFile.KD_TREE + entry.getKey().name(), section);
+        }
+    }
+
+    // The paths of the nodes, then the nodes in preorder, left before right. The paths are
+    // written in the order of the nodes too, which they are in already unless paths were
+    // inserted after the tree was built.
+    private void writeKDTree(SectionWriter section, KDTree tree) throws IOException {
+        PathStore paths = tree.getPaths();
+        List<KDNode> nodes = new ArrayList<>();
+        int[] pathIndices = new int[paths.size()];
+        Arrays.fill(pathIndices, -1);
+        int[] order = new int[paths.size()];
+        int pathCount = 0;
+
+        Deque<KDNode> stack = new ArrayDeque<>();
+        if (tree.getRoot() != null) stack.push(tree.getRoot());
+
+        while (!stack.isEmpty()) {
+            KDNode node = stack.pop();
+            nodes.add(node);
+
+            int path = node.getPath();
+            if (path != -1 && pathIndices[path] == -1) {
+                pathIndices[path] = pathCount;
+                order[pathCount++] = path;
+            }
+
+            if (node.getRightNode() != null) stack.push(node.getRightNode());
+            if (node.getLeftNode() != null) stack.push(node.getLeftNode());
+        }
+
+        writePaths(section, paths, Arrays.copyOf(order, pathCount));
+
+        DataOutputStream body = section.out();
+        body.writeInt(nodes.size());
+
+        for (KDNode node : nodes) {
+            int flags = (node.getDirection() == Direction.Longitudinal ? MapFile.LONGITUDINAL : 0)
+                    | (node.isRemoved() ? MapFile.REMOVED : 0)
+                    | (node.getLeftNode() != null ? MapFile.LEFT : 0)
+                    | (node.getRightNode() != null ? MapFile.RIGHT : 0);
+
+            body.writeByte(flags);
+            body.writeFloat(node.getSplit());
+            body.writeInt(node.getPath() == -1 ? -1 : pathIndices[node.getPath()]);
+        }
+    }
+
+    // The addresses, then the trie that refers to them.
+    void writeAddresses(TernarySearchTree tree) throws IOException {
+        if (tree == null) return;
+
+        // Only the rows still in the trie are written, in the order the trie refers to them.
+        AddressTable table = tree.getAddresses();
+        int[] indices = new int[table.size()];
+        int[] rows = new int[table.size()];
+        int[] count = new int[1];
+        Arrays.fill(indices, -1);
+
+        ByteArrayOutputStream trie = new ByteArrayOutputStream();
+        tree.write(new DataOutputStream(trie), row -> {
+            if (indices[row] == -1) {
+                indices[row] = count[0];
+                rows[count[0]++] = row;
+            }
+
+            return indices[row];
+        });
+
+        SectionWriter section = new SectionWriter();
+        DataOutputStream body = section.out();
+        body.writeInt(count[0]);
+
+        for (int i = 0; i < count[0]; i++) {
+            int row = rows[i];
+            section.writeString(table.getCity(row));
+            section.writeString(table.getHouseNumber(row));
+            section.writeString(table.getPostcode(row));
+            section.writeString(table.getStreet(row));
+            body.writeFloat(table.getLat(row));
+            body.writeFloat(table.getLon(row));
+        }
+
+        trie.writeTo(body);
+        addSection(MapFile.ADDRESSES, section);
+    }
+
+    // The distinct nodes, the node list (which may hold a node twice), the edges, and
+    // the adjacency list of every distinct node in its original order.
+    void writeGraph(Graph graph) throws IOException {
+        if (graph == null) return;
+
+        List<Node> nodes = new ArrayList<>();
+        Map<Node, Integer> nodeIndices = new IdentityHashMap<>();
+        for (Node node : graph.getNodes()) addNode(node, nodes, nodeIndices);
+        for (Edge edge : graph.getEdges()) {
+            addNode(edge.getSource(), nodes, nodeIndices);
+            addNode(edge.getTarget(), nodes, nodeIndices);
+        }
+
+        SectionWriter section = new SectionWriter();
+        DataOutputStream body = section.out();
+
+        body.writeInt(nodes.size());
+        for (Node node : nodes) {
+            body.writeLong(node.getId());
+            body.writeFloat(node.getLatitude());
+            body.writeFloat(node.getLongitude());
+        }
+
+        body.writeInt(graph.getNodes().size());
+        for (Node node : graph.getNodes()) body.writeInt(nodeIndices.get(node));
+
+        List<Edge> edges = graph.getEdges();
+        Map<Edge, Integer> edgeIndices = new IdentityHashMap<>();
+        body.writeInt(edges.size());
+
+        for (int i = 0; i < edges.size(); i++) {
+            Edge edge = edges.get(i);
+            edgeIndices.putIfAbsent(edge, i);
+
+            OSMType type = edge.getHighwayType();
+            section.writeString(type == null ? null : type.name());
+            body.writeInt(nodeIndices.get(edge.getSource()));
+            body.writeInt(nodeIndices.get(edge.getTarget()));
+            body.writeDouble(edge.getLength());
+            section.writeString(edge.getStreet());
+            body.writeInt(edge.getMaxSpeed());
+            body.writeBoolean(edge.isOneWay());
+        }
+
+        for (Node node : nodes) {
+            if (!graph.containsNode(node)) {
+                body.writeInt(-1);
+                continue;
+            }
+
+            List<Edge> adjacent = new ArrayList<>();
+            for (Edge edge : graph.adj(node)) adjacent.add(edge);
+
+            body.writeInt(adjacent.size());
+            for (Edge edge : adjacent) body.writeInt(edgeIndex(edge, edgeIndices));
+        }
+
+        addSection(MapFile.GRAPH, section);
+    }
+
+    private static void addNode(Node node, List<Node> nodes, Map<Node, Integer> nodeIndices) {
+        if (nodeIndices.containsKey(node)) return;
+
+        nodeIndices.put(node, nodes.size());
+        nodes.add(node);
+    }
+
+    private static int edgeIndex(Edge edge, Map<Edge, Integer> edgeIndices) throws IOException {
+        Integer index = edgeIndices.get(edge);
+        if (index == null) throw new IOException("The routing graph has an edge that is not in its edge list");
+
+        return index;
+    }
+
+    // Writes the table and puts the file in its place.
+    void commit() throws IOException {
+        long tableOffset = position;
+        CRC32C checksum = new CRC32C();
+        DataOutputStream table = new DataOutputStream(new CheckedOutputStream(out, checksum));
+
+        table.writeInt(names.size());
+        for (int i = 0; i < names.size(); i++) {
+            table.writeUTF(names.get(i));
+            table.writeLong(ranges.get(i)[0]);
+            table.writeLong(ranges.get(i)[1]);
+            table.writeInt((int) ranges.get(i)[2]);
+        }
+        table.flush();
+
+        out.writeInt((int) checksum.getValue());
+        out.writeLong(tableOffset);
+        out.writeInt(MapFile.MAGIC);
+        out.flush();
+        channel.force(true);
+        out.close();
+
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        committed = true;
+    }
+
+    // Without commit() the file is left as it was.
+    @Override
+    public void close() throws IOException {
+        if (committed) return;
+
+        try {
+            out.close();
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+}
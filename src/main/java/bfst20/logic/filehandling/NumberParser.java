@@ -0,0 +1,167 @@
+package bfst20.logic.filehandling;
+
+import java.nio.charset.StandardCharsets;
+
+// Parses the ids and coordinates of OSM files without the allocations of
+// Float.parseFloat. Plain decimals like "55.1234567" are parsed here; anything
+// else, such as exponents, very long numbers or malformed text, is handed to
+// Long.parseLong and Float.parseFloat, so results and exceptions are the same.
+public class NumberParser {
+    private static final double[] POWERS_OF_TEN = new double[23];
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+
+    private NumberParser() {
+
+    }
+
+    public static long parseLong(CharSequence text) {
+        if (text == null) throw new NumberFormatException("null");
+
+        int length = text.length();
+        int i = 0;
+        boolean negative = false;
+
+        if (length > 0 && (text.charAt(0) == '-' || text.charAt(0) == '+')) {
+            negative = text.charAt(0) == '-';
+            i++;
+        }
+
+        // 18 digits always fit in a long.
+        if (i == length || length - i > 18) return Long.parseLong(text.toString());
+
+        long value = 0;
+        for (; i < length; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) return Long.parseLong(text.toString());
+
+            value = value * 10 + digit;
+        }
+
+        return negative ? -value : value;
+    }
+
+    public static float parseFloat(CharSequence text) {
+        if (text == null) throw new NullPointerException();
+
+        int length = text.length();
+        int i = 0;
+        boolean negative = false;
+
+        if (length > 0 && (text.charAt(0) == '-' || text.charAt(0) == '+')) {
+            negative = text.charAt(0) == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = -1;
+
+        for (; i < length; i++) {
+            char c = text.charAt(i);
+
+            if (c == '.' && fractionDigits == -1) {
+                fractionDigits = 0;
+                continue;
+            }
+
+            int digit = c - '0';
+            if (digit < 0 || digit > 9 || mantissa >= MAX_EXACT_MANTISSA / 10) return Float.parseFloat(text.toString());
+
+            mantissa = mantissa * 10 + digit;
+            digits++;
+            if (fractionDigits != -1) fractionDigits++;
+        }
+
+        float value = digits == 0 ? Float.NaN : toFloat(mantissa, fractionDigits, negative);
+
+        return Float.isNaN(value) ? Float.parseFloat(text.toString()) : value;
+    }
+
+    // Same as parseLong(CharSequence), for text in a byte buffer.
+    public static long parseLong(byte[] bytes, int start, int end) {
+        int i = start;
+        boolean negative = false;
+
+        if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+            negative = bytes[i] == '-';
+            i++;
+        }
+
+        if (i == end || end - i > 18) return Long.parseLong(text(bytes, start, end));
+
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) return Long.parseLong(text(bytes, start, end));
+
+            value = value * 10 + digit;
+        }
+
+        return negative ? -value : value;
+    }
+
+    // Same as parseFloat(CharSequence), for text in a byte buffer.
+    public static float parseFloat(byte[] bytes, int start, int end) {
+        int i = start;
+        boolean negative = false;
+
+        if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+            negative = bytes[i] == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = -1;
+
+        for (; i < end; i++) {
+            byte c = bytes[i];
+
+            if (c == '.' && fractionDigits == -1) {
+                fractionDigits = 0;
+                continue;
+            }
+
+            int digit = c - '0';
+            if (digit < 0 || digit > 9 || mantissa >= MAX_EXACT_MANTISSA / 10) return Float.parseFloat(text(bytes, start, end));
+
+            mantissa = mantissa * 10 + digit;
+            digits++;
+            if (fractionDigits != -1) fractionDigits++;
+        }
+
+        float value = digits == 0 ? Float.NaN : toFloat(mantissa, fractionDigits, negative);
+
+        return Float.isNaN(value) ? Float.parseFloat(text(bytes, start, end)) : value;
+    }
+
+    private static String text(byte[] bytes, int start, int end) {
+        return new String(bytes, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    // The float nearest to mantissa / 10^fractionDigits, or NaN if it can not be found
+    // exactly this way and the caller has to fall back to Float.parseFloat.
+    private static float toFloat(long mantissa, int fractionDigits, boolean negative) {
+        if (fractionDigits >= POWERS_OF_TEN.length) return Float.NaN;
+
+        // Both operands are exact, so the quotient is the correctly rounded double.
+        double value = fractionDigits > 0 ? mantissa / POWERS_OF_TEN[fractionDigits] : mantissa;
+
+        // Rounding that double to float again is only wrong when it lands exactly
+        // halfway between two floats, or outside the range of normal floats.
+        if (value != 0 && (value < 1e-30 || value > 1e30 || isHalfwayBetweenFloats(value))) return Float.NaN;
+
+        float result = (float) value;
+        return negative ? -result : result;
+    }
+
+    // True if the low 29 of the 52 mantissa bits, which a float drops, are exactly one half.
+    private static boolean isHalfwayBetweenFloats(double value) {
+        return (Double.doubleToRawLongBits(value) & 0x1FFFFFFFL) == 0x10000000L;
+    }
+}
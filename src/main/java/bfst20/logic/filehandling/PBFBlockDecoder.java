@@ -0,0 +1,497 @@
+package bfst20.logic.filehandling;
+
+import bfst20.logic.entities.*;
+import bfst20.logic.misc.OSMTypeTable;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static bfst20.logic.filehandling.ElementBatch.*;
+import static bfst20.logic.filehandling.ProtobufReader.*;
+
+// Worker stage for PBF input: inflates one blob and decodes its block into a batch
+// of entities, classified with the same tag rules as the XML import.
+class PBFBlockDecoder {
+    private static final int BATCH_SIZE = 8000;
+    private static final String[] MEMBER_TYPES = {"node", "way", "relation"};
+
+    private ElementTags tags;
+    private String firstTagKey;
+
+    private String[] strings;
+    private int[] keyCodes;
+    private long granularity;
+    private long latOffset;
+    private long lonOffset;
+
+    private int[] keys = new int[16];
+    private int[] values = new int[16];
+    private int keyCount;
+    private int valueCount;
+    private long[] ids = new long[256];
+    private int[] types = new int[256];
+    private int idCount;
+
+    PBFBlockDecoder(ValueDictionary dictionary, OSMTypeTable typeTable) {
+        tags = new ElementTags(dictionary, typeTable);
+    }
+
+    // The first tag key of the document, once the decoder has seen it.
+    String getFirstTagKey() {
+        return firstTagKey;
+    }
+
+    static byte[] inflate(byte[] blob) throws IOException {
+        ProtobufReader reader = new ProtobufReader(blob, 0, blob.length);
+        byte[] zlibData = null;
+        int rawSize = -1;
+
+        for (int tag = reader.readTag(); tag != 0; tag = reader.readTag()) {
+            switch (fieldNumber(tag)) {
+                case 1:
+                    return reader.readBytes();
+                case 2:
+                    rawSize = reader.readInt();
+                    break;
+                case 3:
+                    zlibData = reader.readBytes();
+                    break;
+                case 4:
+                case 5:
+                case 6:
+                case 7:
+                    throw new IOException("Unsupported blob compression in PBF file");
+                default:
+                    reader.skip(tag);
+            }
+        }
+
+        if (zlibData == null || rawSize < 0) throw new IOException("Empty blob in PBF file");
+
+        Inflater inflater = new Inflater();
+        try {
+            byte[] data = new byte[rawSize];
+            inflater.setInput(zlibData);
+
+            int length = 0;
+            while (length < rawSize && !inflater.finished()) {
+                int read = inflater.inflate(data, length, rawSize - length);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                length += read;
+            }
+
+            if (length != rawSize) throw new IOException("Corrupt blob in PBF file");
+
+            return data;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt blob in PBF file", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    static Bounds decodeHeader(byte[] blob) throws IOException {
+        byte[] data = inflate(blob);
+        ProtobufReader reader = new ProtobufReader(data, 0, data.length);
+        Bounds bounds = null;
+
+        for (int tag = reader.readTag(); tag != 0; tag = reader.readTag()) {
+            switch (fieldNumber(tag)) {
+                case 1:
+                    bounds = decodeBoundingBox(reader.readMessage());
+                    break;
+                case 4:
+                    String feature = reader.readString();
+
+                    if (!feature.equals("OsmSchema-V0.6") && !feature.equals("DenseNodes")) {
+                        throw new IOException("Unsupported PBF feature " + feature);
+                    }
+                    break;
+                default:
+                    reader.skip(tag);
+            }
+        }
+
+        return bounds;
+    }
+
+    private static Bounds decodeBoundingBox(ProtobufReader reader) throws IOException {
+        long left = 0, right = 0, top = 0, bottom = 0;
+
+        for (int tag = reader.readTag(); tag != 0; tag = reader.readTag()) {
+            switch (fieldNumber(tag)) {
+                case 1:
+                    left = reader.readSignedVarint();
+                    break;
+                case 2:
+                    right = reader.readSignedVarint();
+                    break;
+                case 3:
+                    top = reader.readSignedVarint();
+                    break;
+                case 4:
+                    bottom = reader.readSignedVarint();
+                    break;
+                default:
+                    reader.skip(tag);
+            }
+        }
+
+        return new Bounds(-toDegrees(bottom), -toDegrees(top), 0.56f * toDegrees(right), 0.56f * toDegrees(left));
+    }
+
+    private static float toDegrees(long nanodegrees) {
+        return (float) (nanodegrees / 1e9);
+    }
+
+    // Decodes a primitive block. Elements without a first tag key fall back to the
+    // first key found in this block, as the XML import does.
+    ElementBatch decode(byte[] blob, String firstTagKey) throws IOException {
+        this.firstTagKey = firstTagKey;
+
+        byte[] data = inflate(blob);
+        ProtobufReader reader = new ProtobufReader(data, 0, data.length);
+        ProtobufReader[] groups = new ProtobufReader[8];
+        int groupCount = 0;
+
+        strings = new String[0];
+        keyCodes = new int[0];
+        granularity = 100;
+        latOffset = 0;
+        lonOffset = 0;
+
+        // The block settings may follow the groups, so the groups are decoded afterwards.
+        for (int tag = reader.readTag(); tag != 0; tag = reader.readTag()) {
+            switch (fieldNumber(tag)) {
+                case 1:
+                    readStringTable(reader.readMessage());
+                    break;
+                case 2:
+                    if (groupCount == groups.length) groups = Arrays.copyOf(groups, groupCount * 2);
+
+                    groups[groupCount++] = reader.readMessage();
+                    break;
+                case 17:
+                    granularity = reader.readInt();
+                    break;
+                case 19:
+                    latOffset = reader.readVarint();
+                    break;
+                case 20:
+                    lonOffset = reader.readVarint();
+                    break;
+                default:
+                    reader.skip(tag);
+            }
+        }
+
+        ElementBatch batch = new ElementBatch(BATCH_SIZE);
+        for (int i = 0; i < groupCount; i++) decodeGroup(groups[i], batch);
+
+        strings = null;
+        keyCodes = null;
+        return batch;
+    }
+
+    private void readStringTable(ProtobufReader reader) throws IOException {
+        int count = 0;
+
+        for (int tag = reader.readTag(); tag != 0; tag = reader.readTag()) {
+            if (fieldNumber(tag) != 1) {
+                reader.skip(tag);
+                continue;
+            }
+
+            if (count == strings.length) {
+                strings = Arrays.copyOf(strings, Math.max(16, count * 2));
+                keyCodes = Arrays.copyOf(keyCodes, strings.length);
+            }
+
+            strings[count] = reader.readString();
+            keyCodes[count] = tags.code(strings[count]);
+            count++;
+        }
+    }
+
+    private void decodeGroup(ProtobufReader reader, ElementBatch batch) throws IOException {
+        for (int tag = reader.readTag(); tag != 0; tag = reader.readTag()) {
+            switch (fieldNumber(tag)) {
+                case 1:
+                    decodeNode(reader.readMessage(), batch);
+                    break;
+                case 2:
+                    decodeDenseNodes(reader.readMessage(), batch);
+                    break;
+                case 3:
+                    decodeWay(reader.readMessage(), batch);
+                    break;
+                case 4:
+                    decodeRelation(reader.readMessage(), batch);
+                    break;
+                default:
+                    reader.skip(tag);
+            }
+        }
+    }
+
+    private void decodeNode(ProtobufReader reader, ElementBatch batch) throws IOException {
+        long id = 0, lat = 0, lon = 0;
+        startElement();
+
+        for (int tag = reader.readTag(); tag != 0; tag = reader.readTag()) {
+            switch (fieldNumber(tag)) {
+                case 1:
+                    id = reader.readSignedVarint();
+                    break;
+                case 2:
+                    readKeys(reader, tag);
+                    break;
+                case 3:
+                    readValues(reader, tag);
+                    break;
+                case 8:
+                    lat = reader.readSignedVarint();
+                    break;
+                case 9:
+                    lon = reader.readSignedVarint();
+                    break;
+                default:
+                    reader.skip(tag);
+            }
+        }
+
+        fillTags();
+        addNode(batch, id, lat, lon);
+    }
+
+    private void decodeDenseNodes(ProtobufReader reader, ElementBatch batch) throws IOException {
+        ProtobufReader idReader = null, latReader = null, lonReader = null, tagReader = null;
+
+        // The packed arrays are parallel, so they are walked side by side.
+        for (int tag = reader.readTag(); tag != 0; tag = reader.readTag()) {
+            switch (fieldNumber(tag)) {
+                case 1:
+                    idReader = reader.readMessage();
+                    break;
+                case 8:
+                    latReader = reader.readMessage();
+                    break;
+                case 9:
+                    lonReader = reader.readMessage();
+                    break;
+                case 10:
+                    tagReader = reader.readMessage();
+                    break;
+                default:
+                    reader.skip(tag);
+            }
+        }
+
+        if (idReader == null) return;
+        if (latReader == null || lonReader == null) throw new IOException("Dense nodes without coordinates");
+
+        long id = 0, lat = 0, lon = 0;
+
+        while (idReader.hasRemaining()) {
+            id += idReader.readSignedVarint();
+            lat += latReader.readSignedVarint();
+            lon += lonReader.readSignedVarint();
+
+            startElement();
+            if (tagReader != null) {
+                while (tagReader.hasRemaining()) {
+                    int key = tagReader.readInt();
+                    if (key == 0) break;
+
+                    addKey(key);
+                    addValue(tagReader.readInt());
+                }
+            }
+
+            fillTags();
+            addNode(batch, id, lat, lon);
+        }
+    }
+
+    private void addNode(ElementBatch batch, long id, long lat, long lon) {
+        float latitude = -toDegrees(latOffset + granularity * lat);
+        float longitude = 0.56f * toDegrees(lonOffset + granularity * lon);
+
+        batch.addElement(NODE, new Node(id, latitude, longitude), tags.toAddress(longitude, latitude), false);
+    }
+
+    private void decodeWay(ProtobufReader reader, ElementBatch batch) throws IOException {
+        long id = 0;
+        startElement();
+
+        for (int tag = reader.readTag(); tag != 0; tag = reader.readTag()) {
+            switch (fieldNumber(tag)) {
+                case 1:
+                    id = reader.readVarint();
+                    break;
+                case 2:
+                    readKeys(reader, tag);
+                    break;
+                case 3:
+                    readValues(reader, tag);
+                    break;
+                case 8:
+                    readDeltaIds(reader, tag);
+                    break;
+                default:
+                    reader.skip(tag);
+            }
+        }
+
+        Way way = new Way(id);
+        for (int i = 0; i < idCount; i++) way.addNodeId(ids[i]);
+        way.trimNodeIds();
+
+        fillTags();
+        boolean resolveNodes = tags.classify(way, firstTagKey);
+        batch.addElement(WAY, way, null, resolveNodes);
+    }
+
+    private void decodeRelation(ProtobufReader reader, ElementBatch batch) throws IOException {
+        long id = 0;
+        int typeCount = 0;
+        startElement();
+
+        for (int tag = reader.readTag(); tag != 0; tag = reader.readTag()) {
+            switch (fieldNumber(tag)) {
+                case 1:
+                    id = reader.readVarint();
+                    break;
+                case 2:
+                    readKeys(reader, tag);
+                    break;
+                case 3:
+                    readValues(reader, tag);
+                    break;
+                case 9:
+                    readDeltaIds(reader, tag);
+                    break;
+                case 10:
+                    typeCount = readTypes(reader, tag, typeCount);
+                    break;
+                default:
+                    reader.skip(tag);
+            }
+        }
+
+        Relation relation = new Relation(id);
+        for (int i = 0; i < idCount; i++) {
+            int type = i < typeCount ? types[i] : 0;
+            if (type < 0 || type >= MEMBER_TYPES.length) throw new IOException("Unknown relation member type " + type);
+
+            relation.addMember(ids[i], MEMBER_TYPES[type]);
+        }
+        relation.trimMembers();
+
+        fillTags();
+        tags.classify(relation, firstTagKey);
+        batch.addElement(RELATION, relation, null, false);
+    }
+
+    private void startElement() {
+        keyCount = 0;
+        valueCount = 0;
+        idCount = 0;
+    }
+
+    // Packed repeated fields may also be written one value at a time.
+    private void readKeys(ProtobufReader reader, int tag) throws IOException {
+        if (wireType(tag) != LENGTH_DELIMITED) {
+            addKey(reader.readInt());
+            return;
+        }
+
+        ProtobufReader packed = reader.readMessage();
+        while (packed.hasRemaining()) addKey(packed.readInt());
+    }
+
+    private void readValues(ProtobufReader reader, int tag) throws IOException {
+        if (wireType(tag) != LENGTH_DELIMITED) {
+            addValue(reader.readInt());
+            return;
+        }
+
+        ProtobufReader packed = reader.readMessage();
+        while (packed.hasRemaining()) addValue(packed.readInt());
+    }
+
+    private void addKey(int key) {
+        if (keyCount == keys.length) keys = Arrays.copyOf(keys, keyCount * 2);
+
+        keys[keyCount++] = key;
+    }
+
+    private void addValue(int value) {
+        if (valueCount == values.length) values = Arrays.copyOf(values, valueCount * 2);
+
+        values[valueCount++] = value;
+    }
+
+    // Puts the collected tags into the tag buffer in file order and records the document's first tag key.
+    private void fillTags() throws IOException {
+        tags.clear();
+
+        if (keyCount != valueCount) throw new IOException("Tag keys and values do not match");
+
+        for (int i = 0; i < keyCount; i++) {
+            String key = string(keys[i]);
+            if (firstTagKey == null) firstTagKey = key;
+
+            tags.put(keyCodes[keys[i]], string(values[i]));
+        }
+    }
+
+    private String string(int index) throws IOException {
+        if (index < 0 || index >= strings.length || strings[index] == null) {
+            throw new IOException("String table index out of bounds");
+        }
+
+        return strings[index];
+    }
+
+    private void readDeltaIds(ProtobufReader reader, int tag) throws IOException {
+        long id = idCount == 0 ? 0 : ids[idCount - 1];
+
+        if (wireType(tag) != LENGTH_DELIMITED) {
+            addId(id + reader.readSignedVarint());
+            return;
+        }
+
+        ProtobufReader packed = reader.readMessage();
+        while (packed.hasRemaining()) {
+            id += packed.readSignedVarint();
+            addId(id);
+        }
+    }
+
+    private void addId(long id) {
+        if (idCount == ids.length) ids = Arrays.copyOf(ids, idCount * 2);
+
+        ids[idCount++] = id;
+    }
+
+    private int readTypes(ProtobufReader reader, int tag, int typeCount) throws IOException {
+        if (wireType(tag) != LENGTH_DELIMITED) {
+            return addType(reader.readInt(), typeCount);
+        }
+
+        ProtobufReader packed = reader.readMessage();
+        while (packed.hasRemaining()) typeCount = addType(packed.readInt(), typeCount);
+
+        return typeCount;
+    }
+
+    private int addType(int type, int typeCount) {
+        if (typeCount == types.length) types = Arrays.copyOf(types, typeCount * 2);
+
+        types[typeCount] = type;
+        return typeCount + 1;
+    }
+}
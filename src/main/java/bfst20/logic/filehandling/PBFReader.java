@@ -0,0 +1,105 @@
+package bfst20.logic.filehandling;
+
+import bfst20.logic.entities.Bounds;
+import bfst20.logic.misc.OSMTypeTable;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Callable;
+
+import static bfst20.logic.filehandling.ProtobufReader.fieldNumber;
+
+// Reader stage for OSM PBF files: reads the blobs without inflating them, so the
+// workers do the inflating and decoding in parallel. Blobs are decoded on the reader
+// thread until the first tag key of the document is known, since later elements need it.
+class PBFReader implements ElementReader {
+    private static final int MAX_HEADER_SIZE = 64 * 1024;
+    private static final int MAX_BLOB_SIZE = 32 * 1024 * 1024;
+
+    private DataInputStream stream;
+    private String firstTagKey;
+
+    private ThreadLocal<PBFBlockDecoder> decoders;
+
+    PBFReader(InputStream stream, ValueDictionary dictionary, OSMTypeTable typeTable) {
+        this.stream = new DataInputStream(stream);
+
+        decoders = ThreadLocal.withInitial(() -> new PBFBlockDecoder(dictionary, typeTable));
+    }
+
+    @Override
+    public Callable<ElementBatch> next() throws IOException {
+        while (true) {
+            int headerSize;
+            try {
+                headerSize = stream.readInt();
+            } catch (EOFException e) {
+                return null;
+            }
+
+            if (headerSize < 0 || headerSize > MAX_HEADER_SIZE) throw new IOException("Invalid PBF blob header");
+
+            String type = null;
+            int blobSize = -1;
+
+            ProtobufReader header = new ProtobufReader(readFully(headerSize), 0, headerSize);
+            for (int tag = header.readTag(); tag != 0; tag = header.readTag()) {
+                switch (fieldNumber(tag)) {
+                    case 1:
+                        type = header.readString();
+                        break;
+                    case 3:
+                        blobSize = header.readInt();
+                        break;
+                    default:
+                        header.skip(tag);
+                }
+            }
+
+            if (blobSize < 0 || blobSize > MAX_BLOB_SIZE) throw new IOException("Invalid PBF blob size");
+
+            byte[] blob = readFully(blobSize);
+
+            if ("OSMHeader".equals(type)) return readHeader(blob);
+
+            if ("OSMData".equals(type)) return readData(blob);
+        }
+    }
+
+    @Override
+    public String getFirstTagKey() {
+        return firstTagKey;
+    }
+
+    private Callable<ElementBatch> readHeader(byte[] blob) throws IOException {
+        Bounds bounds = PBFBlockDecoder.decodeHeader(blob);
+
+        ElementBatch batch = new ElementBatch(1);
+        if (bounds != null) batch.addElement(ElementBatch.BOUNDS, bounds, null, false);
+
+        return () -> batch;
+    }
+
+    private Callable<ElementBatch> readData(byte[] blob) throws IOException {
+        String firstTagKey = this.firstTagKey;
+
+        if (firstTagKey == null) {
+            PBFBlockDecoder decoder = decoders.get();
+            ElementBatch batch = decoder.decode(blob, null);
+            this.firstTagKey = decoder.getFirstTagKey();
+
+            return () -> batch;
+        }
+
+        return () -> decoders.get().decode(blob, firstTagKey);
+    }
+
+    private byte[] readFully(int size) throws IOException {
+        byte[] bytes = new byte[size];
+        stream.readFully(bytes);
+
+        return bytes;
+    }
+}
@@ -0,0 +1,129 @@
+package bfst20.logic.filehandling;
+
+import java.util.Locale;
+
+// Throughput of each parser stage. Busy time excludes time spent waiting on the
+// other stages, so elements/s shows which stage bounds the import.
+public class ParseReport {
+    private final int threadCount;
+    private final long elements;
+    private final long readNanos;
+    private final long buildNanos;
+    private final long commitNanos;
+    private final long wallNanos;
+    private final long scanNanos;
+    private final long keptNodes;
+    private final long droppedNodes;
+    private final boolean clipped;
+    private final long outsideNodes;
+    private final long droppedWays;
+    private final long cutWays;
+
+    ParseReport(int threadCount, long elements, long readNanos, long buildNanos, long commitNanos, long wallNanos,
+                long scanNanos, long keptNodes, long droppedNodes, BoxClipper clipper) {
+        this.threadCount = threadCount;
+        this.elements = elements;
+        this.readNanos = readNanos;
+        this.buildNanos = buildNanos;
+        this.commitNanos = commitNanos;
+        this.wallNanos = wallNanos;
+        this.scanNanos = scanNanos;
+        this.keptNodes = keptNodes;
+        this.droppedNodes = droppedNodes;
+
+        clipped = clipper != null;
+        outsideNodes = clipped ? clipper.getOutsideNodeCount() : 0;
+        droppedWays = clipped ? clipper.getDroppedWayCount() : 0;
+        cutWays = clipped ? clipper.getCutWayCount() : 0;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    public long getElements() {
+        return elements;
+    }
+
+    public double getReadRate() {
+        return rate(readNanos);
+    }
+
+    // Summed over all workers, so this is the rate of a single worker thread.
+    public double getBuildRate() {
+        return rate(buildNanos);
+    }
+
+    public double getCommitRate() {
+        return rate(commitNanos);
+    }
+
+    public double getTotalRate() {
+        return rate(wallNanos);
+    }
+
+    public long getWallMillis() {
+        return wallNanos / 1_000_000;
+    }
+
+    // Time of the reference scans before a filtered import, 0 without node filtering.
+    public long getScanMillis() {
+        return scanNanos / 1_000_000;
+    }
+
+    public long getDroppedNodes() {
+        return droppedNodes;
+    }
+
+    public double getDroppedNodeFraction() {
+        long nodes = keptNodes + droppedNodes;
+
+        return nodes == 0 ? 0 : (double) droppedNodes / nodes;
+    }
+
+    // Counts of a clipped import, all 0 without a clip box. They add up over the parses of one Parser.
+    public long getOutsideNodes() {
+        return outsideNodes;
+    }
+
+    public long getDroppedWays() {
+        return droppedWays;
+    }
+
+    public long getCutWays() {
+        return cutWays;
+    }
+
+    private double rate(long nanos) {
+        return nanos == 0 ? 0 : elements / (nanos / 1e9);
+    }
+
+    @Override
+    public String toString() {
+        String report = String.format(Locale.ROOT,
+                "Parsed %d elements in %d ms with %d worker thread(s)%n"
+                        + "  read   %,12.0f elements/s (%d ms busy)%n"
+                        + "  build  %,12.0f elements/s per worker (%d ms busy)%n"
+                        + "  commit %,12.0f elements/s (%d ms busy)%n"
+                        + "  total  %,12.0f elements/s",
+                elements, getWallMillis(), threadCount,
+                getReadRate(), readNanos / 1_000_000,
+                getBuildRate(), buildNanos / 1_000_000,
+                getCommitRate(), commitNanos / 1_000_000,
+                getTotalRate());
+
+        if (scanNanos != 0) {
+            report += String.format(Locale.ROOT,
+                    "%n  dropped %,d of %,d nodes (%.1f%%) not referenced by a way, after a %d ms scan",
+                    droppedNodes, keptNodes + droppedNodes, 100 * getDroppedNodeFraction(), getScanMillis());
+        }
+
+        if (clipped) {
+            report += String.format(Locale.ROOT,
+                    "%n  clipped to the box: dropped %,d nodes and %,d ways outside it, cut %,d ways at its edge",
+                    outsideNodes, droppedWays, cutWays);
+        }
+
+        return report;
+    }
+}
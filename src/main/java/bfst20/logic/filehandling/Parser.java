@@ -3,273 +3,529 @@ package bfst20.logic.filehandling;
 import bfst20.logic.controllers.interfaces.AddressAPI;
 import bfst20.logic.controllers.interfaces.OSMElementAPI;
 import bfst20.logic.entities.*;
-import bfst20.logic.entities.OSMElement;
-import bfst20.logic.misc.OSMType;
+import bfst20.logic.misc.OSMTypeTable;
+import bfst20.logic.nodestore.IdList;
 
 import java.io.*;
-import java.nio.charset.Charset;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
 
-import static javax.xml.stream.XMLStreamConstants.*;
+import static bfst20.logic.filehandling.ElementBatch.*;
 
+// Parses OSM data in three stages: one reader thread splits the input into batches,
+// a pool of workers turns them into entities, and the calling thread commits the
+// finished batches into the stores in file order. XML and PBF input only differ
+// in the reader.
 public class Parser {
-    private List<Relation> tempOSMRelations;
+    private static final int BATCH_SIZE = 2048;
+
     private OSMElementAPI osmElementController;
     private AddressAPI addressController;
+    private ParseReport parseReport;
+    private OSMTypeTable typeTable;
+    private int threadCount;
+    private boolean byteTokenizer;
+
+    private boolean nodeFiltering;
+    private ReferencedNodes referencedNodes;
+    private boolean scanning;
+    private long scanNanos;
+    private long keptNodes;
+    private long droppedNodes;
+
+    private BoxClipper clipper;
+    private List<Way> unresolvedWays;
+
+    // First tag key of the last import, which change files are classified with.
+    private String firstTagKey;
+    private ChangeSet changes;
 
     public Parser(OSMElementAPI osmElementController, AddressAPI addressController) {
         this.osmElementController = osmElementController;
         this.addressController = addressController;
-        tempOSMRelations = new ArrayList<>();
+
+        int defaultThreads = Math.max(1, Runtime.getRuntime().availableProcessors() - 2);
+        threadCount = Integer.getInteger("bfst20.parser.threads", defaultThreads);
+        nodeFiltering = Boolean.getBoolean("bfst20.parser.filterNodes");
+        byteTokenizer = Boolean.getBoolean("bfst20.parser.byteTokenizer");
+        typeTable = OSMTypeTable.getDefault();
+
+        String box = System.getProperty("bfst20.parser.bbox");
+        if (box != null) {
+            String[] values = box.split(",");
+            if (values.length != 4) throw new IllegalArgumentException("bfst20.parser.bbox must be minlat,minlon,maxlat,maxlon");
+
+            setClipBox(Float.parseFloat(values[0].trim()), Float.parseFloat(values[1].trim()),
+                    Float.parseFloat(values[2].trim()), Float.parseFloat(values[3].trim()));
+        }
     }
 
-    public void parseOSMFile(File file) throws IOException, XMLStreamException {
-        parse(XMLInputFactory.newFactory().createXMLStreamReader(new FileReader(file, Charset.forName("UTF-8"))));
-        tempOSMRelations = new ArrayList<>();
-        System.gc();
+    // Number of worker threads. With 1 or less every stage runs on the calling thread.
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
     }
 
-    public void parseString(String string) throws XMLStreamException {
-        Reader stringReader = new StringReader(string);
-        XMLInputFactory factory = XMLInputFactory.newInstance();
-        XMLStreamReader reader = factory.createXMLStreamReader(stringReader);
-        parse(reader);
-    }
-
-    private void parse(XMLStreamReader reader) throws XMLStreamException {
-        OSMElement lastElementParsed = null;
-        HashMap<String, String> tags = null;
-        String[] firstTag = new String[2];
-
-        long lastNodeId = 0;
-        float lat = 0;
-        float lon = 0;
-
-        while (reader.hasNext()) {
-            reader.next();
-
-            switch (reader.getEventType()) {
-                case START_ELEMENT:
-                    String tagName = reader.getLocalName().intern();
-
-                    switch (tagName) {
-                        case "bounds":
-                            setBounds(reader);
-                            break;
-                        case "node":
-                            lastNodeId = Long.parseLong(reader.getAttributeValue(null, "id"));
-                            lon = 0.56f * Float.parseFloat(reader.getAttributeValue(null, "lon"));
-                            lat = -Float.parseFloat(reader.getAttributeValue(null, "lat"));
-                            addNodeToMap(reader);
-                            tags = new HashMap<>();
-                            break;
-                        case "way":
-                            lastElementParsed = addWayToList(reader);
-                            tags = new HashMap<>();
-                            break;
-                        case "nd":
-                            if (lastElementParsed instanceof Way) {
-                                addSubElementToWay(reader, (Way) lastElementParsed);
-                            }
-                            break;
-                        case "relation":
-                            lastElementParsed = addRelationToList(reader);
-                            tags = new HashMap<>();
-                            break;
-                        case "tag":
-                            if (tags == null)
-                                break;
-
-                            String key = reader.getAttributeValue(null, "k");
-                            String value = reader.getAttributeValue(null, "v");
-
-                            if (firstTag[0] == null) {
-                                firstTag[0] = key;
-                                firstTag[1] = value;
-                            }
-                            tags.put(key.intern(), value.intern());
-                            break;
-                        case "member":
-                            addMemberToRelation(reader);
-                            break;
-                    }
-                    break;
-                case END_ELEMENT:
-                    tagName = reader.getLocalName();
-
-                    switch (tagName) {
-                        case "node":
-                            parseAddressTags(lastNodeId, lon, lat, tags);
-                            break;
-                        case "relation":
-                            Relation relation = (Relation) lastElementParsed;
-                            osmElementController.saveRelationData(relation);
-                            parseTags(lastElementParsed, tags, firstTag);
-                            break;
-                        case "way":
-                            parseTags(lastElementParsed, tags, firstTag);
-                            break;
-                        default:
-                            break;
-                    }
-                    break;
-            }
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    // Classification used by the following parses, OSMTypeTable.getDefault() unless set.
+    public void setTypeTable(OSMTypeTable typeTable) {
+        this.typeTable = typeTable;
+    }
+
+    // With the byte tokenizer, XML files and streams are read by ByteXMLReader instead of StAX.
+    // Strings are always parsed with StAX.
+    public void setByteTokenizer(boolean byteTokenizer) {
+        this.byteTokenizer = byteTokenizer;
+    }
+
+    public boolean isByteTokenizer() {
+        return byteTokenizer;
+    }
+
+    // Limits the following parses to a box, in degrees: the box replaces the bounds of the
+    // file, nodes outside it are dropped, and ways are cut at its edge, see BoxClipper.
+    public void setClipBox(float minLat, float minLon, float maxLat, float maxLon) {
+        if (minLat >= maxLat || minLon >= maxLon) throw new IllegalArgumentException("Empty clip box");
+
+        clipper = new BoxClipper(new Bounds(-minLat, -maxLat, 0.56f * maxLon, 0.56f * minLon));
+    }
+
+    public void clearClipBox() {
+        clipper = null;
+    }
+
+    public boolean isClipping() {
+        return clipper != null;
+    }
+
+    // Reads an osmChange file into a change set. Nothing is written to the stores.
+    public ChangeSet parseChangeFile(File file) throws IOException, XMLStreamException {
+        try (InputStream stream = new FileInputStream(file)) {
+            return parseChanges(stream);
         }
     }
 
-    private void setBounds(XMLStreamReader reader) {
-        float minLat = -Float.parseFloat(reader.getAttributeValue(null, "maxlat"));
-        float maxLon = 0.56f * Float.parseFloat(reader.getAttributeValue(null, "maxlon"));
-        float maxLat = -Float.parseFloat(reader.getAttributeValue(null, "minlat"));
-        float minLon = 0.56f * Float.parseFloat(reader.getAttributeValue(null, "minlon"));
+    public ChangeSet parseChanges(InputStream stream) throws IOException, XMLStreamException {
+        Reader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8), 1 << 16);
+        XMLStreamReader xmlReader = XMLInputFactory.newFactory().createXMLStreamReader(reader);
 
-        osmElementController.saveBoundsData(new Bounds(maxLat, minLat, maxLon, minLon));
+        changes = new ChangeSet();
+        try {
+            parse(new XMLElementReader(xmlReader, BATCH_SIZE, getMaxBatches(), new ValueDictionary(), typeTable, firstTagKey));
+            return changes;
+        } finally {
+            changes = null;
+        }
     }
 
+    public ParseReport getParseReport() {
+        return parseReport;
+    }
 
-    private void addNodeToMap(XMLStreamReader reader) {
-        long id = Long.parseLong(reader.getAttributeValue(null, "id"));
-        float latitude = -Float.parseFloat(reader.getAttributeValue(null, "lat"));
-        float longitude = Float.parseFloat(reader.getAttributeValue(null, "lon")) * 0.56f;
+    // With node filtering an import takes two passes: the scan methods collect the nodes
+    // that ways and relations refer to, and the following parses only keep those nodes
+    // and the ones with an address. The caller runs the scans and clears the filter.
+    public void setNodeFiltering(boolean nodeFiltering) {
+        this.nodeFiltering = nodeFiltering;
+    }
 
-        Node node = new Node(id, latitude, longitude);
-        osmElementController.saveNodeData(node.getId(), node);
+    public boolean isNodeFiltering() {
+        return nodeFiltering;
+    }
 
+    public void scanOSMFile(File file) throws IOException, XMLStreamException {
+        try (InputStream stream = new FileInputStream(file)) {
+            scanStream(stream);
+        }
     }
 
-    private Way addWayToList(XMLStreamReader reader) {
-        long id = Long.parseLong(reader.getAttributeValue(null, "id"));
-        Way way = new Way(id);
+    public void scanPBFFile(File file) throws IOException, XMLStreamException {
+        try (InputStream stream = new FileInputStream(file)) {
+            scanPBFStream(stream);
+        }
+    }
 
-        osmElementController.saveWayData(way);
+    public void scanStream(InputStream stream) throws IOException, XMLStreamException {
+        startScan();
+        try {
+            parseStream(stream);
+        } finally {
+            endScan();
+        }
+    }
+
+    public void scanPBFStream(InputStream stream) throws IOException, XMLStreamException {
+        startScan();
+        try {
+            parsePBFStream(stream);
+        } finally {
+            endScan();
+        }
+    }
 
-        return way;
+    private void startScan() {
+        if (referencedNodes == null) referencedNodes = new ReferencedNodes();
+
+        scanning = true;
+        scanNanos -= System.nanoTime();
     }
 
-    private void addSubElementToWay(XMLStreamReader reader, Way lastWay) {
-        long id = Long.parseLong(reader.getAttributeValue(null, "ref"));
+    private void endScan() {
+        scanning = false;
+        scanNanos += System.nanoTime();
+    }
+
+    // Number of nodes the scans found, or -1 if there was no scan.
+    public long getReferencedNodeCount() {
+        return referencedNodes == null ? -1 : referencedNodes.size();
+    }
+
+    public void clearNodeFilter() {
+        referencedNodes = null;
+        scanNanos = 0;
+    }
 
-        lastWay.addNodeId(id);
+    public void parseOSMFile(File file) throws IOException, XMLStreamException {
+        if (byteTokenizer) {
+            try (FileChannel channel = FileChannel.open(file.toPath())) {
+                parseBytes(channel);
+            }
+        } else {
+            try (InputStream stream = new FileInputStream(file)) {
+                parseStream(stream);
+            }
+        }
+        System.gc();
+    }
 
+    public void parsePBFFile(File file) throws IOException, XMLStreamException {
+        try (InputStream stream = new FileInputStream(file)) {
+            parsePBFStream(stream);
+        }
+        System.gc();
     }
 
-    // 1. Adding relation to temp
-    // 2. Adding sub elements to the temp relation
-    // 3. Adding final relation to the real realtions list.
-    // Why: to have all sub elements in the final relations.
-    private Relation addRelationToList(XMLStreamReader reader) {
-        long id = Long.parseLong(reader.getAttributeValue(null, "id"));
-        Relation relation = new Relation(id);
-        tempOSMRelations.add(relation);
+    // Parses the stream as UTF-8 while it is read, so the document is never held in memory.
+    public void parseStream(InputStream stream) throws IOException, XMLStreamException {
+        if (byteTokenizer) {
+            parseBytes(Channels.newChannel(stream));
+            return;
+        }
 
-        return relation;
+        Reader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8), 1 << 16);
+        parseXML(XMLInputFactory.newFactory().createXMLStreamReader(reader));
     }
 
-    private void addMemberToRelation(XMLStreamReader reader) {
-        Relation relation = tempOSMRelations.get(tempOSMRelations.size() - 1);
-        long member = Long.parseLong(reader.getAttributeValue(null, "ref"));
-        String type = reader.getAttributeValue(null, "type").intern();
-        relation.addMember(member, type);
+    public void parseString(String string) throws IOException, XMLStreamException {
+        Reader stringReader = new StringReader(string);
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        XMLStreamReader reader = factory.createXMLStreamReader(stringReader);
+        parseXML(reader);
     }
 
-    private void parseAddressTags(long lastNodeId, float lon, float lat, HashMap<String, String> tags) {
-        if (tags.size() == 0) return;
+    // Blobs are read on the reader thread and inflated and decoded by the workers.
+    public void parsePBFStream(InputStream stream) throws IOException, XMLStreamException {
+        parse(new PBFReader(new BufferedInputStream(stream, 1 << 16), new ValueDictionary(), typeTable));
+    }
 
-        String city = tags.get("addr:city");
-        String housenumber = tags.get("addr:housenumber");
-        String postcode = tags.get("addr:postcode");
-        String street = tags.get("addr:street");
+    private void parseXML(XMLStreamReader reader) throws IOException, XMLStreamException {
+        parse(new XMLElementReader(reader, BATCH_SIZE, getMaxBatches(), new ValueDictionary(), typeTable));
+    }
 
-        if (city == null) return;
-        if (housenumber == null) return;
-        if (postcode == null) return;
-        if (street == null) return;
+    private void parseBytes(ReadableByteChannel channel) throws IOException, XMLStreamException {
+        parse(new ByteXMLReader(channel, BATCH_SIZE, getMaxBatches(), new ValueDictionary(), typeTable));
+    }
 
-        Address address = new Address(
-                city.intern(),
-                housenumber.equals("") ? "" : housenumber.intern(),
-                postcode.equals("") ? "" : postcode.intern(),
-                street.equals("") ? "" : street.intern(),
-                lat, lon);
-        addressController.saveAddressData(address);
+    // Batches in flight: one per worker, some ready for the committer and one being read.
+    private int getMaxBatches() {
+        return threadCount <= 1 ? 1 : threadCount * 2 + 2;
     }
 
-    private void parseTags(OSMElement lastElementParsed, HashMap<String, String> tags, String[] firstTag) {
+    private void parse(ElementReader elementReader) throws IOException, XMLStreamException {
+        keptNodes = 0;
+        droppedNodes = 0;
+
+        boolean clipping = clipper != null && !scanning && changes == null;
+        if (clipping) {
+            osmElementController.saveBoundsData(clipper.getBox());
+            unresolvedWays = new ArrayList<>();
+        }
+
+        if (threadCount <= 1) parseSequential(elementReader);
+
+        else parseConcurrent(elementReader);
+
+        if (clipping) finishClipping();
+
+        // Every address is in, the table of them can give back the room it grew by.
+        if (!scanning && changes == null && addressController.fetchTSTData() != null) {
+            addressController.fetchTSTData().trimToSize();
+        }
+
+        if (!scanning && changes == null && elementReader.getFirstTagKey() != null) {
+            firstTagKey = elementReader.getFirstTagKey();
+        }
+    }
+
+    // The edge nodes are stored last, then the highway pieces that end in them can be resolved.
+    private void finishClipping() {
+        clipper.finish(osmElementController);
+
+        for (Way way : unresolvedWays) resolveHighwayNodes(way);
+        unresolvedWays = null;
+    }
+
+    private void parseSequential(ElementReader elementReader) throws IOException, XMLStreamException {
+        long readNanos = 0, buildNanos = 0, commitNanos = 0, elements = 0;
+        long start = System.nanoTime();
+
         try {
-            if (tags.containsKey("route")) return;
+            while (true) {
+                long time = System.nanoTime();
+                Callable<ElementBatch> task = elementReader.next();
+                readNanos += System.nanoTime() - time;
 
-            if (tags.containsKey("name")) lastElementParsed.setName(tags.get("name").intern());
+                if (task == null) break;
 
-            if (tags.containsKey("type") && tags.get("type").equals("multipolygon")) {
-                lastElementParsed.setMultipolygon(true);
-            }
+                time = System.nanoTime();
+                ElementBatch batch = task.call();
+                buildNanos += System.nanoTime() - time;
 
-            if (tags.containsKey("landuse") || tags.containsKey("natural")) {
-                if (tags.containsKey("natural")) {
-                    lastElementParsed.setOSMType(OSMType.valueOf(tags.get("natural").toUpperCase()));
-                } else {
-                    OSMType type = OSMType.LANDUSE;
+                time = System.nanoTime();
+                commit(batch);
+                commitNanos += System.nanoTime() - time;
 
-                    try {
-                        type = OSMType.valueOf(tags.get("landuse").toUpperCase());
-                    } catch (Exception e) {
-                        // This exception is getting throwen a lot, because of all the missing Enum
-                    }
+                elements += batch.size();
+                batch.release();
+            }
+        } catch (Exception e) {
+            rethrow(e);
+        }
+
+        parseReport = new ParseReport(1, elements, readNanos, buildNanos, commitNanos, System.nanoTime() - start,
+                scanNanos, keptNodes, droppedNodes, clipper);
+    }
 
-                    lastElementParsed.setOSMType(type);
+    private void parseConcurrent(ElementReader elementReader) throws IOException, XMLStreamException {
+        BlockingQueue<Future<ElementBatch>> built = new ArrayBlockingQueue<>(getMaxBatches());
+
+        ExecutorService workers = Executors.newFixedThreadPool(threadCount, runnable -> {
+            Thread thread = new Thread(runnable, "osm-parser-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        AtomicLong readNanos = new AtomicLong();
+        AtomicLong buildNanos = new AtomicLong();
+        Throwable[] readFailure = new Throwable[1];
+        long commitNanos = 0, elements = 0;
+        long start = System.nanoTime();
+
+        Thread readerThread = new Thread(() -> {
+            try {
+                while (true) {
+                    long time = System.nanoTime();
+                    Callable<ElementBatch> task = elementReader.next();
+                    readNanos.addAndGet(System.nanoTime() - time);
+
+                    if (task == null) break;
+
+                    built.put(workers.submit(() -> {
+                        long buildStart = System.nanoTime();
+                        ElementBatch batch = task.call();
+                        buildNanos.addAndGet(System.nanoTime() - buildStart);
+
+                        return batch;
+                    }));
                 }
-            } else if (tags.containsKey("building")) {
-                lastElementParsed.setOSMType(OSMType.BUILDING);
-            } else if (tags.containsKey("highway")) {
-                parseHighway(lastElementParsed, tags);
-            } else {
-                lastElementParsed.setOSMType(OSMType.valueOf(firstTag[0].toUpperCase()));
+            } catch (InterruptedException e) {
+                return;
+            } catch (Throwable e) {
+                readFailure[0] = e;
+            }
+
+            try {
+                built.put(CompletableFuture.completedFuture(null));
+            } catch (InterruptedException e) {
+                // The committer has already given up.
+            }
+        }, "osm-parser-reader");
+
+        readerThread.setDaemon(true);
+        readerThread.start();
+
+        try {
+            while (true) {
+                ElementBatch batch = built.take().get();
+                if (batch == null) break;
+
+                long time = System.nanoTime();
+                commit(batch);
+                commitNanos += System.nanoTime() - time;
+
+                elements += batch.size();
+                batch.release();
             }
 
-        } catch (Exception err) {
-            // This exception is getting throwen a lot, because of all the missing Enum
-            // Types.
+            readerThread.join();
+            if (readFailure[0] != null) rethrow(readFailure[0]);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Parsing was interrupted");
+        } catch (ExecutionException e) {
+            rethrow(e.getCause());
+        } finally {
+            readerThread.interrupt();
+            workers.shutdownNow();
         }
+
+        parseReport = new ParseReport(threadCount, elements, readNanos.get(), buildNanos.get(), commitNanos,
+                System.nanoTime() - start, scanNanos, keptNodes, droppedNodes, clipper);
     }
 
-    private void parseHighway(OSMElement lastElementParsed, HashMap<String, String> tags) {
-        Way way = (Way) lastElementParsed;
+    private void rethrow(Throwable throwable) throws IOException, XMLStreamException {
+        if (throwable instanceof XMLStreamException) throw (XMLStreamException) throwable;
+        if (throwable instanceof IOException) throw (IOException) throwable;
+        if (throwable instanceof UncheckedIOException) throw ((UncheckedIOException) throwable).getCause();
+        if (throwable instanceof RuntimeException) throw (RuntimeException) throwable;
+        if (throwable instanceof Error) throw (Error) throwable;
 
-        // Need source and target for graph edges
-        for (long id : way.getNodeIds()) {
-            Node node = osmElementController.fetchNodeById(id);
-            way.addNode(node);
+        throw new IOException(throwable);
+    }
+
+    // Committer stage: writes the finished elements in file order. Highway nodes are
+    // resolved here, since every node before the way has been committed by now.
+    private void commit(ElementBatch batch) {
+        if (scanning) {
+            scan(batch);
+            return;
         }
 
-        if (tags.containsKey("maxspeed")) way.setMaxSpeed(Integer.parseInt(tags.get("maxspeed")));
+        if (changes != null) {
+            commitChanges(batch);
+            return;
+        }
+
+        for (int record = 0; record < batch.size(); record++) {
+            Object element = batch.getElement(record);
+
+            switch (batch.getKind(record)) {
+                case BOUNDS:
+                    if (clipper == null) osmElementController.saveBoundsData((Bounds) element);
+                    break;
+                case NODE:
+                    Node node = (Node) element;
+                    Address address = batch.getAddress(record);
+
+                    if (address == null && referencedNodes != null && !referencedNodes.contains(node.getId())) {
+                        droppedNodes++;
+                        break;
+                    }
+
+                    if (clipper != null && !clipper.contains(node.getLatitude(), node.getLongitude())) {
+                        clipper.addOutsideNode(node);
+                        break;
+                    }
+
+                    osmElementController.saveNodeData(node.getId(), node);
+                    keptNodes++;
+
+                    if (address != null) addressController.saveAddressData(node.getId(), address);
+                    break;
+                case WAY:
+                    Way way = (Way) element;
+                    boolean resolve = batch.shouldResolveNodes(record);
+
+                    if (clipper == null) {
+                        saveWay(way, resolve);
+                        break;
+                    }
+
+                    for (Way piece : clipper.clip(way, osmElementController.fetchAllNodes(), resolve)) saveWay(piece, resolve);
+                    break;
+                case RELATION:
+                    Relation relation = (Relation) element;
 
-        if (tags.containsKey("oneway")) {
-            if (tags.get("oneway").equals("yes")) way.setOneWay(true);
+                    if (clipper != null && !relation.getMembers().isEmpty()) {
+                        clipper.clipMembers(relation);
+                        if (relation.getMembers().isEmpty()) break;
+                    }
 
-            else way.setOneWay(false);
+                    osmElementController.saveRelationData(relation);
+                    break;
+            }
         }
-        OSMType type = OSMType.HIGHWAY;
+    }
+
+    private void saveWay(Way way, boolean resolve) {
+        osmElementController.saveWayData(way);
+
+        if (!resolve) return;
+
+        if (clipper != null && BoxClipper.hasEdgeNodes(way)) unresolvedWays.add(way);
 
-        type = setHighwayType(tags, type);
-        lastElementParsed.setOSMType(type);
+        else resolveHighwayNodes(way);
     }
 
-    private OSMType setHighwayType(HashMap<String, String> tags, OSMType type) {
-        try {
-            type = OSMType.valueOf(tags.get("highway").toUpperCase());
+    private void commitChanges(ElementBatch batch) {
+        for (int record = 0; record < batch.size(); record++) {
+            boolean delete = batch.getAction(record) == DELETE;
 
-            if (type == OSMType.RESIDENTIAL) type = OSMType.RESIDENTIAL_HIGHWAY;
+            switch (batch.getKind(record)) {
+                case NODE:
+                    Node node = (Node) batch.getElement(record);
 
-            else if (type == OSMType.UNCLASSIFIED) type = OSMType.UNCLASSIFIED_HIGHWAY;
+                    if (delete) changes.deleteNode(node.getId());
 
-        } catch (Exception e) {
+                    else changes.putNode(node, batch.getAddress(record));
+                    break;
+                case WAY:
+                    Way way = (Way) batch.getElement(record);
+
+                    if (delete) changes.deleteWay(way.getId());
+
+                    else changes.putWay(way, batch.shouldResolveNodes(record));
+                    break;
+                case RELATION:
+                    changes.addRelationChange();
+                    break;
+            }
+        }
+    }
+
+    // First pass of a filtered import, only ways and relations are looked at.
+    private void scan(ElementBatch batch) {
+        for (int record = 0; record < batch.size(); record++) {
+            switch (batch.getKind(record)) {
+                case WAY:
+                    referencedNodes.addWay((Way) batch.getElement(record));
+                    break;
+                case RELATION:
+                    referencedNodes.addRelation((Relation) batch.getElement(record));
+                    break;
+            }
+        }
+    }
+
+    // Need source and target for graph edges
+    private void resolveHighwayNodes(Way way) {
+        IdList ids = way.getNodeIds();
+        for (int i = 0; i < ids.size(); i++) {
+            Node node = osmElementController.fetchNodeById(ids.get(i));
+            way.addNode(node);
         }
-        return type;
     }
 }
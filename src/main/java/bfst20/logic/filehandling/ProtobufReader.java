@@ -0,0 +1,126 @@
+package bfst20.logic.filehandling;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+// Minimal protocol buffer wire format decoder over a byte array. Only what the
+// OSM PBF messages need: varints, zig-zag, length-delimited fields and skipping.
+class ProtobufReader {
+    static final int VARINT = 0;
+    static final int FIXED64 = 1;
+    static final int LENGTH_DELIMITED = 2;
+    static final int FIXED32 = 5;
+
+    private byte[] buffer;
+    private int position;
+    private int limit;
+
+    ProtobufReader(byte[] buffer, int offset, int length) {
+        this.buffer = buffer;
+        position = offset;
+        limit = offset + length;
+    }
+
+    boolean hasRemaining() {
+        return position < limit;
+    }
+
+    // Returns the key of the next field, or 0 at the current limit.
+    int readTag() throws IOException {
+        if (position >= limit) return 0;
+
+        return (int) readVarint();
+    }
+
+    static int fieldNumber(int tag) {
+        return tag >>> 3;
+    }
+
+    static int wireType(int tag) {
+        return tag & 7;
+    }
+
+    long readVarint() throws IOException {
+        long value = 0;
+
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (position >= limit) throw new IOException("Truncated varint");
+
+            byte b = buffer[position++];
+            value |= (long) (b & 0x7F) << shift;
+
+            if (b >= 0) return value;
+        }
+
+        throw new IOException("Malformed varint");
+    }
+
+    int readInt() throws IOException {
+        return (int) readVarint();
+    }
+
+    long readSignedVarint() throws IOException {
+        long value = readVarint();
+
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    int readLength() throws IOException {
+        int length = readInt();
+
+        if (length < 0 || length > limit - position) throw new IOException("Field length out of bounds");
+
+        return length;
+    }
+
+    String readString() throws IOException {
+        int length = readLength();
+        String string = new String(buffer, position, length, StandardCharsets.UTF_8);
+        position += length;
+
+        return string;
+    }
+
+    byte[] readBytes() throws IOException {
+        int length = readLength();
+        byte[] bytes = new byte[length];
+        System.arraycopy(buffer, position, bytes, 0, length);
+        position += length;
+
+        return bytes;
+    }
+
+    // Returns a reader over the next length-delimited field and moves past it.
+    ProtobufReader readMessage() throws IOException {
+        int length = readLength();
+        ProtobufReader reader = new ProtobufReader(buffer, position, length);
+        position += length;
+
+        return reader;
+    }
+
+    void skip(int tag) throws IOException {
+        switch (wireType(tag)) {
+            case VARINT:
+                readVarint();
+                break;
+            case FIXED64:
+                skipBytes(8);
+                break;
+            case LENGTH_DELIMITED:
+                skipBytes(readLength());
+                break;
+            case FIXED32:
+                skipBytes(4);
+                break;
+            default:
+                throw new IOException("Unsupported wire type " + wireType(tag));
+        }
+    }
+
+    private void skipBytes(int count) throws IOException {
+        if (count > limit - position) throw new IOException("Truncated field");
+
+        position += count;
+    }
+}
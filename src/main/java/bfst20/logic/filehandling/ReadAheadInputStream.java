@@ -0,0 +1,109 @@
+package bfst20.logic.filehandling;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// Reads the source on a thread of its own, at most chunkCount chunks ahead of the
+// caller. Used for gzip, whose single deflate stream cannot be split, so that
+// inflating at least overlaps with parsing.
+class ReadAheadInputStream extends InputStream {
+    private static final byte[] END = new byte[0];
+
+    private final InputStream source;
+    private final BlockingQueue<byte[]> chunks;
+    private final Thread readerThread;
+    private volatile Throwable readFailure;
+
+    private byte[] current;
+    private int position;
+    private int limit;
+    private boolean finished;
+
+    ReadAheadInputStream(InputStream source, int chunkSize, int chunkCount) {
+        this.source = source;
+        chunks = new ArrayBlockingQueue<>(chunkCount);
+
+        readerThread = new Thread(() -> {
+            try {
+                while (true) {
+                    byte[] chunk = source.readNBytes(chunkSize);
+                    if (chunk.length == 0) break;
+
+                    chunks.put(chunk);
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (Throwable e) {
+                readFailure = e;
+            }
+
+            try {
+                chunks.put(END);
+            } catch (InterruptedException e) {
+                // The stream has been closed.
+            }
+        }, "read-ahead");
+
+        readerThread.setDaemon(true);
+        readerThread.start();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) return -1;
+
+        return current[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) return 0;
+        if (!fill()) return -1;
+
+        int count = Math.min(length, limit - position);
+        System.arraycopy(current, position, buffer, offset, count);
+        position += count;
+
+        return count;
+    }
+
+    private boolean fill() throws IOException {
+        if (current != null && position < limit) return true;
+        if (finished) return false;
+
+        try {
+            current = chunks.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Reading was interrupted");
+        }
+
+        position = 0;
+        limit = current.length;
+
+        if (current == END) {
+            finished = true;
+            if (readFailure instanceof IOException) throw (IOException) readFailure;
+            if (readFailure != null) throw new IOException(readFailure);
+
+            return false;
+        }
+
+        return true;
+    }
+
+    @Override
+    public int available() {
+        return current == null ? 0 : limit - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        finished = true;
+        readerThread.interrupt();
+        source.close();
+    }
+}
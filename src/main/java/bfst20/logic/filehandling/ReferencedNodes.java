@@ -0,0 +1,86 @@
+package bfst20.logic.filehandling;
+
+import bfst20.logic.entities.Relation;
+import bfst20.logic.entities.Way;
+import bfst20.logic.misc.OSMType;
+import bfst20.logic.nodestore.IdList;
+import bfst20.logic.nodestore.IdSet;
+
+import java.util.Arrays;
+
+// Result of the first pass of a filtered import: the ids of the nodes LinePathService
+// will look up. Those are the nodes of every way it turns into a LinePath, which is
+// every typed way except coastlines, and the nodes of every way a relation refers to.
+// Relations come after their ways, so the node ids of the other ways are kept until
+// the first lookup ends the scan. A scan can span several files.
+class ReferencedNodes {
+    private IdSet nodes;
+    private IdSet relationWays;
+
+    // Other ways as: way id, node count, node ids.
+    private long[] pending;
+    private int pendingSize;
+    private boolean finished;
+
+    ReferencedNodes() {
+        nodes = new IdSet();
+        relationWays = new IdSet();
+        pending = new long[1024];
+    }
+
+    void addWay(Way way) {
+        OSMType type = way.getOSMType();
+
+        IdList ids = way.getNodeIds();
+
+        if (type != null && type != OSMType.COASTLINE) {
+            for (int i = 0; i < ids.size(); i++) nodes.add(ids.get(i));
+            return;
+        }
+
+        int count = ids.size();
+        if (pendingSize + count + 2 > pending.length) {
+            pending = Arrays.copyOf(pending, Math.max(pending.length * 2, pendingSize + count + 2));
+        }
+
+        pending[pendingSize++] = way.getId();
+        pending[pendingSize++] = count;
+        for (int i = 0; i < count; i++) pending[pendingSize++] = ids.get(i);
+    }
+
+    void addRelation(Relation relation) {
+        IdList members = relation.getMembers();
+        for (int i = 0; i < members.size(); i++) relationWays.add(members.get(i));
+    }
+
+    // Ends the scan by adding the nodes of the pending ways that a relation refers to.
+    private void finish() {
+        for (int i = 0; i < pendingSize; ) {
+            long wayId = pending[i];
+            int count = (int) pending[i + 1];
+            i += 2;
+
+            if (relationWays.contains(wayId)) {
+                for (int j = i; j < i + count; j++) nodes.add(pending[j]);
+            }
+            i += count;
+        }
+
+        pending = new long[0];
+        pendingSize = 0;
+        relationWays = new IdSet();
+        finished = true;
+    }
+
+    boolean contains(long id) {
+        if (!finished) finish();
+
+        return nodes.contains(id);
+    }
+
+    long size() {
+        if (!finished) finish();
+
+        return nodes.size();
+    }
+}
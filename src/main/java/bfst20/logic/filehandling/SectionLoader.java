@@ -0,0 +1,64 @@
+package bfst20.logic.filehandling;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+
+// Decodes sections of a map file on a pool of daemon threads, in the order they are
+// added. A section that is asked for before the pool gets to it is decoded by the
+// thread that asks, so nothing waits behind sections that are not needed yet. With
+// no threads every section is decoded when it is asked for.
+class SectionLoader {
+    private final ExecutorService pool;
+
+    SectionLoader(int threads) {
+        pool = threads <= 0 ? null : Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "bfst20-section-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    <T> Read<T> add(Read<T> read) {
+        FutureTask<T> task = new FutureTask<>(read::read);
+        if (pool != null) pool.execute(task);
+
+        return () -> get(task);
+    }
+
+    private static <T> T get(FutureTask<T> task) throws IOException {
+        // Does nothing if a pool thread has started it already.
+        task.run();
+
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while a map section was loaded");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+
+            throw new IOException(cause);
+        }
+    }
+
+    // The threads stop once the sections added so far are decoded.
+    void finish() {
+        if (pool != null) pool.shutdown();
+    }
+
+    // Sections that have not been started are left to whoever asks for them.
+    void cancel() {
+        if (pool != null) pool.shutdownNow();
+    }
+
+    interface Read<T> {
+        T read() throws IOException;
+    }
+}
@@ -0,0 +1,68 @@
+package bfst20.logic.filehandling;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Reads a section written by SectionWriter from its slice of the file.
+class SectionReader {
+    private final ByteBuffer in;
+    private final String[] strings;
+    private long lastX;
+    private long lastY;
+
+    SectionReader(ByteBuffer section) {
+        in = section;
+        strings = new String[in.getInt()];
+
+        for (int i = 0; i < strings.length; i++) {
+            byte[] bytes = new byte[in.getInt()];
+            in.get(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    ByteBuffer in() {
+        return in;
+    }
+
+    String readString() {
+        int index = in.getInt();
+
+        return index == -1 ? null : strings[index];
+    }
+
+    // Reads what SectionWriter.writeFixedPoint wrote.
+    int[] readFixedPoint(int count) {
+        int[] values = new int[count];
+        long x = lastX;
+        long y = lastY;
+
+        for (int i = 0; i < count; i += 2) {
+            x += unZigZag(readVarint());
+            y += unZigZag(readVarint());
+            values[i] = (int) x;
+            values[i + 1] = (int) y;
+        }
+
+        lastX = x;
+        lastY = y;
+
+        return values;
+    }
+
+    private long readVarint() {
+        long value = 0;
+
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+
+        throw new IllegalStateException("Varint longer than 10 bytes");
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
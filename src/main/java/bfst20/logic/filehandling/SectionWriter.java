@@ -0,0 +1,101 @@
+package bfst20.logic.filehandling;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Encodes one section of a map file in memory. Strings are collected in a table that
+// is written in front of the body, and the body refers to them by index (-1 for null),
+// so a street or city name is stored once however often it is used.
+class SectionWriter {
+    private final ByteArrayOutputStream body;
+    private final DataOutputStream out;
+    private final Map<String, Integer> stringIndices;
+    private final List<String> strings;
+    // The last fixed-point coordinate written, the next one is written relative to it.
+    private long lastX;
+    private long lastY;
+
+    SectionWriter() {
+        body = new ByteArrayOutputStream(1 << 16);
+        out = new DataOutputStream(body);
+        stringIndices = new HashMap<>();
+        strings = new ArrayList<>();
+    }
+
+    DataOutputStream out() {
+        return out;
+    }
+
+    void writeString(String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+
+        Integer index = stringIndices.get(value);
+        if (index == null) {
+            index = strings.size();
+            stringIndices.put(value, index);
+            strings.add(value);
+        }
+
+        out.writeInt(index);
+    }
+
+    // Fixed-point coordinates, each written as the zig-zag varint of its difference to
+    // the previous x or y, also across calls. Neighbouring vertices of a path are close,
+    // and so are the paths of a KD-tree, so most take two or three bytes instead of four.
+    void writeFixedPoint(int[] coords) throws IOException {
+        long x = lastX;
+        long y = lastY;
+        for (int i = 0; i + 1 < coords.length; i += 2) {
+            writeVarint(zigZag(coords[i] - x));
+            writeVarint(zigZag(coords[i + 1] - y));
+            x = coords[i];
+            y = coords[i + 1];
+        }
+
+        lastX = x;
+        lastY = y;
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private void writeVarint(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        out.writeByte((int) value);
+    }
+
+    // Writes the string table and the body. Returns the number of bytes written.
+    long writeTo(OutputStream target) throws IOException {
+        ByteArrayOutputStream table = new ByteArrayOutputStream();
+        DataOutputStream tableOut = new DataOutputStream(table);
+
+        tableOut.writeInt(strings.size());
+        for (String string : strings) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            tableOut.writeInt(bytes.length);
+            tableOut.write(bytes);
+        }
+
+        out.flush();
+        table.writeTo(target);
+        body.writeTo(target);
+
+        return (long) table.size() + body.size();
+    }
+}
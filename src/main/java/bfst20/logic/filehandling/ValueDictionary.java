@@ -0,0 +1,26 @@
+package bfst20.logic.filehandling;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+// Shares one String per distinct tag value that ends up in an entity, like
+// String.intern() but owned by a single parse, so it is freed with it.
+// The workers use it concurrently.
+class ValueDictionary {
+    private ConcurrentHashMap<String, String> values;
+
+    ValueDictionary() {
+        values = new ConcurrentHashMap<>();
+    }
+
+    String get(String value) {
+        String shared = values.get(value);
+        if (shared != null) return shared;
+
+        shared = values.putIfAbsent(value, value);
+        return shared == null ? value : shared;
+    }
+
+    int size() {
+        return values.size();
+    }
+}
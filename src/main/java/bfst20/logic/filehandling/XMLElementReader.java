@@ -0,0 +1,210 @@
+package bfst20.logic.filehandling;
+
+import bfst20.logic.misc.OSMTypeTable;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+
+import static bfst20.logic.filehandling.ElementBatch.*;
+import static javax.xml.stream.XMLStreamConstants.*;
+
+// Reader stage for OSM XML: copies the raw attributes of each element into
+// batches without interpreting them. The workers build the entities. In an
+// osmChange file each record also gets the section it is in.
+class XMLElementReader implements ElementReader {
+    private XMLStreamReader reader;
+    private boolean elementStarted;
+    private boolean finished;
+    private String firstTagKey;
+    private byte action;
+
+    // Attributes of the current node or bounds element, null if missing.
+    private String id, lat, lon, minLat, minLon, maxLat, maxLon;
+
+    private BlockingQueue<ElementBatch> pool;
+    private ThreadLocal<ElementBuilder> builders;
+
+    // At most batchCount batches are in flight, the reader waits for the committer to release one.
+    XMLElementReader(XMLStreamReader reader, int batchSize, int batchCount, ValueDictionary dictionary,
+                     OSMTypeTable typeTable) {
+        this(reader, batchSize, batchCount, dictionary, typeTable, null);
+    }
+
+    // A change file is classified with the first tag key of the map it changes, see ElementTags.classify.
+    XMLElementReader(XMLStreamReader reader, int batchSize, int batchCount, ValueDictionary dictionary,
+                     OSMTypeTable typeTable, String firstTagKey) {
+        this.reader = reader;
+        this.firstTagKey = firstTagKey;
+
+        pool = new ArrayBlockingQueue<>(batchCount);
+        for (int i = 0; i < batchCount; i++) pool.add(new ElementBatch(batchSize, pool));
+
+        builders = ThreadLocal.withInitial(() -> new ElementBuilder(dictionary, typeTable));
+    }
+
+    @Override
+    public Callable<ElementBatch> next() throws XMLStreamException, InterruptedException {
+        if (finished) return null;
+
+        ElementBatch batch = pool.take();
+        finished = !read(batch);
+
+        return () -> {
+            builders.get().build(batch);
+            return batch;
+        };
+    }
+
+    @Override
+    public String getFirstTagKey() {
+        return firstTagKey;
+    }
+
+    // Fills the batch until it is full or the document ends. Returns false at the end of the document.
+    private boolean read(ElementBatch batch) throws XMLStreamException {
+        if (firstTagKey != null) batch.setFirstTag(firstTagKey, 0);
+
+        while (reader.hasNext()) {
+            reader.next();
+
+            switch (reader.getEventType()) {
+                case START_ELEMENT:
+                    readStartElement(batch);
+                    break;
+                case END_ELEMENT:
+                    if (toAction(reader.getLocalName()) != NONE) action = NONE;
+                    if (batch.isFull() && isRecordElement(reader.getLocalName())) return true;
+                    break;
+            }
+        }
+
+        return false;
+    }
+
+    private boolean isRecordElement(String tagName) {
+        switch (tagName) {
+            case "bounds":
+            case "node":
+            case "way":
+            case "relation":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static byte toAction(String tagName) {
+        switch (tagName) {
+            case "create":
+                return CREATE;
+            case "modify":
+                return MODIFY;
+            case "delete":
+                return DELETE;
+            default:
+                return NONE;
+        }
+    }
+
+    private void readStartElement(ElementBatch batch) {
+        switch (reader.getLocalName()) {
+            case "create":
+            case "modify":
+            case "delete":
+                action = toAction(reader.getLocalName());
+                break;
+            case "bounds":
+                batch.startRecord(BOUNDS);
+                readAttributes();
+                batch.addField(MAX_LAT, null, maxLat);
+                batch.addField(MAX_LON, null, maxLon);
+                batch.addField(MIN_LAT, null, minLat);
+                batch.addField(MIN_LON, null, minLon);
+                break;
+            case "node":
+                elementStarted = true;
+                batch.startRecord(NODE, action);
+                readAttributes();
+                batch.addField(ID, null, id);
+
+                // Deleted nodes may come without coordinates.
+                if (lat == null && action == DELETE) break;
+
+                batch.addField(LAT, null, lat);
+                batch.addField(LON, null, lon);
+                break;
+            case "way":
+                elementStarted = true;
+                batch.startRecord(WAY, action);
+                batch.addField(ID, null, reader.getAttributeValue(null, "id"));
+                break;
+            case "nd":
+                if (batch.lastKind() == WAY) {
+                    batch.addField(ND, null, reader.getAttributeValue(null, "ref"));
+                }
+                break;
+            case "relation":
+                elementStarted = true;
+                batch.startRecord(RELATION, action);
+                batch.addField(ID, null, reader.getAttributeValue(null, "id"));
+                break;
+            case "member":
+                if (batch.lastKind() == RELATION) {
+                    batch.addField(MEMBER, reader.getAttributeValue(null, "type"), reader.getAttributeValue(null, "ref"));
+                }
+                break;
+            case "tag":
+                readTag(batch);
+                break;
+        }
+    }
+
+    // Reads the numeric attributes of a node or bounds in one pass, instead of
+    // one search of the attribute list per getAttributeValue(null, name).
+    private void readAttributes() {
+        id = lat = lon = minLat = minLon = maxLat = maxLon = null;
+
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            switch (reader.getAttributeLocalName(i)) {
+                case "id":
+                    id = reader.getAttributeValue(i);
+                    break;
+                case "lat":
+                    lat = reader.getAttributeValue(i);
+                    break;
+                case "lon":
+                    lon = reader.getAttributeValue(i);
+                    break;
+                case "minlat":
+                    minLat = reader.getAttributeValue(i);
+                    break;
+                case "minlon":
+                    minLon = reader.getAttributeValue(i);
+                    break;
+                case "maxlat":
+                    maxLat = reader.getAttributeValue(i);
+                    break;
+                case "maxlon":
+                    maxLon = reader.getAttributeValue(i);
+                    break;
+            }
+        }
+    }
+
+    private void readTag(ElementBatch batch) {
+        if (!elementStarted) return;
+
+        String key = reader.getAttributeValue(null, "k");
+        String value = reader.getAttributeValue(null, "v");
+
+        if (firstTagKey == null) {
+            firstTagKey = key;
+            batch.setFirstTag(key, Math.max(0, batch.size() - 1));
+        }
+
+        if (batch.lastKind() != BOUNDS && batch.size() > 0) batch.addField(TAG, key, value);
+    }
+}
@@ -2,14 +2,14 @@ package bfst20.logic.kdtree;
 
 import java.io.Serializable;
 
-import bfst20.logic.entities.LinePath;
-
 public class KDNode implements Serializable {
     private Direction direction;
-    private LinePath path;
+    // The index of the path in the PathStore of the tree, -1 for none.
+    private int path = -1;
     private KDNode right;
     private KDNode left;
     private float split;
+    private boolean removed;
 
     public void setLeftNode(KDNode node) {
         left = node;
@@ -19,7 +19,7 @@ public class KDNode implements Serializable {
         right = node;
     }
 
-    public void setLinePath(LinePath path) {
+    public void setPath(int path) {
         this.path = path;
     }
 
@@ -47,7 +47,16 @@ public class KDNode implements Serializable {
         return split;
     }
 
-    public LinePath getLinePath() {
+    public int getPath() {
         return path;
     }
+
+    // A removed node keeps its path as a split point, but is not returned by queries.
+    public void setRemoved(boolean removed) {
+        this.removed = removed;
+    }
+
+    public boolean isRemoved() {
+        return removed;
+    }
 }
\ No newline at end of file
@@ -1,9 +1,14 @@
 package bfst20.logic.kdtree;
 
 import java.io.Serializable;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
 
+import bfst20.logic.misc.FixedPoint;
+import bfst20.logic.misc.HeapLayout;
 import bfst20.logic.misc.OSMType;
 import bfst20.logic.entities.LinePath;
 import javafx.geometry.Point2D;
@@ -11,79 +16,187 @@ import javafx.geometry.Point2D;
 import static bfst20.logic.kdtree.Direction.Latitudinal;
 import static bfst20.logic.kdtree.Direction.Longitudinal;
 
+// The nodes refer to their paths by index in the PathStore of the tree.
 public class KDTree implements Serializable {
 
     private float closetNodeDistance;
-    private KDNode closetsNode;
+    private int closetsPath;
     private KDNode root;
+    private PathStore paths;
+    private int[] found;
+    private int foundCount;
 
 
-    public KDTree(List<LinePath> paths, Rect rect) {
+    public KDTree(List<LinePath> linePaths, Rect rect) {
+        paths = new PathStore(linePaths.size());
+        for (LinePath path : linePaths) paths.add(path);
+
         root = new KDNode();
-        root.setLinePath(paths.get(0));
         root.setDirection(Latitudinal);
         root.setSplit(rect.getMinLat() + (rect.getMaxLat() - rect.getMinLat()) / 2);
 
-        for (int i = 1; i < paths.size(); i++) {
-            LinePath path = paths.get(i);
+        // An empty layer keeps a root without a path, so paths can still be inserted.
+        if (linePaths.isEmpty()) return;
+
+        root.setPath(0);
+
+        for (int i = 1; i < linePaths.size(); i++) {
+            linePaths.get(i).removeWay();
 
-            insert(root, path);
+            insert(root, i);
         }
 
+        compact();
+
         System.gc();
     }
 
+    // Used when a map file is read.
+    public KDTree(KDNode root, PathStore paths) {
+        this.root = root;
+        this.paths = paths;
+    }
+
+    // Puts the paths in the order of the nodes, so the paths a query finds near each other
+    // are near each other in memory too.
+    private void compact() {
+        List<KDNode> nodes = new ArrayList<>(paths.size());
+        Deque<KDNode> stack = new ArrayDeque<>();
+        stack.push(root);
+
+        while (!stack.isEmpty()) {
+            KDNode node = stack.pop();
+            nodes.add(node);
+
+            if (node.getRightNode() != null) stack.push(node.getRightNode());
+            if (node.getLeftNode() != null) stack.push(node.getLeftNode());
+        }
+
+        int[] order = new int[nodes.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = nodes.get(i).getPath();
+            nodes.get(i).setPath(i);
+        }
+
+        paths = paths.reorder(order);
+    }
+
     public KDNode getRoot() {
         return root;
     }
 
-    public Iterable<LinePath> getElementsInRect(Rect rect, double zoomLevel, Point2D point) {
-        closetsNode = root;
+    // The nodes, the paths and the buffer of the last query.
+    public long heapBytes() {
+        long bytes = HeapLayout.shallow(KDTree.class) + paths.heapBytes() + (found == null ? 0 : HeapLayout.array(found.length, 4));
+        Deque<KDNode> stack = new ArrayDeque<>();
+        if (root != null) stack.push(root);
+
+        while (!stack.isEmpty()) {
+            KDNode node = stack.pop();
+            bytes += HeapLayout.shallow(KDNode.class);
+
+            if (node.getRightNode() != null) stack.push(node.getRightNode());
+            if (node.getLeftNode() != null) stack.push(node.getLeftNode());
+        }
+
+        return bytes;
+    }
+
+    public PathStore getPaths() {
+        return paths;
+    }
+
+    // The paths in the rectangle that are shown at the zoom level. With a point, the path
+    // closest to it is kept for getClosetsPathToMouse().
+    public int[] getPathsInRect(Rect rect, double zoomLevel, Point2D point) {
+        closetsPath = root == null ? -1 : root.getPath();
         closetNodeDistance = Float.POSITIVE_INFINITY;
 
+        found = new int[64];
+        foundCount = 0;
+        range(root, rect, zoomLevel, point);
+
+        int[] result = Arrays.copyOf(found, foundCount);
+        found = null;
+
+        return result;
+    }
+
+    public Iterable<LinePath> getElementsInRect(Rect rect, double zoomLevel, Point2D point) {
         List<LinePath> list = new ArrayList<>();
-        range(root, rect, list, zoomLevel, point);
+        for (int path : getPathsInRect(rect, zoomLevel, point)) list.add(paths.getLinePath(path));
+
         return list;
     }
 
-    private void range(KDNode node, Rect rect, List<LinePath> list, double zoomLevel, Point2D point) {
+    private void range(KDNode node, Rect rect, double zoomLevel, Point2D point) {
         if (node == null) return;
 
-        if (rect.contains(node) && OSMType.getZoomLevel(node.getLinePath().getOSMType()) <= zoomLevel) {
-            list.add(node.getLinePath());
+        int path = node.getPath();
+        boolean shown = path == -1 || OSMType.getZoomLevel(paths.getType(path)) <= zoomLevel;
 
-            if (point != null) {
-                float[] coords = node.getLinePath().getCoords();
+        if (path != -1 && !node.isRemoved() && rect.contains(paths, path) && shown) {
+            if (foundCount == found.length) found = Arrays.copyOf(found, found.length * 2);
+            found[foundCount++] = path;
 
-                for (int i = 2; i <= coords.length; i += 2) {
-                    float distance = (float) Math.sqrt(Math.pow(point.getY() - coords[i - 1], 2) + Math.pow(point.getX() - coords[i - 2], 2));
+            if (point != null) {
+                float distance = (float) (Math.sqrt(paths.squaredDistanceTo(path, point.getY() * FixedPoint.SCALE,
+                        point.getX() * FixedPoint.SCALE)) / FixedPoint.SCALE);
 
-                    if (distance < closetNodeDistance) {
-                        closetNodeDistance = distance;
-                        closetsNode = node;
-                    }
+                if (distance < closetNodeDistance) {
+                    closetNodeDistance = distance;
+                    closetsPath = path;
                 }
             }
         }
 
-        if (rect.intersectsRight(node) && OSMType.getZoomLevel(node.getLinePath().getOSMType()) <= zoomLevel) {
-            range(node.getRightNode(), rect, list, zoomLevel, point);
+        if (rect.intersectsRight(node) && shown) {
+            range(node.getRightNode(), rect, zoomLevel, point);
         }
 
-        if (rect.intersectsLeft(node) && OSMType.getZoomLevel(node.getLinePath().getOSMType()) <= zoomLevel) {
-            range(node.getLeftNode(), rect, list, zoomLevel, point);
+        if (rect.intersectsLeft(node) && shown) {
+            range(node.getLeftNode(), rect, zoomLevel, point);
         }
     }
 
-    public LinePath getClosetsLinepathToMouse() {
-        return closetsNode.getLinePath();
+    public int getClosetsPathToMouse() {
+        return closetsPath;
     }
 
     public double getClosetsLinePathToMouseDistance() {
         return closetNodeDistance;
     }
 
-    private void insert(KDNode node, LinePath path) {
+    public void insert(LinePath path) {
+        path.removeWay();
+
+        insert(root, paths.add(path));
+    }
+
+    // Follows the route insert() took for the path, by the center it got in the PathStore,
+    // and marks its node as removed.
+    public boolean remove(LinePath path) {
+        KDNode node = root;
+        float centerLatitude = PathStore.center(path.getMinX(), path.getMaxX());
+        float centerLongitude = PathStore.center(path.getMinY(), path.getMaxY());
+
+        while (node != null) {
+            if (!node.isRemoved() && node.getPath() != -1 && paths.matches(node.getPath(), path)) {
+                node.setRemoved(true);
+                return true;
+            }
+
+            if (node.getDirection() == Latitudinal) {
+                node = node.getSplit() > centerLatitude ? node.getLeftNode() : node.getRightNode();
+            } else {
+                node = node.getSplit() > centerLongitude ? node.getRightNode() : node.getLeftNode();
+            }
+        }
+
+        return false;
+    }
+
+    private void insert(KDNode node, int path) {
         if (node.getLeftNode() == null && node.getRightNode() == null) {
             insertNode(node, path);
         } else if (node.getLeftNode() != null && node.getRightNode() == null) {
@@ -95,17 +208,17 @@ public class KDTree implements Serializable {
         }
     }
 
-    private void insertNode(KDNode node, LinePath path) {
+    private void insertNode(KDNode node, int path) {
         if (node.getDirection() == Latitudinal) {
             KDNode newNode = createNewKdNode(path, Longitudinal);
-            if (node.getSplit() > path.getCenterLatitude()) {
+            if (node.getSplit() > paths.getCenterLatitude(path)) {
                 node.setLeftNode(newNode);
             } else {
                 node.setRightNode(newNode);
             }
         } else {
             KDNode newNode = createNewKdNode(path, Latitudinal);
-            if (node.getSplit() > path.getCenterLongitude()) {
+            if (node.getSplit() > paths.getCenterLongitude(path)) {
                 node.setRightNode(newNode);
             } else {
                 node.setLeftNode(newNode);
@@ -113,10 +226,10 @@ public class KDTree implements Serializable {
         }
     }
 
-    private void insertNodeLeftExists(KDNode node, LinePath path) {
+    private void insertNodeLeftExists(KDNode node, int path) {
         if (node.getDirection() == Latitudinal) {
             KDNode newNode = createNewKdNode(path, Longitudinal);
-            if (node.getSplit() > path.getCenterLatitude()) {
+            if (node.getSplit() > paths.getCenterLatitude(path)) {
 
                 insert(node.getLeftNode(), path);
             } else {
@@ -125,7 +238,7 @@ public class KDTree implements Serializable {
         } else {
             KDNode newNode = createNewKdNode(path, Latitudinal);
 
-            if (node.getSplit() > path.getCenterLongitude()) {
+            if (node.getSplit() > paths.getCenterLongitude(path)) {
                 node.setRightNode(newNode);
             } else {
                 insert(node.getLeftNode(), path);
@@ -133,17 +246,17 @@ public class KDTree implements Serializable {
         }
     }
 
-    private void insertNodeRightExists(KDNode node, LinePath path) {
+    private void insertNodeRightExists(KDNode node, int path) {
         if (node.getDirection() == Latitudinal) {
             KDNode newNode = createNewKdNode(path, Longitudinal);
-            if (node.getSplit() > path.getCenterLatitude()) {
+            if (node.getSplit() > paths.getCenterLatitude(path)) {
                 node.setLeftNode(newNode);
             } else {
                 insert(node.getRightNode(), path);
             }
         } else {
             KDNode newNode = createNewKdNode(path, Latitudinal);
-            if (node.getSplit() > path.getCenterLongitude()) {
+            if (node.getSplit() > paths.getCenterLongitude(path)) {
                 insert(node.getRightNode(), path);
             } else {
                 node.setLeftNode(newNode);
@@ -151,15 +264,15 @@ public class KDTree implements Serializable {
         }
     }
 
-    private void insertNodeBothExists(KDNode node, LinePath path) {
+    private void insertNodeBothExists(KDNode node, int path) {
         if (node.getDirection() == Latitudinal) {
-            if (node.getSplit() > path.getCenterLatitude()) {
+            if (node.getSplit() > paths.getCenterLatitude(path)) {
                 insert(node.getLeftNode(), path);
             } else {
                 insert(node.getRightNode(), path);
             }
         } else {
-            if (node.getSplit() > path.getCenterLongitude()) {
+            if (node.getSplit() > paths.getCenterLongitude(path)) {
                 insert(node.getRightNode(), path);
             } else {
                 insert(node.getLeftNode(), path);
@@ -167,16 +280,15 @@ public class KDTree implements Serializable {
         }
     }
 
-    private KDNode createNewKdNode(LinePath path, Direction direction) {
+    private KDNode createNewKdNode(int path, Direction direction) {
         KDNode node = new KDNode();
         node.setDirection(direction);
         if (direction == Latitudinal) {
-            node.setSplit(path.getCenterLatitude());
+            node.setSplit(paths.getCenterLatitude(path));
         } else {
-            node.setSplit(path.getCenterLongitude());
+            node.setSplit(paths.getCenterLongitude(path));
         }
-        path.removeWay();
-        node.setLinePath(path);
+        node.setPath(path);
 
         return node;
     }
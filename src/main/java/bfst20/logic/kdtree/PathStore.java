@@ -0,0 +1,399 @@
+package bfst20.logic.kdtree;
+
+import bfst20.logic.entities.LinePath;
+import bfst20.logic.misc.FixedPoint;
+import bfst20.logic.misc.HeapLayout;
+import bfst20.logic.misc.OSMType;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// The paths of one KD-tree layer in parallel primitive arrays instead of a LinePath
+// object each: the coordinates of all paths one after the other with where each path
+// starts, and the bounding box, type, flags, name and way id of every path. A path is
+// its index. Names are stored once per store and referred to by index.
+//
+// Coordinates and boxes are fixed-point, see FixedPoint. A path that spans less than
+// 65536 units (about 700 m) each way keeps its coordinates as 16-bit offsets from the
+// corner of its box, which most buildings and street segments do; other paths keep ints.
+public class PathStore implements Serializable {
+    private static final OSMType[] TYPES = OSMType.values();
+    private static final int FILL = 1;
+    private static final int MULTIPOLYGON = 2;
+    // The coordinates of the path are in wideCoords rather than shortCoords.
+    private static final int WIDE = 4;
+    private static final int SHORT_RANGE = 0xFFFF;
+
+    private char[] shortCoords;
+    private int[] wideCoords;
+    private int shortCount;
+    private int wideCount;
+    // Path i has lengths[i] coordinates from starts[i] in the array its flags name.
+    private int[] starts;
+    private int[] lengths;
+    // minX, maxX, minY, maxY of every path, named like in LinePath: x is the latitude.
+    private int[] boxes;
+    private byte[] types;
+    private byte[] flags;
+    private int[] names;
+    private long[] wayIds;
+    private List<String> nameTable;
+    private Map<String, Integer> nameIndices;
+    private int size;
+
+    public PathStore() {
+        this(16);
+    }
+
+    public PathStore(int expectedPaths) {
+        int capacity = Math.max(1, expectedPaths);
+
+        shortCoords = new char[capacity * 8];
+        wideCoords = new int[16];
+        starts = new int[capacity];
+        lengths = new int[capacity];
+        boxes = new int[capacity * 4];
+        types = new byte[capacity];
+        flags = new byte[capacity];
+        names = new int[capacity];
+        wayIds = new long[capacity];
+        nameTable = new ArrayList<>();
+        nameIndices = new HashMap<>();
+    }
+
+    // Copies the path, with the bounding box it has. Returns its index.
+    public int add(LinePath path) {
+        int[] pathCoords = toFixedPoint(path.getCoords());
+
+        return add(path.getOSMType(), pathCoords, path.getFill(), path.isMultipolygon(), path.getName(), path.getWayId(),
+                FixedPoint.of(path.getMinX()), FixedPoint.of(path.getMaxX()), FixedPoint.of(path.getMinY()), FixedPoint.of(path.getMaxY()));
+    }
+
+    // The bounding box follows from the coordinates, as for a path read from a map file.
+    public int add(OSMType type, int[] pathCoords, boolean fill, boolean multipolygon, String name, long wayId) {
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE;
+        int maxY = Integer.MIN_VALUE;
+
+        for (int i = 0; i < pathCoords.length; i += 2) {
+            minX = Math.min(minX, pathCoords[i + 1]);
+            minY = Math.min(minY, pathCoords[i]);
+
+            maxX = Math.max(maxX, pathCoords[i + 1]);
+            maxY = Math.max(maxY, pathCoords[i]);
+        }
+
+        return add(type, pathCoords, fill, multipolygon, name, wayId, minX, maxX, minY, maxY);
+    }
+
+    private int add(OSMType type, int[] pathCoords, boolean fill, boolean multipolygon, String name, long wayId,
+                    int minX, int maxX, int minY, int maxY) {
+        if (size == types.length) grow();
+
+        boxes[size * 4] = minX;
+        boxes[size * 4 + 1] = maxX;
+        boxes[size * 4 + 2] = minY;
+        boxes[size * 4 + 3] = maxY;
+
+        boolean wide = !fitsShort(pathCoords, minX, minY);
+        types[size] = type == null ? -1 : (byte) type.ordinal();
+        flags[size] = (byte) ((fill ? FILL : 0) | (multipolygon ? MULTIPOLYGON : 0) | (wide ? WIDE : 0));
+        names[size] = nameIndex(name);
+        wayIds[size] = wayId;
+        lengths[size] = pathCoords.length;
+
+        if (wide) {
+            ensureWide(pathCoords.length);
+            starts[size] = wideCount;
+            System.arraycopy(pathCoords, 0, wideCoords, wideCount, pathCoords.length);
+            wideCount += pathCoords.length;
+        } else {
+            ensureShort(pathCoords.length);
+            starts[size] = shortCount;
+            for (int i = 0; i < pathCoords.length; i += 2) {
+                shortCoords[shortCount++] = (char) (pathCoords[i] - minY);
+                shortCoords[shortCount++] = (char) (pathCoords[i + 1] - minX);
+            }
+        }
+
+        return size++;
+    }
+
+    // Whether every coordinate lies within 16 bits above the corner of the box.
+    private static boolean fitsShort(int[] pathCoords, int minX, int minY) {
+        for (int i = 0; i < pathCoords.length; i += 2) {
+            long y = (long) pathCoords[i] - minY;
+            long x = (long) pathCoords[i + 1] - minX;
+
+            if (y < 0 || y > SHORT_RANGE || x < 0 || x > SHORT_RANGE) return false;
+        }
+
+        return true;
+    }
+
+    private static int[] toFixedPoint(float[] coords) {
+        if (coords == null) return new int[0];
+
+        int[] result = new int[coords.length];
+        for (int i = 0; i < coords.length; i++) result[i] = FixedPoint.of(coords[i]);
+
+        return result;
+    }
+
+    private int nameIndex(String name) {
+        if (name == null) return -1;
+
+        Integer index = nameIndices.get(name);
+        if (index == null) {
+            index = nameTable.size();
+            nameIndices.put(name, index);
+            nameTable.add(name);
+        }
+
+        return index;
+    }
+
+    private void ensureShort(int length) {
+        if (shortCount + length > shortCoords.length) {
+            shortCoords = Arrays.copyOf(shortCoords, Math.max(shortCount + length, shortCoords.length + (shortCoords.length >> 1)));
+        }
+    }
+
+    private void ensureWide(int length) {
+        if (wideCount + length > wideCoords.length) {
+            wideCoords = Arrays.copyOf(wideCoords, Math.max(wideCount + length, wideCoords.length + (wideCoords.length >> 1)));
+        }
+    }
+
+    private void grow() {
+        resize(Math.max(16, types.length + (types.length >> 1)));
+    }
+
+    private void resize(int capacity) {
+        starts = Arrays.copyOf(starts, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        boxes = Arrays.copyOf(boxes, capacity * 4);
+        types = Arrays.copyOf(types, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+        names = Arrays.copyOf(names, capacity);
+        wayIds = Arrays.copyOf(wayIds, capacity);
+    }
+
+    // Drops the room left for more paths.
+    public void trimToSize() {
+        resize(size);
+        shortCoords = Arrays.copyOf(shortCoords, shortCount);
+        wideCoords = Arrays.copyOf(wideCoords, wideCount);
+    }
+
+    // A store with the paths in the given order, so paths that are used together lie together.
+    PathStore reorder(int[] order) {
+        PathStore result = new PathStore(order.length);
+        result.shortCoords = new char[shortCount];
+        result.wideCoords = new int[wideCount];
+        result.nameTable = nameTable;
+        result.nameIndices = nameIndices;
+
+        for (int path : order) {
+            int index = result.size++;
+            int length = lengths[path];
+
+            if ((flags[path] & WIDE) != 0) {
+                System.arraycopy(wideCoords, starts[path], result.wideCoords, result.wideCount, length);
+                result.starts[index] = result.wideCount;
+                result.wideCount += length;
+            } else {
+                System.arraycopy(shortCoords, starts[path], result.shortCoords, result.shortCount, length);
+                result.starts[index] = result.shortCount;
+                result.shortCount += length;
+            }
+
+            result.lengths[index] = length;
+            System.arraycopy(boxes, path * 4, result.boxes, index * 4, 4);
+            result.types[index] = types[path];
+            result.flags[index] = flags[path];
+            result.names[index] = names[path];
+            result.wayIds[index] = wayIds[path];
+        }
+
+        result.trimToSize();
+
+        return result;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long heapBytes() {
+        long bytes = HeapLayout.shallow(PathStore.class) + HeapLayout.array(shortCoords.length, 2)
+                + HeapLayout.array(wideCoords.length, 4) + HeapLayout.array(starts.length, 4)
+                + HeapLayout.array(lengths.length, 4) + HeapLayout.array(boxes.length, 4)
+                + HeapLayout.array(types.length, 1) + HeapLayout.array(flags.length, 1)
+                + HeapLayout.array(names.length, 4) + HeapLayout.array(wayIds.length, 8)
+                + HeapLayout.list(nameTable.size()) + HeapLayout.hashMap(nameIndices.size());
+
+        for (String name : nameTable) bytes += HeapLayout.string(name);
+
+        return bytes;
+    }
+
+    // The number of coordinates of the path, two per vertex.
+    public int getLength(int path) {
+        return lengths[path];
+    }
+
+    // The coordinates of the path in degrees, in the buffer if it is large enough. The
+    // first getLength(path) values of the returned array are the path.
+    public double[] getCoords(int path, double[] buffer) {
+        int length = lengths[path];
+        if (buffer == null || buffer.length < length) buffer = new double[Math.max(length, 64)];
+
+        int start = starts[path];
+        if ((flags[path] & WIDE) != 0) {
+            for (int i = 0; i < length; i++) buffer[i] = FixedPoint.toDouble(wideCoords[start + i]);
+        } else {
+            int minX = boxes[path * 4];
+            int minY = boxes[path * 4 + 2];
+
+            for (int i = 0; i < length; i += 2) {
+                buffer[i] = FixedPoint.toDouble(minY + shortCoords[start + i]);
+                buffer[i + 1] = FixedPoint.toDouble(minX + shortCoords[start + i + 1]);
+            }
+        }
+
+        return buffer;
+    }
+
+    public int[] getFixedCoords(int path) {
+        int length = lengths[path];
+        int start = starts[path];
+
+        if ((flags[path] & WIDE) != 0) return Arrays.copyOfRange(wideCoords, start, start + length);
+
+        int[] result = new int[length];
+        int minX = boxes[path * 4];
+        int minY = boxes[path * 4 + 2];
+
+        for (int i = 0; i < length; i += 2) {
+            result[i] = minY + shortCoords[start + i];
+            result[i + 1] = minX + shortCoords[start + i + 1];
+        }
+
+        return result;
+    }
+
+    public float[] getCoords(int path) {
+        int[] fixed = getFixedCoords(path);
+        float[] result = new float[fixed.length];
+        for (int i = 0; i < fixed.length; i++) result[i] = FixedPoint.toFloat(fixed[i]);
+
+        return result;
+    }
+
+    // Whether the box of the path overlaps the given fixed-point box.
+    boolean intersects(int path, int minX, int maxX, int minY, int maxY) {
+        int box = path * 4;
+
+        return boxes[box + 1] >= minX && boxes[box] <= maxX && boxes[box + 3] >= minY && boxes[box + 2] <= maxY;
+    }
+
+    // The squared distance from the fixed-point point to the nearest vertex of the path.
+    double squaredDistanceTo(int path, double x, double y) {
+        int start = starts[path];
+        int end = start + lengths[path];
+        double nearest = Double.POSITIVE_INFINITY;
+
+        if ((flags[path] & WIDE) != 0) {
+            for (int i = start; i < end; i += 2) {
+                double dy = y - wideCoords[i];
+                double dx = x - wideCoords[i + 1];
+
+                double distance = dx * dx + dy * dy;
+                if (distance < nearest) nearest = distance;
+            }
+        } else {
+            // Relative to the corner of the box, like the coordinates.
+            x -= boxes[path * 4];
+            y -= boxes[path * 4 + 2];
+
+            for (int i = start; i < end; i += 2) {
+                double dy = y - shortCoords[i];
+                double dx = x - shortCoords[i + 1];
+
+                double distance = dx * dx + dy * dy;
+                if (distance < nearest) nearest = distance;
+            }
+        }
+
+        return nearest;
+    }
+
+    public OSMType getType(int path) {
+        return types[path] == -1 ? null : TYPES[types[path]];
+    }
+
+    public boolean getFill(int path) {
+        return (flags[path] & FILL) != 0;
+    }
+
+    public boolean isMultipolygon(int path) {
+        return (flags[path] & MULTIPOLYGON) != 0;
+    }
+
+    public String getName(int path) {
+        return names[path] == -1 ? null : nameTable.get(names[path]);
+    }
+
+    public long getWayId(int path) {
+        return wayIds[path];
+    }
+
+    public float getMinX(int path) {
+        return FixedPoint.toFloat(boxes[path * 4]);
+    }
+
+    public float getMaxX(int path) {
+        return FixedPoint.toFloat(boxes[path * 4 + 1]);
+    }
+
+    public float getMinY(int path) {
+        return FixedPoint.toFloat(boxes[path * 4 + 2]);
+    }
+
+    public float getMaxY(int path) {
+        return FixedPoint.toFloat(boxes[path * 4 + 3]);
+    }
+
+    public float getCenterLatitude(int path) {
+        return FixedPoint.toFloat(center(boxes[path * 4], boxes[path * 4 + 1]));
+    }
+
+    public float getCenterLongitude(int path) {
+        return FixedPoint.toFloat(center(boxes[path * 4 + 2], boxes[path * 4 + 3]));
+    }
+
+    // The center a path with these bounds gets once it is stored.
+    static float center(float min, float max) {
+        return FixedPoint.toFloat(center(FixedPoint.of(min), FixedPoint.of(max)));
+    }
+
+    private static int center(int min, int max) {
+        return (int) (((long) min + max) >> 1);
+    }
+
+    // A copy of the path as a LinePath.
+    public LinePath getLinePath(int path) {
+        return new LinePath(getType(path), getCoords(path), getFill(path), isMultipolygon(path), getName(path), getWayId(path));
+    }
+
+    // Whether the path is a copy of the LinePath.
+    public boolean matches(int path, LinePath linePath) {
+        return getType(path) == linePath.getOSMType() && Arrays.equals(getFixedCoords(path), toFixedPoint(linePath.getCoords()));
+    }
+}
@@ -1,9 +1,11 @@
 package bfst20.logic.kdtree;
 
-import bfst20.logic.entities.LinePath;
+import bfst20.logic.misc.FixedPoint;
 
 public class Rect {
     private float minLat, maxLat, minLon, maxLon;
+    // The bounds in fixed-point, for comparing with the boxes of a PathStore.
+    private int fixedMinLat, fixedMaxLat, fixedMinLon, fixedMaxLon;
 
     public Rect() {
 
@@ -14,22 +16,31 @@ public class Rect {
         this.maxLon = maxLon;
         this.minLat = minLat;
         this.minLon = minLon;
+
+        fixedMaxLat = FixedPoint.of(maxLat);
+        fixedMaxLon = FixedPoint.of(maxLon);
+        fixedMinLat = FixedPoint.of(minLat);
+        fixedMinLon = FixedPoint.of(minLon);
     }
 
     public void setMinLat(float minLat) {
         this.minLat = minLat;
+        fixedMinLat = FixedPoint.of(minLat);
     }
 
     public void setMaxLat(float matLat) {
         this.maxLat = matLat;
+        fixedMaxLat = FixedPoint.of(matLat);
     }
 
     public void setMinLon(float minLon) {
         this.minLon = minLon;
+        fixedMinLon = FixedPoint.of(minLon);
     }
 
     public void setMaxLon(float maxLon) {
         this.maxLon = maxLon;
+        fixedMaxLon = FixedPoint.of(maxLon);
     }
 
     public float getMaxLat() {
@@ -64,9 +75,7 @@ public class Rect {
         }
     }
 
-    public boolean contains(KDNode node) {
-        LinePath path = node.getLinePath();
-        return (path.getMaxX() >= minLat) && (path.getMinX() <= maxLat)
-                && (path.getMaxY() >= minLon) && (path.getMinY() <= maxLon);
+    public boolean contains(PathStore paths, int path) {
+        return paths.intersects(path, fixedMinLat, fixedMaxLat, fixedMinLon, fixedMaxLon);
     }
 }
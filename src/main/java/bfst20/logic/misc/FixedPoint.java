@@ -0,0 +1,26 @@
+package bfst20.logic.misc;
+
+// Projected coordinates as ints in units of 1e-7 degree, the precision of OSM coordinates.
+// An int reaches 214 degrees, more than any projected latitude or longitude; values
+// beyond that, like the corners of a view zoomed far out, are clamped.
+public class FixedPoint {
+    public static final double SCALE = 1e7;
+    private static final double UNIT = 1 / SCALE;
+
+    private FixedPoint() {
+    }
+
+    public static int of(double value) {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, Math.round(value * SCALE)));
+    }
+
+    public static float toFloat(int value) {
+        return (float) (value / SCALE);
+    }
+
+    // Multiplies rather than divides, as it is used for every vertex drawn; the result
+    // may be one ulp off the nearest double, far below what the screen shows.
+    public static double toDouble(int value) {
+        return value * UNIT;
+    }
+}
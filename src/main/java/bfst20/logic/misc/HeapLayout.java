@@ -0,0 +1,93 @@
+package bfst20.logic.misc;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+// Estimated heap bytes of objects and arrays, from the layout HotSpot gives them: a header,
+// the fields, and padding to a multiple of 8. Used to account for the heap the map data
+// holds without walking every object; the structures count their own arrays and objects.
+public class HeapLayout {
+    public static final int REFERENCE = compressed("UseCompressedOops") ? 4 : 8;
+    public static final int HEADER = compressed("UseCompressedClassPointers") ? 12 : 16;
+    public static final int ARRAY_HEADER = (int) align(HEADER + 4);
+
+    private static final ClassValue<Long> SHALLOW = new ClassValue<>() {
+        @Override
+        protected Long computeValue(Class<?> type) {
+            long bytes = HEADER;
+
+            for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+                for (Field field : current.getDeclaredFields()) {
+                    if (!Modifier.isStatic(field.getModifiers())) bytes += fieldBytes(field.getType());
+                }
+            }
+
+            return align(bytes);
+        }
+    };
+
+    private HeapLayout() {
+    }
+
+    // The object itself, not what its fields refer to.
+    public static long shallow(Class<?> type) {
+        return SHALLOW.get(type);
+    }
+
+    public static long array(long length, int elementBytes) {
+        return align(ARRAY_HEADER + length * elementBytes);
+    }
+
+    public static long references(long length) {
+        return array(length, REFERENCE);
+    }
+
+    // The list and its array of references, as if it had no spare capacity.
+    public static long list(int size) {
+        return shallow(ArrayList.class) + references(size);
+    }
+
+    // The map, its table and its entries, not the keys and values.
+    public static long hashMap(int size) {
+        int table = Integer.highestOneBit(Math.max(1, (int) (size / 0.75f)) * 2 - 1);
+
+        return shallow(HashMap.class) + references(table) + size * align(HEADER + 4 + 3 * REFERENCE);
+    }
+
+    public static long string(String value) {
+        if (value == null) return 0;
+
+        boolean latin1 = value.chars().allMatch(c -> c < 256);
+
+        return shallow(String.class) + array(value.length(), latin1 ? 1 : 2);
+    }
+
+    private static long fieldBytes(Class<?> type) {
+        if (type == long.class || type == double.class) return 8;
+        if (type == int.class || type == float.class) return 4;
+        if (type == short.class || type == char.class) return 2;
+        if (type == byte.class || type == boolean.class) return 1;
+
+        return REFERENCE;
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    // Both are on by default for heaps below 32 GB.
+    private static boolean compressed(String option) {
+        try {
+            HotSpotDiagnosticMXBean bean = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+
+            return bean == null || Boolean.parseBoolean(bean.getVMOption(option).getValue());
+        } catch (RuntimeException e) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package bfst20.logic.misc;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// Maps tag values to OSMTypes, as read from a style file. Each line of the file is
+// "key value type". The first key of the file that an element has decides its type:
+// a row with the exact value wins, then the "*" rows of the key in file order. Type "@"
+// is the OSMType named by the value, if there is one, and type "-" is no type. Values
+// are matched ignoring case, like OSMType.valueOf(value.toUpperCase()) did. Lookups
+// neither allocate nor throw.
+public class OSMTypeTable {
+    public static final String DEFAULT_STYLE = "/osmtypes.style";
+
+    private static OSMTypeTable defaultTable;
+
+    private static final Row NO_TYPE = new Row(null, false);
+    private static final Row BY_NAME = new Row(null, true);
+
+    private static final ValueMap NAMES = new ValueMap();
+
+    static {
+        for (OSMType type : OSMType.values()) NAMES.put(type.name(), new Row(type, false));
+    }
+
+    private List<String> keys;
+    private List<ValueMap> values;
+    private List<List<Row>> anyValueRows;
+
+    private OSMTypeTable() {
+        keys = new ArrayList<>();
+        values = new ArrayList<>();
+        anyValueRows = new ArrayList<>();
+    }
+
+    // The table of the style file named by the bfst20.style property, or the bundled one.
+    public static synchronized OSMTypeTable getDefault() {
+        if (defaultTable != null) return defaultTable;
+
+        String path = System.getProperty("bfst20.style");
+
+        try (InputStream stream = path != null ? new FileInputStream(path) : OSMTypeTable.class.getResourceAsStream(DEFAULT_STYLE)) {
+            if (stream == null) throw new FileNotFoundException(DEFAULT_STYLE);
+
+            defaultTable = load(new InputStreamReader(stream, StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read the style file", e);
+        }
+
+        return defaultTable;
+    }
+
+    public static OSMTypeTable load(Reader style) throws IOException {
+        OSMTypeTable table = new OSMTypeTable();
+        BufferedReader reader = new BufferedReader(style);
+        int lineNumber = 0;
+
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            lineNumber++;
+
+            int comment = line.indexOf('#');
+            if (comment != -1) line = line.substring(0, comment);
+
+            line = line.trim();
+            if (line.isEmpty()) continue;
+
+            String[] columns = line.split("\\s+");
+            if (columns.length != 3) {
+                throw new IllegalArgumentException("Style line " + lineNumber + " is not \"key value type\": " + line);
+            }
+
+            table.addRow(columns[0], columns[1], parseRow(columns[2], lineNumber));
+        }
+
+        return table;
+    }
+
+    private static Row parseRow(String type, int lineNumber) {
+        if (type.equals("-")) return NO_TYPE;
+        if (type.equals("@")) return BY_NAME;
+
+        Row row = NAMES.get(type);
+        if (row == null) throw new IllegalArgumentException("Style line " + lineNumber + " has unknown type " + type);
+
+        return row;
+    }
+
+    private void addRow(String key, String value, Row row) {
+        int index = keys.indexOf(key);
+
+        if (index == -1) {
+            index = keys.size();
+            keys.add(key);
+            values.add(new ValueMap());
+            anyValueRows.add(new ArrayList<>());
+        }
+
+        if (value.equals("*")) anyValueRows.get(index).add(row);
+
+        else if (row != BY_NAME) values.get(index).put(value, row);
+
+        else throw new IllegalArgumentException("Type @ needs the value *, not " + value);
+    }
+
+    // Keys in the order they are tried.
+    public List<String> getKeys() {
+        return keys;
+    }
+
+    // Type of an element whose deciding key is getKeys().get(key). The value may be null.
+    public OSMType classify(int key, String value) {
+        if (value != null) {
+            Row row = values.get(key).get(value);
+            if (row != null) return row.type;
+        }
+
+        for (Row row : anyValueRows.get(key)) {
+            if (!row.byName) return row.type;
+
+            if (value == null) continue;
+
+            Row named = NAMES.get(value);
+            if (named != null) return named.type;
+        }
+
+        return null;
+    }
+
+    // The OSMType with this name ignoring case, or null.
+    public static OSMType byName(String name) {
+        if (name == null) return null;
+
+        Row row = NAMES.get(name);
+        return row == null ? null : row.type;
+    }
+
+    private static class Row {
+        private final OSMType type;
+        private final boolean byName;
+
+        Row(OSMType type, boolean byName) {
+            this.type = type;
+            this.byName = byName;
+        }
+    }
+
+    // Open addressing map from values to rows that ignores case. Keys are stored in
+    // upper case; ASCII values are compared char by char without converting them.
+    private static class ValueMap {
+        private String[] keys = new String[16];
+        private Row[] rows = new Row[16];
+        private int size;
+
+        void put(String value, Row row) {
+            if (size * 2 >= keys.length) grow();
+
+            String key = value.toUpperCase(Locale.ROOT);
+            int slot = slot(key);
+
+            if (keys[slot] == null) size++;
+            keys[slot] = key;
+            rows[slot] = row;
+        }
+
+        private void grow() {
+            String[] oldKeys = keys;
+            Row[] oldRows = rows;
+            keys = new String[oldKeys.length * 2];
+            rows = new Row[oldKeys.length * 2];
+            size = 0;
+
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != null) put(oldKeys[i], oldRows[i]);
+            }
+        }
+
+        Row get(String value) {
+            if (!isAscii(value)) value = value.toUpperCase(Locale.ROOT);
+
+            int slot = slot(value);
+            return keys[slot] == null ? null : rows[slot];
+        }
+
+        // Slot holding the value, or the empty slot where it would go.
+        private int slot(String value) {
+            int mask = keys.length - 1;
+            int slot = hash(value) & mask;
+
+            while (keys[slot] != null && !equalsUpperCase(value, keys[slot])) slot = (slot + 1) & mask;
+
+            return slot;
+        }
+
+        private static int hash(String value) {
+            int hash = 0;
+            for (int i = 0; i < value.length(); i++) hash = 31 * hash + toUpperCase(value.charAt(i));
+
+            return hash ^ (hash >>> 16);
+        }
+
+        private static boolean equalsUpperCase(String value, String key) {
+            if (value.length() != key.length()) return false;
+
+            for (int i = 0; i < value.length(); i++) {
+                if (toUpperCase(value.charAt(i)) != key.charAt(i)) return false;
+            }
+
+            return true;
+        }
+
+        private static char toUpperCase(char c) {
+            return c >= 'a' && c <= 'z' ? (char) (c - 32) : c;
+        }
+
+        private static boolean isAscii(String value) {
+            for (int i = 0; i < value.length(); i++) {
+                if (value.charAt(i) >= 128) return false;
+            }
+
+            return true;
+        }
+    }
+}
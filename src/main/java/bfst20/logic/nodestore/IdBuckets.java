@@ -0,0 +1,56 @@
+package bfst20.logic.nodestore;
+
+import bfst20.logic.misc.HeapLayout;
+
+import java.util.function.IntToLongFunction;
+
+// Directory over ascending ids: splits the id range into buckets of a few nodes each,
+// so a lookup only binary searches the indices of one bucket.
+class IdBuckets {
+    private static final int NODES_PER_BUCKET = 4;
+
+    private int[] starts;
+    private long firstId;
+    private long lastId;
+    private int shift;
+
+    IdBuckets(IntToLongFunction ids, int size) {
+        firstId = size == 0 ? 0 : ids.applyAsLong(0);
+        lastId = size == 0 ? -1 : ids.applyAsLong(size - 1);
+
+        long range = lastId - firstId;
+        while (shift < 63 && (range >>> shift) > Math.max(1, size / NODES_PER_BUCKET)) shift++;
+
+        // starts[b] is the first index in bucket b, starts[b + 1] the end of it.
+        int bucketCount = size == 0 ? 0 : (int) (range >>> shift) + 1;
+        starts = new int[bucketCount + 1];
+
+        int index = 0;
+        for (int bucket = 0; bucket <= bucketCount; bucket++) {
+            while (index < size && bucketOf(ids.applyAsLong(index)) < bucket) index++;
+            starts[bucket] = index;
+        }
+    }
+
+    long heapBytes() {
+        return HeapLayout.shallow(IdBuckets.class) + HeapLayout.array(starts.length, 4);
+    }
+
+    private long bucketOf(long id) {
+        return (id - firstId) >>> shift;
+    }
+
+    boolean inRange(long id) {
+        return id >= firstId && id <= lastId;
+    }
+
+    // First index that can hold the id. Only valid for ids in range.
+    int start(long id) {
+        return starts[(int) bucketOf(id)];
+    }
+
+    // End of the indices that can hold the id. Only valid for ids in range.
+    int end(long id) {
+        return starts[(int) bucketOf(id) + 1];
+    }
+}
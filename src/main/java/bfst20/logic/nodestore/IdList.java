@@ -0,0 +1,155 @@
+package bfst20.logic.nodestore;
+
+import bfst20.logic.misc.HeapLayout;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.function.LongPredicate;
+
+// Growable list of OSM ids in a long array, for the node ids of a way and the
+// members of a relation. A List<Long> costs a boxed Long and a reference per id;
+// this costs 8 bytes, or less than 16 while it grows. trim() drops the spare
+// capacity once the element is built.
+public class IdList implements Serializable {
+    private static final long[] EMPTY = new long[0];
+
+    private long[] ids;
+    private int size;
+
+    public IdList() {
+        ids = EMPTY;
+    }
+
+    public IdList(int capacity) {
+        ids = capacity == 0 ? EMPTY : new long[capacity];
+    }
+
+    public IdList(IdList other) {
+        ids = Arrays.copyOf(other.ids, other.size);
+        size = other.size;
+    }
+
+    public static IdList of(long... ids) {
+        IdList list = new IdList(ids.length);
+        System.arraycopy(ids, 0, list.ids, 0, ids.length);
+        list.size = ids.length;
+
+        return list;
+    }
+
+    public void add(long id) {
+        if (size == ids.length) grow(size + 1);
+
+        ids[size++] = id;
+    }
+
+    public void addAll(IdList other) {
+        if (size + other.size > ids.length) grow(size + other.size);
+
+        System.arraycopy(other.ids, 0, ids, size, other.size);
+        size += other.size;
+    }
+
+    // Adds the ids of the other list last to first.
+    public void addAllReversed(IdList other) {
+        if (size + other.size > ids.length) grow(size + other.size);
+
+        for (int i = other.size - 1; i >= 0; i--) ids[size++] = other.ids[i];
+    }
+
+    private void grow(int capacity) {
+        ids = Arrays.copyOf(ids, Math.max(capacity, Math.max(4, ids.length + (ids.length >> 1))));
+    }
+
+    public long get(int index) {
+        if (index >= size) throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+
+        return ids[index];
+    }
+
+    public long first() {
+        return get(0);
+    }
+
+    public long last() {
+        return get(size - 1);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long heapBytes() {
+        return HeapLayout.shallow(IdList.class) + (ids == EMPTY ? 0 : HeapLayout.array(ids.length, 8));
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(long id) {
+        for (int i = 0; i < size; i++) if (ids[i] == id) return true;
+
+        return false;
+    }
+
+    public void removeLast() {
+        if (size == 0) throw new IndexOutOfBoundsException("The list is empty");
+
+        size--;
+    }
+
+    public void removeIf(LongPredicate filter) {
+        int kept = 0;
+        for (int i = 0; i < size; i++) if (!filter.test(ids[i])) ids[kept++] = ids[i];
+
+        size = kept;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public void reverse() {
+        for (int i = 0, j = size - 1; i < j; i++, j--) {
+            long id = ids[i];
+            ids[i] = ids[j];
+            ids[j] = id;
+        }
+    }
+
+    public void sort() {
+        Arrays.sort(ids, 0, size);
+    }
+
+    public void trim() {
+        if (size < ids.length) ids = size == 0 ? EMPTY : Arrays.copyOf(ids, size);
+    }
+
+    public long[] toArray() {
+        return Arrays.copyOf(ids, size);
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (this == object) return true;
+        if (!(object instanceof IdList)) return false;
+
+        IdList other = (IdList) object;
+        return Arrays.equals(ids, 0, size, other.ids, 0, other.size);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 1;
+        for (int i = 0; i < size; i++) hash = 31 * hash + Long.hashCode(ids[i]);
+
+        return hash;
+    }
+
+    // Same format as a List<Long>, which the import reports and tests print.
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+}
@@ -0,0 +1,151 @@
+package bfst20.logic.nodestore;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+// Set of OSM ids at about two bytes per id. The ids are split into pages of 65536
+// consecutive ids. A page keeps the low 16 bits of its ids in a char array, and
+// switches to a bitmap once the array would be larger. Ids can be added in any
+// order, the arrays are sorted on the first lookup after an add.
+public class IdSet {
+    private static final int PAGE_BITS = 16;
+    private static final int PAGE_MASK = (1 << PAGE_BITS) - 1;
+    private static final int MAX_ARRAY_SIZE = (1 << PAGE_BITS) / 16;
+    private static final long MAX_PAGED_ID = (1L << 46) - 1;
+
+    private char[][] arrays;
+    private int[] arraySizes;
+    private long[][] bitmaps;
+    private boolean sorted;
+
+    // Negative ids and ids beyond the pages, which real extracts do not have.
+    private Set<Long> others;
+
+    public IdSet() {
+        arrays = new char[1024][];
+        arraySizes = new int[1024];
+        bitmaps = new long[1024][];
+        sorted = true;
+        others = new HashSet<>();
+    }
+
+    public void add(long id) {
+        if (id < 0 || id > MAX_PAGED_ID) {
+            others.add(id);
+            return;
+        }
+
+        int page = (int) (id >>> PAGE_BITS);
+        char low = (char) (id & PAGE_MASK);
+
+        if (page >= arrays.length) growPages(page);
+
+        long[] bitmap = bitmaps[page];
+        if (bitmap != null) {
+            bitmap[low >>> 6] |= 1L << low;
+            return;
+        }
+
+        char[] array = arrays[page];
+        int size = arraySizes[page];
+
+        if (array == null) {
+            array = new char[4];
+            arrays[page] = array;
+        } else if (size == array.length) {
+            // Ways share nodes, so a full page may hold many duplicates.
+            if (size == MAX_ARRAY_SIZE) size = sortPage(page);
+
+            if (size > MAX_ARRAY_SIZE / 2) {
+                toBitmap(page)[low >>> 6] |= 1L << low;
+                return;
+            }
+
+            if (size == array.length) {
+                array = Arrays.copyOf(array, size * 2);
+                arrays[page] = array;
+            }
+        }
+
+        array[size] = low;
+        arraySizes[page] = size + 1;
+        sorted = false;
+    }
+
+    private void growPages(int page) {
+        int capacity = Math.max(arrays.length * 2, page + 1);
+
+        arrays = Arrays.copyOf(arrays, capacity);
+        arraySizes = Arrays.copyOf(arraySizes, capacity);
+        bitmaps = Arrays.copyOf(bitmaps, capacity);
+    }
+
+    private long[] toBitmap(int page) {
+        long[] bitmap = new long[1 << (PAGE_BITS - 6)];
+        char[] array = arrays[page];
+
+        for (int i = 0; i < arraySizes[page]; i++) bitmap[array[i] >>> 6] |= 1L << array[i];
+
+        bitmaps[page] = bitmap;
+        arrays[page] = null;
+        arraySizes[page] = 0;
+
+        return bitmap;
+    }
+
+    public boolean contains(long id) {
+        if (id < 0 || id > MAX_PAGED_ID) return others.contains(id);
+
+        int page = (int) (id >>> PAGE_BITS);
+        if (page >= arrays.length) return false;
+
+        char low = (char) (id & PAGE_MASK);
+
+        long[] bitmap = bitmaps[page];
+        if (bitmap != null) return (bitmap[low >>> 6] & (1L << low)) != 0;
+
+        if (arrays[page] == null) return false;
+        if (!sorted) sort();
+
+        return Arrays.binarySearch(arrays[page], 0, arraySizes[page], low) >= 0;
+    }
+
+    private void sort() {
+        for (int page = 0; page < arrays.length; page++) {
+            if (arrays[page] != null) sortPage(page);
+        }
+
+        sorted = true;
+    }
+
+    // Sorts the array of the page, drops its duplicates and returns the new size.
+    private int sortPage(int page) {
+        char[] array = arrays[page];
+        int size = arraySizes[page];
+        Arrays.sort(array, 0, size);
+
+        int distinct = 0;
+        for (int i = 0; i < size; i++) {
+            if (distinct == 0 || array[i] != array[distinct - 1]) array[distinct++] = array[i];
+        }
+        arraySizes[page] = distinct;
+
+        return distinct;
+    }
+
+    public long size() {
+        if (!sorted) sort();
+
+        long size = others.size();
+        for (int page = 0; page < arrays.length; page++) {
+            size += arraySizes[page];
+
+            if (bitmaps[page] != null) {
+                for (long word : bitmaps[page]) size += Long.bitCount(word);
+            }
+        }
+
+        return size;
+    }
+}
@@ -0,0 +1,346 @@
+package bfst20.logic.nodestore;
+
+import bfst20.logic.entities.Node;
+import bfst20.logic.misc.HeapLayout;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+// Node coordinates in a memory-mapped temporary file, for imports whose nodes do not
+// fit on the heap. Puts append (id, latitude, longitude) records to the file. On the
+// first read the file is mapped: if the ids are dense enough it is rewritten as one
+// slot per id, otherwise the records are binary searched through a small bucket
+// directory. Coordinates are read straight from the mapping. Nodes that arrive out
+// of id order or after the first read are kept in an on-heap overflow store, and
+// the ids of removed nodes in a set that hides them. close() deletes the file.
+public class MappedNodeStore implements NodeStore {
+    private static final int RECORD_SIZE = 16;
+    private static final int SLOT_SIZE = 8;
+    private static final int SEGMENT_BITS = 30;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+
+    private File directory;
+    private File file;
+    private FileChannel channel;
+    private ByteBuffer writeBuffer;
+
+    private boolean pending;
+    private long pendingId;
+    private float pendingLatitude;
+    private float pendingLongitude;
+    private long firstId;
+    private long records;
+
+    private ByteBuffer[] segments;
+    private boolean dense;
+    private int slots;
+    private IdBuckets buckets;
+
+    private SortedNodeStore overflow;
+    private boolean hasOverflow;
+    private Map<Long, Node> nodes;
+    private Set<Long> removed;
+
+    public MappedNodeStore(File directory) {
+        this.directory = directory;
+
+        try {
+            file = createFile();
+            channel = new RandomAccessFile(file, "rw").getChannel();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        writeBuffer = ByteBuffer.allocateDirect(1 << 20);
+        overflow = new SortedNodeStore(16);
+        nodes = new HashMap<>();
+        removed = new HashSet<>();
+    }
+
+    private File createFile() throws IOException {
+        File created = File.createTempFile("bfst20-nodes", ".bin", directory);
+        created.deleteOnExit();
+
+        return created;
+    }
+
+    @Override
+    public void put(long id, float latitude, float longitude) {
+        if (!removed.isEmpty()) removed.remove(id);
+
+        if (segments != null || (pending && id < pendingId)) {
+            overflow.put(id, latitude, longitude);
+            hasOverflow = true;
+            nodes.remove(id);
+            return;
+        }
+
+        if (pending && id != pendingId) write(pendingId, pendingLatitude, pendingLongitude);
+
+        // The newest record is held back, so a repeated id replaces it like a map would.
+        pending = true;
+        pendingId = id;
+        pendingLatitude = latitude;
+        pendingLongitude = longitude;
+    }
+
+    private void write(long id, float latitude, float longitude) {
+        if (records == 0) firstId = id;
+        if (records == Integer.MAX_VALUE) throw new IllegalStateException("Too many nodes for the node store");
+
+        if (writeBuffer.remaining() < RECORD_SIZE) flush();
+
+        writeBuffer.putLong(id).putFloat(latitude).putFloat(longitude);
+        records++;
+    }
+
+    private void flush() {
+        try {
+            writeBuffer.flip();
+            while (writeBuffer.hasRemaining()) channel.write(writeBuffer);
+            writeBuffer.clear();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Ends the writing phase and maps the file, rewriting it as dense slots if that is not larger.
+    private void map() {
+        if (pending) write(pendingId, pendingLatitude, pendingLongitude);
+        pending = false;
+        flush();
+
+        try {
+            segments = map(channel, records * RECORD_SIZE);
+            channel.close();
+
+            long range = records == 0 ? 0 : idAt(records - 1) - firstId + 1;
+
+            if (records > 0 && range <= 2 * records && range <= Integer.MAX_VALUE) {
+                writeDense((int) range);
+            } else {
+                slots = (int) records;
+                buckets = new IdBuckets(this::idAt, slots);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        writeBuffer = null;
+    }
+
+    private void writeDense(int range) throws IOException {
+        File denseFile = createFile();
+
+        try (FileChannel denseChannel = new RandomAccessFile(denseFile, "rw").getChannel()) {
+            channel = denseChannel;
+            long record = 0;
+
+            for (int slot = 0; slot < range; slot++) {
+                if (writeBuffer.remaining() < SLOT_SIZE) flush();
+
+                if (record < records && idAt(record) == firstId + slot) {
+                    writeBuffer.putFloat(latitudeAtRecord(record)).putFloat(longitudeAtRecord(record));
+                    record++;
+                } else {
+                    writeBuffer.putFloat(Float.NaN).putFloat(Float.NaN);
+                }
+            }
+            flush();
+
+            segments = map(denseChannel, (long) range * SLOT_SIZE);
+        }
+
+        delete(file);
+        file = denseFile;
+        dense = true;
+        slots = range;
+    }
+
+    private static ByteBuffer[] map(FileChannel channel, long size) throws IOException {
+        ByteBuffer[] mapped = new ByteBuffer[(int) ((size + SEGMENT_MASK) >>> SEGMENT_BITS)];
+
+        for (int i = 0; i < mapped.length; i++) {
+            long start = (long) i << SEGMENT_BITS;
+            mapped[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(1L << SEGMENT_BITS, size - start));
+        }
+
+        return mapped;
+    }
+
+    private long readLong(long offset) {
+        return segments[(int) (offset >>> SEGMENT_BITS)].getLong((int) (offset & SEGMENT_MASK));
+    }
+
+    private float readFloat(long offset) {
+        return segments[(int) (offset >>> SEGMENT_BITS)].getFloat((int) (offset & SEGMENT_MASK));
+    }
+
+    private long idAt(long record) {
+        return readLong(record * RECORD_SIZE);
+    }
+
+    private float latitudeAtRecord(long record) {
+        return readFloat(record * RECORD_SIZE + 8);
+    }
+
+    private float longitudeAtRecord(long record) {
+        return readFloat(record * RECORD_SIZE + 12);
+    }
+
+    // Index in the file, or -1. Does not look at the overflow store.
+    private int mappedIndexOf(long id) {
+        if (dense) {
+            if (id < firstId || id - firstId >= slots) return -1;
+
+            int slot = (int) (id - firstId);
+            return Float.isNaN(readFloat((long) slot * SLOT_SIZE)) ? -1 : slot;
+        }
+
+        if (!buckets.inRange(id)) return -1;
+
+        int low = buckets.start(id);
+        int high = buckets.end(id) - 1;
+
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long middleId = idAt(middle);
+
+            if (middleId < id) low = middle + 1;
+
+            else if (middleId > id) high = middle - 1;
+
+            else return middle;
+        }
+
+        return -1;
+    }
+
+    @Override
+    public int indexOf(long id) {
+        if (segments == null) map();
+        if (!removed.isEmpty() && removed.contains(id)) return -1;
+
+        if (hasOverflow) {
+            int index = overflow.indexOf(id);
+            if (index != -1) return slots + index;
+        }
+
+        return mappedIndexOf(id);
+    }
+
+    @Override
+    public float latitudeAt(int index) {
+        if (index >= slots) return overflow.latitudeAt(index - slots);
+
+        return dense ? readFloat((long) index * SLOT_SIZE) : latitudeAtRecord(index);
+    }
+
+    @Override
+    public float longitudeAt(int index) {
+        if (index >= slots) return overflow.longitudeAt(index - slots);
+
+        return dense ? readFloat((long) index * SLOT_SIZE + 4) : longitudeAtRecord(index);
+    }
+
+    @Override
+    public Node get(long id) {
+        Node node = nodes.get(id);
+        if (node != null) return node;
+
+        int index = indexOf(id);
+        if (index == -1) return null;
+
+        node = new Node(id, latitudeAt(index), longitudeAt(index));
+        nodes.put(id, node);
+
+        return node;
+    }
+
+    @Override
+    public void remove(long id) {
+        if (!contains(id)) return;
+
+        nodes.remove(id);
+        removed.add(id);
+    }
+
+    @Override
+    public boolean contains(long id) {
+        return indexOf(id) != -1;
+    }
+
+    @Override
+    public int size() {
+        int[] size = {0};
+        forEach((id, latitude, longitude) -> size[0]++);
+
+        return size[0];
+    }
+
+    @Override
+    public void forEach(Visitor visitor) {
+        if (segments == null) map();
+
+        for (int index = 0; index < slots; index++) {
+            long id = dense ? firstId + index : idAt(index);
+            float latitude = latitudeAt(index);
+
+            if (dense && Float.isNaN(latitude)) continue;
+            if (hasOverflow && overflow.contains(id)) continue;
+            if (!removed.isEmpty() && removed.contains(id)) continue;
+
+            visitor.visit(id, latitude, longitudeAt(index));
+        }
+
+        if (hasOverflow) {
+            overflow.forEach((id, latitude, longitude) -> {
+                if (removed.isEmpty() || !removed.contains(id)) visitor.visit(id, latitude, longitude);
+            });
+        }
+    }
+
+    // The direct write buffer and the mapped segments are outside the heap.
+    @Override
+    public long heapBytes() {
+        long bytes = HeapLayout.shallow(MappedNodeStore.class) + HeapLayout.hashMap(nodes.size())
+                + nodes.size() * (HeapLayout.shallow(Long.class) + HeapLayout.shallow(Node.class))
+                + HeapLayout.hashMap(removed.size()) + removed.size() * HeapLayout.shallow(Long.class);
+        if (segments != null) bytes += HeapLayout.references(segments.length);
+        if (buckets != null) bytes += buckets.heapBytes();
+        if (overflow != null) bytes += overflow.heapBytes();
+
+        return bytes;
+    }
+
+    @Override
+    public void close() {
+        segments = null;
+        buckets = null;
+        nodes = new HashMap<>();
+        removed = new HashSet<>();
+        overflow.close();
+
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // The file is deleted anyway.
+        }
+
+        delete(file);
+    }
+
+    // A mapped file can not be deleted on every platform before the mapping is
+    // collected, so the file is also marked for deletion on exit.
+    private static void delete(File file) {
+        if (!file.delete()) file.deleteOnExit();
+    }
+}
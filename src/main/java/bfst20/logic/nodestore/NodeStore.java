@@ -0,0 +1,56 @@
+package bfst20.logic.nodestore;
+
+import bfst20.logic.entities.Node;
+
+import java.io.File;
+
+// Coordinates of every node in the file, keyed by OSM id. Coordinates are read by
+// index without creating Node objects; get() creates a Node only for nodes that are
+// needed as objects, and returns the same object for the same id every time.
+public interface NodeStore {
+    // Heap bytes per node of SortedNodeStore while it grows.
+    int HEAP_BYTES_PER_NODE = 24;
+
+    // Picks the store for an import of about expectedNodes nodes. The bfst20.nodestore property
+    // forces "heap" or "mapped"; by default the mapped store is used when the heap store would
+    // take more than a quarter of the heap, leaving the rest for ways, KD-trees and the graph.
+    static NodeStore create(long expectedNodes) {
+        String mode = System.getProperty("bfst20.nodestore", "auto");
+        boolean mapped = mode.equals("mapped")
+                || (mode.equals("auto") && expectedNodes * HEAP_BYTES_PER_NODE > Runtime.getRuntime().maxMemory() / 4);
+
+        if (mapped) return new MappedNodeStore(new File(System.getProperty("bfst20.nodestore.dir", System.getProperty("java.io.tmpdir"))));
+
+        return new SortedNodeStore();
+    }
+
+    void put(long id, float latitude, float longitude);
+
+    // Index of the node for latitudeAt/longitudeAt, or -1 if it is not stored.
+    int indexOf(long id);
+
+    float latitudeAt(int index);
+
+    float longitudeAt(int index);
+
+    Node get(long id);
+
+    // Forgets the node, so it is neither found nor visited until it is put again.
+    void remove(long id);
+
+    boolean contains(long id);
+
+    int size();
+
+    void forEach(Visitor visitor);
+
+    // Estimated heap the store takes, with the Node objects get() made. A file it maps is not on the heap.
+    long heapBytes();
+
+    // Frees the store and any file behind it. The store is empty afterwards.
+    void close();
+
+    interface Visitor {
+        void visit(long id, float latitude, float longitude);
+    }
+}
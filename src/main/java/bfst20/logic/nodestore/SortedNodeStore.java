@@ -0,0 +1,226 @@
+package bfst20.logic.nodestore;
+
+import bfst20.logic.entities.Node;
+import bfst20.logic.misc.HeapLayout;
+
+import java.util.Arrays;
+
+// Nodes in parallel primitive arrays sorted by id: 16 bytes per node, plus a reference
+// per node once get() has been used. OSM files list nodes by ascending id, so puts
+// append; input out of order is sorted before the next read, the last put winning.
+// Lookups go through a directory of id buckets and a binary search inside the bucket.
+// A removed node keeps its slot with NaN coordinates until the next sort.
+public class SortedNodeStore implements NodeStore {
+    private long[] ids;
+    private float[] latitudes;
+    private float[] longitudes;
+    private Node[] nodes;
+    private int size;
+    private int removed;
+    private boolean sorted = true;
+
+    private IdBuckets buckets;
+
+    public SortedNodeStore() {
+        this(1 << 16);
+    }
+
+    public SortedNodeStore(int expectedSize) {
+        int capacity = Math.max(16, expectedSize);
+
+        ids = new long[capacity];
+        latitudes = new float[capacity];
+        longitudes = new float[capacity];
+    }
+
+    @Override
+    public void put(long id, float latitude, float longitude) {
+        if (size > 0 && id <= ids[size - 1]) {
+            if (sorted && id == ids[size - 1]) {
+                if (Float.isNaN(latitudes[size - 1])) removed--;
+                latitudes[size - 1] = latitude;
+                longitudes[size - 1] = longitude;
+                if (nodes != null) nodes[size - 1] = null;
+                return;
+            }
+
+            sorted = false;
+        }
+
+        if (size == ids.length) grow();
+
+        ids[size] = id;
+        latitudes[size] = latitude;
+        longitudes[size] = longitude;
+        size++;
+
+        buckets = null;
+    }
+
+    private void grow() {
+        int capacity = Math.min(Integer.MAX_VALUE - 8, Math.max(16, ids.length + (ids.length >> 1)));
+        if (capacity <= size) throw new IllegalStateException("Too many nodes for the node store");
+
+        resize(capacity);
+    }
+
+    private void resize(int capacity) {
+        ids = Arrays.copyOf(ids, capacity);
+        latitudes = Arrays.copyOf(latitudes, capacity);
+        longitudes = Arrays.copyOf(longitudes, capacity);
+        if (nodes != null) nodes = Arrays.copyOf(nodes, capacity);
+    }
+
+    // Sorts if needed, drops the spare capacity and builds the bucket directory.
+    private void prepare() {
+        if (!sorted) sort();
+        if (size < ids.length) resize(size);
+
+        long[] sortedIds = ids;
+        buckets = new IdBuckets(index -> sortedIds[index], size);
+    }
+
+    // Stable sort by id, so the last put of an id is the one kept. Removed nodes are dropped.
+    private void sort() {
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) order[i] = i;
+        mergeSort(order, new int[size], 0, size);
+
+        long[] sortedIds = new long[size];
+        float[] sortedLatitudes = new float[size];
+        float[] sortedLongitudes = new float[size];
+        Node[] sortedNodes = nodes == null ? null : new Node[size];
+        int count = 0;
+
+        for (int i = 0; i < size; i++) {
+            int from = order[i];
+
+            if (count > 0 && sortedIds[count - 1] == ids[from]) count--;
+            if (Float.isNaN(latitudes[from])) continue;
+
+            sortedIds[count] = ids[from];
+            sortedLatitudes[count] = latitudes[from];
+            sortedLongitudes[count] = longitudes[from];
+            if (sortedNodes != null) sortedNodes[count] = nodes[from];
+            count++;
+        }
+
+        ids = sortedIds;
+        latitudes = sortedLatitudes;
+        longitudes = sortedLongitudes;
+        nodes = sortedNodes;
+        size = count;
+        removed = 0;
+        sorted = true;
+    }
+
+    private void mergeSort(int[] order, int[] buffer, int from, int to) {
+        if (to - from < 2) return;
+
+        int middle = (from + to) >>> 1;
+        mergeSort(order, buffer, from, middle);
+        mergeSort(order, buffer, middle, to);
+
+        if (ids[order[middle - 1]] <= ids[order[middle]]) return;
+
+        System.arraycopy(order, from, buffer, from, to - from);
+        int left = from, right = middle;
+
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < middle && ids[buffer[left]] <= ids[buffer[right]])) order[i] = buffer[left++];
+
+            else order[i] = buffer[right++];
+        }
+    }
+
+    @Override
+    public int indexOf(long id) {
+        if (buckets == null) prepare();
+        if (!buckets.inRange(id)) return -1;
+
+        int index = Arrays.binarySearch(ids, buckets.start(id), buckets.end(id), id);
+
+        return index < 0 || Float.isNaN(latitudes[index]) ? -1 : index;
+    }
+
+    @Override
+    public float latitudeAt(int index) {
+        return latitudes[index];
+    }
+
+    @Override
+    public float longitudeAt(int index) {
+        return longitudes[index];
+    }
+
+    @Override
+    public Node get(long id) {
+        int index = indexOf(id);
+        if (index == -1) return null;
+
+        if (nodes == null) nodes = new Node[ids.length];
+        if (nodes[index] == null) nodes[index] = new Node(id, latitudes[index], longitudes[index]);
+
+        return nodes[index];
+    }
+
+    @Override
+    public void remove(long id) {
+        int index = indexOf(id);
+        if (index == -1) return;
+
+        latitudes[index] = Float.NaN;
+        longitudes[index] = Float.NaN;
+        if (nodes != null) nodes[index] = null;
+        removed++;
+    }
+
+    @Override
+    public boolean contains(long id) {
+        return indexOf(id) != -1;
+    }
+
+    @Override
+    public int size() {
+        if (!sorted) prepare();
+
+        return size - removed;
+    }
+
+    @Override
+    public void forEach(Visitor visitor) {
+        if (!sorted) prepare();
+
+        for (int i = 0; i < size; i++) {
+            if (!Float.isNaN(latitudes[i])) visitor.visit(ids[i], latitudes[i], longitudes[i]);
+        }
+    }
+
+    @Override
+    public long heapBytes() {
+        long bytes = HeapLayout.shallow(SortedNodeStore.class) + HeapLayout.array(ids.length, 8)
+                + HeapLayout.array(latitudes.length, 4) + HeapLayout.array(longitudes.length, 4);
+        if (buckets != null) bytes += buckets.heapBytes();
+
+        if (nodes != null) {
+            bytes += HeapLayout.references(nodes.length);
+            for (int i = 0; i < size; i++) {
+                if (nodes[i] != null) bytes += HeapLayout.shallow(Node.class);
+            }
+        }
+
+        return bytes;
+    }
+
+    @Override
+    public void close() {
+        ids = new long[16];
+        latitudes = new float[16];
+        longitudes = new float[16];
+        nodes = null;
+        size = 0;
+        removed = 0;
+        sorted = true;
+        buckets = null;
+    }
+}
@@ -0,0 +1,154 @@
+package bfst20.logic.routing;
+
+import bfst20.logic.entities.Address;
+import bfst20.logic.misc.HeapLayout;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// The addresses of a map as columns, one row per address: the index of its city, house
+// number, postcode and street in a dictionary of the distinct values of that field, and
+// its coordinates. A map has many addresses but few distinct values, so a row takes 24
+// bytes; an Address object is only made by get, for the addresses a search returns.
+public class AddressTable implements Serializable {
+    private static final int NONE = -1;
+
+    private final Dictionary cities = new Dictionary();
+    private final Dictionary houseNumbers = new Dictionary();
+    private final Dictionary postcodes = new Dictionary();
+    private final Dictionary streets = new Dictionary();
+
+    private int[] cityIds;
+    private int[] houseNumberIds;
+    private int[] postcodeIds;
+    private int[] streetIds;
+    private float[] lats;
+    private float[] lons;
+    private int size;
+
+    public AddressTable() {
+        this(16);
+    }
+
+    public AddressTable(int capacity) {
+        capacity = Math.max(1, capacity);
+        cityIds = new int[capacity];
+        houseNumberIds = new int[capacity];
+        postcodeIds = new int[capacity];
+        streetIds = new int[capacity];
+        lats = new float[capacity];
+        lons = new float[capacity];
+    }
+
+    // Returns the row of the address.
+    public int add(Address address) {
+        return add(address.getCity(), address.getHouseNumber(), address.getPostcode(), address.getStreet(),
+                address.getLat(), address.getLon());
+    }
+
+    public int add(String city, String houseNumber, String postcode, String street, float lat, float lon) {
+        if (size == lats.length) grow(size + (size >> 1) + 1);
+
+        cityIds[size] = cities.indexOf(city);
+        houseNumberIds[size] = houseNumbers.indexOf(houseNumber);
+        postcodeIds[size] = postcodes.indexOf(postcode);
+        streetIds[size] = streets.indexOf(street);
+        lats[size] = lat;
+        lons[size] = lon;
+
+        return size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Address get(int row) {
+        return new Address(getCity(row), getHouseNumber(row), getPostcode(row), getStreet(row), getLat(row), getLon(row));
+    }
+
+    public String getCity(int row) {
+        return cities.get(cityIds[check(row)]);
+    }
+
+    public String getHouseNumber(int row) {
+        return houseNumbers.get(houseNumberIds[check(row)]);
+    }
+
+    public String getPostcode(int row) {
+        return postcodes.get(postcodeIds[check(row)]);
+    }
+
+    public String getStreet(int row) {
+        return streets.get(streetIds[check(row)]);
+    }
+
+    public float getLat(int row) {
+        return lats[check(row)];
+    }
+
+    public float getLon(int row) {
+        return lons[check(row)];
+    }
+
+    // Six columns of 4 bytes, and the dictionaries.
+    public long heapBytes() {
+        return HeapLayout.shallow(AddressTable.class) + 6 * HeapLayout.array(lats.length, 4) + cities.heapBytes() + houseNumbers.heapBytes() + postcodes.heapBytes() + streets.heapBytes();
+    }
+
+    public void trimToSize() {
+        grow(size);
+    }
+
+    private int check(int row) {
+        if (row < 0 || row >= size) throw new IndexOutOfBoundsException("No address at row " + row);
+
+        return row;
+    }
+
+    private void grow(int capacity) {
+        capacity = Math.max(1, capacity);
+        cityIds = Arrays.copyOf(cityIds, capacity);
+        houseNumberIds = Arrays.copyOf(houseNumberIds, capacity);
+        postcodeIds = Arrays.copyOf(postcodeIds, capacity);
+        streetIds = Arrays.copyOf(streetIds, capacity);
+        lats = Arrays.copyOf(lats, capacity);
+        lons = Arrays.copyOf(lons, capacity);
+    }
+
+    // The distinct values of one field, each stored once. A missing value has no index.
+    private static class Dictionary implements Serializable {
+        private String[] values = new String[16];
+        private final Map<String, Integer> indices = new HashMap<>();
+
+        private int indexOf(String value) {
+            if (value == null) return NONE;
+
+            Integer index = indices.get(value);
+            if (index != null) return index;
+
+            int next = indices.size();
+            if (next == values.length) values = Arrays.copyOf(values, next * 2);
+            values[next] = value;
+            indices.put(value, next);
+
+            return next;
+        }
+
+        private String get(int index) {
+            return index == NONE ? null : values[index];
+        }
+
+        // The strings, the map to their index and its boxed indices beyond the Integer cache.
+        private long heapBytes() {
+            long bytes = HeapLayout.shallow(Dictionary.class) + HeapLayout.references(values.length)
+                    + HeapLayout.hashMap(indices.size()) + Math.max(0, indices.size() - 128) * HeapLayout.shallow(Integer.class);
+
+            for (int i = 0; i < indices.size(); i++) bytes += HeapLayout.string(values[i]);
+
+            return bytes;
+        }
+    }
+}
@@ -3,33 +3,26 @@ package bfst20.logic.routing;
 import bfst20.logic.entities.Node;
 import bfst20.logic.misc.Vehicle;
 
-import java.util.AbstractQueue;
-import java.util.HashMap;
 import java.util.Map;
-import java.util.PriorityQueue;
 
+// One route search. Its labels live in a SearchContext of its own, so the nodes of the
+// graph are not changed and searches on the same graph can run at the same time.
 public class Dijkstra {
-    private AbstractQueue<Node> minPQ;
-    private Map<Node, Double> distTo;
-    private Map<Node, Edge> edgeTo;
+    private SearchContext context;
 
     public Dijkstra(Graph graph, Node source, Node target, Vehicle vehicle) {
-        minPQ = new PriorityQueue<>(graph.nodeCount());
-        distTo = new HashMap<>();
-        edgeTo = new HashMap<>();
+        context = new SearchContext();
 
         findShortestPath(graph, source, target, vehicle);
     }
 
     private void findShortestPath(Graph graph, Node source, Node target, Vehicle vehicle) {
-        setup(graph, source);
-
-        while (!minPQ.isEmpty()) {
-            Node min = minPQ.poll();
+        context.reach(source, 0.0, null);
 
+        for (Node min = context.next(); min != null; min = context.next()) {
             for (Edge edge : graph.adj(min)) {
                 if (min.getId() == target.getId()) {
-                    if (edgeTo.size() == 0) edgeTo.put(target, edge);
+                    if (context.getEdgeTo().size() == 0) context.getEdgeTo().put(target, edge);
 
                     return;
                 }
@@ -39,15 +32,6 @@ public class Dijkstra {
         }
     }
 
-    private void setup(Graph graph, Node source) {
-        for (int i = 0; i < graph.getNodes().size(); i++) {
-            distTo.put(graph.getNodes().get(i), Double.POSITIVE_INFINITY);
-        }
-        source.setDistTo(0.0);
-        distTo.put(source, 0.0);
-        minPQ.add(source);
-    }
-
     private void relax(Edge edge, Node min, Vehicle vehicle, Node target) {
         Node current;
 
@@ -57,18 +41,12 @@ public class Dijkstra {
         if (edge.isVehicleAllowed(vehicle)) {
             double distance = euclideanDistance(current, target);
             if (vehicle == Vehicle.CAR) {
-                distance = (distance / 110) + distTo.get(min) + (edge.getLength() / edge.getMaxSpeed());
+                distance = (distance / 110) + context.distTo(min) + (edge.getLength() / edge.getMaxSpeed());
             } else {
-                distance = distTo.get(min) + edge.getLength();
+                distance = context.distTo(min) + edge.getLength();
             }
 
-            if (distTo.get(current) > distance) {
-                distTo.put(current, distance);
-                edgeTo.put(current, edge);
-                current.setDistTo(distTo.get(current));
-
-                minPQ.add(current);
-            }
+            if (context.distTo(current) > distance) context.reach(current, distance, edge);
         }
     }
 
@@ -78,21 +56,19 @@ public class Dijkstra {
     }
 
     public Map<Node, Edge> getEdgeTo() {
-        return edgeTo;
+        return context.getEdgeTo();
     }
 
     public double distTo(Node node) {
-        return distTo.get(node);
+        return context.distTo(node);
     }
 
     public boolean hasPathTo(Node node) {
-        return distTo.get(node) < Double.POSITIVE_INFINITY;
+        return context.distTo(node) < Double.POSITIVE_INFINITY;
     }
 
     public void clearData() {
-        distTo = null;
-        edgeTo = null;
-        minPQ = null;
+        context = null;
         System.gc();
     }
 }
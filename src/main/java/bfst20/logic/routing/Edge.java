@@ -48,6 +48,14 @@ public class Edge implements Serializable {
         return true;
     }
 
+    public OSMType getHighwayType() {
+        return highwayType;
+    }
+
+    public boolean isOneWay() {
+        return isOneWay;
+    }
+
     public String getStreet() {
         return street;
     }
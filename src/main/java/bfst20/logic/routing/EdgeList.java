@@ -0,0 +1,69 @@
+package bfst20.logic.routing;
+
+import bfst20.logic.misc.HeapLayout;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+// Growable list of the edges at a node, for the adjacency lists of the graph. Unlike an
+// ArrayList it knows its capacity, so the heap it holds can be counted with the spare
+// room, whether or not trim() ran. It grows from four edges, since most nodes have two
+// or three.
+public class EdgeList extends AbstractList<Edge> implements RandomAccess, Serializable {
+    private static final Edge[] EMPTY = new Edge[0];
+
+    private Edge[] edges;
+    private int size;
+
+    public EdgeList() {
+        edges = EMPTY;
+    }
+
+    public EdgeList(int capacity) {
+        edges = capacity == 0 ? EMPTY : new Edge[capacity];
+    }
+
+    @Override
+    public Edge get(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+
+        return edges[index];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void add(int index, Edge edge) {
+        if (index < 0 || index > size) throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        if (size == edges.length) edges = Arrays.copyOf(edges, Math.max(4, size + (size >> 1)));
+
+        System.arraycopy(edges, index, edges, index + 1, size - index);
+        edges[index] = edge;
+        size++;
+        modCount++;
+    }
+
+    @Override
+    public Edge remove(int index) {
+        Edge edge = get(index);
+
+        System.arraycopy(edges, index + 1, edges, index, size - index - 1);
+        edges[--size] = null;
+        modCount++;
+
+        return edge;
+    }
+
+    public void trim() {
+        edges = size == 0 ? EMPTY : Arrays.copyOf(edges, size);
+    }
+
+    public long heapBytes() {
+        return HeapLayout.shallow(EdgeList.class) + (edges == EMPTY ? 0 : HeapLayout.references(edges.length));
+    }
+}
@@ -1,12 +1,13 @@
 package bfst20.logic.routing;
 
 import bfst20.logic.entities.Node;
+import bfst20.logic.misc.HeapLayout;
 
 import java.io.Serializable;
 import java.util.*;
 
 public class Graph implements Serializable {
-    private Map<Node, List<Edge>> adj;
+    private Map<Node, EdgeList> adj;
     private List<Edge> edges;
     private List<Node> nodes;
     private int nodeCount;
@@ -18,14 +19,27 @@ public class Graph implements Serializable {
         this.nodes = nodes;
 
         for (int i = 0; i < nodeCount; i++) {
-            adj.put(nodes.get(i), new ArrayList<>());
+            adj.put(nodes.get(i), new EdgeList());
         }
     }
 
+    // Used when a map file is read, with the adjacency lists in the order they were built.
+    public Graph(List<Node> nodes, List<Edge> edges, Map<Node, EdgeList> adj) {
+        this.nodeCount = nodes.size();
+        this.nodes = nodes;
+        this.edges = edges;
+        this.adj = adj;
+    }
+
     public void sortEdges() {
         edges.sort(Comparator.comparing(Edge::getStreet));
     }
 
+    // Drops the spare capacity of the adjacency lists once the edges are in.
+    public void trimToSize() {
+        for (EdgeList nodeEdges : adj.values()) nodeEdges.trim();
+    }
+
     public int nodeCount() {
         return nodeCount;
     }
@@ -44,6 +58,51 @@ public class Graph implements Serializable {
         if (!adj.get(edge.getTarget()).contains(edge)) adj.get(edge.getTarget()).add(edge);
     }
 
+    // Adds a node without edges, unless the graph has it already.
+    public void addNode(Node node) {
+        if (adj.containsKey(node)) return;
+
+        adj.put(node, new EdgeList());
+        nodes.add(node);
+        nodeCount++;
+    }
+
+    public boolean containsNode(Node node) {
+        return adj.containsKey(node);
+    }
+
+    // Removes the edges, and the nodes that are left without any. Call sortEdges() after adding new ones.
+    public void removeEdges(Set<Edge> removed) {
+        if (removed.isEmpty()) return;
+
+        edges.removeIf(removed::contains);
+        Set<Node> emptied = new HashSet<>();
+
+        for (Edge edge : removed) {
+            for (Node node : new Node[]{edge.getSource(), edge.getTarget()}) {
+                EdgeList nodeEdges = adj.get(node);
+                if (nodeEdges == null) continue;
+
+                nodeEdges.remove(edge);
+                if (nodeEdges.isEmpty()) emptied.add(node);
+            }
+        }
+
+        for (Node node : emptied) adj.remove(node);
+        nodes.removeIf(emptied::contains);
+        nodeCount = nodes.size();
+    }
+
+    // The nodes, edges and adjacency lists. Street names are shared with the rest of the map.
+    public long heapBytes() {
+        long bytes = HeapLayout.shallow(Graph.class) + HeapLayout.list(nodes.size()) + HeapLayout.list(edges.size())
+                + edges.size() * HeapLayout.shallow(Edge.class) + HeapLayout.hashMap(adj.size());
+
+        for (EdgeList nodeEdges : adj.values()) bytes += HeapLayout.shallow(Node.class) + nodeEdges.heapBytes();
+
+        return bytes;
+    }
+
     public Iterable<Edge> adj(Node node) {
         return adj.get(node);
     }
@@ -0,0 +1,66 @@
+package bfst20.logic.routing;
+
+import bfst20.logic.entities.Node;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+// The labels of one route search: the shortest distance found to each node so far, the
+// edge it was reached by, and the queue of nodes still to visit. Every search has its own,
+// so searches on the same graph can run at the same time.
+class SearchContext {
+    private final Map<Node, Double> distTo;
+    private final Map<Node, Edge> edgeTo;
+    private final PriorityQueue<Label> queue;
+
+    SearchContext() {
+        distTo = new HashMap<>();
+        edgeTo = new HashMap<>();
+        queue = new PriorityQueue<>();
+    }
+
+    // Infinite for a node that has not been reached.
+    double distTo(Node node) {
+        return distTo.getOrDefault(node, Double.POSITIVE_INFINITY);
+    }
+
+    Map<Node, Edge> getEdgeTo() {
+        return edgeTo;
+    }
+
+    // Records a shorter distance to the node, by the edge (null for the source), and queues it.
+    void reach(Node node, double distance, Edge edge) {
+        distTo.put(node, distance);
+        if (edge != null) edgeTo.put(node, edge);
+
+        queue.add(new Label(node, distance));
+    }
+
+    // The queued node with the shortest distance, or null if there is none left. A node
+    // queued again with a shorter distance is visited once, by its shortest label.
+    Node next() {
+        while (!queue.isEmpty()) {
+            Label label = queue.poll();
+
+            if (label.distance <= distTo(label.node)) return label.node;
+        }
+
+        return null;
+    }
+
+    private static class Label implements Comparable<Label> {
+        private final Node node;
+        private final double distance;
+
+        private Label(Node node, double distance) {
+            this.node = node;
+            this.distance = distance;
+        }
+
+        @Override
+        public int compareTo(Label other) {
+            return Double.compare(distance, other.distance);
+        }
+    }
+}
@@ -1,20 +1,40 @@
 package bfst20.logic.routing;
 
 import bfst20.logic.entities.Address;
+import bfst20.logic.misc.HeapLayout;
 
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Queue;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.function.IntUnaryOperator;
 
+// The addresses by street, lower case and without spaces. The addresses themselves are
+// rows of an AddressTable; the nodes only hold the row numbers.
 public class TernarySearchTree implements Serializable {
+    private static final int LEFT = 1;
+    private static final int MID = 2;
+    private static final int RIGHT = 4;
+    private static final int VALUE = 8;
+    private static final int[] CHILDREN_LAST_FIRST = {RIGHT, MID, LEFT};
+
+    private final AddressTable addresses;
     private Node root;
     private int size;
 
+    public TernarySearchTree() {
+        this(new AddressTable());
+    }
+
+    private TernarySearchTree(AddressTable addresses) {
+        this.addresses = addresses;
+    }
+
     private class Node implements Serializable {
         private Node left, mid, right;
-        private List<Address> value;
+        private int[] value;
+        private int valueCount;
         private char key;
 
         public Node(char key) {
@@ -37,10 +57,14 @@ public class TernarySearchTree implements Serializable {
             return key;
         }
 
-        public List<Address> getValue() {
+        public int[] getValue() {
             return value;
         }
 
+        public int getValueCount() {
+            return valueCount;
+        }
+
         public void setLeft(Node left) {
             this.left = left;
         }
@@ -53,21 +77,38 @@ public class TernarySearchTree implements Serializable {
             this.right = right;
         }
 
-        public void setValue(Address address) {
+        public void setValue(int row) {
             if (value == null) {
-                value = new ArrayList<>();
+                value = new int[1];
+            } else if (valueCount == value.length) {
+                value = Arrays.copyOf(value, valueCount * 2);
             }
 
-            value.add(address);
+            value[valueCount++] = row;
+        }
+
+        public boolean removeValue(int row) {
+            for (int i = 0; i < valueCount; i++) {
+                if (value[i] != row) continue;
+
+                System.arraycopy(value, i + 1, value, i, --valueCount - i);
+                return true;
+            }
+
+            return false;
         }
     }
 
-    public void put(String key, Address value) {
+    // Adds the address to the table and returns its row.
+    public int put(String key, Address value) {
+        int row = addresses.add(value);
         key = key.toLowerCase();
-        root = put(root, key, value, 0);
+        root = put(root, key, row, 0);
+
+        return row;
     }
 
-    private Node put(Node parent, String key, Address value, int index) {
+    private Node put(Node parent, String key, int value, int index) {
         char character = key.charAt(index);
 
         if (parent == null) {
@@ -90,11 +131,41 @@ public class TernarySearchTree implements Serializable {
         return parent;
     }
 
+    // Removes this row from the key. The nodes stay, even if they end up empty, and so does
+    // the row in the table.
+    public boolean remove(String key, int row) {
+        key = key.toLowerCase();
+        Node node = root;
+        int index = 0;
+
+        while (node != null) {
+            char character = key.charAt(index);
+
+            if (character < node.getKey()) {
+                node = node.getLeft();
+            } else if (character > node.getKey()) {
+                node = node.getRight();
+            } else if (index < key.length() - 1) {
+                node = node.getMid();
+                index++;
+            } else {
+                return node.getValue() != null && node.removeValue(row);
+            }
+        }
+
+        return false;
+    }
+
     public List<Address> get(String key) {
         key = key.toLowerCase();
         Node result = get(root, key, 0);
 
-        return result == null ? null : result.getValue();
+        if (result == null || result.getValue() == null) return null;
+
+        List<Address> values = new ArrayList<>(result.getValueCount());
+        for (int i = 0; i < result.getValueCount(); i++) values.add(addresses.get(result.getValue()[i]));
+
+        return values;
     }
 
     private Node get(Node parent, String key, int index) {
@@ -116,31 +187,165 @@ public class TernarySearchTree implements Serializable {
         return size;
     }
 
+    public AddressTable getAddresses() {
+        return addresses;
+    }
+
+    public void trimToSize() {
+        addresses.trimToSize();
+    }
+
+    // The nodes and the table of addresses.
+    public long heapBytes() {
+        long bytes = HeapLayout.shallow(TernarySearchTree.class) + addresses.heapBytes();
+        Deque<Node> stack = new ArrayDeque<>();
+        if (root != null) stack.push(root);
+
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            bytes += HeapLayout.shallow(Node.class);
+            if (node.value != null) bytes += HeapLayout.array(node.value.length, 4);
+
+            if (node.right != null) stack.push(node.right);
+            if (node.mid != null) stack.push(node.mid);
+            if (node.left != null) stack.push(node.left);
+        }
+
+        return bytes;
+    }
+
     public Queue<Address> keysWithPrefix(String prefix) {
-        prefix = prefix.toLowerCase();
         Queue<Address> queue = new LinkedList<>();
+        for (int row : rowsWithPrefix(prefix)) queue.add(addresses.get(row));
+
+        return queue;
+    }
+
+    // The rows of the addresses whose key starts with the prefix, in the order of
+    // keysWithPrefix, without making Address objects for them.
+    public int[] rowsWithPrefix(String prefix) {
+        prefix = prefix.toLowerCase();
         Node startNode;
         try {
             startNode = get(root, prefix, 0);
         } catch (NullPointerException exception) {
-            return queue;
+            return new int[0];
         }
 
-        if (startNode == null) return queue;
-        if (startNode.getValue() != null) queue.addAll(startNode.getValue());
+        if (startNode == null) return new int[0];
 
-        collect(startNode.getMid(), queue);
+        Rows rows = new Rows();
+        rows.add(startNode);
+        collect(startNode.getMid(), rows);
 
-        return queue;
+        return Arrays.copyOf(rows.values, rows.count);
     }
 
-    private void collect(Node parent, Queue<Address> queue) {
+    private void collect(Node parent, Rows rows) {
         if (parent == null) return;
-        collect(parent.getLeft(), queue);
+        collect(parent.getLeft(), rows);
 
-        if (parent.getValue() != null) queue.addAll(parent.getValue());
+        rows.add(parent);
 
-        collect(parent.getMid(), queue);
-        collect(parent.getRight(), queue);
+        collect(parent.getMid(), rows);
+        collect(parent.getRight(), rows);
+    }
+
+    private static class Rows {
+        private int[] values = new int[16];
+        private int count;
+
+        private void add(Node node) {
+            if (node.getValue() == null) return;
+
+            if (count + node.getValueCount() > values.length) {
+                values = Arrays.copyOf(values, Math.max(values.length * 2, count + node.getValueCount()));
+            }
+
+            System.arraycopy(node.getValue(), 0, values, count, node.getValueCount());
+            count += node.getValueCount();
+        }
+    }
+
+    // Writes the nodes in preorder for the map file: the key, which children follow and the
+    // indices the rows are written at. Uses a stack instead of recursion, a long key makes a deep trie.
+    public void write(DataOutput out, IntUnaryOperator rowIndex) throws IOException {
+        out.writeInt(size);
+        out.writeBoolean(root != null);
+
+        Deque<Node> stack = new ArrayDeque<>();
+        if (root != null) stack.push(root);
+
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            out.writeChar(node.key);
+            out.writeByte(flags(node));
+
+            if (node.value != null) {
+                out.writeInt(node.valueCount);
+                for (int i = 0; i < node.valueCount; i++) out.writeInt(rowIndex.applyAsInt(node.value[i]));
+            }
+
+            if (node.right != null) stack.push(node.right);
+            if (node.mid != null) stack.push(node.mid);
+            if (node.left != null) stack.push(node.left);
+        }
+    }
+
+    private static int flags(Node node) {
+        return (node.left != null ? LEFT : 0) | (node.mid != null ? MID : 0) | (node.right != null ? RIGHT : 0)
+                | (node.value != null ? VALUE : 0);
+    }
+
+    // The rows written must be the rows of the table.
+    public static TernarySearchTree read(ByteBuffer in, AddressTable addresses) {
+        TernarySearchTree tree = new TernarySearchTree(addresses);
+        tree.size = in.getInt();
+        if (in.get() == 0) return tree;
+
+        // The nodes still waiting for a child, and which child, next to be read last.
+        Node[] parents = new Node[64];
+        int[] slots = new int[64];
+        int depth = 0;
+        Node parent = null;
+        int slot = 0;
+
+        while (true) {
+            Node node = tree.new Node(in.getChar());
+            int flags = in.get();
+
+            if ((flags & VALUE) != 0) {
+                int count = in.getInt();
+                node.value = new int[Math.max(1, count)];
+                for (int i = 0; i < count; i++) {
+                    int row = in.getInt();
+                    if (row < 0 || row >= addresses.size()) throw new IllegalStateException("No address at row " + row);
+
+                    node.value[node.valueCount++] = row;
+                }
+            }
+
+            if (parent == null) tree.root = node;
+            else if (slot == LEFT) parent.left = node;
+            else if (slot == MID) parent.mid = node;
+            else parent.right = node;
+
+            if (depth + 3 > parents.length) {
+                parents = Arrays.copyOf(parents, parents.length * 2);
+                slots = Arrays.copyOf(slots, slots.length * 2);
+            }
+
+            for (int child : CHILDREN_LAST_FIRST) {
+                if ((flags & child) == 0) continue;
+
+                parents[depth] = node;
+                slots[depth++] = child;
+            }
+
+            if (depth == 0) return tree;
+
+            parent = parents[--depth];
+            slot = slots[depth];
+        }
     }
 }
@@ -2,6 +2,7 @@ package bfst20.logic.services;
 
 import bfst20.data.AddressData;
 import bfst20.logic.entities.Address;
+import bfst20.logic.routing.AddressTable;
 import bfst20.logic.routing.TernarySearchTree;
 
 import java.util.LinkedList;
@@ -24,17 +25,21 @@ public class AddressService {
         if (addressStrings.length == 0) return null;
         addressStrings[0] = addressStrings[0].replaceAll(" ", "");
 
-        for (Address address : tst.keysWithPrefix(addressStrings[0])) {
-            if (address.getStreet() == null) continue;
+        AddressTable addresses = tst.getAddresses();
+
+        // Compares the columns of the table and only makes an Address for the match.
+        for (int row : tst.rowsWithPrefix(addressStrings[0])) {
+            String street = addresses.getStreet(row);
+            if (street == null) continue;
 
             if (
-                    address.getStreet().trim().toLowerCase().replaceAll(" ", "").equals(addressStrings[0].trim().toLowerCase())
-                            && address.getHouseNumber().toLowerCase().trim().equals(addressStrings[1].trim().toLowerCase())
-                            && (addressStrings[2].equals("") || (!addressStrings[2].equals("") && address.getPostcode().trim().equals(addressStrings[2].trim())))
+                    street.trim().toLowerCase().replaceAll(" ", "").equals(addressStrings[0].trim().toLowerCase())
+                            && addresses.getHouseNumber(row).toLowerCase().trim().equals(addressStrings[1].trim().toLowerCase())
+                            && (addressStrings[2].equals("") || (!addressStrings[2].equals("") && addresses.getPostcode(row).trim().equals(addressStrings[2].trim())))
 
             ) {
 
-                return address;
+                return addresses.get(row);
             }
         }
 
@@ -49,24 +54,24 @@ public class AddressService {
 
         addressStrings[0] = addressStrings[0].replaceAll(" ", "");
 
-        Queue<Address> addresses = tst.keysWithPrefix(addressStrings[0]);
+        AddressTable addresses = tst.getAddresses();
         Queue<Address> newAddresses = new LinkedList<>();
 
-        for (Address address : addresses) {
+        for (int row : tst.rowsWithPrefix(addressStrings[0])) {
 
             if (addressStrings.length == 3 && !addressStrings[1].equals("")) {
-                if (!address.getHouseNumber().startsWith(addressStrings[1])) {
+                if (!addresses.getHouseNumber(row).startsWith(addressStrings[1])) {
                     continue;
                 }
             }
 
             if (addressStrings.length == 3 && !addressStrings[2].equals("")) {
-                if (!address.getPostcode().startsWith(addressStrings[2])) {
+                if (!addresses.getPostcode(row).startsWith(addressStrings[2])) {
                     continue;
                 }
             }
 
-            newAddresses.add(address);
+            newAddresses.add(addresses.get(row));
         }
 
         return newAddresses;
@@ -0,0 +1,54 @@
+package bfst20.logic.services;
+
+import java.util.Locale;
+
+// What applying one change set touched, and how long it took.
+public class ChangeReport {
+    private final int changes;
+    private final int rebuiltWays;
+    private final int removedWays;
+    private final int changedAddresses;
+    private final int skippedRelations;
+    private final long nanos;
+
+    ChangeReport(int changes, int rebuiltWays, int removedWays, int changedAddresses, int skippedRelations, long nanos) {
+        this.changes = changes;
+        this.rebuiltWays = rebuiltWays;
+        this.removedWays = removedWays;
+        this.changedAddresses = changedAddresses;
+        this.skippedRelations = skippedRelations;
+        this.nanos = nanos;
+    }
+
+    public int getChanges() {
+        return changes;
+    }
+
+    public int getRebuiltWays() {
+        return rebuiltWays;
+    }
+
+    public int getRemovedWays() {
+        return removedWays;
+    }
+
+    public int getChangedAddresses() {
+        return changedAddresses;
+    }
+
+    // Relations are not applied, their geometry only changes with a full import.
+    public int getSkippedRelations() {
+        return skippedRelations;
+    }
+
+    public long getMillis() {
+        return nanos / 1_000_000;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT,
+                "Applied %d changes in %d ms: %d ways rebuilt, %d removed, %d addresses changed, %d relations skipped",
+                changes, getMillis(), rebuiltWays, removedWays, changedAddresses, skippedRelations);
+    }
+}
@@ -0,0 +1,221 @@
+package bfst20.logic.services;
+
+import bfst20.data.*;
+import bfst20.logic.entities.Address;
+import bfst20.logic.entities.LinePath;
+import bfst20.logic.entities.Node;
+import bfst20.logic.entities.Way;
+import bfst20.logic.filehandling.ChangeSet;
+import bfst20.logic.kdtree.KDTree;
+import bfst20.logic.misc.OSMType;
+import bfst20.logic.nodestore.IdList;
+import bfst20.logic.nodestore.NodeStore;
+import bfst20.logic.routing.Edge;
+import bfst20.logic.routing.Graph;
+
+import java.util.*;
+
+// Applies a change set to the loaded map. Only the ways that changed, or whose nodes
+// changed, are touched: their LinePaths leave the lists and KD-trees, their edges leave
+// the graph, and the new versions are built the way an import builds them. Geometry
+// built from relations is left as it is until the next full import.
+public class ChangeService {
+    private MapIndexData mapIndexData;
+    private LinePathData linePathData;
+    private KDTreeData kdTreeData;
+    private RoutingData routingData;
+    private AddressData addressData;
+    private RoutingService routingService;
+
+    public ChangeService(MapIndexData mapIndexData, RoutingService routingService) {
+        this.mapIndexData = mapIndexData;
+        this.routingService = routingService;
+        linePathData = LinePathData.getInstance();
+        kdTreeData = KDTreeData.getInstance();
+        routingData = RoutingData.getInstance();
+        addressData = AddressData.getInstance();
+    }
+
+    // Keeps what applyChanges needs. The ways must still have their LinePaths, so call it before the KD-trees are built.
+    public void indexMap(List<Way> ways, NodeStore nodes, List<LinePath> linePaths) {
+        mapIndexData.clearData();
+        mapIndexData.saveNodes(nodes);
+
+        Set<Way> imported = Collections.newSetFromMap(new IdentityHashMap<>());
+        imported.addAll(ways);
+
+        for (LinePath linePath : linePaths) {
+            Way way = linePath.getWay();
+
+            // Relations can reuse a way for a LinePath of their own type.
+            if (way == null || !imported.contains(way) || linePath.getOSMType() != way.getOSMType()) continue;
+            if (mapIndexData.getWay(way.getId()) != null) continue;
+
+            mapIndexData.saveWay(way, linePath);
+        }
+    }
+
+    public ChangeReport applyChanges(ChangeSet changes) {
+        if (!mapIndexData.isIndexed()) throw new IllegalStateException("The map was loaded without a change index");
+
+        long start = System.nanoTime();
+        NodeStore nodes = mapIndexData.getNodes();
+
+        Set<Long> changedNodes = new HashSet<>(changes.getDeletedNodes());
+        for (Node node : changes.getNodes()) changedNodes.add(node.getId());
+
+        // Old versions of the ways that go away or are rebuilt, and the ways to build.
+        Map<Long, Way> oldWays = new LinkedHashMap<>();
+        Map<Long, Way> newWays = new LinkedHashMap<>();
+        Set<Long> highways = new HashSet<>();
+
+        int removed = 0;
+        for (long id : changes.getDeletedWays()) {
+            Way old = mapIndexData.getWay(id);
+            if (old == null) continue;
+
+            oldWays.put(id, old);
+            removed++;
+        }
+
+        for (Way way : changes.getWays()) {
+            Way old = mapIndexData.getWay(way.getId());
+            if (old != null) oldWays.put(way.getId(), old);
+
+            newWays.put(way.getId(), way);
+            if (changes.isHighway(way.getId())) highways.add(way.getId());
+        }
+
+        for (Way way : mapIndexData.getWays()) {
+            if (newWays.containsKey(way.getId()) || changes.getDeletedWays().contains(way.getId())) continue;
+
+            IdList ids = way.getNodeIds();
+            for (int i = 0; i < ids.size(); i++) {
+                if (changedNodes.contains(ids.get(i))) {
+                    oldWays.put(way.getId(), way);
+                    newWays.put(way.getId(), way);
+                    if (!way.getNodes().isEmpty()) highways.add(way.getId());
+                    break;
+                }
+            }
+        }
+
+        // Nothing is touched when the changes do not fit the map.
+        Set<Long> createdNodes = new HashSet<>();
+        for (Node node : changes.getNodes()) createdNodes.add(node.getId());
+
+        for (Way way : newWays.values()) {
+            IdList ids = way.getNodeIds();
+            for (int i = 0; i < ids.size(); i++) {
+                long id = ids.get(i);
+                boolean exists = createdNodes.contains(id) || (!changes.getDeletedNodes().contains(id) && nodes.contains(id));
+                if (!exists) throw new IllegalStateException("Way " + way.getId() + " references missing node " + id);
+            }
+        }
+
+        for (Node node : changes.getNodes()) nodes.put(node.getId(), node.getLatitude(), node.getLongitude());
+        for (long id : changes.getDeletedNodes()) nodes.remove(id);
+
+        Graph graph = routingData.getGraph();
+        removeWays(oldWays.values(), graph);
+
+        int rebuilt = 0;
+        for (Way way : newWays.values()) {
+            if (buildWay(way, highways.contains(way.getId()), nodes, graph)) rebuilt++;
+        }
+
+        if (graph != null) graph.sortEdges();
+
+        int addresses = 0;
+        for (long id : changedNodes) {
+            Address old = addressData.removeNodeAddress(id);
+            Address address = changes.getAddress(id);
+
+            if (address != null) addressData.saveAddress(id, address);
+            if (old != null || address != null) addresses++;
+        }
+
+        return new ChangeReport(changes.size(), rebuilt, removed, addresses, changes.getRelationChanges(),
+                System.nanoTime() - start);
+    }
+
+    private void removeWays(Collection<Way> ways, Graph graph) {
+        Set<LinePath> removedPaths = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<Edge> removedEdges = new HashSet<>();
+
+        for (Way way : ways) {
+            LinePath linePath = mapIndexData.getLinePath(way.getId());
+            mapIndexData.removeWay(way.getId());
+
+            if (linePath != null) {
+                KDTree kdTree = kdTreeData.getKDTree(linePath.getOSMType());
+                if (kdTree != null) kdTree.remove(linePath);
+
+                removedPaths.add(linePath);
+            }
+
+            if (graph != null) removedEdges.addAll(findEdges(way, graph));
+        }
+
+        if (removedPaths.isEmpty() && removedEdges.isEmpty()) return;
+
+        for (List<LinePath> linePaths : linePathData.getLinePaths().values()) linePaths.removeIf(removedPaths::contains);
+        linePathData.getHighways().removeIf(removedPaths::contains);
+
+        if (graph != null) graph.removeEdges(removedEdges);
+    }
+
+    // The edges createEdges made for the way, found through the nodes it resolved.
+    private List<Edge> findEdges(Way way, Graph graph) {
+        List<Edge> edges = new ArrayList<>();
+
+        for (Edge expected : routingService.createEdges(way)) {
+            Node source = expected.getSource();
+            if (!graph.containsNode(source)) continue;
+
+            for (Edge edge : graph.adj(source)) {
+                if (edge.getSource() == source && edge.getTarget() == expected.getTarget()
+                        && edge.getMaxSpeed() == expected.getMaxSpeed() && edge.getStreet().equals(expected.getStreet())) {
+                    edges.add(edge);
+                    break;
+                }
+            }
+        }
+
+        return edges;
+    }
+
+    // Builds the LinePath and the edges of the way like the import does. Returns false if nothing is shown for it.
+    private boolean buildWay(Way way, boolean highway, NodeStore nodes, Graph graph) {
+        OSMType type = way.getOSMType();
+        if (type == null || type == OSMType.COASTLINE || type == OSMType.PLACE) return false;
+
+        if (highway) {
+            IdList ids = way.getNodeIds();
+            way.releaseNodes();
+            for (int i = 0; i < ids.size(); i++) way.addNode(nodes.get(ids.get(i)));
+        }
+
+        LinePath linePath = new LinePath(way, type, nodes, OSMType.getFill(type));
+        linePathData.saveLinePath(type, linePath);
+
+        List<LinePath> linePaths = linePathData.getLinePathsByType(type);
+        if (linePaths.isEmpty() || linePaths.get(linePaths.size() - 1) != linePath) return false;
+
+        linePathData.getHighways().add(linePath);
+        mapIndexData.saveWay(way, linePath);
+
+        // Before the KD-tree takes the way off the LinePath.
+        if (highway && graph != null) {
+            for (Node node : way.getNodes()) graph.addNode(node);
+            for (Edge edge : routingService.createEdges(way)) graph.addEdge(edge);
+        }
+
+        KDTree kdTree = kdTreeData.getKDTree(type);
+        if (kdTree != null) kdTree.insert(linePath);
+
+        else kdTreeData.saveKDTree(type, new KDTree(linePaths, kdTreeData.getRect()));
+
+        return true;
+    }
+}
@@ -8,13 +8,15 @@ import bfst20.logic.entities.Relation;
 import bfst20.logic.entities.Way;
 import bfst20.logic.entities.LinePath;
 import bfst20.logic.misc.OSMType;
+import bfst20.logic.nodestore.IdList;
+import bfst20.logic.nodestore.NodeStore;
 
 public class LinePathService {
     private static LinePathService linePathService;
     private static boolean loaded = false;
     private LinePathData linePathData;
     private List<Relation> relations;
-    private Map<Long, Node> nodes;
+    private NodeStore nodes;
     private List<Way> ways;
 
     private LinePathService(LinePathData linePathData) {
@@ -30,7 +32,7 @@ public class LinePathService {
         return linePathService;
     }
 
-    public void convertWaysToLinePaths(List<Way> ways, Map<Long, Node> nodes) {
+    public void convertWaysToLinePaths(List<Way> ways, NodeStore nodes) {
         this.nodes = nodes;
         this.ways = ways;
         for (Way way : ways) {
@@ -91,11 +93,12 @@ public class LinePathService {
 
     //This connect different ways in relations
     private void connectWays(Relation relation, OSMType OSMType) {
-        Collections.sort(relation.getMembers());
+        IdList members = relation.getMembers();
+        members.sort();
 
-        for (long entry : relation.getMembers()) {
+        for (int i = 0; i < members.size(); i++) {
 
-            Way way = (binarySearch(ways, entry));
+            Way way = (binarySearch(ways, members.get(i)));
             if (way == null) continue;
 
             if (relation.isMultipolygon()) {
@@ -153,10 +156,8 @@ public class LinePathService {
         Way way = new Way();
 
         if (before.getFirstNodeId() == after.getFirstNodeId()) {
-            way.addAllNodeIds(before);
-
-            Collections.reverse(way.getNodeIds());
-            way.getNodeIds().remove(way.getNodeIds().size() - 1);
+            way.getNodeIds().addAllReversed(before.getNodeIds());
+            way.getNodeIds().removeLast();
             way.addAllNodeIds(after);
 
         } else if (before.getFirstNodeId() == after.getLastNodeId()) {
@@ -167,12 +168,9 @@ public class LinePathService {
 
             addWayToMerge(way, before, after);
         } else if (before.getLastNodeId() == after.getLastNodeId()) {
-            Way tmp = new Way(after);
-
-            Collections.reverse(tmp.getNodeIds());
             way.addAllNodeIds(before);
-            way.getNodeIds().remove(way.getNodeIds().size() - 1);
-            way.addAllNodeIds(tmp);
+            way.getNodeIds().removeLast();
+            way.getNodeIds().addAllReversed(after.getNodeIds());
         } else {
             throw new IllegalArgumentException("Cannot merge unconnected OSMWays");
         }
@@ -182,17 +180,19 @@ public class LinePathService {
 
     private void addWayToMerge(Way way, Way before, Way after) {
         way.addAllNodeIds(before);
-        way.getNodeIds().remove(way.getNodeIds().size() - 1);
+        way.getNodeIds().removeLast();
         way.addAllNodeIds(after);
     }
 
     private void connectMultipolygon(Relation relation, OSMType osmType) {
         if (!relation.isMultipolygon()) return;
-        Collections.sort(relation.getMembers());
+        IdList members = relation.getMembers();
+        members.sort();
 
         Way way = null;
 
-        for (long entry : relation.getMembers()) {
+        for (int i = 0; i < members.size(); i++) {
+            long entry = members.get(i);
 
             if (way == null) {
                 way = (binarySearch(ways, entry));
@@ -246,7 +246,7 @@ public class LinePathService {
     }
 
     public void clearData() {
-        nodes = new HashMap<>();
+        nodes = null;
         ways = new ArrayList<>();
         relations = new ArrayList<>();
 
@@ -0,0 +1,113 @@
+package bfst20.logic.services;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// The estimated heap of each part of the map after one phase of opening it, next to what
+// the heap as a whole used at that point. The parts are named like "kdTrees.BUILDING".
+public class MemoryReport {
+    private final String phase;
+    private final Map<String, Long> bytes;
+    private final long usedBytes;
+    private final long maxBytes;
+
+    MemoryReport(String phase, Map<String, Long> bytes, long usedBytes, long maxBytes) {
+        this.phase = phase;
+        this.bytes = Collections.unmodifiableMap(new LinkedHashMap<>(bytes));
+        this.usedBytes = usedBytes;
+        this.maxBytes = maxBytes;
+    }
+
+    public String getPhase() {
+        return phase;
+    }
+
+    public Map<String, Long> getBytes() {
+        return bytes;
+    }
+
+    // All parts whose name starts with the prefix, e.g. "linePaths." for every type.
+    public long getBytes(String prefix) {
+        long total = 0;
+        for (Map.Entry<String, Long> entry : bytes.entrySet()) {
+            if (entry.getKey().startsWith(prefix)) total += entry.getValue();
+        }
+
+        return total;
+    }
+
+    public long getEstimatedBytes() {
+        return getBytes("");
+    }
+
+    // Includes garbage not collected yet.
+    public long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public String toJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"phase\":").append(quote(phase))
+                .append(",\"usedBytes\":").append(usedBytes)
+                .append(",\"maxBytes\":").append(maxBytes)
+                .append(",\"estimatedBytes\":").append(getEstimatedBytes())
+                .append(",\"parts\":{");
+
+        String separator = "";
+        for (Map.Entry<String, Long> entry : bytes.entrySet()) {
+            json.append(separator).append(quote(entry.getKey())).append(':').append(entry.getValue());
+            separator = ",";
+        }
+
+        return json.append("}}").toString();
+    }
+
+    public static String toJson(List<MemoryReport> reports) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < reports.size(); i++) {
+            if (i > 0) json.append(",\n");
+            json.append(reports.get(i).toJson());
+        }
+
+        return json.append("]").toString();
+    }
+
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder("\"");
+
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') quoted.append('\\').append(c);
+            else if (c < 0x20) quoted.append(String.format("\\u%04x", (int) c));
+            else quoted.append(c);
+        }
+
+        return quoted.append('"').toString();
+    }
+
+    // The parts that hold anything, largest first.
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder(String.format(Locale.ROOT,
+                "Heap after %s: %.1f MB used of %.1f MB, %.1f MB estimated for the map",
+                phase, megabytes(usedBytes), megabytes(maxBytes), megabytes(getEstimatedBytes())));
+
+        bytes.entrySet().stream()
+                .filter(entry -> entry.getValue() > 0)
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .forEach(entry -> report.append(String.format(Locale.ROOT, "%n  %-28s %9.1f MB",
+                        entry.getKey(), megabytes(entry.getValue()))));
+
+        return report.toString();
+    }
+
+    private static double megabytes(long bytes) {
+        return bytes / (1024.0 * 1024.0);
+    }
+}
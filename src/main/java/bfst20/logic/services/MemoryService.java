@@ -0,0 +1,110 @@
+package bfst20.logic.services;
+
+import bfst20.data.*;
+import bfst20.logic.entities.LinePath;
+import bfst20.logic.entities.Node;
+import bfst20.logic.entities.Relation;
+import bfst20.logic.entities.Way;
+import bfst20.logic.kdtree.KDTree;
+import bfst20.logic.misc.HeapLayout;
+import bfst20.logic.misc.OSMType;
+import bfst20.logic.routing.Graph;
+
+import java.util.*;
+
+// Estimates the heap each part of the map holds from the sizes of its arrays and objects,
+// without a heap dump. Parts of a .bin map that are not decoded yet are left out rather
+// than decoded. Objects parts share are counted once, by the part that keeps them longest
+// at that point: a way by the element data while it has the ways, then by its LinePath;
+// a Node by the node store, then by the routing graph, and in between by the ways of the
+// LinePaths. Strings shared through the parser's dictionary are not counted.
+public class MemoryService {
+    private OSMElementData osmElementData;
+    private LinePathData linePathData;
+    private KDTreeData kdTreeData;
+    private RoutingData routingData;
+    private AddressData addressData;
+
+    public MemoryService(OSMElementData osmElementData, LinePathData linePathData, KDTreeData kdTreeData,
+                         RoutingData routingData, AddressData addressData) {
+        this.osmElementData = osmElementData;
+        this.linePathData = linePathData;
+        this.kdTreeData = kdTreeData;
+        this.routingData = routingData;
+        this.addressData = addressData;
+    }
+
+    public MemoryReport measure(String phase) {
+        Map<String, Long> bytes = new LinkedHashMap<>();
+
+        bytes.put("osmElements.nodes", osmElementData.getNodes().heapBytes());
+        bytes.put("osmElements.ways", waysBytes(osmElementData.getWays()));
+        bytes.put("osmElements.relations", relationsBytes(osmElementData.getRelations()));
+
+        Graph graph = routingData.isGraphLoaded() ? routingData.getGraph() : null;
+        boolean elementsHeld = !osmElementData.getWays().isEmpty();
+        boolean nodesHeld = elementsHeld || graph != null;
+
+        Map<OSMType, List<LinePath>> linePaths = new EnumMap<>(OSMType.class);
+        for (Map.Entry<OSMType, List<LinePath>> entry : linePathData.getLinePaths().entrySet()) {
+            if (entry.getKey() != null && entry.getValue() != null) linePaths.put(entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<OSMType, List<LinePath>> entry : linePaths.entrySet()) {
+            bytes.put("linePaths." + entry.getKey(), linePathsBytes(entry.getValue(), !elementsHeld, !nodesHeld));
+        }
+
+        for (OSMType type : OSMType.values()) {
+            if (!kdTreeData.isKDTreeLoaded(type)) continue;
+
+            KDTree tree = kdTreeData.getKDTree(type);
+            if (tree != null) bytes.put("kdTrees." + type, tree.heapBytes());
+        }
+
+        if (routingData.isGraphLoaded()) bytes.put("routing.graph", graph == null ? 0 : graph.heapBytes());
+
+        if (addressData.isTSTLoaded() && addressData.getTST() != null) {
+            bytes.put("addresses.tst", addressData.getTST().heapBytes());
+        }
+
+        Runtime runtime = Runtime.getRuntime();
+
+        return new MemoryReport(phase, bytes, runtime.totalMemory() - runtime.freeMemory(), runtime.maxMemory());
+    }
+
+    private static long waysBytes(List<Way> ways) {
+        long bytes = HeapLayout.list(ways.size());
+        for (Way way : ways) bytes += wayBytes(way, false);
+
+        return bytes;
+    }
+
+    private static long wayBytes(Way way, boolean withNodes) {
+        long bytes = HeapLayout.shallow(Way.class) + way.getNodeIds().heapBytes();
+
+        int nodes = way.getNodes().size();
+        if (nodes > 0) bytes += HeapLayout.list(nodes) + (withNodes ? nodes * HeapLayout.shallow(Node.class) : 0);
+
+        return bytes;
+    }
+
+    private static long relationsBytes(List<Relation> relations) {
+        long bytes = HeapLayout.list(relations.size());
+
+        for (Relation relation : relations) bytes += HeapLayout.shallow(Relation.class) + relation.getMembers().heapBytes();
+
+        return bytes;
+    }
+
+    private static long linePathsBytes(List<LinePath> linePaths, boolean withWays, boolean withNodes) {
+        long bytes = HeapLayout.list(linePaths.size());
+
+        for (LinePath linePath : linePaths) {
+            bytes += HeapLayout.shallow(LinePath.class);
+            if (linePath.getCoords() != null) bytes += HeapLayout.array(linePath.getCoords().length, 4);
+            if (linePath.getBounds() != null) bytes += HeapLayout.shallow(linePath.getBounds().getClass());
+            if (withWays && linePath.getWay() != null) bytes += wayBytes(linePath.getWay(), withNodes);
+        }
+
+        return bytes;
+    }
+}
@@ -1,5 +1,6 @@
 package bfst20.logic.services;
 
+import bfst20.data.MapIndexData;
 import bfst20.data.RoutingData;
 import bfst20.logic.misc.OSMType;
 import bfst20.logic.entities.Address;
@@ -30,6 +31,14 @@ public class RoutingService {
         Graph graph = new Graph(new ArrayList<>(highwayNodes));
         generateGraphEdges(highways, graph);
         graph.sortEdges();
+        graph.trimToSize();
+
+        // The change index finds the edges of a way again through its nodes, otherwise the graph has them all.
+        if (!MapIndexData.getInstance().isIndexed()) {
+            for (LinePath lp : highways) {
+                if (lp.getWay() != null) lp.getWay().releaseNodes();
+            }
+        }
 
         routingData.saveGraph(graph);
 
@@ -41,19 +50,25 @@ public class RoutingService {
             Way way = linePath.getWay();
 
             if (way != null) {
-                OSMType type = way.getOSMType();
-                for (int i = 1; i < way.getNodes().size(); i++) {
-                    Node sourceNode = way.getNodes().get(i - 1);
-                    Node targetNode = way.getNodes().get(i);
+                for (Edge edge : createEdges(way)) graph.addEdge(edge);
+            }
+        }
+    }
 
-                    double length = haversine(sourceNode, targetNode);
-                    Edge edge = new Edge(type, sourceNode, targetNode, length, way.getName(), way.getMaxSpeed(),
-                            way.isOneWay());
+    // One edge per pair of consecutive resolved nodes of the way.
+    public List<Edge> createEdges(Way way) {
+        List<Edge> edges = new ArrayList<>();
+        OSMType type = way.getOSMType();
 
-                    graph.addEdge(edge);
-                }
-            }
+        for (int i = 1; i < way.getNodes().size(); i++) {
+            Node sourceNode = way.getNodes().get(i - 1);
+            Node targetNode = way.getNodes().get(i);
+
+            double length = haversine(sourceNode, targetNode);
+            edges.add(new Edge(type, sourceNode, targetNode, length, way.getName(), way.getMaxSpeed(), way.isOneWay()));
         }
+
+        return edges;
     }
 
     public double calculateShortestRoute(Graph graph, List<Edge> edges, Address srcAddress, Address trgAddress, Vehicle vehicle) {
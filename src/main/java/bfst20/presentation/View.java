@@ -7,6 +7,8 @@ import bfst20.logic.controllers.interfaces.OSMElementAPI;
 import bfst20.logic.controllers.interfaces.RoutingAPI;
 import bfst20.logic.misc.OSMType;
 import bfst20.logic.entities.*;
+import bfst20.logic.kdtree.KDTree;
+import bfst20.logic.kdtree.PathStore;
 import bfst20.logic.kdtree.Rect;
 import bfst20.logic.misc.Vehicle;
 import bfst20.logic.routing.Edge;
@@ -49,6 +51,8 @@ public class View {
     private double zoomLevel = 1.0;
     private double sliderValue = 0;
     private double pixelWidth;
+    // The coordinates of the path being drawn, reused from path to path.
+    private double[] pathCoords;
 
     private View() {
 
@@ -223,10 +227,17 @@ public class View {
     }
 
     private void drawKDTree(OSMType type, Rect rect, double lineWidth, Point2D point) {
-        if (kdTreeAPI.fetchKDTreeByType(type) != null) {
-            for (LinePath linePath : kdTreeAPI.fetchKDTreeByType(type).getElementsInRect(rect, trans.determinant(), point)) {
+        // A layer that is not drawn at this zoom level is not decoded from a mapped .bin yet.
+        if (!kdTreeAPI.isKDTreeLoaded(type) && OSMType.getZoomLevel(type) > trans.determinant()) return;
 
-                drawLinePath(linePath, lineWidth);
+        KDTree kdTree = kdTreeAPI.fetchKDTreeByType(type);
+        if (kdTree != null) {
+            PathStore paths = kdTree.getPaths();
+
+            for (int path : kdTree.getPathsInRect(rect, trans.determinant(), point)) {
+                pathCoords = paths.getCoords(path, pathCoords);
+                drawPath(paths.getType(path), paths.getFill(path), paths.isMultipolygon(path), pathCoords,
+                        paths.getLength(path), lineWidth);
                 gc.fill();
             }
         }
@@ -315,51 +326,53 @@ public class View {
 
 
     private void drawLinePath(LinePath linePath, double lineWidth) {
-        OSMType OSMType = linePath.getOSMType();
-        gc.setStroke(OSMType.getColor(OSMType, isColorBlindMode));
+        float[] coords = linePath.getCoords();
+        if (pathCoords == null || pathCoords.length < coords.length) pathCoords = new double[coords.length];
+        for (int i = 0; i < coords.length; i++) pathCoords[i] = coords[i];
+
+        drawPath(linePath.getOSMType(), linePath.getFill(), linePath.isMultipolygon(), pathCoords, coords.length, lineWidth);
+    }
 
-        gc.setLineWidth(OSMType.getLineWidth(OSMType, lineWidth));
-        gc.setFill(linePath.getFill() ? OSMType.getColor(OSMType, isColorBlindMode) : Color.TRANSPARENT);
+    // Draws the path with the first length coordinates.
+    private void drawPath(OSMType type, boolean fill, boolean multipolygon, double[] coords, int length, double lineWidth) {
+        gc.setStroke(OSMType.getColor(type, isColorBlindMode));
 
-        if (linePath.isMultipolygon()) {
-            traceMultipolygon(linePath, gc);
+        gc.setLineWidth(OSMType.getLineWidth(type, lineWidth));
+        gc.setFill(fill ? OSMType.getColor(type, isColorBlindMode) : Color.TRANSPARENT);
+
+        if (multipolygon) {
+            traceMultipolygon(type, coords, length, gc);
         } else {
-            trace(linePath, gc);
+            trace(type, coords, length, gc);
         }
     }
 
-    private void traceMultipolygon(LinePath linePath, GraphicsContext gc) {
+    private void traceMultipolygon(OSMType type, double[] coords, int length, GraphicsContext gc) {
         gc.beginPath();
         gc.setFillRule(FillRule.EVEN_ODD);
 
-        float[] coords = linePath.getCoords();
-        gc.moveTo(coords[0], coords[1]);
-
-        for (int i = 2; i <= coords.length; i += 2) {
-            gc.lineTo(coords[i - 2], coords[i - 1]);
-        }
+        draw(coords, length, gc);
         gc.stroke();
 
-        if (OSMType.getFill(linePath.getOSMType())) {
+        if (OSMType.getFill(type)) {
             gc.fill();
         }
     }
 
-    private void trace(LinePath linePath, GraphicsContext gc) {
+    private void trace(OSMType type, double[] coords, int length, GraphicsContext gc) {
         gc.beginPath();
-        draw(linePath, gc);
+        draw(coords, length, gc);
         gc.stroke();
 
-        if (OSMType.getFill(linePath.getOSMType())) {
+        if (OSMType.getFill(type)) {
             gc.fill();
         }
     }
 
-    private void draw(LinePath linePath, GraphicsContext gc) {
-        float[] coords = linePath.getCoords();
+    private void draw(double[] coords, int length, GraphicsContext gc) {
         gc.moveTo(coords[0], coords[1]);
 
-        for (int i = 2; i <= coords.length; i += 2) {
+        for (int i = 2; i <= length; i += 2) {
             gc.lineTo(coords[i - 2], coords[i - 1]);
         }
     }
@@ -430,7 +443,7 @@ public class View {
             Map<OSMType, Double> dist = new HashMap<>();
 
             for (OSMType type : types) {
-                if (kdTreeAPI.fetchAllKDTrees().get(type) != null) {
+                if (kdTreeAPI.isKDTreeLoaded(type) && kdTreeAPI.fetchKDTreeByType(type) != null) {
                     dist.put(type, kdTreeAPI.fetchKDTreeByType(type).getClosetsLinePathToMouseDistance());
                 }
             }
@@ -445,7 +458,8 @@ public class View {
                 }
             }
 
-            String name = kdTreeAPI.fetchKDTreeByType(shortestType).getClosetsLinepathToMouse().getName();
+            KDTree kdTree = kdTreeAPI.fetchKDTreeByType(shortestType);
+            String name = kdTree.getPaths().getName(kdTree.getClosetsPathToMouse());
             mouseLocationLabel.setText(name == null ? "Unknown way" : name);
         } catch (Exception e) {
 
@@ -252,7 +252,10 @@ public class ViewController {
         openFile.setOnAction(e -> {
             try {
                 File file = new FileChooser().showOpenDialog(Launcher.primaryStage);
-                if (file != null) {
+                if (file != null && file.getName().endsWith(".osc")) {
+                    startupController.applyChanges(file);
+                    view.repaint();
+                } else if (file != null) {
                     wayPointFlowPane.getChildren().clear();
 
                     view = buildView();
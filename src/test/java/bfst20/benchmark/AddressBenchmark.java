@@ -0,0 +1,61 @@
+package bfst20.benchmark;
+
+import bfst20.data.AddressData;
+import bfst20.logic.entities.Address;
+import bfst20.logic.services.AddressService;
+
+import java.util.Random;
+
+// Heap held by the address search tree per address, and the time to look up search
+// suggestions. The addresses are spread over streets, house numbers, postcodes and cities
+// like a national extract, and share their strings like the parser's dictionary makes them.
+// Usage: AddressBenchmark [addresses] [searches]
+public class AddressBenchmark {
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 2_500_000;
+        int searches = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+
+        Random random = new Random(11);
+        String[] cities = strings("By ", 600);
+        String[] postcodes = new String[cities.length];
+        for (int i = 0; i < postcodes.length; i++) postcodes[i] = String.valueOf(1000 + 15 * i);
+        String[] streets = strings("Vej ", 40_000);
+        String[] houseNumbers = strings("", 400);
+        for (int i = 0; i < houseNumbers.length; i++) houseNumbers[i] = (i / 2 + 1) + (i % 2 == 0 ? "" : "A");
+
+        AddressData addressData = AddressData.getInstance();
+        long before = HeapProbe.usedBytes();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            int street = random.nextInt(streets.length);
+            int city = street % cities.length;
+
+            addressData.saveAddress(i, new Address(cities[city], houseNumbers[random.nextInt(houseNumbers.length)],
+                    postcodes[city], streets[street], 55 + random.nextFloat(), 10 + random.nextFloat()));
+        }
+        addressData.getTST().trimToSize();
+        long built = System.nanoTime() - start;
+
+        long held = HeapProbe.usedBytes() - before;
+        System.out.println(count + " addresses saved in " + built / 1_000_000 + " ms, holding "
+                + HeapProbe.megabytes(held) + " (" + held / count + " bytes per address)");
+
+        AddressService service = new AddressService(addressData);
+        long found = 0;
+
+        start = System.nanoTime();
+        for (int i = 0; i < searches; i++) {
+            found += service.generateSearchSuggestions(streets[random.nextInt(streets.length)] + " 1").size();
+        }
+        System.out.println(searches + " suggestion searches, " + found + " found in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    private static String[] strings(String prefix, int count) {
+        String[] strings = new String[count];
+        for (int i = 0; i < count; i++) strings[i] = prefix + i;
+
+        return strings;
+    }
+}
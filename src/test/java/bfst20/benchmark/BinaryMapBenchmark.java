@@ -0,0 +1,98 @@
+package bfst20.benchmark;
+
+import bfst20.data.*;
+import bfst20.logic.controllers.*;
+import bfst20.logic.filehandling.FileHandler;
+import bfst20.logic.filehandling.Parser;
+import bfst20.logic.misc.OSMType;
+import bfst20.logic.services.AddressService;
+import bfst20.logic.services.LinePathService;
+import bfst20.logic.services.RoutingService;
+
+import java.io.*;
+
+// Size and load time of a .bin map written with Java serialization (what
+// generateBinary used to do) against the same map in the map file format, read
+// at once (bfst20.binary.eager) on one thread and on a pool, or mapped and decoded as
+// it is used. "first frame" also decodes the layers the view draws; the address search
+// and the graph are left to the pool.
+// Usage: BinaryMapBenchmark [nodeCount] [runs] [threads]
+public class BinaryMapBenchmark {
+    public static void main(String[] args) throws Exception {
+        int nodeCount = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors() - 1;
+
+        OSMElementController osmElementController = new OSMElementController();
+        AddressController addressController = new AddressController(new AddressService(AddressData.getInstance()));
+        RoutingController routingController = new RoutingController(new RoutingService(RoutingData.getInstance()),
+                new AddressService(AddressData.getInstance()));
+        KDTreeController kdTreeController = new KDTreeController();
+        LinePathController linePathController = new LinePathController(LinePathService.getInstance(LinePathData.getInstance()));
+
+        FileHandler fileHandler = new FileHandler.Builder()
+                .withParser(new Parser(osmElementController, addressController))
+                .withOSMElementAPI(osmElementController)
+                .withAddressAPI(addressController)
+                .withRoutingAPI(routingController)
+                .withKDTreeAPI(kdTreeController)
+                .withLinePathAPI(linePathController)
+                .build();
+
+        fileHandler.load(SyntheticOSM.writeTempFile(nodeCount, 1, true));
+        linePathController.init(osmElementController.fetchAllWays(), osmElementController.fetchAllNodes(),
+                osmElementController.fetchAllRelations());
+        osmElementController.clearNodeData();
+        routingController.buildRoutingGraph(linePathController.fetchHighways());
+        kdTreeController.constructKDTrees(linePathController.fetchLinePathData(), osmElementController.fetchBoundsData());
+
+        File serialized = File.createTempFile("serialized", ".bin");
+        File mapFile = File.createTempFile("map", ".bin");
+        serialized.deleteOnExit();
+        mapFile.deleteOnExit();
+
+        long start = System.nanoTime();
+        try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(serialized)))) {
+            out.writeObject(osmElementController.fetchBoundsData());
+            out.writeObject(kdTreeController.fetchAllKDTrees());
+            out.writeObject(linePathController.fetchCoastlines());
+            out.writeObject(addressController.fetchTSTData());
+            out.writeObject(routingController.fetchGraph());
+        }
+        System.out.println("serialized write " + (System.nanoTime() - start) / 1_000_000 + " ms, " + HeapProbe.megabytes(serialized.length()));
+
+        start = System.nanoTime();
+        fileHandler.generateBinary(mapFile);
+        System.out.println("map file   write " + (System.nanoTime() - start) / 1_000_000 + " ms, " + HeapProbe.megabytes(mapFile.length()));
+
+        System.out.println("pooled load on " + threads + " thread(s) besides the caller");
+        for (int run = 0; run < runs; run++) {
+            time("serialized load        ", fileHandler, serialized, null);
+
+            System.setProperty("bfst20.binary.eager", "true");
+            System.setProperty("bfst20.binary.threads", "0");
+            time("map file   eager load  ", fileHandler, mapFile, null);
+            System.setProperty("bfst20.binary.threads", String.valueOf(threads));
+            time("map file   pooled load ", fileHandler, mapFile, null);
+
+            System.setProperty("bfst20.binary.eager", "false");
+            time("map file   mapped load ", fileHandler, mapFile, null);
+            time("map file   first frame ", fileHandler, mapFile, kdTreeController);
+        }
+    }
+
+    private static void time(String label, FileHandler fileHandler, File file, KDTreeController drawn) throws Exception {
+        KDTreeData.getInstance().clearData();
+        AddressData.getInstance().clearData();
+        RoutingData.getInstance().saveGraph(null);
+        System.gc();
+
+        long start = System.nanoTime();
+        fileHandler.load(file);
+        if (drawn != null) {
+            for (OSMType type : OSMType.drawables()) drawn.fetchKDTreeByType(type);
+            for (OSMType type : OSMType.highways()) drawn.fetchKDTreeByType(type);
+        }
+        System.out.println(label + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+}
@@ -0,0 +1,97 @@
+package bfst20.benchmark;
+
+import bfst20.data.*;
+import bfst20.logic.controllers.*;
+import bfst20.logic.filehandling.Parser;
+import bfst20.logic.services.AddressService;
+import bfst20.logic.services.ChangeService;
+import bfst20.logic.services.LinePathService;
+import bfst20.logic.services.RoutingService;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+// Time to bring a loaded map up to date with a small osmChange file: a full
+// import of the whole map against parsing and applying only the changes.
+// Usage: ChangeBenchmark [nodeCount] [changedNodePercent]
+public class ChangeBenchmark {
+    private static OSMElementController osmElementController;
+    private static RoutingController routingController;
+    private static ChangeController changeController;
+    private static Parser parser;
+
+    public static void main(String[] args) throws Exception {
+        int nodeCount = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        double percent = args.length > 1 ? Double.parseDouble(args[1]) : 0.5;
+
+        osmElementController = new OSMElementController();
+        AddressService addressService = new AddressService(AddressData.getInstance());
+        RoutingService routingService = new RoutingService(RoutingData.getInstance());
+        routingController = new RoutingController(routingService, addressService);
+        changeController = new ChangeController(new ChangeService(MapIndexData.getInstance(), routingService));
+        parser = new Parser(osmElementController, new AddressController(addressService));
+        AddressData.getInstance().keepNodeAddresses(true);
+
+        File map = SyntheticOSM.writeTempFile(nodeCount, 1);
+        File changes = writeChanges(nodeCount, (int) (nodeCount * percent / 100), 2);
+        System.out.println(nodeCount + " nodes, " + percent + "% of them moved");
+
+        for (int run = 0; run < 3; run++) {
+            long start = System.nanoTime();
+            load(map);
+            long reload = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            changeController.applyChanges(parser.parseChangeFile(changes));
+            long apply = System.nanoTime() - start;
+
+            System.out.printf(Locale.ROOT, "full import %6d ms, change file %5d ms (%.1fx)%n",
+                    reload / 1_000_000, apply / 1_000_000, (double) reload / apply);
+            System.out.println("  " + changeController.fetchChangeReport());
+        }
+    }
+
+    // What StartupController.initialize does for an imported file.
+    private static void load(File file) throws Exception {
+        LinePathData linePathData = LinePathData.getInstance();
+        linePathData.clearCoastlines();
+        linePathData.clearData();
+        KDTreeData.getInstance().clearData();
+        AddressData.getInstance().clearData();
+        changeController.clearData();
+        osmElementController.clearNodeData();
+
+        parser.parseOSMFile(file);
+
+        LinePathController linePathController = new LinePathController(LinePathService.getInstance(linePathData));
+        linePathController.init(osmElementController.fetchAllWays(), osmElementController.fetchAllNodes(),
+                osmElementController.fetchAllRelations());
+        changeController.indexMap(osmElementController.fetchAllWays(), osmElementController.detachNodeData(),
+                linePathController.fetchHighways());
+        osmElementController.clearNodeData();
+
+        routingController.buildRoutingGraph(linePathController.fetchHighways());
+        new KDTreeController().constructKDTrees(linePathController.fetchLinePathData(), osmElementController.fetchBoundsData());
+    }
+
+    private static File writeChanges(int nodeCount, int changedNodes, long seed) throws IOException {
+        File file = File.createTempFile("synthetic", ".osc");
+        file.deleteOnExit();
+        Random random = new Random(seed);
+
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            out.write("<?xml version='1.0' encoding='UTF-8'?>\n<osmChange version=\"0.6\">\n <modify>\n");
+
+            for (int i = 0; i < changedNodes; i++) {
+                out.write(String.format(Locale.ROOT, "  <node id=\"%d\" version=\"2\" lat=\"%.7f\" lon=\"%.7f\"/>\n",
+                        1 + random.nextInt(nodeCount), 55 + random.nextDouble(), 10 + random.nextDouble()));
+            }
+
+            out.write(" </modify>\n</osmChange>\n");
+        }
+
+        return file;
+    }
+}
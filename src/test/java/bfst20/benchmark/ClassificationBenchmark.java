@@ -0,0 +1,100 @@
+package bfst20.benchmark;
+
+import bfst20.logic.misc.OSMType;
+import bfst20.logic.misc.OSMTypeTable;
+
+import java.util.Random;
+
+// Tag classification throughput of the OSMTypeTable lookup against the
+// OSMType.valueOf(value.toUpperCase()) calls with swallowed exceptions it replaced.
+// Tags are drawn from a mix like a Danish extract, where many values have no OSMType.
+// Usage: ClassificationBenchmark [tagCount]
+public class ClassificationBenchmark {
+    private static final String[] HIGHWAYS = {
+            "residential", "residential", "residential", "service", "service", "service", "footway", "footway",
+            "track", "track", "path", "unclassified", "tertiary", "cycleway", "secondary", "primary", "steps",
+            "living_street", "pedestrian", "motorway_link", "bus_stop", "crossing"};
+    private static final String[] NATURALS = {"tree", "tree", "tree", "water", "wood", "scrub", "wetland", "coastline", "heath"};
+    private static final String[] LANDUSES = {"farmland", "farmland", "residential", "grass", "meadow", "forest", "industrial", "allotments"};
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+        OSMTypeTable table = OSMTypeTable.getDefault();
+
+        String[] keys = new String[count];
+        String[] values = new String[count];
+        Random random = new Random(42);
+
+        for (int i = 0; i < count; i++) {
+            int kind = random.nextInt(10);
+
+            if (kind < 5) {
+                keys[i] = "highway";
+                values[i] = HIGHWAYS[random.nextInt(HIGHWAYS.length)];
+            } else if (kind < 7) {
+                keys[i] = "natural";
+                values[i] = NATURALS[random.nextInt(NATURALS.length)];
+            } else {
+                keys[i] = "landuse";
+                values[i] = LANDUSES[random.nextInt(LANDUSES.length)];
+            }
+            // Fresh strings, like the ones the parser reads.
+            values[i] = new String(values[i].toCharArray());
+        }
+
+        int[] keyIndices = new int[count];
+        for (int i = 0; i < count; i++) keyIndices[i] = table.getKeys().indexOf(keys[i]);
+
+        for (int run = 0; run < 3; run++) {
+            long start = System.nanoTime();
+            int hash = 0;
+            for (int i = 0; i < count; i++) hash += classifyWithExceptions(keys[i], values[i]).ordinal();
+            long exceptionNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            int tableHash = 0;
+            for (int i = 0; i < count; i++) {
+                OSMType type = table.classify(keyIndices[i], values[i]);
+                tableHash += type == null ? OSMType.UNKNOWN.ordinal() : type.ordinal();
+            }
+            long tableNanos = System.nanoTime() - start;
+
+            if (hash != tableHash) throw new IllegalStateException("Classifications differ");
+
+            report("valueOf + exceptions", exceptionNanos, count);
+            report("OSMTypeTable        ", tableNanos, count);
+        }
+    }
+
+    // The rules as they were written before the table, UNKNOWN standing in for no type.
+    private static OSMType classifyWithExceptions(String key, String value) {
+        try {
+            if (key.equals("natural")) return OSMType.valueOf(value.toUpperCase());
+
+            if (key.equals("landuse")) {
+                try {
+                    return OSMType.valueOf(value.toUpperCase());
+                } catch (Exception e) {
+                    return OSMType.LANDUSE;
+                }
+            }
+
+            try {
+                OSMType type = OSMType.valueOf(value.toUpperCase());
+
+                if (type == OSMType.RESIDENTIAL) return OSMType.RESIDENTIAL_HIGHWAY;
+                if (type == OSMType.UNCLASSIFIED) return OSMType.UNCLASSIFIED_HIGHWAY;
+
+                return type;
+            } catch (Exception e) {
+                return OSMType.HIGHWAY;
+            }
+        } catch (Exception e) {
+            return OSMType.UNKNOWN;
+        }
+    }
+
+    private static void report(String name, long nanos, int count) {
+        System.out.printf("%s %,12.0f tags/s  %6.1f ns/tag%n", name, count / (nanos / 1e9), (double) nanos / count);
+    }
+}
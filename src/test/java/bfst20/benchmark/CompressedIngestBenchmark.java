@@ -0,0 +1,83 @@
+package bfst20.benchmark;
+
+import bfst20.data.AddressData;
+import bfst20.logic.controllers.AddressController;
+import bfst20.logic.controllers.OSMElementController;
+import bfst20.logic.filehandling.Bzip2InputStream;
+import bfst20.logic.filehandling.FileHandler;
+import bfst20.logic.filehandling.Parser;
+import bfst20.logic.services.AddressService;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Import time of a compressed extract when it is first decompressed to disk (what
+// we did by hand) against decompressing it while it is parsed. The .bz2 file is
+// made with the bzip2 tool, which has to be on the path.
+// Usage: CompressedIngestBenchmark [nodeCount] [bzip2Threads]
+public class CompressedIngestBenchmark {
+    private static OSMElementController osmElementController;
+    private static FileHandler fileHandler;
+
+    public static void main(String[] args) throws Exception {
+        int nodeCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        System.setProperty("bfst20.bzip2.threads", String.valueOf(threads));
+
+        osmElementController = new OSMElementController();
+        AddressController addressController = new AddressController(new AddressService(AddressData.getInstance()));
+        fileHandler = new FileHandler.Builder()
+                .withParser(new Parser(osmElementController, addressController))
+                .withOSMElementAPI(osmElementController)
+                .withAddressAPI(addressController)
+                .build();
+
+        File osm = SyntheticOSM.writeTempFile(nodeCount, 1);
+        File gzip = new File(osm.getPath() + ".gz");
+        File bzip2 = new File(osm.getPath() + ".bz2");
+        gzip.deleteOnExit();
+        bzip2.deleteOnExit();
+
+        try (InputStream in = new FileInputStream(osm); OutputStream out = new GZIPOutputStream(new FileOutputStream(gzip), 1 << 16)) {
+            in.transferTo(out);
+        }
+        Process process = new ProcessBuilder("bzip2", "-k", "-f", osm.getPath()).inheritIO().start();
+        if (process.waitFor() != 0) throw new IOException("bzip2 failed");
+
+        System.out.println(nodeCount + " nodes: " + HeapProbe.megabytes(osm.length()) + " XML, " + HeapProbe.megabytes(gzip.length())
+                + " gzip, " + HeapProbe.megabytes(bzip2.length()) + " bzip2, " + threads + " bzip2 thread(s)");
+
+        for (int run = 0; run < 2; run++) {
+            time("gzip  to disk  ", () -> loadUnpacked(new GZIPInputStream(new FileInputStream(gzip), 1 << 16)));
+            time("gzip  streamed ", () -> fileHandler.load(gzip));
+            time("bzip2 to disk  ", () -> loadUnpacked(new Bzip2InputStream(new BufferedInputStream(new FileInputStream(bzip2)))));
+            time("bzip2 streamed ", () -> fileHandler.load(bzip2));
+        }
+    }
+
+    private static void loadUnpacked(InputStream compressed) throws Exception {
+        File unpacked = File.createTempFile("unpacked", ".osm");
+
+        try (InputStream in = compressed; OutputStream out = new BufferedOutputStream(new FileOutputStream(unpacked), 1 << 16)) {
+            in.transferTo(out);
+        }
+
+        fileHandler.load(unpacked);
+        Files.delete(unpacked.toPath());
+    }
+
+    private static void time(String label, Load load) throws Exception {
+        osmElementController.clearNodeData();
+        System.gc();
+
+        long start = System.nanoTime();
+        load.run();
+        System.out.println(label + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    private interface Load {
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,36 @@
+package bfst20.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+// Peak heap usage between reset() and peakBytes(), summed over the heap pools.
+public class HeapProbe {
+
+    public static void reset() {
+        System.gc();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) pool.resetPeakUsage();
+        }
+    }
+
+    public static long peakBytes() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) peak += pool.getPeakUsage().getUsed();
+        }
+
+        return peak;
+    }
+
+    public static long usedBytes() {
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    public static String megabytes(long bytes) {
+        return String.format("%,.1f MB", bytes / (1024.0 * 1024.0));
+    }
+}
@@ -0,0 +1,90 @@
+package bfst20.benchmark;
+
+import bfst20.data.*;
+import bfst20.logic.controllers.*;
+import bfst20.logic.filehandling.FileHandler;
+import bfst20.logic.filehandling.MapCache;
+import bfst20.logic.filehandling.Parser;
+import bfst20.logic.services.AddressService;
+import bfst20.logic.services.LinePathService;
+import bfst20.logic.services.RoutingService;
+
+import java.io.File;
+import java.nio.file.Files;
+
+// Time to open a file that is not in the map cache (import it and store the map)
+// against opening it again from the cache, like StartupController does.
+// Usage: MapCacheBenchmark [nodeCount] [runs]
+public class MapCacheBenchmark {
+    public static void main(String[] args) throws Exception {
+        int nodeCount = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        OSMElementController osmElementController = new OSMElementController();
+        AddressController addressController = new AddressController(new AddressService(AddressData.getInstance()));
+        RoutingController routingController = new RoutingController(new RoutingService(RoutingData.getInstance()),
+                new AddressService(AddressData.getInstance()));
+        KDTreeController kdTreeController = new KDTreeController();
+        LinePathController linePathController = new LinePathController(LinePathService.getInstance(LinePathData.getInstance()));
+
+        FileHandler fileHandler = new FileHandler.Builder()
+                .withParser(new Parser(osmElementController, addressController))
+                .withOSMElementAPI(osmElementController)
+                .withAddressAPI(addressController)
+                .withRoutingAPI(routingController)
+                .withKDTreeAPI(kdTreeController)
+                .withLinePathAPI(linePathController)
+                .build();
+
+        File source = SyntheticOSM.writeTempFile(nodeCount, 1, true);
+        File directory = Files.createTempDirectory("cache").toFile();
+        directory.deleteOnExit();
+        MapCache cache = new MapCache(directory, Long.MAX_VALUE);
+
+        for (int run = 0; run < runs; run++) {
+            clear(linePathController, osmElementController);
+            long start = System.nanoTime();
+            String key = cache.keyOf(source);
+            if (cache.find(key) != null) throw new IllegalStateException("The map is cached already");
+
+            fileHandler.load(source);
+            linePathController.init(osmElementController.fetchAllWays(), osmElementController.fetchAllNodes(),
+                    osmElementController.fetchAllRelations());
+            osmElementController.clearNodeData();
+            routingController.buildRoutingGraph(linePathController.fetchHighways());
+            kdTreeController.constructKDTrees(linePathController.fetchLinePathData(), osmElementController.fetchBoundsData());
+            long opened = System.nanoTime();
+            File stored = cache.store(key, fileHandler.prepareBinary());
+            long end = System.nanoTime();
+            System.out.println("cold open  " + (opened - start) / 1_000_000 + " ms, store "
+                    + (end - opened) / 1_000_000 + " ms, " + HeapProbe.megabytes(stored.length()));
+
+            System.setProperty("bfst20.binary.eager", "true");
+            clear(linePathController, osmElementController);
+            time("warm open  eager ", fileHandler, cache, source);
+            System.setProperty("bfst20.binary.eager", "false");
+            clear(linePathController, osmElementController);
+            time("warm open  mapped", fileHandler, cache, source);
+
+            stored.delete();
+        }
+    }
+
+    private static void time(String label, FileHandler fileHandler, MapCache cache, File source) throws Exception {
+        long start = System.nanoTime();
+        fileHandler.load(cache.find(cache.keyOf(source)));
+        System.out.println(label + " " + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    // What StartupController clears before it opens a file.
+    private static void clear(LinePathController linePathController, OSMElementController osmElementController) {
+        LinePathData.getInstance().clearMotorways();
+        LinePathData.getInstance().clearCoastlines();
+        linePathController.clearLinePathData();
+        osmElementController.clearNodeData();
+        KDTreeData.getInstance().clearData();
+        AddressData.getInstance().clearData();
+        RoutingData.getInstance().saveGraph(null);
+        System.gc();
+    }
+}
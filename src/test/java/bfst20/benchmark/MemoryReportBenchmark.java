@@ -0,0 +1,74 @@
+package bfst20.benchmark;
+
+import bfst20.data.*;
+import bfst20.logic.controllers.*;
+import bfst20.logic.filehandling.FileHandler;
+import bfst20.logic.filehandling.Parser;
+import bfst20.logic.services.AddressService;
+import bfst20.logic.services.LinePathService;
+import bfst20.logic.services.MemoryReport;
+import bfst20.logic.services.MemoryService;
+import bfst20.logic.services.RoutingService;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+// The heap the memory report estimates for the map after each phase of an import, against
+// the heap actually used after a full collection, less what was used before the import.
+// Also the time each estimate takes. Writes the reports as JSON if a file is given.
+// Usage: MemoryReportBenchmark [nodeCount] [json file]
+public class MemoryReportBenchmark {
+    public static void main(String[] args) throws Exception {
+        int nodeCount = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+
+        OSMElementController osmElementController = new OSMElementController();
+        AddressController addressController = new AddressController(new AddressService(AddressData.getInstance()));
+        RoutingController routingController = new RoutingController(new RoutingService(RoutingData.getInstance()),
+                new AddressService(AddressData.getInstance()));
+        KDTreeController kdTreeController = new KDTreeController();
+        LinePathController linePathController = new LinePathController(LinePathService.getInstance(LinePathData.getInstance()));
+        MemoryController memoryController = new MemoryController(new MemoryService(OSMElementData.getInstance(),
+                LinePathData.getInstance(), KDTreeData.getInstance(), RoutingData.getInstance(), AddressData.getInstance()));
+
+        FileHandler fileHandler = new FileHandler.Builder()
+                .withParser(new Parser(osmElementController, addressController))
+                .withOSMElementAPI(osmElementController)
+                .withAddressAPI(addressController)
+                .withRoutingAPI(routingController)
+                .withKDTreeAPI(kdTreeController)
+                .withLinePathAPI(linePathController)
+                .withMemoryAPI(memoryController)
+                .build();
+
+        java.io.File file = SyntheticOSM.writeTempFile(nodeCount, 1, true);
+        long before = HeapProbe.usedBytes();
+
+        fileHandler.load(file);
+        measure(memoryController, "load", before);
+        linePathController.init(osmElementController.fetchAllWays(), osmElementController.fetchAllNodes(),
+                osmElementController.fetchAllRelations());
+        measure(memoryController, "linePaths", before);
+        osmElementController.clearNodeData();
+        measure(memoryController, "nodesCleared", before);
+        routingController.buildRoutingGraph(linePathController.fetchHighways());
+        measure(memoryController, "routingGraph", before);
+        kdTreeController.constructKDTrees(linePathController.fetchLinePathData(), osmElementController.fetchBoundsData());
+        measure(memoryController, "kdTrees", before);
+        linePathController.clearLinePathData();
+        measure(memoryController, "linePathsCleared", before);
+
+        if (args.length > 1) Files.write(Paths.get(args[1]), memoryController.fetchMemoryReportsJson().getBytes());
+    }
+
+    private static void measure(MemoryController memoryController, String phase, long before) {
+        long used = HeapProbe.usedBytes() - before;
+
+        long start = System.nanoTime();
+        MemoryReport report = memoryController.measureMemory(phase);
+        long nanos = System.nanoTime() - start;
+
+        System.out.println(report);
+        System.out.println(String.format("  estimated %s, measured %s, estimate took %d ms",
+                HeapProbe.megabytes(report.getEstimatedBytes()), HeapProbe.megabytes(used), nanos / 1_000_000));
+    }
+}
@@ -0,0 +1,126 @@
+package bfst20.benchmark;
+
+import bfst20.data.AddressData;
+import bfst20.logic.controllers.AddressController;
+import bfst20.logic.controllers.OSMElementController;
+import bfst20.logic.entities.Node;
+import bfst20.logic.filehandling.FileHandler;
+import bfst20.logic.filehandling.Parser;
+import bfst20.logic.nodestore.MappedNodeStore;
+import bfst20.logic.nodestore.SortedNodeStore;
+import bfst20.logic.nodestore.NodeStore;
+import bfst20.logic.services.AddressService;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+// Retained heap and lookup time of the node stores against the HashMap<Long, Node> it
+// replaced. Nodes come from an extract if one is given, otherwise ids are generated
+// with gaps like in a real extract.
+// Usage: NodeStoreBenchmark [nodeCount | file.osm | file.osm.pbf]
+public class NodeStoreBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String source = args.length > 0 ? args[0] : "10000000";
+        long[] ids;
+        float[] lats, lons;
+
+        if (source.matches("\\d+")) {
+            int count = Integer.parseInt(source);
+            ids = new long[count];
+            lats = new float[count];
+            lons = new float[count];
+
+            Random random = new Random(42);
+            long id = 1;
+            for (int i = 0; i < count; i++) {
+                id += 1 + random.nextInt(40);
+                ids[i] = id;
+                lats[i] = -55 - random.nextFloat();
+                lons[i] = 0.56f * (10 + random.nextFloat());
+            }
+        } else {
+            NodeStore loaded = load(new File(source));
+            int count = loaded.size();
+            ids = new long[count];
+            lats = new float[count];
+            lons = new float[count];
+
+            int[] next = new int[1];
+            loaded.forEach((id, lat, lon) -> {
+                ids[next[0]] = id;
+                lats[next[0]] = lat;
+                lons[next[0]++] = lon;
+            });
+        }
+
+        System.out.println(ids.length + " nodes from " + source);
+
+        long before = HeapProbe.usedBytes();
+        NodeStore store = new SortedNodeStore();
+        for (int i = 0; i < ids.length; i++) store.put(ids[i], lats[i], lons[i]);
+        long storeBytes = HeapProbe.usedBytes() - before;
+
+        long start = System.nanoTime();
+        double sum = 0;
+        for (long id : ids) {
+            int index = store.indexOf(id);
+            sum += store.latitudeAt(index) + store.longitudeAt(index);
+        }
+        long storeNanos = System.nanoTime() - start;
+        double storeSum = sum;
+        store = null;
+
+        before = HeapProbe.usedBytes();
+        NodeStore mapped = new MappedNodeStore(new File(System.getProperty("java.io.tmpdir")));
+        for (int i = 0; i < ids.length; i++) mapped.put(ids[i], lats[i], lons[i]);
+        mapped.contains(ids[0]);
+        long mappedBytes = HeapProbe.usedBytes() - before;
+
+        start = System.nanoTime();
+        double mappedSum = storeSum;
+        for (long id : ids) {
+            int index = mapped.indexOf(id);
+            mappedSum -= mapped.latitudeAt(index) + mapped.longitudeAt(index);
+        }
+        long mappedNanos = System.nanoTime() - start;
+        mapped.close();
+
+        before = HeapProbe.usedBytes();
+        Map<Long, Node> map = new HashMap<>();
+        for (int i = 0; i < ids.length; i++) map.put(ids[i], new Node(ids[i], lats[i], lons[i]));
+        long mapBytes = HeapProbe.usedBytes() - before;
+
+        start = System.nanoTime();
+        for (long id : ids) {
+            Node node = map.get(id);
+            sum -= node.getLatitude() + node.getLongitude();
+        }
+        long mapNanos = System.nanoTime() - start;
+
+        report("HashMap<Long, Node>", mapBytes, mapNanos, ids.length);
+        report("SortedNodeStore      ", storeBytes, storeNanos, ids.length);
+        report("MappedNodeStore      ", mappedBytes, mappedNanos, ids.length);
+        if (Math.abs(sum) > 1e-3 * ids.length || Math.abs(mappedSum) > 1e-3 * ids.length) throw new IllegalStateException("Stores disagree");
+    }
+
+    private static NodeStore load(File file) throws Exception {
+        OSMElementController osmElementController = new OSMElementController();
+        Parser parser = new Parser(osmElementController, new AddressController(new AddressService(AddressData.getInstance())));
+
+        new FileHandler.Builder()
+                .withParser(parser)
+                .withOSMElementAPI(osmElementController)
+                .build()
+                .load(file);
+
+        return osmElementController.fetchAllNodes();
+    }
+
+    private static void report(String name, long bytes, long nanos, int count) {
+        System.out.printf("%s %12s  %5.1f bytes/node  lookup %6.1f ns/node%n",
+                name, HeapProbe.megabytes(bytes), (double) bytes / count, (double) nanos / count);
+    }
+}
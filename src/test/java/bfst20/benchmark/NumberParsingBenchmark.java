@@ -0,0 +1,103 @@
+package bfst20.benchmark;
+
+import bfst20.data.AddressData;
+import bfst20.logic.controllers.AddressController;
+import bfst20.logic.controllers.OSMElementController;
+import bfst20.logic.filehandling.NumberParser;
+import bfst20.logic.filehandling.Parser;
+import bfst20.logic.services.AddressService;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+// Parsing the node ids, coordinates and nd refs of a synthetic million-node document
+// with Long.parseLong/Float.parseFloat against NumberParser, in time and bytes
+// allocated, followed by the single-threaded import of the whole document.
+// Usage: NumberParsingBenchmark [nodeCount]
+public class NumberParsingBenchmark {
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws Exception {
+        int nodeCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        File file = SyntheticOSM.writeTempFile(nodeCount, 1);
+        System.out.println("Document: " + HeapProbe.megabytes(file.length()) + ", " + nodeCount + " nodes");
+
+        List<String> ids = new ArrayList<>();
+        List<String> coordinates = new ArrayList<>();
+        readAttributes(file, ids, coordinates);
+
+        for (int run = 0; run < 3; run++) {
+            long allocated = allocatedBytes();
+            long start = System.nanoTime();
+            long sum = 0;
+            for (String id : ids) sum += Long.parseLong(id);
+            for (String coordinate : coordinates) sum += Float.floatToRawIntBits(Float.parseFloat(coordinate));
+            report("parseLong/parseFloat", start, allocated, ids.size() + coordinates.size());
+
+            allocated = allocatedBytes();
+            start = System.nanoTime();
+            long parserSum = 0;
+            for (String id : ids) parserSum += NumberParser.parseLong(id);
+            for (String coordinate : coordinates) parserSum += Float.floatToRawIntBits(NumberParser.parseFloat(coordinate));
+            report("NumberParser        ", start, allocated, ids.size() + coordinates.size());
+
+            if (sum != parserSum) throw new IllegalStateException("Parsed numbers differ");
+        }
+
+        OSMElementController osmElementController = new OSMElementController();
+        Parser parser = new Parser(osmElementController, new AddressController(new AddressService(AddressData.getInstance())));
+        parser.setThreadCount(1);
+
+        for (int run = 0; run < 2; run++) {
+            osmElementController.clearNodeData();
+            AddressData.getInstance().clearData();
+
+            long start = System.nanoTime();
+            parser.parseOSMFile(file);
+            System.out.println("Import, 1 thread     " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        }
+    }
+
+    // Fresh attribute strings, like the ones the XML reader hands to the workers.
+    private static void readAttributes(File file, List<String> ids, List<String> coordinates) throws Exception {
+        try (InputStream stream = new BufferedInputStream(new FileInputStream(file))) {
+            XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(stream);
+
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) continue;
+
+                switch (reader.getLocalName()) {
+                    case "node":
+                        ids.add(reader.getAttributeValue(null, "id"));
+                        coordinates.add(reader.getAttributeValue(null, "lat"));
+                        coordinates.add(reader.getAttributeValue(null, "lon"));
+                        break;
+                    case "nd":
+                        ids.add(reader.getAttributeValue(null, "ref"));
+                        break;
+                }
+            }
+        }
+    }
+
+    private static long allocatedBytes() {
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static void report(String name, long start, long allocatedBefore, int count) {
+        long nanos = System.nanoTime() - start;
+        long allocated = allocatedBytes() - allocatedBefore;
+
+        System.out.printf("%s %,12.0f numbers/s  %6.1f ns/number  %6.1f bytes/number%n",
+                name, count / (nanos / 1e9), (double) nanos / count, (double) allocated / count);
+    }
+}
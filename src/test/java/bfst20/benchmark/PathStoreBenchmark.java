@@ -0,0 +1,92 @@
+package bfst20.benchmark;
+
+import bfst20.data.*;
+import bfst20.logic.controllers.*;
+import bfst20.logic.entities.Bounds;
+import bfst20.logic.filehandling.FileHandler;
+import bfst20.logic.filehandling.Parser;
+import bfst20.logic.kdtree.KDTree;
+import bfst20.logic.kdtree.PathStore;
+import bfst20.logic.kdtree.Rect;
+import bfst20.logic.misc.OSMType;
+import bfst20.logic.services.AddressService;
+import bfst20.logic.services.LinePathService;
+import bfst20.logic.services.RoutingService;
+
+import java.util.Random;
+
+// Heap held by the KD-trees of an imported map once the LinePaths are released, and the
+// time to query the layers the view draws for a number of viewports and walk the
+// coordinates of every path found, like View does to draw them.
+// Usage: PathStoreBenchmark [nodeCount] [viewports] [runs]
+public class PathStoreBenchmark {
+    public static void main(String[] args) throws Exception {
+        int nodeCount = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        int viewports = args.length > 1 ? Integer.parseInt(args[1]) : 2_000;
+        int runs = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        OSMElementController osmElementController = new OSMElementController();
+        AddressController addressController = new AddressController(new AddressService(AddressData.getInstance()));
+        RoutingController routingController = new RoutingController(new RoutingService(RoutingData.getInstance()),
+                new AddressService(AddressData.getInstance()));
+        KDTreeController kdTreeController = new KDTreeController();
+        LinePathController linePathController = new LinePathController(LinePathService.getInstance(LinePathData.getInstance()));
+
+        FileHandler fileHandler = new FileHandler.Builder()
+                .withParser(new Parser(osmElementController, addressController))
+                .withOSMElementAPI(osmElementController)
+                .withAddressAPI(addressController)
+                .withRoutingAPI(routingController)
+                .withKDTreeAPI(kdTreeController)
+                .withLinePathAPI(linePathController)
+                .build();
+
+        fileHandler.load(SyntheticOSM.writeTempFile(nodeCount, 1, true));
+        linePathController.init(osmElementController.fetchAllWays(), osmElementController.fetchAllNodes(),
+                osmElementController.fetchAllRelations());
+        osmElementController.clearNodeData();
+        routingController.buildRoutingGraph(linePathController.fetchHighways());
+        kdTreeController.constructKDTrees(linePathController.fetchLinePathData(), osmElementController.fetchBoundsData());
+        linePathController.clearLinePathData();
+
+        Bounds bounds = osmElementController.fetchBoundsData();
+        float width = (bounds.getMaxLon() - bounds.getMinLon()) / 10;
+        float height = (bounds.getMaxLat() - bounds.getMinLat()) / 10;
+        double[] coords = null;
+
+        for (int run = 0; run < runs; run++) {
+            Random random = new Random(7);
+            double sum = 0;
+            long found = 0;
+
+            long start = System.nanoTime();
+            for (int i = 0; i < viewports; i++) {
+                float minLat = bounds.getMinLat() + random.nextFloat() * height * 9;
+                float minLon = bounds.getMinLon() + random.nextFloat() * width * 9;
+                Rect rect = new Rect(minLat, minLat + height, minLon, minLon + width);
+
+                for (OSMType[] layers : new OSMType[][]{OSMType.drawables(), OSMType.highways()}) {
+                    for (OSMType type : layers) {
+                        KDTree tree = kdTreeController.fetchKDTreeByType(type);
+                        if (tree == null) continue;
+
+                        PathStore store = tree.getPaths();
+
+                        for (int path : tree.getPathsInRect(rect, Double.MAX_VALUE, null)) {
+                            coords = store.getCoords(path, coords);
+                            for (int j = 0; j < store.getLength(path); j++) sum += coords[j];
+                            found++;
+                        }
+                    }
+                }
+            }
+
+            System.out.println(viewports + " viewports, " + found + " paths drawn in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms (" + (long) sum % 10 + ")");
+        }
+
+        long withTrees = HeapProbe.usedBytes();
+        KDTreeData.getInstance().clearData();
+        System.out.println("KD-trees hold " + HeapProbe.megabytes(withTrees - HeapProbe.usedBytes()));
+    }
+}
@@ -0,0 +1,114 @@
+package bfst20.benchmark;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+// Writes a deterministic OSM XML document of roughly Danish shape: nodes with a
+// few addresses, ways of every kind the parser classifies and some relations.
+public class SyntheticOSM {
+    private static final String[] STREETS = {"Vestergade", "Østergade", "Nørregade", "Søndergade", "Kirkevej", "Skovvej"};
+    private static final String[] CITIES = {"Tranebjerg", "Nordby", "Kolby", "Onsbjerg"};
+    private static final String[][] WAY_TAGS = {
+            {"highway", "residential", "name", null},
+            {"highway", "primary", "maxspeed", "80"},
+            {"highway", "unclassified", "oneway", "yes"},
+            {"highway", "footway"},
+            {"highway", "tertiary", "name", null},
+            {"building", "yes"},
+            {"natural", "water"},
+            {"natural", "coastline"},
+            {"landuse", "farmland"},
+            {"landuse", "residential"},
+            {"waterway", "stream"},
+    };
+
+    public static void write(Writer out, int nodeCount, long seed) throws IOException {
+        write(out, nodeCount, seed, false);
+    }
+
+    // Clustered nodes walk from one to the next in steps of up to 20 m, so the nodes of
+    // a way lie close together as in a real extract. Otherwise they are spread evenly.
+    public static void write(Writer out, int nodeCount, long seed, boolean clustered) throws IOException {
+        Random random = new Random(seed);
+        double lat = 55.5;
+        double lon = 10.5;
+
+        out.write("<?xml version='1.0' encoding='UTF-8'?>\n<osm version=\"0.6\" generator=\"SyntheticOSM\">\n");
+        out.write(" <bounds minlat=\"55.0000000\" minlon=\"10.0000000\" maxlat=\"56.0000000\" maxlon=\"11.0000000\"/>\n");
+
+        for (int id = 1; id <= nodeCount; id++) {
+            double nextLat = 55 + random.nextDouble();
+            double nextLon = 10 + random.nextDouble();
+            if (clustered) {
+                nextLat = Math.min(56, Math.max(55, lat + (nextLat - 55.5) * 4e-4));
+                nextLon = Math.min(11, Math.max(10, lon + (nextLon - 10.5) * 4e-4));
+            }
+            lat = nextLat;
+            lon = nextLon;
+
+            String attributes = String.format(Locale.ROOT, "id=\"%d\" visible=\"true\" version=\"1\" lat=\"%.7f\" lon=\"%.7f\"",
+                    id, lat, lon);
+
+            if (random.nextInt(20) == 0) {
+                out.write(" <node " + attributes + ">\n");
+                writeTag(out, "addr:city", CITIES[random.nextInt(CITIES.length)]);
+                writeTag(out, "addr:housenumber", String.valueOf(1 + random.nextInt(80)));
+                writeTag(out, "addr:postcode", "830" + random.nextInt(10));
+                writeTag(out, "addr:street", STREETS[random.nextInt(STREETS.length)]);
+                out.write(" </node>\n");
+            } else {
+                out.write(" <node " + attributes + "/>\n");
+            }
+        }
+
+        int wayCount = nodeCount / 8;
+        for (int i = 0; i < wayCount; i++) {
+            out.write(" <way id=\"" + (nodeCount + i + 1) + "\" visible=\"true\" version=\"1\">\n");
+
+            int length = 2 + random.nextInt(8);
+            int start = 1 + random.nextInt(nodeCount - length);
+            for (int ref = start; ref < start + length; ref++) {
+                out.write("  <nd ref=\"" + ref + "\"/>\n");
+            }
+
+            String[] tags = WAY_TAGS[random.nextInt(WAY_TAGS.length)];
+            for (int tag = 0; tag < tags.length; tag += 2) {
+                writeTag(out, tags[tag], tags[tag + 1] == null ? STREETS[random.nextInt(STREETS.length)] : tags[tag + 1]);
+            }
+            out.write(" </way>\n");
+        }
+
+        for (int i = 0; i < Math.max(1, nodeCount / 1000); i++) {
+            out.write(" <relation id=\"" + (i + 1) + "\" visible=\"true\" version=\"1\">\n");
+            for (int member = 0; member < 3; member++) {
+                out.write("  <member type=\"way\" ref=\"" + (nodeCount + 1 + random.nextInt(wayCount)) + "\" role=\"outer\"/>\n");
+            }
+            writeTag(out, "type", "multipolygon");
+            writeTag(out, "natural", "heath");
+            out.write(" </relation>\n");
+        }
+
+        out.write("</osm>\n");
+    }
+
+    public static File writeTempFile(int nodeCount, long seed) throws IOException {
+        return writeTempFile(nodeCount, seed, false);
+    }
+
+    public static File writeTempFile(int nodeCount, long seed, boolean clustered) throws IOException {
+        File file = File.createTempFile("synthetic", ".osm");
+        file.deleteOnExit();
+
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            write(out, nodeCount, seed, clustered);
+        }
+
+        return file;
+    }
+
+    private static void writeTag(Writer out, String key, String value) throws IOException {
+        out.write("  <tag k=\"" + key + "\" v=\"" + value + "\"/>\n");
+    }
+}
@@ -0,0 +1,43 @@
+package bfst20.benchmark;
+
+import bfst20.data.AddressData;
+import bfst20.logic.controllers.AddressController;
+import bfst20.logic.controllers.OSMElementController;
+import bfst20.logic.filehandling.ParseReport;
+import bfst20.logic.filehandling.Parser;
+import bfst20.logic.services.AddressService;
+
+import java.io.File;
+
+// Import of a synthetic document with the StAX reader against the byte tokenizer,
+// on one thread and on the default number of workers.
+// Usage: TokenizerBenchmark [nodeCount]
+public class TokenizerBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int nodeCount = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        File file = SyntheticOSM.writeTempFile(nodeCount, 1);
+        System.out.println("Document: " + HeapProbe.megabytes(file.length()) + ", " + nodeCount + " nodes");
+
+        OSMElementController osmElementController = new OSMElementController();
+        Parser parser = new Parser(osmElementController, new AddressController(new AddressService(AddressData.getInstance())));
+        int defaultThreads = parser.getThreadCount();
+
+        for (int run = 0; run < 2; run++) {
+            for (int threads : new int[]{1, defaultThreads}) {
+                for (boolean byteTokenizer : new boolean[]{false, true}) {
+                    osmElementController.clearNodeData();
+                    AddressData.getInstance().clearData();
+
+                    parser.setThreadCount(threads);
+                    parser.setByteTokenizer(byteTokenizer);
+                    parser.parseOSMFile(file);
+
+                    ParseReport report = parser.getParseReport();
+                    System.out.printf("%-14s %2d threads %6d ms  read %,12.0f elements/s%n",
+                            byteTokenizer ? "byte tokenizer" : "StAX", threads, report.getWallMillis(), report.getReadRate());
+                }
+            }
+        }
+    }
+}
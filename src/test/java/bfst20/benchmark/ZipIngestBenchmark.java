@@ -0,0 +1,93 @@
+package bfst20.benchmark;
+
+import bfst20.data.AddressData;
+import bfst20.logic.controllers.AddressController;
+import bfst20.logic.controllers.OSMElementController;
+import bfst20.logic.filehandling.FileHandler;
+import bfst20.logic.filehandling.Parser;
+import bfst20.logic.services.AddressService;
+
+import java.io.*;
+import java.util.Enumeration;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+// Peak heap of loading a zipped extract by reading the entry into a String
+// (the old FileHandler.loadZip) against streaming it into the parser.
+// Usage: ZipIngestBenchmark [nodeCount]
+public class ZipIngestBenchmark {
+    private static OSMElementController osmElementController;
+    private static AddressData addressData;
+    private static Parser parser;
+
+    public static void main(String[] args) throws Exception {
+        int nodeCount = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+
+        osmElementController = new OSMElementController();
+        addressData = AddressData.getInstance();
+        parser = new Parser(osmElementController, new AddressController(new AddressService(addressData)));
+
+        File zip = createZip(nodeCount);
+        System.out.println("Archive: " + HeapProbe.megabytes(zip.length()) + ", " + nodeCount + " nodes");
+
+        FileHandler fileHandler = new FileHandler.Builder()
+                .withParser(parser)
+                .withOSMElementAPI(osmElementController)
+                .build();
+
+        for (int run = 0; run < 2; run++) {
+            clear();
+            HeapProbe.reset();
+            long start = System.nanoTime();
+            loadAsString(zip);
+            report("String entry   ", start);
+
+            clear();
+            HeapProbe.reset();
+            start = System.nanoTime();
+            fileHandler.load(zip);
+            report("Streamed entry ", start);
+        }
+    }
+
+    private static void loadAsString(File file) throws Exception {
+        try (ZipFile zipFile = new ZipFile(file)) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+
+                if (entry.getName().endsWith(".osm")) {
+                    InputStream stream = zipFile.getInputStream(entry);
+                    parser.parseString(new String(stream.readAllBytes()));
+                }
+            }
+        }
+    }
+
+    private static File createZip(int nodeCount) throws IOException {
+        File file = File.createTempFile("synthetic", ".zip");
+        file.deleteOnExit();
+
+        try (ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.putNextEntry(new ZipEntry("synthetic.osm"));
+            Writer writer = new OutputStreamWriter(out, "UTF-8");
+            SyntheticOSM.write(writer, nodeCount, 1);
+            writer.flush();
+            out.closeEntry();
+        }
+
+        return file;
+    }
+
+    private static void clear() {
+        osmElementController.clearNodeData();
+        addressData.clearData();
+    }
+
+    private static void report(String label, long start) {
+        System.out.println(label + " peak heap " + HeapProbe.megabytes(HeapProbe.peakBytes())
+                + ", " + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+}
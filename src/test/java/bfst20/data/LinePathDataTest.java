@@ -4,6 +4,7 @@ import bfst20.logic.misc.OSMType;
 import bfst20.logic.entities.LinePath;
 import bfst20.logic.entities.Node;
 import bfst20.logic.entities.Way;
+import bfst20.logic.nodestore.SortedNodeStore;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
@@ -33,7 +34,7 @@ class LinePathDataTest {
 
     @Test
     void getLinePaths() {
-        LinePath linePath = new LinePath(new Way(), OSMType.COASTLINE, new HashMap<>(), true);
+        LinePath linePath = new LinePath(new Way(), OSMType.COASTLINE, new SortedNodeStore(), true);
 
         linePathData.saveLinePath(OSMType.COASTLINE, linePath);
 
@@ -42,7 +43,7 @@ class LinePathDataTest {
 
     @Test
     void saveLinePath() {
-        LinePath linePath = new LinePath(new Way(), OSMType.MOTORWAY, new HashMap<>(), true);
+        LinePath linePath = new LinePath(new Way(), OSMType.MOTORWAY, new SortedNodeStore(), true);
 
         linePathData.saveLinePath(OSMType.MOTORWAY, linePath);
 
@@ -51,7 +52,7 @@ class LinePathDataTest {
 
     @Test
     void saveLinePaths() {
-        LinePath linePath = new LinePath(new Way(), OSMType.MOTORWAY, new HashMap<>(), true);
+        LinePath linePath = new LinePath(new Way(), OSMType.MOTORWAY, new SortedNodeStore(), true);
         List<LinePath> motorWays = new ArrayList<>();
         motorWays.add(linePath);
 
@@ -93,7 +94,7 @@ class LinePathDataTest {
     @Test
     void save_getHighways() {
         List<LinePath> linePaths = new ArrayList<>();
-        LinePath linePath = new LinePath(new Way(), OSMType.COASTLINE, new HashMap<>(), true);
+        LinePath linePath = new LinePath(new Way(), OSMType.COASTLINE, new SortedNodeStore(), true);
         linePaths.add(linePath);
 
         linePathData.saveHighways(linePaths);
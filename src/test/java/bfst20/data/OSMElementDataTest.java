@@ -68,11 +68,11 @@ class OSMElementDataTest {
     }
 
     @Test
-    void addToNodeMap() {
+    void addToNodeStore() {
         long id = 12345;
         Node node = new Node(1, 1);
 
-        osmElementData.addToNodeMap(id, node);
+        osmElementData.addToNodeStore(id, node);
 
         assertNotNull(osmElementData.getNodes().get(id));
     }
@@ -82,9 +82,10 @@ class OSMElementDataTest {
         long id = 2223;
         Node node = new Node(1, 1);
 
-        osmElementData.addToNodeMap(id, node);
+        osmElementData.addToNodeStore(id, node);
 
-        assertEquals(node, osmElementData.getNodes().get(id));
+        assertEquals(node.getLatitude(), osmElementData.getNodes().get(id).getLatitude());
+        assertSame(osmElementData.getNodes().get(id), osmElementData.getNode(id));
         assertNotNull(osmElementData.getNodes());
     }
 
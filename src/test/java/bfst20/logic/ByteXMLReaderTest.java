@@ -0,0 +1,234 @@
+package bfst20.logic;
+
+import bfst20.logic.controllers.OSMElementController;
+import bfst20.logic.controllers.interfaces.AddressAPI;
+import bfst20.logic.entities.Address;
+import bfst20.logic.entities.Bounds;
+import bfst20.logic.entities.Relation;
+import bfst20.logic.entities.Way;
+import bfst20.logic.filehandling.Parser;
+import bfst20.logic.routing.TernarySearchTree;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class ByteXMLReaderTest {
+    private static OSMElementController osmElementController;
+    private static RecordedAddresses addresses;
+    private static String osm;
+
+    @BeforeAll
+    static void setup() {
+        osmElementController = new OSMElementController();
+        addresses = new RecordedAddresses();
+
+        // The XML constructs that can turn up in an OSM file, spread over several batches and buffers.
+        StringBuilder builder = new StringBuilder("<?xml version='1.0' encoding='UTF-8'?>\n")
+                .append("<!DOCTYPE osm [ <!ELEMENT osm ANY> ]>\n<!-- exported <node id=\"0\"/> -->\n")
+                .append("<osm version=\"0.6\" generator=\"test\">\n <note>Data &amp; more <![CDATA[<way id=\"0\">]]></note>\n")
+                .append(" <bounds minlon = '10.0' minlat=\"55.0\"\n maxlat=\"56.0\" maxlon=\"11.0\"/>\n");
+
+        for (int i = 1; i <= 30000; i++) {
+            builder.append(" <node id=\"").append(i).append("\" visible=\"true\" lon=\"10.").append(i)
+                    .append("\" lat='55.").append(i).append("' user=\"S&#248;ren &lt;3\"");
+
+            if (i % 50 == 0) {
+                builder.append(">\n  <tag k=\"addr:city\" v=\"Nordby\"/>\n  <tag k=\"addr:housenumber\" v=\"").append(i % 80)
+                        .append("\"/>\n  <tag k=\"addr:postcode\" v=\"8305\"/>\n  <tag k=\"addr:street\" v=\"")
+                        .append(i % 100 == 0 ? "Østergade" : "S&#xF8;ndergade &amp; Torv").append("\"/>\n </node>\n");
+            } else {
+                builder.append("/>\n");
+            }
+        }
+
+        String[] tags = {"highway=residential", "highway=primary", "building=yes", "natural=water", "name=Tr&#230;kvej\tNord",
+                "landuse=industrial", "waterway=stream"};
+        for (int i = 1; i <= 9000; i++) {
+            builder.append(" <way id=\"").append(100000 + i).append("\">\n  <nd ref=\"").append(i).append("\"/><nd ref=\"")
+                    .append(i + 1).append("\" />\n");
+
+            String[] tag = tags[i % tags.length].split("=");
+            builder.append("  <tag k='").append(tag[0]).append("' v=\"").append(tag[1]).append("\"/>\n");
+            if (i % 3 == 0) builder.append("  <tag k=\"name\" v=\"Vej ").append(i % 7).append("\"/><tag k=\"oneway\" v=\"yes\"/>\n");
+            builder.append("  <tag k=\"source\" v=\"survey\"/>\n </way>\n");
+        }
+
+        builder.append(" <relation id=\"200000\">\n  <member type=\"way\" ref=\"100001\" role=\"outer\"/>\n")
+                .append("  <member type=\"node\" ref=\"1\" role=\"\"/>\n  <tag k=\"type\" v=\"multipolygon\"/>\n")
+                .append("  <tag k=\"natural\" v=\"heath\"/>\n </relation>\n");
+
+        osm = builder.append("</osm>\n").toString();
+    }
+
+    private List<String> parse(boolean byteTokenizer, int threadCount, InputStream stream) throws Exception {
+        osmElementController.clearNodeData();
+        addresses.clear();
+
+        Parser parser = new Parser(osmElementController, addresses);
+        parser.setByteTokenizer(byteTokenizer);
+        parser.setThreadCount(threadCount);
+        parser.parseStream(stream);
+
+        return snapshot();
+    }
+
+    private List<String> parseFile(boolean byteTokenizer, File file) throws Exception {
+        osmElementController.clearNodeData();
+        addresses.clear();
+
+        Parser parser = new Parser(osmElementController, addresses);
+        parser.setByteTokenizer(byteTokenizer);
+        parser.parseOSMFile(file);
+
+        return snapshot();
+    }
+
+    private List<String> snapshot() {
+        List<String> result = new ArrayList<>();
+        Bounds bounds = osmElementController.fetchBoundsData();
+        result.add(bounds.getMinLat() + " " + bounds.getMaxLat() + " " + bounds.getMinLon() + " " + bounds.getMaxLon());
+
+        TreeMap<Long, String> nodes = new TreeMap<>();
+        osmElementController.fetchAllNodes().forEach((id, lat, lon) -> nodes.put(id, id + " " + lat + " " + lon));
+        result.addAll(nodes.values());
+
+        for (Way way : osmElementController.fetchAllWays()) {
+            result.add(way.getId() + " " + way.getOSMType() + " " + way.getName() + " " + way.isOneWay() + " "
+                    + way.getMaxSpeed() + " " + way.isMultipolygon() + " " + way.getNodeIds() + " " + way.getNodes().size());
+        }
+        for (Relation relation : osmElementController.fetchAllRelations()) {
+            result.add(relation.getId() + " " + relation.getOSMType() + " " + relation.getName() + " "
+                    + relation.isMultipolygon() + " " + relation.getMembers());
+        }
+        for (Address address : addresses.saved) {
+            result.add(address.getCity() + " " + address + " " + address.getLat() + " " + address.getLon());
+        }
+
+        return result;
+    }
+
+    private static InputStream stream(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void parseStream_matchesStAX() throws Exception {
+        List<String> stax = parse(false, 1, stream(osm));
+
+        assertEquals(1 + 30000 + 9000 + 1 + 600, stax.size());
+        assertEquals(stax, parse(true, 1, stream(osm)));
+        assertEquals(stax, parse(true, 4, stream(osm)));
+    }
+
+    @Test
+    void parseStream_decodesReferencesAndUTF8() throws Exception {
+        List<String> result = parse(true, 2, stream(osm));
+
+        assertTrue(result.contains("Nordby Søndergade & Torv 50 8305 -55.5 5.88"));
+        assertTrue(result.contains("Nordby Østergade 20 8305 -55.1 5.656"));
+        assertEquals("Trækvej Nord", osmElementController.fetchAllWays().get(3).getName());
+    }
+
+    @Test
+    void parseStream_readsElementsLargerThanTheBuffer() throws Exception {
+        StringBuilder builder = new StringBuilder("<osm><node id=\"1\" lat=\"55.1\" lon=\"10.1\"/><way id=\"2\">");
+        for (int i = 0; i < 200000; i++) builder.append("<nd ref=\"1\"/>");
+        builder.append("<tag k=\"name\" v=\"");
+        for (int i = 0; i < 300000; i++) builder.append('x');
+        String document = builder.append("\"/><tag k=\"highway\" v=\"primary\"/></way></osm>").toString();
+
+        assertEquals(parse(false, 1, stream(document)), parse(true, 1, stream(document)));
+    }
+
+    @Test
+    void parseStream_rejectsMalformedDocuments() {
+        Parser parser = new Parser(osmElementController, addresses);
+        parser.setByteTokenizer(true);
+        parser.setThreadCount(1);
+
+        assertThrows(XMLStreamException.class, () -> parser.parseStream(stream("<osm><node id=\"1\" lat=\"55")));
+        assertThrows(XMLStreamException.class, () -> parser.parseStream(stream("<osm><node id=1/></osm>")));
+        assertThrows(XMLStreamException.class, () -> parser.parseStream(stream("<osm><node id=\"1\" lat=\"55\" lon=\"10\">"
+                + "<tag k=\"name\" v=\"&nbsp;\"/></node></osm>")));
+        assertThrows(NumberFormatException.class, () -> parser.parseStream(stream("<osm><node id=\"x\" lat=\"55\" lon=\"10\"/></osm>")));
+    }
+
+    @Test
+    void parseOSMFile_matchesStAX() throws Exception {
+        File file = File.createTempFile("bytereader", ".osm");
+        file.deleteOnExit();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(osm.getBytes(StandardCharsets.UTF_8));
+        }
+
+        assertEquals(parseFile(false, file), parseFile(true, file));
+    }
+
+    @Test
+    void parseOSMFile_matchesStAXOnSamsoe() throws Exception {
+        URL samsoe = ClassLoader.getSystemClassLoader().getResource("Samsø.osm");
+        assumeTrue(samsoe != null, "Samsø.osm is not on the classpath");
+
+        File file = Paths.get(samsoe.toURI()).toFile();
+        List<String> stax = parseFile(false, file);
+
+        assertTrue(Files.size(file.toPath()) > 0 && stax.size() > 1);
+        assertEquals(stax, parseFile(true, file));
+    }
+
+    // Keeps the saved addresses in order, so the runs of a test can be compared.
+    private static class RecordedAddresses implements AddressAPI {
+        private List<Address> saved = new ArrayList<>();
+
+        void clear() {
+            saved = new ArrayList<>();
+        }
+
+        @Override
+        public void saveAddressData(long nodeId, Address address) {
+            saved.add(address);
+        }
+
+        @Override
+        public void saveTSTData(TernarySearchTree ternarySearchTree) {
+
+        }
+
+        @Override
+        public void saveUnloadedTSTData(Supplier<TernarySearchTree> ternarySearchTree) {
+
+        }
+
+        @Override
+        public TernarySearchTree fetchTSTData() {
+            return null;
+        }
+
+        @Override
+        public Address findAddress(String input) {
+            return null;
+        }
+
+        @Override
+        public Queue<Address> fetchSearchSuggestions(String input) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package bfst20.logic;
+
+import bfst20.data.*;
+import bfst20.logic.controllers.*;
+import bfst20.logic.entities.Address;
+import bfst20.logic.entities.LinePath;
+import bfst20.logic.filehandling.ChangeSet;
+import bfst20.logic.filehandling.Parser;
+import bfst20.logic.kdtree.KDTree;
+import bfst20.logic.kdtree.Rect;
+import bfst20.logic.misc.OSMType;
+import bfst20.logic.routing.Edge;
+import bfst20.logic.services.AddressService;
+import bfst20.logic.services.ChangeReport;
+import bfst20.logic.services.ChangeService;
+import bfst20.logic.services.LinePathService;
+import bfst20.logic.services.RoutingService;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChangeServiceTest {
+    private static OSMElementController osmElementController;
+    private static AddressController addressController;
+    private static RoutingController routingController;
+    private static KDTreeController kdTreeController;
+    private static ChangeController changeController;
+    private static Parser parser;
+
+    // The first LinePath of each type is never shown, so ways 100 and 200 are left alone.
+    private static final String NODES = address(30, "55.10", "10.10", "Vej A") + address(31, "55.11", "10.11", "Vej B")
+            + node(1, "55.0", "10.0") + node(3, "55.2", "10.2") + node(4, "55.3", "10.3")
+            + node(5, "55.4", "10.4") + node(6, "55.5", "10.5") + node(7, "55.6", "10.6") + node(10, "55.7", "10.7")
+            + node(11, "55.7", "10.8") + node(12, "55.8", "10.8") + node(13, "55.8", "10.7");
+
+    private static final String BASE = "<osm><bounds minlat=\"54.0\" minlon=\"9.0\" maxlat=\"56.0\" maxlon=\"11.0\"/>"
+            + NODES + node(2, "55.1", "10.1")
+            + way(100, "highway", "primary", null, 6, 7) + way(101, "highway", "primary", "Vej A", 1, 2, 3)
+            + way(102, "highway", "primary", "Vej B", 3, 4, 5) + way(103, "highway", "primary", "Vej D", 5, 6)
+            + way(200, "building", "yes", null, 10, 11, 12, 10) + way(201, "building", "yes", null, 10, 11, 13, 10)
+            + "</osm>";
+
+    private static final String CHANGES = "<osmChange version=\"0.6\"><modify>" + node(2, "55.15", "10.05")
+            + address(30, "55.10", "10.10", "Vej C") + way(102, "highway", "primary", "Vej C", 3, 4, 6)
+            + "</modify><create>" + node(40, "55.9", "10.9") + way(104, "highway", "primary", "Vej E", 5, 40)
+            + way(202, "building", "yes", null, 11, 12, 13, 11)
+            + "<relation id=\"300\"><member type=\"way\" ref=\"201\" role=\"outer\"/></relation>"
+            + "</create><delete><way id=\"201\"/><node id=\"31\"/></delete></osmChange>";
+
+    // BASE with CHANGES applied by hand.
+    private static final String MERGED = "<osm><bounds minlat=\"54.0\" minlon=\"9.0\" maxlat=\"56.0\" maxlon=\"11.0\"/>"
+            + NODES.replace(address(31, "55.11", "10.11", "Vej B"), "").replace("Vej A", "Vej C")
+            + node(2, "55.15", "10.05") + node(40, "55.9", "10.9")
+            + way(100, "highway", "primary", null, 6, 7) + way(101, "highway", "primary", "Vej A", 1, 2, 3)
+            + way(102, "highway", "primary", "Vej C", 3, 4, 6) + way(103, "highway", "primary", "Vej D", 5, 6)
+            + way(104, "highway", "primary", "Vej E", 5, 40)
+            + way(200, "building", "yes", null, 10, 11, 12, 10) + way(202, "building", "yes", null, 11, 12, 13, 11)
+            + "</osm>";
+
+    @BeforeAll
+    static void setup() {
+        osmElementController = new OSMElementController();
+        addressController = new AddressController(new AddressService(AddressData.getInstance()));
+        RoutingService routingService = new RoutingService(RoutingData.getInstance());
+        routingController = new RoutingController(routingService, new AddressService(AddressData.getInstance()));
+        kdTreeController = new KDTreeController();
+        changeController = new ChangeController(new ChangeService(MapIndexData.getInstance(), routingService));
+        parser = new Parser(osmElementController, addressController);
+        parser.setThreadCount(1);
+
+        AddressData.getInstance().keepNodeAddresses(true);
+    }
+
+    private static String node(long id, String lat, String lon) {
+        return "<node id=\"" + id + "\" lat=\"" + lat + "\" lon=\"" + lon + "\"/>";
+    }
+
+    private static String address(long id, String lat, String lon, String street) {
+        return "<node id=\"" + id + "\" lat=\"" + lat + "\" lon=\"" + lon + "\"><tag k=\"addr:city\" v=\"Nordby\"/>"
+                + "<tag k=\"addr:housenumber\" v=\"" + id + "\"/><tag k=\"addr:postcode\" v=\"8305\"/>"
+                + "<tag k=\"addr:street\" v=\"" + street + "\"/></node>";
+    }
+
+    private static String way(long id, String key, String value, String name, long... nodes) {
+        StringBuilder builder = new StringBuilder("<way id=\"").append(id).append("\">");
+        for (long node : nodes) builder.append("<nd ref=\"").append(node).append("\"/>");
+        if (name != null) builder.append("<tag k=\"name\" v=\"").append(name).append("\"/>");
+
+        return builder.append("<tag k=\"").append(key).append("\" v=\"").append(value).append("\"/></way>").toString();
+    }
+
+    // What StartupController.initialize does for an imported file.
+    private void load(String osm) throws Exception {
+        LinePathData linePathData = LinePathData.getInstance();
+        linePathData.clearCoastlines();
+        linePathData.clearData();
+        KDTreeData.getInstance().clearData();
+        AddressData.getInstance().clearData();
+        changeController.clearData();
+        osmElementController.clearNodeData();
+
+        parser.parseString(osm);
+
+        LinePathController linePathController = new LinePathController(LinePathService.getInstance(linePathData));
+        linePathController.init(osmElementController.fetchAllWays(), osmElementController.fetchAllNodes(),
+                osmElementController.fetchAllRelations());
+        changeController.indexMap(osmElementController.fetchAllWays(), osmElementController.detachNodeData(),
+                linePathController.fetchHighways());
+        osmElementController.clearNodeData();
+
+        routingController.buildRoutingGraph(linePathController.fetchHighways());
+        kdTreeController.constructKDTrees(linePathController.fetchLinePathData(), osmElementController.fetchBoundsData());
+    }
+
+    private ChangeReport apply(String changes) throws Exception {
+        ChangeSet changeSet = parser.parseChanges(new ByteArrayInputStream(changes.getBytes(StandardCharsets.UTF_8)));
+        changeController.applyChanges(changeSet);
+
+        return changeController.fetchChangeReport();
+    }
+
+    private List<String> snapshot() {
+        List<String> result = new ArrayList<>();
+        Rect everything = new Rect(-1000, 1000, -1000, 1000);
+
+        for (Map.Entry<OSMType, KDTree> entry : KDTreeData.getInstance().getAllLKDTrees().entrySet()) {
+            for (LinePath path : entry.getValue().getElementsInRect(everything, Double.MAX_VALUE, null)) {
+                result.add("path " + entry.getKey() + " " + path.getName() + " " + Arrays.toString(path.getCoords()));
+            }
+        }
+
+        for (Edge edge : routingController.fetchGraph().getEdges()) {
+            result.add("edge " + edge.getStreet() + " " + edge.getSource().getId() + "-" + edge.getTarget().getId()
+                    + " " + edge.getSource().getLatitude() + " " + edge.getTarget().getLatitude() + " " + edge.getLength());
+        }
+
+        for (Address address : addressController.fetchTSTData().keysWithPrefix("vej")) {
+            result.add("address " + address + " " + address.getLat() + " " + address.getLon());
+        }
+
+        Collections.sort(result);
+        return result;
+    }
+
+    @Test
+    void applyChanges_matchesFullReload() throws Exception {
+        load(MERGED);
+        List<String> reloaded = snapshot();
+
+        load(BASE);
+        List<String> before = snapshot();
+        ChangeReport report = apply(CHANGES);
+
+        assertNotEquals(before, snapshot());
+        assertEquals(reloaded, snapshot());
+
+        assertEquals(4, report.getRebuiltWays());
+        assertEquals(1, report.getRemovedWays());
+        assertEquals(2, report.getChangedAddresses());
+        assertEquals(1, report.getSkippedRelations());
+    }
+
+    @Test
+    void applyChanges_movesRouteEndpoints() throws Exception {
+        load(BASE);
+        apply(CHANGES);
+
+        // The graph uses the node objects of the store, with the new coordinates.
+        Set<Long> nodes = new HashSet<>();
+        for (Edge edge : routingController.fetchGraph().getEdges()) {
+            nodes.add(edge.getSource().getId());
+            nodes.add(edge.getTarget().getId());
+            if (edge.getSource().getId() == 2) assertEquals(-55.15f, edge.getSource().getLatitude(), 1e-5);
+            assertSame(MapIndexData.getInstance().getNodes().get(edge.getSource().getId()), edge.getSource());
+        }
+
+        assertTrue(nodes.contains(40L));
+    }
+
+    @Test
+    void applyChanges_forgetsDeletedNodes() throws Exception {
+        load(BASE);
+        apply("<osmChange><delete><node id=\"31\"/></delete></osmChange>");
+        List<String> before = snapshot();
+
+        String deletedNode = "<osmChange><modify>" + way(101, "highway", "primary", "Vej A", 1, 2, 31) + "</modify></osmChange>";
+
+        assertThrows(IllegalStateException.class, () -> apply(deletedNode));
+        assertEquals(before, snapshot());
+    }
+
+    @Test
+    void applyChanges_rejectsChangesThatDoNotFit() throws Exception {
+        load(BASE);
+        List<String> before = snapshot();
+
+        String missingNode = "<osmChange><modify>" + way(101, "highway", "primary", "Vej A", 1, 2, 99) + "</modify></osmChange>";
+
+        assertThrows(IllegalStateException.class, () -> apply(missingNode));
+        assertEquals(before, snapshot());
+    }
+}
@@ -0,0 +1,212 @@
+package bfst20.logic;
+
+import bfst20.data.AddressData;
+import bfst20.logic.controllers.AddressController;
+import bfst20.logic.controllers.OSMElementController;
+import bfst20.logic.entities.Bounds;
+import bfst20.logic.entities.Relation;
+import bfst20.logic.entities.Way;
+import bfst20.logic.filehandling.Parser;
+import bfst20.logic.nodestore.IdList;
+import bfst20.logic.nodestore.NodeStore;
+import bfst20.logic.services.AddressService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClippedImportTest {
+    private static OSMElementController osmElementController;
+    private static AddressController addressController;
+
+    // Clipped to 55-56 N, 10-11 E, inside the bounds of the file.
+    private static final String OSM = "<osm><bounds minlat=\"54.0\" minlon=\"9.0\" maxlat=\"58.0\" maxlon=\"12.0\"/>"
+            + node(1, "55.5", "10.5") + node(2, "55.5", "11.5") + node(3, "55.5", "9.5") + node(4, "57", "10.5")
+            + node(5, "57", "10.6") + node(6, "55.2", "10.2") + node(7, "55.2", "10.8") + node(8, "56.5", "10.8")
+            + node(9, "56.5", "10.2")
+            + way(100, "highway", "primary", 1, 2)
+            + way(101, "highway", "residential", 3, 2)
+            + way(102, "building", "yes", 6, 7, 8, 9, 6)
+            + way(103, "natural", "water", 4, 5)
+            + way(104, "highway", "primary", 1, 2, 7)
+            + "<relation id=\"200\"><member type=\"way\" ref=\"103\" role=\"outer\"/><tag k=\"natural\" v=\"heath\"/></relation>"
+            + "<relation id=\"201\"><member type=\"way\" ref=\"103\" role=\"outer\"/><member type=\"way\" ref=\"102\" role=\"outer\"/>"
+            + "<tag k=\"natural\" v=\"heath\"/></relation></osm>";
+
+    @BeforeAll
+    static void setup() {
+        osmElementController = new OSMElementController();
+        addressController = new AddressController(new AddressService(AddressData.getInstance()));
+    }
+
+    // The clipped ways refer to edge nodes that only this import made, so no later test may see them.
+    @AfterAll
+    static void tearDown() {
+        osmElementController.clearNodeData();
+        AddressData.getInstance().clearData();
+    }
+
+    private static String node(long id, String lat, String lon) {
+        return "<node id=\"" + id + "\" lat=\"" + lat + "\" lon=\"" + lon + "\"/>";
+    }
+
+    private static String way(long id, String key, String value, long... nodes) {
+        StringBuilder builder = new StringBuilder("<way id=\"").append(id).append("\">");
+        for (long node : nodes) builder.append("<nd ref=\"").append(node).append("\"/>");
+
+        return builder.append("<tag k=\"").append(key).append("\" v=\"").append(value).append("\"/></way>").toString();
+    }
+
+    private Parser parse(int threadCount) throws Exception {
+        return parse(OSM, threadCount);
+    }
+
+    private Parser parse(String osm, int threadCount) throws Exception {
+        osmElementController.clearNodeData();
+
+        Parser parser = new Parser(osmElementController, addressController);
+        parser.setThreadCount(threadCount);
+        parser.setClipBox(55, 10, 56, 11);
+        parser.parseString(osm);
+
+        return parser;
+    }
+
+    private List<Way> ways(long id) {
+        List<Way> ways = new ArrayList<>();
+        for (Way way : osmElementController.fetchAllWays()) if (way.getId() == id) ways.add(way);
+
+        return ways;
+    }
+
+    private void assertInBox(long id) {
+        NodeStore nodes = osmElementController.fetchAllNodes();
+        int index = nodes.indexOf(id);
+
+        assertNotEquals(-1, index, "node " + id);
+        assertTrue(nodes.latitudeAt(index) >= -56 && nodes.latitudeAt(index) <= -55, "node " + id);
+        assertTrue(nodes.longitudeAt(index) >= 0.56f * 10 && nodes.longitudeAt(index) <= 0.56f * 11, "node " + id);
+    }
+
+    @Test
+    void parseString_replacesBoundsAndDropsOutsideNodes() throws Exception {
+        Parser parser = parse(1);
+
+        Bounds bounds = osmElementController.fetchBoundsData();
+        assertEquals(-56f, bounds.getMinLat());
+        assertEquals(-55f, bounds.getMaxLat());
+        assertEquals(0.56f * 10, bounds.getMinLon());
+        assertEquals(0.56f * 11, bounds.getMaxLon());
+
+        NodeStore nodes = osmElementController.fetchAllNodes();
+        for (long id : new long[]{1, 6, 7}) assertTrue(nodes.contains(id));
+        for (long id : new long[]{2, 3, 4, 5, 8, 9}) assertFalse(nodes.contains(id));
+
+        assertEquals(6, parser.getParseReport().getOutsideNodes());
+        assertEquals(1, parser.getParseReport().getDroppedWays());
+        assertEquals(4, parser.getParseReport().getCutWays());
+    }
+
+    @Test
+    void parseString_cutsHighwaysAtTheEdge() throws Exception {
+        parse(1);
+
+        Way primary = ways(100).get(0);
+        assertEquals(2, primary.getNodeIds().size());
+        assertEquals(1, (long) primary.getNodeIds().get(0));
+
+        long edge = primary.getNodeIds().get(1);
+        assertTrue(edge < 0);
+        assertEquals(0.56f * 11, osmElementController.fetchAllNodes().get(edge).getLongitude(), 1e-5);
+        assertEquals(-55.5f, osmElementController.fetchAllNodes().get(edge).getLatitude(), 1e-5);
+
+        // The graph needs the node objects of the store.
+        assertSame(osmElementController.fetchNodeById(1), primary.getNodes().get(0));
+        assertSame(osmElementController.fetchNodeById(edge), primary.getNodes().get(1));
+
+        // Crosses the whole box without a node in it.
+        Way residential = ways(101).get(0);
+        assertEquals(2, residential.getNodes().size());
+        for (long id : residential.getNodeIds().toArray()) assertInBox(id);
+    }
+
+    @Test
+    void parseString_splitsWaysThatLeaveAndReenter() throws Exception {
+        parse(1);
+
+        List<Way> pieces = ways(104);
+        assertEquals(2, pieces.size());
+        assertEquals(1, (long) pieces.get(0).getNodeIds().get(0));
+        assertEquals(7, (long) pieces.get(1).getNodeIds().get(1));
+        assertEquals(pieces.get(0).getOSMType(), pieces.get(1).getOSMType());
+        assertEquals(2, pieces.get(1).getNodes().size());
+    }
+
+    @Test
+    void parseString_clipsPolygonsAndRelations() throws Exception {
+        parse(1);
+
+        Way building = ways(102).get(0);
+        IdList ring = building.getNodeIds();
+        assertEquals(ring.first(), ring.last());
+        assertEquals(5, ring.size());
+        for (long id : ring.toArray()) assertInBox(id);
+
+        assertTrue(ways(103).isEmpty());
+
+        List<Relation> relations = osmElementController.fetchAllRelations();
+        assertEquals(1, relations.size());
+        assertEquals(201, relations.get(0).getId());
+        assertEquals(IdList.of(102), relations.get(0).getMembers());
+    }
+
+    @Test
+    void parseString_storesOnlyTheEdgeNodesOfTheClippedRing() throws Exception {
+        // The west edge cuts both sides north of the box, where the north edge then cuts them away.
+        parse("<osm><bounds minlat=\"54.0\" minlon=\"9.0\" maxlat=\"58.0\" maxlon=\"12.0\"/>"
+                + node(20, "55.5", "10.5") + node(21, "58", "9.5") + node(22, "55.5", "10.8")
+                + way(105, "building", "yes", 20, 21, 22, 20) + "</osm>", 1);
+
+        IdList ring = ways(105).get(0).getNodeIds();
+        List<Long> edgeNodes = new ArrayList<>();
+        osmElementController.fetchAllNodes().forEach((id, lat, lon) -> {
+            if (id < 0) edgeNodes.add(id);
+        });
+
+        assertEquals(5, ring.size());
+        assertEquals(2, edgeNodes.size());
+        for (long id : edgeNodes) assertTrue(ring.contains(id), "node " + id);
+        for (long id : ring.toArray()) assertInBox(id);
+
+        // Where the sides cross the north edge, not the corner.
+        NodeStore nodes = osmElementController.fetchAllNodes();
+        assertEquals(0.56f * 10.3f, nodes.get(ring.get(1)).getLongitude(), 1e-4);
+        assertEquals(0.56f * 10.54f, nodes.get(ring.get(2)).getLongitude(), 1e-4);
+    }
+
+    @Test
+    void parseString_sequentialAndConcurrentMatch() throws Exception {
+        parse(1);
+        List<String> sequential = new ArrayList<>();
+        for (Way way : osmElementController.fetchAllWays()) sequential.add(way.getId() + " " + way.getNodeIds());
+        osmElementController.fetchAllNodes().forEach((id, lat, lon) -> sequential.add(id + " " + lat + " " + lon));
+
+        parse(3);
+        List<String> concurrent = new ArrayList<>();
+        for (Way way : osmElementController.fetchAllWays()) concurrent.add(way.getId() + " " + way.getNodeIds());
+        osmElementController.fetchAllNodes().forEach((id, lat, lon) -> concurrent.add(id + " " + lat + " " + lon));
+
+        assertEquals(sequential, concurrent);
+    }
+
+    @Test
+    void setClipBox_rejectsEmptyBox() {
+        Parser parser = new Parser(osmElementController, addressController);
+
+        assertThrows(IllegalArgumentException.class, () -> parser.setClipBox(56, 10, 55, 11));
+    }
+}
@@ -0,0 +1,152 @@
+package bfst20.logic;
+
+import bfst20.data.AddressData;
+import bfst20.logic.controllers.AddressController;
+import bfst20.logic.controllers.OSMElementController;
+import bfst20.logic.entities.Way;
+import bfst20.logic.filehandling.Bzip2InputStream;
+import bfst20.logic.filehandling.FileHandler;
+import bfst20.logic.filehandling.Parser;
+import bfst20.logic.services.AddressService;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class CompressedInputTest {
+    private static OSMElementController osmElementController;
+    private static FileHandler fileHandler;
+
+    private static final String OSM = "<osm><bounds minlat=\"55\" minlon=\"10\" maxlat=\"56\" maxlon=\"11\"/>"
+            + "<node id=\"1\" lat=\"55.1\" lon=\"10.1\"/><node id=\"2\" lat=\"55.2\" lon=\"10.2\"/>"
+            + "<way id=\"7\"><nd ref=\"1\"/><nd ref=\"2\"/><tag k=\"highway\" v=\"primary\"/></way></osm>";
+
+    // OSM compressed with bzip2 -9.
+    private static final byte[] OSM_BZIP2 = Base64.getDecoder().decode(
+            "QlpoOTFBWSZTWfWDs3IAACyZgFAB84c379/gIACRDUnpMjTCPUxGmgAJTKjU9RjUeo0AYRpU2xtIzWIrr0r6U4EokVgjkiU0t5FScPkm3AkpQwS5kGHX2D"
+                    + "egP19r3yucNE3kCP0VwM40HQ+nwz3UyzjWdCy5GzY9ThYFA4m1oyZzAo+4sHxxcCAvJRGxQB2fi7kinChIesHZuQA=");
+
+    @BeforeAll
+    static void setup() {
+        osmElementController = new OSMElementController();
+        AddressController addressController = new AddressController(new AddressService(AddressData.getInstance()));
+
+        fileHandler = new FileHandler.Builder()
+                .withParser(new Parser(osmElementController, addressController))
+                .withOSMElementAPI(osmElementController)
+                .withAddressAPI(addressController)
+                .build();
+    }
+
+    private static File file(String suffix, byte[] content) throws IOException {
+        File file = File.createTempFile("compressed", suffix);
+        file.deleteOnExit();
+        Files.write(file.toPath(), content);
+
+        return file;
+    }
+
+    private static byte[] gzip(String... members) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        for (String member : members) {
+            // Closing a ByteArrayOutputStream does nothing, so each member is appended.
+            try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+                out.write(member.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private static byte[] decompress(byte[] bzip2, int threadCount) throws IOException {
+        try (InputStream in = new Bzip2InputStream(new ByteArrayInputStream(bzip2), threadCount, 2)) {
+            return in.readAllBytes();
+        }
+    }
+
+    private List<String> load(File file) throws Exception {
+        osmElementController.clearNodeData();
+        fileHandler.load(file);
+
+        List<String> result = new ArrayList<>();
+        osmElementController.fetchAllNodes().forEach((id, lat, lon) -> result.add(id + " " + lat + " " + lon));
+        for (Way way : osmElementController.fetchAllWays()) result.add(way.getId() + " " + way.getNodeIds());
+
+        return result;
+    }
+
+    @Test
+    void load_readsGzipAndBzip2LikePlainXML() throws Exception {
+        List<String> plain = load(file(".osm", OSM.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(3, plain.size());
+        assertEquals(plain, load(file(".osm.gz", gzip(OSM))));
+        assertEquals(plain, load(file(".osm.gz", gzip(OSM.substring(0, 100), OSM.substring(100)))));
+        assertEquals(plain, load(file(".osm.bz2", OSM_BZIP2)));
+    }
+
+    @Test
+    void load_rejectsCompressedFilesThatAreNotOSM() throws Exception {
+        assertThrows(IOException.class, () -> fileHandler.load(file(".pbf.gz", gzip(OSM))));
+    }
+
+    @Test
+    void bzip2_readsConcatenatedStreams() throws Exception {
+        byte[] twice = new byte[OSM_BZIP2.length * 2];
+        System.arraycopy(OSM_BZIP2, 0, twice, 0, OSM_BZIP2.length);
+        System.arraycopy(OSM_BZIP2, 0, twice, OSM_BZIP2.length, OSM_BZIP2.length);
+
+        assertEquals(OSM + OSM, new String(decompress(twice, 2), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void bzip2_rejectsCorruptData() {
+        byte[] corrupt = OSM_BZIP2.clone();
+        corrupt[40] ^= 0x08;
+
+        assertThrows(IOException.class, () -> decompress(corrupt, 1));
+        assertThrows(IOException.class, () -> decompress(Arrays.copyOf(OSM_BZIP2, OSM_BZIP2.length - 12), 1));
+        assertThrows(IOException.class, () -> decompress(OSM.getBytes(StandardCharsets.UTF_8), 1));
+    }
+
+    @Test
+    void bzip2_decodesManyBlocksInOrder() throws Exception {
+        // Several 100k blocks of text and binary data, compressed by the bzip2 tool if there is one.
+        Random random = new Random(1);
+        ByteArrayOutputStream original = new ByteArrayOutputStream();
+        for (int i = 0; i < 20000; i++) original.write(("<node id=\"" + i + "\" lat=\"" + random.nextDouble() + "\"/>\n").getBytes());
+        byte[] noise = new byte[150000];
+        random.nextBytes(noise);
+        original.write(noise);
+        for (int i = 0; i < 70000; i++) original.write('x');
+
+        File input = file(".bin", original.toByteArray());
+        Process process;
+        try {
+            process = new ProcessBuilder("bzip2", "-1", "-k", "-f", input.getPath()).start();
+        } catch (IOException e) {
+            process = null;
+        }
+        assumeTrue(process != null && process.waitFor(60, TimeUnit.SECONDS) && process.exitValue() == 0, "bzip2 is not installed");
+
+        File compressed = new File(input.getPath() + ".bz2");
+        compressed.deleteOnExit();
+        byte[] bzip2 = Files.readAllBytes(compressed.toPath());
+
+        assertArrayEquals(original.toByteArray(), decompress(bzip2, 1));
+        assertArrayEquals(original.toByteArray(), decompress(bzip2, 3));
+    }
+}
@@ -0,0 +1,95 @@
+package bfst20.logic;
+
+import bfst20.data.AddressData;
+import bfst20.logic.controllers.AddressController;
+import bfst20.logic.controllers.OSMElementController;
+import bfst20.logic.entities.Bounds;
+import bfst20.logic.entities.Way;
+import bfst20.logic.filehandling.FileHandler;
+import bfst20.logic.filehandling.Parser;
+import bfst20.logic.services.AddressService;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileHandlerTest {
+    private static OSMElementController osmElementController;
+    private static FileHandler fileHandler;
+
+    @BeforeAll
+    static void setup() {
+        osmElementController = new OSMElementController();
+        AddressController addressController = new AddressController(new AddressService(AddressData.getInstance()));
+
+        fileHandler = new FileHandler.Builder()
+                .withParser(new Parser(osmElementController, addressController))
+                .withOSMElementAPI(osmElementController)
+                .withAddressAPI(addressController)
+                .build();
+    }
+
+    private static String osm(String bounds, long... wayIds) {
+        StringBuilder builder = new StringBuilder("<osm>").append(bounds);
+        builder.append("<node id=\"1\" lat=\"55.1\" lon=\"10.1\"/><node id=\"2\" lat=\"55.2\" lon=\"10.2\"/>");
+
+        for (long id : wayIds) {
+            builder.append("<way id=\"").append(id).append("\"><nd ref=\"1\"/><nd ref=\"2\"/>")
+                    .append("<tag k=\"highway\" v=\"primary\"/></way>");
+        }
+
+        return builder.append("</osm>").toString();
+    }
+
+    private static File zip(String... entries) throws Exception {
+        File file = File.createTempFile("filehandler", ".zip");
+        file.deleteOnExit();
+
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file))) {
+            for (int i = 0; i < entries.length; i++) {
+                out.putNextEntry(new ZipEntry("part" + i + ".osm"));
+                out.write(entries[i].getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+
+        return file;
+    }
+
+    @Test
+    void loadZip_singleEntry() throws Exception {
+        osmElementController.clearNodeData();
+        fileHandler.load(zip(osm("<bounds minlat=\"55\" minlon=\"10\" maxlat=\"56\" maxlon=\"11\"/>", 7, 8)));
+
+        assertEquals(2, osmElementController.fetchAllWays().size());
+        assertEquals(2, osmElementController.fetchAllWays().get(0).getNodes().size());
+        assertEquals(-55f, osmElementController.fetchBoundsData().getMaxLat());
+    }
+
+    @Test
+    void loadZip_mergesSeveralEntries() throws Exception {
+        osmElementController.clearNodeData();
+        fileHandler.load(zip(
+                osm("<bounds minlat=\"55\" minlon=\"10\" maxlat=\"56\" maxlon=\"11\"/>", 5, 9),
+                osm("<bounds minlat=\"54\" minlon=\"10.5\" maxlat=\"55.5\" maxlon=\"12\"/>", 3, 9)));
+
+        List<Way> ways = osmElementController.fetchAllWays();
+        assertEquals(3, ways.size());
+        assertEquals(3, ways.get(0).getId());
+        assertEquals(5, ways.get(1).getId());
+        assertEquals(9, ways.get(2).getId());
+
+        Bounds bounds = osmElementController.fetchBoundsData();
+        assertEquals(-54f, bounds.getMaxLat());
+        assertEquals(-56f, bounds.getMinLat());
+        assertEquals(0.56f * 12, bounds.getMaxLon());
+        assertEquals(0.56f * 10, bounds.getMinLon());
+    }
+}
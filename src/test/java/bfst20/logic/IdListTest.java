@@ -0,0 +1,69 @@
+package bfst20.logic;
+
+import bfst20.logic.nodestore.IdList;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdListTest {
+
+    @Test
+    void add_growsAndKeepsOrder() {
+        IdList list = new IdList();
+        List<Long> expected = new ArrayList<>();
+        Random random = new Random(3);
+
+        for (int i = 0; i < 10_000; i++) {
+            long id = random.nextLong();
+            list.add(id);
+            expected.add(id);
+        }
+
+        assertEquals(expected.size(), list.size());
+        for (int i = 0; i < expected.size(); i++) assertEquals((long) expected.get(i), list.get(i));
+        assertEquals(expected.toString(), list.toString());
+        assertThrows(IndexOutOfBoundsException.class, () -> list.get(expected.size()));
+    }
+
+    @Test
+    void addAllReversed_matchesCollectionsReverse() {
+        IdList list = IdList.of(1, 2, 3);
+        list.addAllReversed(IdList.of(4, 5, 6, 7));
+
+        List<Long> reversed = new ArrayList<>(List.of(4L, 5L, 6L, 7L));
+        Collections.reverse(reversed);
+        List<Long> expected = new ArrayList<>(List.of(1L, 2L, 3L));
+        expected.addAll(reversed);
+
+        assertEquals(expected.toString(), list.toString());
+
+        list.reverse();
+        Collections.reverse(expected);
+        assertEquals(expected.toString(), list.toString());
+    }
+
+    @Test
+    void removeIf_sort_trim() {
+        IdList list = IdList.of(9, 3, 7, 3, 1);
+        list.removeIf(id -> id == 3);
+        assertEquals(IdList.of(9, 7, 1), list);
+
+        list.sort();
+        list.removeLast();
+        list.trim();
+        assertEquals(IdList.of(1, 7), list);
+        assertEquals(IdList.of(1, 7).hashCode(), list.hashCode());
+        assertTrue(list.contains(7));
+        assertFalse(list.contains(9));
+
+        IdList copy = new IdList(list);
+        copy.add(8);
+        assertEquals(2, list.size());
+        assertEquals(8, copy.last());
+    }
+}
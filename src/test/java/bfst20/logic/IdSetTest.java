@@ -0,0 +1,53 @@
+package bfst20.logic;
+
+import bfst20.logic.nodestore.IdSet;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdSetTest {
+
+    @Test
+    void add_containsUnorderedIds() {
+        IdSet set = new IdSet();
+        set.add(7_000_000_000L);
+        set.add(5);
+        set.add(70_000);
+        set.add(5);
+
+        assertTrue(set.contains(5));
+        assertTrue(set.contains(70_000));
+        assertTrue(set.contains(7_000_000_000L));
+        assertFalse(set.contains(6));
+        assertFalse(set.contains(7_000_000_001L));
+        assertEquals(3, set.size());
+    }
+
+    @Test
+    void add_matchesTreeSetForDenseAndSparsePages() {
+        IdSet set = new IdSet();
+        TreeSet<Long> expected = new TreeSet<>();
+        Random random = new Random(7);
+
+        for (int i = 0; i < 200_000; i++) {
+            long id = i % 2 == 0 ? random.nextInt(100_000) : random.nextInt(50_000_000);
+            set.add(id);
+            expected.add(id);
+        }
+
+        for (long id = 0; id < 100_000; id++) assertEquals(expected.contains(id), set.contains(id));
+        assertEquals(expected.size(), set.size());
+    }
+
+    @Test
+    void add_keepsNegativeIds() {
+        IdSet set = new IdSet();
+        set.add(-42);
+
+        assertTrue(set.contains(-42));
+        assertFalse(set.contains(42));
+    }
+}
@@ -4,20 +4,21 @@ import bfst20.logic.entities.LinePath;
 import bfst20.logic.entities.Node;
 import bfst20.logic.entities.Way;
 import bfst20.logic.kdtree.Direction;
+import bfst20.logic.kdtree.KDNode;
 import bfst20.logic.kdtree.KDTree;
 import bfst20.logic.kdtree.Rect;
 import bfst20.logic.misc.OSMType;
+import bfst20.logic.nodestore.SortedNodeStore;
+import bfst20.logic.nodestore.NodeStore;
 import javafx.geometry.Point2D;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
 import javax.sound.sampled.Line;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 public class KDTreeTest {
 
@@ -124,9 +125,9 @@ public class KDTreeTest {
         Rect rect = new Rect(10, 20, 10, 20);
         List<LinePath> linePaths = new ArrayList<>();
 
-        Map<Long, Node> nodes1 = new HashMap<>();
-        nodes1.put((long) 1, new Node(1, 10, 10));
-        nodes1.put((long) 2, new Node(2, 11, 10));
+        NodeStore nodes1 = new SortedNodeStore();
+        nodes1.put(1, 10, 10);
+        nodes1.put(2, 11, 10);
 
         Way way1 = new Way();
         way1.addNodeId(1);
@@ -151,9 +152,9 @@ public class KDTreeTest {
 
         List<LinePath> linePaths = new ArrayList<>();
 
-        Map<Long, Node> nodes1 = new HashMap<>();
-        nodes1.put((long) 1, new Node(1, 10, 10));
-        nodes1.put((long) 2, new Node(2, 11, 10));
+        NodeStore nodes1 = new SortedNodeStore();
+        nodes1.put(1, 10, 10);
+        nodes1.put(2, 11, 10);
 
         Way way1 = new Way();
         way1.addNodeId(1);
@@ -176,10 +177,10 @@ public class KDTreeTest {
     public void getElementsInRect() {
         Rect rect = new Rect(0, 100, 0, 100);
         List<LinePath> linePaths = new ArrayList<>();
-        Map<Long, Node> nodes1 = new HashMap<>();
+        NodeStore nodes1 = new SortedNodeStore();
 
-        nodes1.put((long) 1, new Node(1, 10, 10));
-        nodes1.put((long) 2, new Node(2, 11, 10));
+        nodes1.put(1, 10, 10);
+        nodes1.put(2, 11, 10);
         Way way1 = new Way();
 
         way1.addNodeId(1);
@@ -196,7 +197,7 @@ public class KDTreeTest {
         }
 
         assertEquals(i, 1);
-        assertEquals(kdTree.getClosetsLinepathToMouse(), lp);
+        assertArrayEquals(lp.getCoords(), kdTree.getPaths().getCoords(kdTree.getClosetsPathToMouse()));
         assert kdTree.getClosetsLinePathToMouseDistance() > 0;
     }
 
@@ -221,18 +222,77 @@ public class KDTreeTest {
 
         KDTree tree = new KDTree(paths, rect);
 
-        assertEquals(tree.getRoot().getLinePath(), p1);
-        assertEquals(tree.getRoot().getRightNode().getLinePath(), p2);
-        assertEquals(tree.getRoot().getRightNode().getLeftNode().getLinePath(), p3);
+        assertArrayEquals(p1.getCoords(), coords(tree, tree.getRoot()));
+        assertArrayEquals(p2.getCoords(), coords(tree, tree.getRoot().getRightNode()));
+        assertArrayEquals(p3.getCoords(), coords(tree, tree.getRoot().getRightNode().getLeftNode()));
 
-        assertEquals(tree.getRoot().getRightNode().getRightNode().getLinePath(), p4);
-        assertEquals(tree.getRoot().getRightNode().getRightNode().getRightNode().getLinePath(), p5);
+        assertArrayEquals(p4.getCoords(), coords(tree, tree.getRoot().getRightNode().getRightNode()));
+        assertArrayEquals(p5.getCoords(), coords(tree, tree.getRoot().getRightNode().getRightNode().getRightNode()));
+    }
+
+    @Test
+    public void createTree_storesThePathsInPreorder() {
+        Rect rect = new Rect(0, 10, 0, 10);
+        List<LinePath> paths = new ArrayList<>();
+
+        paths.add(createTestLinePath(5, 5, 6, 6));
+        paths.add(createTestLinePath(6, 6, 7, 7));
+        paths.add(createTestLinePath(7, 7, 8, 8));
+        paths.add(createTestLinePath(7, 7, 3, 3));
+        paths.add(createTestLinePath(7, 7, 4, 4));
+
+        KDTree tree = new KDTree(paths, rect);
+
+        assertEquals(0, tree.getRoot().getPath());
+        assertEquals(1, tree.getRoot().getRightNode().getPath());
+        assertEquals(2, tree.getRoot().getRightNode().getLeftNode().getPath());
+        assertEquals(3, tree.getRoot().getRightNode().getRightNode().getPath());
+        assertEquals(4, tree.getRoot().getRightNode().getRightNode().getRightNode().getPath());
+    }
+
+    @Test
+    public void remove_hidesThePathFromQueries() {
+        Rect rect = new Rect(0, 10, 0, 10);
+        List<LinePath> paths = new ArrayList<>();
+
+        paths.add(createTestLinePath(5, 5, 6, 6));
+        paths.add(createTestLinePath(6, 6, 7, 7));
+        KDTree tree = new KDTree(paths, rect);
+
+        LinePath inserted = createTestLinePath(7, 7, 8, 8);
+        tree.insert(inserted);
+        assertEquals(3, tree.getPathsInRect(rect, Double.MAX_VALUE, null).length);
+
+        assertTrue(tree.remove(inserted));
+        assertFalse(tree.remove(inserted));
+        assertEquals(2, tree.getPathsInRect(rect, Double.MAX_VALUE, null).length);
+    }
+
+    @Test
+    public void createTree_emptyLayerHasNoPaths() {
+        Rect rect = new Rect(0, 10, 0, 10);
+        KDTree tree = new KDTree(new ArrayList<>(), rect);
+
+        assertEquals(0, tree.getPaths().size());
+        assertEquals(-1, tree.getRoot().getPath());
+        assertEquals(0, tree.getPathsInRect(rect, Double.MAX_VALUE, new Point2D(5, 5)).length);
+        assertEquals(-1, tree.getClosetsPathToMouse());
+
+        LinePath inserted = createTestLinePath(7, 7, 8, 8);
+        tree.insert(inserted);
+        assertEquals(1, tree.getPathsInRect(rect, Double.MAX_VALUE, null).length);
+        assertTrue(tree.remove(inserted));
+        assertEquals(0, tree.getPathsInRect(rect, Double.MAX_VALUE, null).length);
+    }
+
+    private static float[] coords(KDTree tree, KDNode node) {
+        return tree.getPaths().getCoords(node.getPath());
     }
 
     public LinePath createTestLinePath(float fLat, float fLon, float tLat, float tLon) {
-        Map<Long, Node> nodes1 = new HashMap<>();
-        nodes1.put((long) 1, new Node(1, fLat, fLon));
-        nodes1.put((long) 2, new Node(2, tLat, tLon));
+        NodeStore nodes1 = new SortedNodeStore();
+        nodes1.put(1, fLat, fLon);
+        nodes1.put(2, tLat, tLon);
 
         Way way1 = new Way();
         way1.addNodeId(1);
@@ -0,0 +1,146 @@
+package bfst20.logic;
+
+import bfst20.logic.filehandling.MapCache;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MapCacheTest {
+    private static File directory() throws IOException {
+        File directory = Files.createTempDirectory("cache").toFile();
+        directory.deleteOnExit();
+
+        return directory;
+    }
+
+    private static File source(int size) throws IOException {
+        File file = File.createTempFile("source", ".osm");
+        file.deleteOnExit();
+
+        byte[] bytes = new byte[size];
+        Arrays.fill(bytes, (byte) 'a');
+        Files.write(file.toPath(), bytes);
+        file.setLastModified(1_500_000_000_000L);
+
+        return file;
+    }
+
+    private static void overwrite(File file, long position, char value) throws IOException {
+        long modified = file.lastModified();
+
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.seek(position);
+            out.write(value);
+        }
+
+        file.setLastModified(modified);
+    }
+
+    @Test
+    void keyOf_isTheSameForTheSameFile() throws Exception {
+        MapCache cache = new MapCache(directory(), 1 << 20);
+        File source = source(1 << 20);
+
+        assertEquals(cache.keyOf(source), cache.keyOf(source));
+        assertEquals(64, cache.keyOf(source).length());
+    }
+
+    @Test
+    void keyOf_changesWithTheFile() throws Exception {
+        MapCache cache = new MapCache(directory(), 1 << 20);
+        File source = source(1 << 20);
+        String key = cache.keyOf(source);
+
+        // Same size and time, different content at the start and at the end.
+        overwrite(source, 10, 'b');
+        String changedStart = cache.keyOf(source);
+        assertNotEquals(key, changedStart);
+
+        overwrite(source, source.length() - 1, 'b');
+        assertNotEquals(changedStart, cache.keyOf(source));
+
+        String changedEnd = cache.keyOf(source);
+        source.setLastModified(1_600_000_000_000L);
+        assertNotEquals(changedEnd, cache.keyOf(source));
+    }
+
+    @Test
+    void keyOf_changesWithTheImportSettings() throws Exception {
+        MapCache cache = new MapCache(directory(), 1 << 20);
+        File source = source(1000);
+        String key = cache.keyOf(source);
+
+        System.setProperty("bfst20.parser.bbox", "55.8,10.5,55.9,10.7");
+        try {
+            assertNotEquals(key, cache.keyOf(source));
+        } finally {
+            System.clearProperty("bfst20.parser.bbox");
+        }
+
+        assertEquals(key, cache.keyOf(source));
+    }
+
+    @Test
+    void store_makesTheMapFindable() throws Exception {
+        MapCache cache = new MapCache(directory(), 1 << 20);
+        String key = cache.keyOf(source(1000));
+
+        assertNull(cache.find(key));
+
+        File stored = cache.store(key, file -> Files.write(file.toPath(), new byte[]{1, 2, 3}));
+
+        assertEquals(stored, cache.find(key));
+        assertArrayEquals(new byte[]{1, 2, 3}, Files.readAllBytes(stored.toPath()));
+        assertEquals(1, cache.getDirectory().listFiles().length);
+    }
+
+    @Test
+    void store_leavesNothingWhenTheMapCannotBeWritten() throws Exception {
+        MapCache cache = new MapCache(directory(), 1 << 20);
+        String key = cache.keyOf(source(1000));
+
+        assertThrows(IOException.class, () -> cache.store(key, file -> {
+            throw new IOException("Disk full");
+        }));
+
+        assertNull(cache.find(key));
+        assertEquals(0, cache.getDirectory().listFiles().length);
+    }
+
+    @Test
+    void store_evictsTheLeastRecentlyUsedMaps() throws Exception {
+        MapCache cache = new MapCache(directory(), 250);
+        String first = cache.keyOf(source(10));
+        String second = cache.keyOf(source(20));
+        String third = cache.keyOf(source(30));
+
+        cache.store(first, file -> Files.write(file.toPath(), new byte[100]));
+        cache.find(first).setLastModified(1_000_000_000_000L);
+        cache.store(second, file -> Files.write(file.toPath(), new byte[100]));
+        cache.find(second).setLastModified(1_100_000_000_000L);
+
+        // Using the first map makes the second the least recently used.
+        assertNotNull(cache.find(first));
+        cache.store(third, file -> Files.write(file.toPath(), new byte[100]));
+
+        assertNotNull(cache.find(first));
+        assertNull(cache.find(second));
+        assertNotNull(cache.find(third));
+    }
+
+    @Test
+    void store_keepsTheNewestMapEvenIfItIsTooLarge() throws Exception {
+        MapCache cache = new MapCache(directory(), 50);
+        String key = cache.keyOf(source(10));
+
+        cache.store(key, file -> Files.write(file.toPath(), new byte[100]));
+
+        assertNotNull(cache.find(key));
+    }
+}
@@ -0,0 +1,348 @@
+package bfst20.logic;
+
+import bfst20.benchmark.SyntheticOSM;
+import bfst20.data.*;
+import bfst20.logic.controllers.*;
+import bfst20.logic.entities.Address;
+import bfst20.logic.entities.Bounds;
+import bfst20.logic.entities.LinePath;
+import bfst20.logic.entities.Node;
+import bfst20.logic.filehandling.FileHandler;
+import bfst20.logic.filehandling.Parser;
+import bfst20.logic.kdtree.KDNode;
+import bfst20.logic.kdtree.KDTree;
+import bfst20.logic.misc.OSMType;
+import bfst20.logic.routing.Edge;
+import bfst20.logic.routing.Graph;
+import bfst20.logic.routing.TernarySearchTree;
+import bfst20.logic.services.AddressService;
+import bfst20.logic.services.LinePathService;
+import bfst20.logic.services.RoutingService;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MapFileTest {
+    private static OSMElementController osmElementController;
+    private static AddressController addressController;
+    private static RoutingController routingController;
+    private static KDTreeController kdTreeController;
+    private static LinePathController linePathController;
+    private static FileHandler fileHandler;
+    private static List<IOException> damaged = new ArrayList<>();
+
+    @BeforeAll
+    static void setup() throws Exception {
+        osmElementController = new OSMElementController();
+        addressController = new AddressController(new AddressService(AddressData.getInstance()));
+        routingController = new RoutingController(new RoutingService(RoutingData.getInstance()),
+                new AddressService(AddressData.getInstance()));
+        kdTreeController = new KDTreeController();
+        linePathController = new LinePathController(LinePathService.getInstance(LinePathData.getInstance()));
+
+        fileHandler = new FileHandler.Builder()
+                .withParser(new Parser(osmElementController, addressController))
+                .withOSMElementAPI(osmElementController)
+                .withAddressAPI(addressController)
+                .withRoutingAPI(routingController)
+                .withKDTreeAPI(kdTreeController)
+                .withLinePathAPI(linePathController)
+                .withDamagedMapHandler(damaged::add)
+                .build();
+
+        // What StartupController.initialize does for an imported file.
+        clear();
+        fileHandler.load(SyntheticOSM.writeTempFile(5_000, 3));
+        linePathController.init(osmElementController.fetchAllWays(), osmElementController.fetchAllNodes(),
+                osmElementController.fetchAllRelations());
+        routingController.buildRoutingGraph(linePathController.fetchHighways());
+        kdTreeController.constructKDTrees(linePathController.fetchLinePathData(), osmElementController.fetchBoundsData());
+    }
+
+    private static void clear() {
+        osmElementController.clearNodeData();
+        LinePathData.getInstance().clearCoastlines();
+        LinePathData.getInstance().clearData();
+        KDTreeData.getInstance().clearData();
+        AddressData.getInstance().clearData();
+        RoutingData.getInstance().saveGraph(null);
+    }
+
+    private static File tempFile() throws IOException {
+        File file = File.createTempFile("map", ".bin");
+        file.deleteOnExit();
+
+        return file;
+    }
+
+    // Everything a .bin file holds, in the order it is used.
+    private static List<String> snapshot() {
+        List<String> result = new ArrayList<>();
+
+        Bounds bounds = osmElementController.fetchBoundsData();
+        result.add("bounds " + bounds.getMinLat() + " " + bounds.getMaxLat() + " " + bounds.getMinLon() + " " + bounds.getMaxLon());
+
+        Map<OSMType, KDTree> trees = new TreeMap<>(kdTreeController.fetchAllKDTrees());
+        for (Map.Entry<OSMType, KDTree> entry : trees.entrySet()) {
+            Deque<KDNode> stack = new ArrayDeque<>();
+            stack.push(entry.getValue().getRoot());
+
+            while (!stack.isEmpty()) {
+                KDNode node = stack.pop();
+                result.add("kd " + entry.getKey() + " " + node.getDirection() + " " + node.getSplit() + " " + node.isRemoved()
+                        + " " + (node.getLeftNode() != null) + " " + (node.getRightNode() != null) + " " + path(entry.getValue().getPaths().getLinePath(node.getPath())));
+
+                if (node.getRightNode() != null) stack.push(node.getRightNode());
+                if (node.getLeftNode() != null) stack.push(node.getLeftNode());
+            }
+        }
+
+        for (LinePath path : linePathController.fetchCoastlines()) result.add("coast " + path(path));
+
+        TernarySearchTree tst = addressController.fetchTSTData();
+        result.add("addresses " + tst.getSize());
+        for (String prefix : new String[]{"V", "Øster", "N", "S", "K", "Skovvej"}) {
+            for (Address address : tst.keysWithPrefix(prefix)) {
+                result.add("address " + address + " " + address.getCity() + " " + address.getLat() + " " + address.getLon());
+            }
+        }
+
+        Graph graph = routingController.fetchGraph();
+        List<Edge> edges = graph.getEdges();
+        for (Edge edge : edges) {
+            result.add("edge " + edge.getHighwayType() + " " + edge.getSource().getId() + " " + edge.getTarget().getId()
+                    + " " + edge.getLength() + " " + edge.getStreet() + " " + edge.getMaxSpeed() + " " + edge.isOneWay());
+        }
+
+        for (Node node : graph.getNodes()) {
+            StringBuilder line = new StringBuilder("node " + node.getId() + " " + node.getLatitude() + " " + node.getLongitude());
+            for (Edge edge : graph.adj(node)) line.append(' ').append(edges.indexOf(edge));
+            result.add(line.toString());
+        }
+
+        return result;
+    }
+
+    private static String path(LinePath path) {
+        return path.getOSMType() + " " + path.getName() + " " + path.getFill() + " " + path.isMultipolygon() + " "
+                + path.getWayId() + " " + path.getMinX() + " " + path.getMaxX() + " " + path.getMinY() + " "
+                + path.getMaxY() + " " + path.getCenterLatitude() + " " + path.getCenterLongitude() + " "
+                + Arrays.toString(path.getCoords());
+    }
+
+    @Test
+    void generateBinary_loadsTheSameMap() throws Exception {
+        List<String> before = snapshot();
+        assertTrue(before.stream().anyMatch(line -> line.startsWith("kd ")));
+        assertTrue(before.stream().anyMatch(line -> line.startsWith("address ")));
+        assertTrue(before.stream().anyMatch(line -> line.startsWith("edge ")));
+
+        File file = tempFile();
+        fileHandler.generateBinary(file);
+
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            assertEquals(0x42465354, in.readInt());
+        }
+
+        clear();
+        fileHandler.load(file);
+
+        assertEquals(before, snapshot());
+
+        // Loaded again, the file gives the same map once more.
+        File again = tempFile();
+        fileHandler.generateBinary(again);
+        assertArrayEquals(Files.readAllBytes(file.toPath()), Files.readAllBytes(again.toPath()));
+    }
+
+    @Test
+    void generateBinary_keepsCoordinatesToTheFixedPointUnit() throws Exception {
+        float[] coords = {0.1f, -0.3f, 1e-9f, 12.345678f, -179.99998f, 0.5f};
+        kdTreeController.saveKDTree(OSMType.GREEN, new ArrayList<>(Collections.singletonList(
+                new LinePath(OSMType.GREEN, coords, true, false, "Near zero", 7))));
+
+        try {
+            List<String> before = snapshot();
+
+            File file = tempFile();
+            fileHandler.generateBinary(file);
+            clear();
+            fileHandler.load(file);
+
+            assertEquals(before, snapshot());
+            KDTree tree = kdTreeController.fetchKDTreeByType(OSMType.GREEN);
+            assertArrayEquals(new float[]{0.1f, -0.3f, 0, 12.345678f, -179.99998f, 0.5f},
+                    tree.getPaths().getCoords(tree.getRoot().getPath()));
+        } finally {
+            kdTreeController.fetchAllKDTrees().remove(OSMType.GREEN);
+        }
+    }
+
+    @Test
+    void load_decodesLayersWhenFirstUsed() throws Exception {
+        List<String> before = snapshot();
+        Set<OSMType> types = new HashSet<>(kdTreeController.fetchAllKDTrees().keySet());
+
+        File file = tempFile();
+        fileHandler.generateBinary(file);
+        clear();
+        fileHandler.load(file);
+
+        for (OSMType type : types) assertFalse(kdTreeController.isKDTreeLoaded(type));
+
+        OSMType first = types.iterator().next();
+        assertNotNull(kdTreeController.fetchKDTreeByType(first));
+        for (OSMType type : types) assertEquals(type == first, kdTreeController.isKDTreeLoaded(type));
+
+        assertEquals(before, snapshot());
+    }
+
+    @Test
+    void load_decodesSectionsOnAPool() throws Exception {
+        List<String> before = snapshot();
+
+        File file = tempFile();
+        fileHandler.generateBinary(file);
+
+        for (String threads : new String[]{"0", "1", "3"}) {
+            System.setProperty("bfst20.binary.threads", threads);
+            try {
+                clear();
+                fileHandler.load(file);
+
+                assertEquals(before, snapshot());
+            } finally {
+                System.clearProperty("bfst20.binary.threads");
+            }
+        }
+    }
+
+    @Test
+    void generateBinary_overwritesTheLoadedFile() throws Exception {
+        List<String> before = snapshot();
+
+        File file = tempFile();
+        fileHandler.generateBinary(file);
+        clear();
+        fileHandler.load(file);
+
+        // Nothing has been decoded yet when the file is written again.
+        fileHandler.generateBinary(file);
+        clear();
+        fileHandler.load(file);
+
+        assertEquals(before, snapshot());
+    }
+
+    @Test
+    void generateBinary_leavesOnlyTheMapFile() throws Exception {
+        File directory = Files.createTempDirectory("maps").toFile();
+        File file = new File(directory, "map.bin");
+
+        try {
+            fileHandler.generateBinary(file);
+
+            assertArrayEquals(new String[]{"map.bin"}, directory.list());
+        } finally {
+            file.delete();
+            directory.delete();
+        }
+    }
+
+    @Test
+    void load_rejectsADamagedFileAndKeepsTheMap() throws Exception {
+        List<String> before = snapshot();
+
+        File file = tempFile();
+        fileHandler.generateBinary(file);
+        byte[] bytes = Files.readAllBytes(file.toPath());
+
+        // A byte in the bounds, which come first, and one in the table of sections.
+        for (int position : new int[]{20, bytes.length - 20}) {
+            byte[] damaged = bytes.clone();
+            damaged[position] ^= 0x10;
+
+            File damagedFile = tempFile();
+            Files.write(damagedFile.toPath(), damaged);
+
+            assertThrows(IOException.class, () -> fileHandler.load(damagedFile), "byte " + position);
+            assertEquals(before, snapshot());
+        }
+    }
+
+    @Test
+    void load_checksSectionsWhenFirstUsed() throws Exception {
+        List<String> before = snapshot();
+
+        File file = tempFile();
+        fileHandler.generateBinary(file);
+        byte[] damagedBytes = Files.readAllBytes(file.toPath());
+        damagedBytes[damagedBytes.length / 2] ^= 0x10;
+
+        File damagedFile = tempFile();
+        Files.write(damagedFile.toPath(), damagedBytes);
+
+        try {
+            clear();
+            fileHandler.load(damagedFile);
+            assertTrue(damaged.isEmpty());
+
+            // The damaged section is left empty when it is used, and reported once.
+            List<String> after = snapshot();
+            snapshot();
+            assertEquals(1, damaged.size());
+            assertEquals(before.get(0), after.get(0));
+            assertNotEquals(before, after);
+        } finally {
+            damaged.clear();
+            clear();
+            fileHandler.load(file);
+        }
+    }
+
+    @Test
+    void load_rejectsOtherVersions() throws Exception {
+        List<String> before = snapshot();
+
+        File file = tempFile();
+        fileHandler.generateBinary(file);
+        byte[] bytes = Files.readAllBytes(file.toPath());
+
+        // The version follows the magic number.
+        for (int change : new int[]{-1, 1}) {
+            byte[] other = bytes.clone();
+            other[7] += change;
+
+            File otherFile = tempFile();
+            Files.write(otherFile.toPath(), other);
+
+            assertThrows(IOException.class, () -> fileHandler.load(otherFile), "version " + other[7]);
+            assertEquals(before, snapshot());
+        }
+    }
+
+    @Test
+    void load_readsSerializedBinaryFiles() throws Exception {
+        List<String> before = snapshot();
+
+        // The layout FileHandler wrote before the map file format.
+        File file = tempFile();
+        try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeObject(osmElementController.fetchBoundsData());
+            out.writeObject(kdTreeController.fetchAllKDTrees());
+            out.writeObject(linePathController.fetchCoastlines());
+            out.writeObject(addressController.fetchTSTData());
+            out.writeObject(routingController.fetchGraph());
+        }
+
+        clear();
+        fileHandler.load(file);
+
+        assertEquals(before, snapshot());
+    }
+}
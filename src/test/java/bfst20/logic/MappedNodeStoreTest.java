@@ -0,0 +1,116 @@
+package bfst20.logic;
+
+import bfst20.logic.nodestore.MappedNodeStore;
+import bfst20.logic.nodestore.NodeStore;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedNodeStoreTest {
+    private static File directory;
+
+    @BeforeAll
+    static void setup() throws Exception {
+        directory = Files.createTempDirectory("nodestore").toFile();
+        directory.deleteOnExit();
+    }
+
+    @Test
+    void put_fetchSparseIds() {
+        NodeStore store = new MappedNodeStore(directory);
+        for (long id = 1; id <= 100000; id++) store.put(id * 7919, id, -id);
+
+        int index = store.indexOf(500 * 7919);
+        assertEquals(500f, store.latitudeAt(index));
+        assertEquals(-500f, store.longitudeAt(index));
+        assertEquals(-1, store.indexOf(3));
+        assertEquals(-1, store.indexOf(100001L * 7919));
+        assertEquals(100000, store.size());
+
+        store.close();
+    }
+
+    @Test
+    void put_fetchDenseIds() {
+        NodeStore store = new MappedNodeStore(directory);
+        for (long id = 1; id <= 100000; id++) {
+            if (id % 3 != 0) store.put(id, id, id / 2f);
+        }
+
+        assertEquals(1000f, store.get(1000).getLatitude());
+        assertEquals(500f, store.get(1000).getLongitude());
+        assertNull(store.get(999));
+        assertEquals(66667, store.size());
+
+        store.close();
+    }
+
+    @Test
+    void put_keepsLastValueForUnorderedAndLateIds() {
+        NodeStore store = new MappedNodeStore(directory);
+        store.put(10, 1, 1);
+        store.put(10, 2, 2);
+        store.put(20, 3, 3);
+        store.put(5, 4, 4);
+
+        assertEquals(2f, store.get(10).getLatitude());
+        assertEquals(4f, store.get(5).getLatitude());
+
+        store.put(20, 5, 5);
+        store.put(30, 6, 6);
+
+        assertEquals(5f, store.get(20).getLatitude());
+        assertEquals(6f, store.latitudeAt(store.indexOf(30)));
+        assertEquals(4, store.size());
+
+        store.close();
+    }
+
+    @Test
+    void remove_hidesTheNodeUntilItIsPutAgain() {
+        NodeStore store = new MappedNodeStore(directory);
+        for (long id = 1; id <= 10; id++) store.put(id, id, id);
+        store.put(20, 20, 20);
+        store.put(15, 15, 15);
+
+        store.remove(5);
+        store.remove(15);
+
+        assertFalse(store.contains(5));
+        assertNull(store.get(15));
+        assertEquals(10, store.size());
+
+        store.put(5, -5, -5);
+        assertEquals(-5f, store.get(5).getLatitude());
+        assertEquals(11, store.size());
+
+        store.close();
+    }
+
+    @Test
+    void get_returnsSameNodeForSameId() {
+        NodeStore store = new MappedNodeStore(directory);
+        store.put(10, 55.5f, 10.5f);
+
+        assertSame(store.get(10), store.get(10));
+
+        store.close();
+    }
+
+    @Test
+    void close_deletesFile() {
+        NodeStore store = new MappedNodeStore(directory);
+        for (long id = 1; id <= 1000; id++) store.put(id * 100, id, id);
+        store.contains(100);
+
+        assertEquals(1, directory.listFiles().length);
+
+        store.close();
+
+        assertEquals(0, directory.listFiles().length);
+    }
+}
@@ -0,0 +1,106 @@
+package bfst20.logic;
+
+import bfst20.benchmark.SyntheticOSM;
+import bfst20.data.*;
+import bfst20.logic.controllers.*;
+import bfst20.logic.filehandling.FileHandler;
+import bfst20.logic.filehandling.Parser;
+import bfst20.logic.misc.HeapLayout;
+import bfst20.logic.services.AddressService;
+import bfst20.logic.services.LinePathService;
+import bfst20.logic.services.MemoryReport;
+import bfst20.logic.services.MemoryService;
+import bfst20.logic.services.RoutingService;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MemoryServiceTest {
+    private static List<MemoryReport> reports;
+    private static String json;
+
+    @BeforeAll
+    static void setup() throws Exception {
+        OSMElementController osmElementController = new OSMElementController();
+        AddressController addressController = new AddressController(new AddressService(AddressData.getInstance()));
+        RoutingController routingController = new RoutingController(new RoutingService(RoutingData.getInstance()),
+                new AddressService(AddressData.getInstance()));
+        KDTreeController kdTreeController = new KDTreeController();
+        LinePathController linePathController = new LinePathController(LinePathService.getInstance(LinePathData.getInstance()));
+        MemoryController memoryController = new MemoryController(new MemoryService(OSMElementData.getInstance(),
+                LinePathData.getInstance(), KDTreeData.getInstance(), RoutingData.getInstance(), AddressData.getInstance()));
+
+        FileHandler fileHandler = new FileHandler.Builder()
+                .withParser(new Parser(osmElementController, addressController))
+                .withOSMElementAPI(osmElementController)
+                .withAddressAPI(addressController)
+                .withRoutingAPI(routingController)
+                .withKDTreeAPI(kdTreeController)
+                .withLinePathAPI(linePathController)
+                .withMemoryAPI(memoryController)
+                .build();
+
+        // The phases of StartupController.initialize for an imported file.
+        LinePathData.getInstance().clearCoastlines();
+        LinePathData.getInstance().clearData();
+        KDTreeData.getInstance().clearData();
+        AddressData.getInstance().clearData();
+        RoutingData.getInstance().saveGraph(null);
+
+        fileHandler.load(SyntheticOSM.writeTempFile(5_000, 3));
+        memoryController.measureMemory("load");
+        linePathController.init(osmElementController.fetchAllWays(), osmElementController.fetchAllNodes(),
+                osmElementController.fetchAllRelations());
+        memoryController.measureMemory("linePaths");
+        osmElementController.clearNodeData();
+        memoryController.measureMemory("nodesCleared");
+        routingController.buildRoutingGraph(linePathController.fetchHighways());
+        kdTreeController.constructKDTrees(linePathController.fetchLinePathData(), osmElementController.fetchBoundsData());
+        linePathController.clearLinePathData();
+        memoryController.measureMemory("kdTrees");
+
+        reports = memoryController.fetchMemoryReports();
+        json = memoryController.fetchMemoryReportsJson();
+    }
+
+    @Test
+    void measure_followsThePartsThroughThePhases() {
+        assertEquals(4, reports.size());
+        MemoryReport load = reports.get(0);
+        MemoryReport linePaths = reports.get(1);
+        MemoryReport nodesCleared = reports.get(2);
+        MemoryReport kdTrees = reports.get(3);
+
+        assertTrue(load.getBytes("osmElements.nodes") > 5_000 * 16);
+        assertTrue(load.getBytes("osmElements.ways") > 0);
+        assertEquals(0, load.getBytes("kdTrees."));
+
+        assertTrue(linePaths.getBytes("linePaths.") > 0);
+        assertTrue(nodesCleared.getBytes("osmElements.ways") < load.getBytes("osmElements.ways"));
+
+        assertTrue(kdTrees.getBytes("kdTrees.") > 0);
+        assertTrue(kdTrees.getBytes("routing.graph") > 0);
+        assertTrue(kdTrees.getBytes("addresses.tst") > 0);
+        assertEquals(kdTrees.getEstimatedBytes(), kdTrees.getBytes().values().stream().mapToLong(Long::longValue).sum());
+        assertTrue(kdTrees.getEstimatedBytes() < kdTrees.getMaxBytes());
+    }
+
+    @Test
+    void toJson_writesEveryPhaseAndPart() {
+        assertTrue(json.startsWith("[{\"phase\":\"load\",\"usedBytes\":"));
+        assertTrue(json.endsWith("}}]"));
+        assertTrue(json.contains("\"phase\":\"kdTrees\""));
+        assertTrue(json.contains("\"addresses.tst\":" + reports.get(3).getBytes("addresses.tst")));
+        assertEquals(4, json.split("\"phase\"").length - 1);
+    }
+
+    @Test
+    void array_isPaddedToEightBytes() {
+        assertEquals(0, HeapLayout.array(3, 1) % 8);
+        assertEquals(HeapLayout.ARRAY_HEADER + 80, HeapLayout.array(10, 8));
+        assertTrue(HeapLayout.shallow(Long.class) >= HeapLayout.HEADER + 8);
+    }
+}
@@ -0,0 +1,60 @@
+package bfst20.logic;
+
+import bfst20.logic.filehandling.NumberParser;
+import org.junit.jupiter.api.Test;
+
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NumberParserTest {
+
+    @Test
+    void parseLong_matchesLongParseLong() {
+        String[] texts = {"0", "1", "-1", "+42", "7000000000", "123456789012345678", "9223372036854775807",
+                "-9223372036854775808", "0042"};
+
+        for (String text : texts) assertEquals(Long.parseLong(text), NumberParser.parseLong(text), text);
+    }
+
+    @Test
+    void parseLong_rejectsWhatLongParseLongRejects() {
+        String[] texts = {"", "-", "+", "1.5", " 1", "9223372036854775808", "12a"};
+
+        for (String text : texts) assertThrows(NumberFormatException.class, () -> NumberParser.parseLong(text), text);
+        assertThrows(NumberFormatException.class, () -> NumberParser.parseLong(null));
+    }
+
+    @Test
+    void parseFloat_matchesFloatParseFloatForCoordinates() {
+        Random random = new Random(9);
+
+        for (int i = 0; i < 1_000_000; i++) {
+            double coordinate = (random.nextDouble() - 0.5) * 360;
+            String text = String.format(Locale.ROOT, "%." + random.nextInt(10) + "f", coordinate);
+
+            assertEquals(Float.floatToRawIntBits(Float.parseFloat(text)),
+                    Float.floatToRawIntBits(NumberParser.parseFloat(text)), text);
+        }
+    }
+
+    @Test
+    void parseFloat_matchesFloatParseFloatForOtherForms() {
+        String[] texts = {"0", "-0", "-0.0", "+1.5", "1.", ".5", "00055.10", "1e5", "1.5E-3", "NaN", "-Infinity",
+                " 55.1", "55.1f", "0x1p3", "123456789012345678901234567890", "0.000000000000000000000000000000001",
+                "3.4028236e38", "16777217", "1.00000005960464477539062500001"};
+
+        for (String text : texts) {
+            assertEquals(Float.floatToRawIntBits(Float.parseFloat(text)),
+                    Float.floatToRawIntBits(NumberParser.parseFloat(text)), text);
+        }
+    }
+
+    @Test
+    void parseFloat_rejectsWhatFloatParseFloatRejects() {
+        String[] texts = {"", ".", "-", "1.2.3", "55,1", "abc"};
+
+        for (String text : texts) assertThrows(NumberFormatException.class, () -> NumberParser.parseFloat(text), text);
+    }
+}
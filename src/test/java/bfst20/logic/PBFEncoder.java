@@ -0,0 +1,348 @@
+package bfst20.logic;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+import static javax.xml.stream.XMLStreamConstants.END_ELEMENT;
+import static javax.xml.stream.XMLStreamConstants.START_ELEMENT;
+
+// Converts OSM XML to PBF, so the PBF import can be compared with the XML import.
+// Nodes are written as dense nodes, blocks hold at most blockSize elements.
+public class PBFEncoder {
+    private static final int GRANULARITY = 100;
+
+    private OutputStream out;
+    private int blockSize;
+
+    private List<String[]> elements = new ArrayList<>();
+    private String currentKind;
+
+    private PBFEncoder(OutputStream out, int blockSize) {
+        this.out = out;
+        this.blockSize = blockSize;
+    }
+
+    public static byte[] encode(String osm, int blockSize) throws IOException, XMLStreamException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encode(new StringReader(osm), out, blockSize);
+
+        return out.toByteArray();
+    }
+
+    public static void encode(Reader osm, OutputStream out, int blockSize) throws IOException, XMLStreamException {
+        new PBFEncoder(out, blockSize).encode(XMLInputFactory.newFactory().createXMLStreamReader(osm));
+    }
+
+    // Each element is kept as a flat list: kind, id, then kind specific values, then "tag", key, value pairs.
+    private void encode(XMLStreamReader reader) throws IOException, XMLStreamException {
+        List<String> element = null;
+        boolean headerWritten = false;
+
+        while (reader.hasNext()) {
+            int event = reader.next();
+
+            if (event == START_ELEMENT) {
+                String name = reader.getLocalName();
+
+                switch (name) {
+                    case "bounds":
+                        writeHeader(reader.getAttributeValue(null, "minlat"), reader.getAttributeValue(null, "minlon"),
+                                reader.getAttributeValue(null, "maxlat"), reader.getAttributeValue(null, "maxlon"));
+                        headerWritten = true;
+                        break;
+                    case "node":
+                    case "way":
+                    case "relation":
+                        if (!headerWritten) {
+                            writeHeader(null, null, null, null);
+                            headerWritten = true;
+                        }
+
+                        element = new ArrayList<>();
+                        element.add(name);
+                        element.add(reader.getAttributeValue(null, "id"));
+
+                        if (name.equals("node")) {
+                            element.add(reader.getAttributeValue(null, "lat"));
+                            element.add(reader.getAttributeValue(null, "lon"));
+                        }
+                        break;
+                    case "nd":
+                        element.add("nd");
+                        element.add(reader.getAttributeValue(null, "ref"));
+                        break;
+                    case "member":
+                        element.add("member");
+                        element.add(reader.getAttributeValue(null, "type"));
+                        element.add(reader.getAttributeValue(null, "ref"));
+                        element.add(reader.getAttributeValue(null, "role"));
+                        break;
+                    case "tag":
+                        if (element == null) break;
+
+                        element.add("tag");
+                        element.add(reader.getAttributeValue(null, "k"));
+                        element.add(reader.getAttributeValue(null, "v"));
+                        break;
+                }
+            } else if (event == END_ELEMENT && element != null) {
+                String name = reader.getLocalName();
+
+                if (name.equals("node") || name.equals("way") || name.equals("relation")) {
+                    addElement(element.toArray(new String[0]));
+                    element = null;
+                }
+            }
+        }
+
+        flush();
+    }
+
+    private void addElement(String[] element) throws IOException {
+        if (!element[0].equals(currentKind) || elements.size() == blockSize) flush();
+
+        currentKind = element[0];
+        elements.add(element);
+    }
+
+    private void writeHeader(String minLat, String minLon, String maxLat, String maxLon) throws IOException {
+        Message header = new Message();
+
+        if (minLat != null) {
+            Message bbox = new Message();
+            bbox.writeSignedVarint(1, nanodegrees(minLon));
+            bbox.writeSignedVarint(2, nanodegrees(maxLon));
+            bbox.writeSignedVarint(3, nanodegrees(maxLat));
+            bbox.writeSignedVarint(4, nanodegrees(minLat));
+            header.writeMessage(1, bbox);
+        }
+
+        header.writeString(4, "OsmSchema-V0.6");
+        header.writeString(4, "DenseNodes");
+
+        writeBlob("OSMHeader", header.toByteArray());
+    }
+
+    private void flush() throws IOException {
+        if (elements.isEmpty()) return;
+
+        StringTable strings = new StringTable();
+        Message group = new Message();
+
+        switch (currentKind) {
+            case "node":
+                group.writeMessage(2, denseNodes(strings));
+                break;
+            case "way":
+                for (String[] element : elements) group.writeMessage(3, way(element, strings));
+                break;
+            case "relation":
+                for (String[] element : elements) group.writeMessage(4, relation(element, strings));
+                break;
+        }
+
+        Message block = new Message();
+        block.writeMessage(1, strings.toMessage());
+        block.writeMessage(2, group);
+        // Written after the group on purpose, the reader must not depend on the field order.
+        block.writeVarint(17, GRANULARITY);
+
+        writeBlob("OSMData", block.toByteArray());
+        elements.clear();
+    }
+
+    private Message denseNodes(StringTable strings) {
+        Message ids = new Message(), lats = new Message(), lons = new Message(), keysVals = new Message();
+        long lastId = 0, lastLat = 0, lastLon = 0;
+
+        for (String[] element : elements) {
+            long id = Long.parseLong(element[1]);
+            long lat = nanodegrees(element[2]) / GRANULARITY;
+            long lon = nanodegrees(element[3]) / GRANULARITY;
+
+            ids.writeRawSignedVarint(id - lastId);
+            lats.writeRawSignedVarint(lat - lastLat);
+            lons.writeRawSignedVarint(lon - lastLon);
+            lastId = id;
+            lastLat = lat;
+            lastLon = lon;
+
+            for (int i = 4; i < element.length; i += 3) {
+                keysVals.writeRawVarint(strings.index(element[i + 1]));
+                keysVals.writeRawVarint(strings.index(element[i + 2]));
+            }
+            keysVals.writeRawVarint(0);
+        }
+
+        Message dense = new Message();
+        dense.writeMessage(1, ids);
+        dense.writeMessage(8, lats);
+        dense.writeMessage(9, lons);
+        dense.writeMessage(10, keysVals);
+
+        return dense;
+    }
+
+    private Message way(String[] element, StringTable strings) {
+        Message keys = new Message(), values = new Message(), refs = new Message();
+        long lastRef = 0;
+
+        for (int i = 2; i < element.length; ) {
+            if (element[i].equals("nd")) {
+                long ref = Long.parseLong(element[i + 1]);
+                refs.writeRawSignedVarint(ref - lastRef);
+                lastRef = ref;
+                i += 2;
+            } else {
+                keys.writeRawVarint(strings.index(element[i + 1]));
+                values.writeRawVarint(strings.index(element[i + 2]));
+                i += 3;
+            }
+        }
+
+        Message way = new Message();
+        way.writeVarint(1, Long.parseLong(element[1]));
+        way.writeMessage(2, keys);
+        way.writeMessage(3, values);
+        way.writeMessage(8, refs);
+
+        return way;
+    }
+
+    private Message relation(String[] element, StringTable strings) {
+        Message keys = new Message(), values = new Message(), roles = new Message(), ids = new Message(), types = new Message();
+        long lastId = 0;
+
+        for (int i = 2; i < element.length; ) {
+            if (element[i].equals("member")) {
+                long id = Long.parseLong(element[i + 2]);
+                types.writeRawVarint(element[i + 1].equals("node") ? 0 : element[i + 1].equals("way") ? 1 : 2);
+                ids.writeRawSignedVarint(id - lastId);
+                roles.writeRawVarint(strings.index(element[i + 3] == null ? "" : element[i + 3]));
+                lastId = id;
+                i += 4;
+            } else {
+                keys.writeRawVarint(strings.index(element[i + 1]));
+                values.writeRawVarint(strings.index(element[i + 2]));
+                i += 3;
+            }
+        }
+
+        Message relation = new Message();
+        relation.writeVarint(1, Long.parseLong(element[1]));
+        relation.writeMessage(2, keys);
+        relation.writeMessage(3, values);
+        relation.writeMessage(8, roles);
+        relation.writeMessage(9, ids);
+        relation.writeMessage(10, types);
+
+        return relation;
+    }
+
+    private void writeBlob(String type, byte[] data) throws IOException {
+        Deflater deflater = new Deflater();
+        deflater.setInput(data);
+        deflater.finish();
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        while (!deflater.finished()) compressed.write(buffer, 0, deflater.deflate(buffer));
+        deflater.end();
+
+        Message blob = new Message();
+        blob.writeVarint(2, data.length);
+        blob.writeBytes(3, compressed.toByteArray());
+        byte[] blobBytes = blob.toByteArray();
+
+        Message header = new Message();
+        header.writeString(1, type);
+        header.writeVarint(3, blobBytes.length);
+        byte[] headerBytes = header.toByteArray();
+
+        DataOutputStream dataOut = new DataOutputStream(out);
+        dataOut.writeInt(headerBytes.length);
+        dataOut.write(headerBytes);
+        dataOut.write(blobBytes);
+        dataOut.flush();
+    }
+
+    private static long nanodegrees(String degrees) {
+        return new BigDecimal(degrees).movePointRight(9).longValueExact();
+    }
+
+    private static class StringTable {
+        private Map<String, Integer> indices = new HashMap<>();
+        private List<String> strings = new ArrayList<>();
+
+        StringTable() {
+            index("");
+        }
+
+        int index(String string) {
+            return indices.computeIfAbsent(string, s -> {
+                strings.add(s);
+                return strings.size() - 1;
+            });
+        }
+
+        Message toMessage() {
+            Message message = new Message();
+            for (String string : strings) message.writeString(1, string);
+
+            return message;
+        }
+    }
+
+    private static class Message {
+        private ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        void writeRawVarint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                bytes.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            bytes.write((int) value);
+        }
+
+        void writeRawSignedVarint(long value) {
+            writeRawVarint((value << 1) ^ (value >> 63));
+        }
+
+        void writeVarint(int field, long value) {
+            writeRawVarint(field << 3);
+            writeRawVarint(value);
+        }
+
+        void writeSignedVarint(int field, long value) {
+            writeRawVarint(field << 3);
+            writeRawSignedVarint(value);
+        }
+
+        void writeBytes(int field, byte[] value) {
+            writeRawVarint(field << 3 | 2);
+            writeRawVarint(value.length);
+            bytes.write(value, 0, value.length);
+        }
+
+        void writeString(int field, String value) {
+            writeBytes(field, value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        void writeMessage(int field, Message message) {
+            writeBytes(field, message.toByteArray());
+        }
+
+        byte[] toByteArray() {
+            return bytes.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package bfst20.logic;
+
+import bfst20.data.AddressData;
+import bfst20.logic.controllers.AddressController;
+import bfst20.logic.controllers.OSMElementController;
+import bfst20.logic.entities.Node;
+import bfst20.logic.entities.Relation;
+import bfst20.logic.entities.Way;
+import bfst20.logic.filehandling.Parser;
+import bfst20.logic.misc.OSMType;
+import bfst20.logic.misc.OSMTypeTable;
+import bfst20.logic.services.AddressService;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParserTest {
+    private static OSMElementController osmElementController;
+    private static AddressController addressController;
+    private static String osm;
+
+    @BeforeAll
+    static void setup() {
+        osmElementController = new OSMElementController();
+        addressController = new AddressController(new AddressService(AddressData.getInstance()));
+
+        StringBuilder builder = new StringBuilder("<osm>");
+        builder.append("<bounds minlat=\"55.0\" minlon=\"10.0\" maxlat=\"56.0\" maxlon=\"11.0\"/>");
+
+        for (int i = 1; i <= 5000; i++) {
+            builder.append("<node id=\"").append(i).append("\" lat=\"55.").append(i).append("\" lon=\"10.").append(i).append("\"");
+
+            if (i % 100 == 0) {
+                builder.append("><tag k=\"addr:city\" v=\"Nordby\"/><tag k=\"addr:housenumber\" v=\"").append(i)
+                        .append("\"/><tag k=\"addr:postcode\" v=\"8305\"/><tag k=\"addr:street\" v=\"Strandvej\"/></node>");
+            } else {
+                builder.append("/>");
+            }
+        }
+
+        String[] tags = {"highway=residential", "highway=primary", "building=yes", "natural=water", "landuse=industrial", "waterway=stream"};
+        for (int i = 1; i <= 3000; i++) {
+            builder.append("<way id=\"").append(10000 + i).append("\">");
+            builder.append("<nd ref=\"").append(i).append("\"/><nd ref=\"").append(i + 1).append("\"/>");
+
+            String[] tag = tags[i % tags.length].split("=");
+            builder.append("<tag k=\"").append(tag[0]).append("\" v=\"").append(tag[1]).append("\"/></way>");
+        }
+
+        builder.append("<relation id=\"20000\"><member type=\"way\" ref=\"10001\" role=\"outer\"/>")
+                .append("<member type=\"node\" ref=\"1\" role=\"\"/><tag k=\"type\" v=\"multipolygon\"/>")
+                .append("<tag k=\"natural\" v=\"heath\"/></relation>");
+
+        osm = builder.append("</osm>").toString();
+    }
+
+    private List<String> parse(int threadCount) throws Exception {
+        osmElementController.clearNodeData();
+
+        Parser parser = new Parser(osmElementController, addressController);
+        parser.setThreadCount(threadCount);
+        parser.parseString(osm);
+
+        assertEquals(5000 + 3000 + 1 + 1, parser.getParseReport().getElements());
+
+        return snapshot();
+    }
+
+    private List<String> parsePBF(int threadCount, int blockSize) throws Exception {
+        byte[] pbf = PBFEncoder.encode(osm, blockSize);
+        osmElementController.clearNodeData();
+
+        Parser parser = new Parser(osmElementController, addressController);
+        parser.setThreadCount(threadCount);
+        parser.parsePBFStream(new ByteArrayInputStream(pbf));
+
+        assertEquals(5000 + 3000 + 1 + 1, parser.getParseReport().getElements());
+
+        return snapshot();
+    }
+
+    private List<String> snapshot() {
+        List<String> result = new ArrayList<>();
+        TreeMap<Long, String> nodes = new TreeMap<>();
+        osmElementController.fetchAllNodes().forEach((id, lat, lon) -> nodes.put(id, id + " " + lat + " " + lon));
+        result.addAll(nodes.values());
+        for (Way way : osmElementController.fetchAllWays()) {
+            result.add(way.getId() + " " + way.getOSMType() + " " + way.getNodeIds() + " " + way.getNodes().size());
+        }
+        for (Relation relation : osmElementController.fetchAllRelations()) {
+            result.add(relation.getId() + " " + relation.getOSMType() + " " + relation.getMembers());
+        }
+
+        return result;
+    }
+
+    @Test
+    void parseString_sequentialAndConcurrentMatch() throws Exception {
+        List<String> sequential = parse(1);
+        List<String> concurrent = parse(4);
+
+        assertEquals(sequential, concurrent);
+    }
+
+    @Test
+    void parsePBF_matchesXML() throws Exception {
+        List<String> xml = parse(1);
+
+        assertEquals(xml, parsePBF(1, 8000));
+        assertEquals(xml, parsePBF(4, 700));
+        assertEquals(-55.0f, osmElementController.fetchBoundsData().getMaxLat());
+        assertEquals(0.56f * 11.0f, osmElementController.fetchBoundsData().getMaxLon());
+    }
+
+    @Test
+    void parsePBF_rejectsTruncatedFile() throws Exception {
+        byte[] pbf = PBFEncoder.encode(osm, 1000);
+        byte[] truncated = Arrays.copyOf(pbf, pbf.length - 10);
+
+        Parser parser = new Parser(osmElementController, addressController);
+        parser.setThreadCount(2);
+
+        assertThrows(IOException.class, () -> parser.parsePBFStream(new ByteArrayInputStream(truncated)));
+    }
+
+    @Test
+    void parseString_classifiesAndResolvesHighways() throws Exception {
+        parse(3);
+
+        Way residential = osmElementController.fetchAllWays().get(5);
+        assertEquals(OSMType.RESIDENTIAL_HIGHWAY, residential.getOSMType());
+        assertEquals(2, residential.getNodes().size());
+
+        Node node = osmElementController.fetchNodeById(6);
+        assertSame(node, residential.getNodes().get(0));
+
+        Way water = osmElementController.fetchAllWays().get(2);
+        assertEquals(OSMType.WATER, water.getOSMType());
+        assertEquals(0, water.getNodes().size());
+
+        Relation relation = osmElementController.fetchAllRelations().get(0);
+        assertEquals(OSMType.HEATH, relation.getOSMType());
+        assertTrue(relation.isMultipolygon());
+        assertEquals(1, relation.getMembers().size());
+    }
+
+    @Test
+    void parseStream_filtersUnreferencedNodes() throws Exception {
+        List<String> unfiltered = parse(2);
+        osmElementController.clearNodeData();
+
+        Parser parser = new Parser(osmElementController, addressController);
+        parser.setThreadCount(2);
+        parser.scanStream(new ByteArrayInputStream(osm.getBytes()));
+        assertEquals(3001, parser.getReferencedNodeCount());
+
+        parser.parseStream(new ByteArrayInputStream(osm.getBytes()));
+        parser.clearNodeFilter();
+
+        // Nodes 3002 to 5000 belong to no way, every hundredth of them has an address.
+        assertEquals(5000 - 3001 - 20, parser.getParseReport().getDroppedNodes());
+        assertTrue(osmElementController.fetchAllNodes().contains(3001));
+        assertTrue(osmElementController.fetchAllNodes().contains(5000));
+        assertFalse(osmElementController.fetchAllNodes().contains(4999));
+
+        List<String> filtered = snapshot();
+        assertEquals(unfiltered.subList(5000, unfiltered.size()), filtered.subList(3021, filtered.size()));
+    }
+
+    @Test
+    void parseString_sharesTagValuesAndIgnoresOtherKeys() throws Exception {
+        String named = "<osm><node id=\"1\" lat=\"55.1\" lon=\"10.1\"/><node id=\"2\" lat=\"55.2\" lon=\"10.2\"/>"
+                + "<way id=\"3\"><nd ref=\"1\"/><nd ref=\"2\"/><tag k=\"name\" v=\"Strandvej\"/>"
+                + "<tag k=\"highway\" v=\"tertiary\"/><tag k=\"surface\" v=\"asphalt\"/><tag k=\"oneway\" v=\"yes\"/></way>"
+                + "<way id=\"4\"><nd ref=\"2\"/><nd ref=\"1\"/><tag k=\"name\" v=\"Strandvej\"/>"
+                + "<tag k=\"highway\" v=\"tertiary\"/><tag k=\"oneway\" v=\"no\"/><tag k=\"oneway\" v=\"yes\"/></way></osm>";
+        osmElementController.clearNodeData();
+
+        Parser parser = new Parser(osmElementController, addressController);
+        parser.setThreadCount(1);
+        parser.parseString(named);
+
+        Way first = osmElementController.fetchAllWays().get(0);
+        Way second = osmElementController.fetchAllWays().get(1);
+        assertEquals("Strandvej", first.getName());
+        assertSame(first.getName(), second.getName());
+        assertEquals(OSMType.TERTIARY, second.getOSMType());
+        assertTrue(first.isOneWay());
+        assertTrue(second.isOneWay());
+    }
+
+    @Test
+    void parseString_classifiesWithCustomStyle() throws Exception {
+        String park = "<osm><node id=\"1\" lat=\"55.1\" lon=\"10.1\"/><node id=\"2\" lat=\"55.2\" lon=\"10.2\"/>"
+                + "<way id=\"3\"><nd ref=\"1\"/><nd ref=\"2\"/><tag k=\"leisure\" v=\"park\"/></way>"
+                + "<way id=\"4\"><nd ref=\"2\"/><nd ref=\"1\"/><tag k=\"highway\" v=\"residential\"/></way></osm>";
+        osmElementController.clearNodeData();
+
+        Parser parser = new Parser(osmElementController, addressController);
+        parser.setTypeTable(OSMTypeTable.load(new StringReader("leisure park GREEN\nhighway * @\n")));
+        parser.parseString(park);
+
+        assertEquals(OSMType.GREEN, osmElementController.fetchAllWays().get(0).getOSMType());
+        assertEquals(OSMType.RESIDENTIAL, osmElementController.fetchAllWays().get(1).getOSMType());
+    }
+
+    @Test
+    void parseString_readsBounds() throws Exception {
+        parse(2);
+
+        assertEquals(-55.0f, osmElementController.fetchBoundsData().getMaxLat());
+        assertEquals(0.56f * 11.0f, osmElementController.fetchBoundsData().getMaxLon());
+    }
+}
@@ -0,0 +1,103 @@
+package bfst20.logic;
+
+import bfst20.logic.entities.LinePath;
+import bfst20.logic.kdtree.PathStore;
+import bfst20.logic.misc.FixedPoint;
+import bfst20.logic.misc.OSMType;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PathStoreTest {
+
+    @Test
+    void add_growsAndKeepsEveryPath() {
+        PathStore store = new PathStore(1);
+        List<LinePath> expected = new ArrayList<>();
+        Random random = new Random(5);
+        OSMType[] types = OSMType.values();
+
+        for (int i = 0; i < 2_000; i++) {
+            // Small paths are kept as offsets from their box, large ones as ints.
+            float base = 50 + random.nextFloat() * 10;
+            float extent = random.nextBoolean() ? 0.005f : 10;
+            float[] coords = new float[2 * (1 + random.nextInt(20))];
+            for (int j = 0; j < coords.length; j++) coords[j] = base + random.nextFloat() * extent;
+
+            LinePath path = new LinePath(types[random.nextInt(types.length)], coords, random.nextBoolean(),
+                    random.nextBoolean(), random.nextInt(4) == 0 ? null : "Vej " + random.nextInt(10), random.nextLong());
+
+            assertEquals(i, store.add(path));
+            expected.add(path);
+        }
+        store.trimToSize();
+
+        assertEquals(expected.size(), store.size());
+        for (int i = 0; i < expected.size(); i++) {
+            LinePath path = expected.get(i);
+
+            assertEquals(path.getOSMType(), store.getType(i));
+            assertEquals(path.getFill(), store.getFill(i));
+            assertEquals(path.isMultipolygon(), store.isMultipolygon(i));
+            assertEquals(path.getName(), store.getName(i));
+            assertEquals((long) path.getWayId(), store.getWayId(i));
+            assertArrayEquals(fixedPoint(path.getCoords()), store.getCoords(i));
+            assertEquals(path.getCoords().length, store.getLength(i));
+
+            assertEquals(fixedPoint(path.getMinX()), store.getMinX(i));
+            assertEquals(fixedPoint(path.getMaxX()), store.getMaxX(i));
+            assertEquals(fixedPoint(path.getMinY()), store.getMinY(i));
+            assertEquals(fixedPoint(path.getMaxY()), store.getMaxY(i));
+            assertEquals(path.getCenterLatitude(), store.getCenterLatitude(i), 1e-5);
+            assertEquals(path.getCenterLongitude(), store.getCenterLongitude(i), 1e-5);
+            assertTrue(store.matches(i, path));
+        }
+    }
+
+    @Test
+    void add_keepsFixedPointCoordinatesExactly() {
+        PathStore store = new PathStore();
+        int[] fits = {550_000_000, 100_000_000, 550_065_535, 100_065_535, 550_000_001, 100_000_002};
+        int[] tooWide = {550_000_000, 100_000_000, 550_065_536, 100_000_000};
+        int[] negative = {-1_000_000_000, -2, -999_990_000, 7};
+
+        int first = store.add(OSMType.BUILDING, fits, true, false, null, 1);
+        int second = store.add(OSMType.BUILDING, tooWide, true, false, null, 2);
+        int third = store.add(OSMType.BUILDING, negative, true, false, null, 3);
+
+        assertArrayEquals(fits, store.getFixedCoords(first));
+        assertArrayEquals(tooWide, store.getFixedCoords(second));
+        assertArrayEquals(negative, store.getFixedCoords(third));
+
+        double[] degrees = store.getCoords(third, new double[2]);
+        assertEquals(-100, degrees[0], 1e-9);
+        assertEquals(-2e-7, degrees[1], 1e-12);
+    }
+
+    @Test
+    void add_keepsTheBoundsOfAPathWithoutCoordinates() {
+        PathStore store = new PathStore();
+        int path = store.add(new LinePath(18, 16, 11, 13));
+
+        assertEquals(11, store.getMinX(path));
+        assertEquals(18, store.getMaxX(path));
+        assertEquals(13, store.getMinY(path));
+        assertEquals(16, store.getMaxY(path));
+        assertEquals(0, store.getCoords(path).length);
+    }
+
+    private static float fixedPoint(float value) {
+        return FixedPoint.toFloat(FixedPoint.of(value));
+    }
+
+    private static float[] fixedPoint(float[] values) {
+        float[] result = new float[values.length];
+        for (int i = 0; i < values.length; i++) result[i] = fixedPoint(values[i]);
+
+        return result;
+    }
+}
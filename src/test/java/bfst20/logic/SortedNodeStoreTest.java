@@ -0,0 +1,105 @@
+package bfst20.logic;
+
+import bfst20.logic.entities.Node;
+import bfst20.logic.nodestore.SortedNodeStore;
+import bfst20.logic.nodestore.NodeStore;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SortedNodeStoreTest {
+
+    @Test
+    void put_fetchCoordinates() {
+        NodeStore store = new SortedNodeStore(4);
+
+        for (long id = 1; id <= 100000; id++) store.put(id * 7919, id, -id);
+
+        assertEquals(100000, store.size());
+
+        int index = store.indexOf(500 * 7919);
+        assertEquals(500f, store.latitudeAt(index));
+        assertEquals(-500f, store.longitudeAt(index));
+        assertEquals(-1, store.indexOf(3));
+        assertNull(store.get(3));
+    }
+
+    @Test
+    void put_overwritesExistingId() {
+        NodeStore store = new SortedNodeStore();
+
+        store.put(-42, 1, 2);
+        store.put(-42, 3, 4);
+        store.put(7, 5, 6);
+
+        assertEquals(2, store.size());
+        assertEquals(3f, store.get(-42).getLatitude());
+        assertEquals(4f, store.get(-42).getLongitude());
+    }
+
+    @Test
+    void remove_hidesTheNodeUntilItIsPutAgain() {
+        NodeStore store = new SortedNodeStore();
+        for (long id = 1; id <= 10; id++) store.put(id, id, id);
+        store.get(5);
+
+        store.remove(5);
+        store.remove(99);
+
+        assertFalse(store.contains(5));
+        assertNull(store.get(5));
+        assertEquals(9, store.size());
+        int[] visited = {0};
+        store.forEach((id, lat, lon) -> {
+            assertNotEquals(5, id);
+            visited[0]++;
+        });
+        assertEquals(9, visited[0]);
+
+        store.put(5, -5, -5);
+        assertEquals(-5f, store.get(5).getLatitude());
+        assertEquals(10, store.size());
+    }
+
+    @Test
+    void put_sortsUnorderedInput() {
+        NodeStore store = new SortedNodeStore();
+
+        for (long id = 1000; id > 0; id--) store.put(id, id, 0);
+        store.put(500, -1, -1);
+        store.put(2000, 2000, 0);
+
+        assertEquals(1001, store.size());
+        assertEquals(-1f, store.get(500).getLatitude());
+        assertEquals(999f, store.latitudeAt(store.indexOf(999)));
+        assertEquals(2000f, store.latitudeAt(store.indexOf(2000)));
+
+        long[] last = {Long.MIN_VALUE};
+        store.forEach((id, lat, lon) -> {
+            assertTrue(id > last[0]);
+            last[0] = id;
+        });
+    }
+
+    @Test
+    void get_returnsSameNodeForSameId() {
+        NodeStore store = new SortedNodeStore();
+        store.put(10, 55.5f, 10.5f);
+
+        Node node = store.get(10);
+
+        assertSame(node, store.get(10));
+        assertEquals(10, node.getId());
+    }
+
+    @Test
+    void forEach_visitsEveryNode() {
+        NodeStore store = new SortedNodeStore();
+        for (long id = 0; id < 1000; id++) store.put(id, id, id);
+
+        long[] sum = new long[1];
+        store.forEach((id, lat, lon) -> sum[0] += id);
+
+        assertEquals(999 * 1000 / 2, sum[0]);
+    }
+}
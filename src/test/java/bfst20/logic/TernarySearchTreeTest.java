@@ -32,7 +32,7 @@ public class TernarySearchTreeTest {
         ternarySearchTree.put("Hellsevej", address);
         ternarySearchTree.put("Hellsevej", address);
 
-        assert ternarySearchTree.get("Hej").get(0) == addressRes;
+        assert ternarySearchTree.get("Hej").get(0).equals(addressRes);
     }
 
     @Test
@@ -61,6 +61,6 @@ public class TernarySearchTreeTest {
 
         Queue<Address> addresses = ternarySearchTree.keysWithPrefix("Skagen landevej");
 
-        assert addresses.poll() == Address1;
+        assert addresses.poll().equals(Address1);
     }
 }
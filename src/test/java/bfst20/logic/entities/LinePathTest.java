@@ -1,12 +1,12 @@
 package bfst20.logic.entities;
 
 import bfst20.logic.misc.OSMType;
+import bfst20.logic.nodestore.SortedNodeStore;
+import bfst20.logic.nodestore.NodeStore;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
 
-import java.util.HashMap;
-import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -19,9 +19,9 @@ public class LinePathTest {
 
     @BeforeAll
     public static void setup() {
-        Map<Long, Node> nodes1 = new HashMap<>();
-        nodes1.put((long) 1, new Node(1, 10, 9));
-        nodes1.put((long) 2, new Node(2, 11, 8));
+        NodeStore nodes1 = new SortedNodeStore();
+        nodes1.put(1, 10, 9);
+        nodes1.put(2, 11, 8);
 
         way1 = new Way(10);
         way1.addNodeId(1);
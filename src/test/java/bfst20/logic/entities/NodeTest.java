@@ -31,23 +31,4 @@ public class NodeTest {
         assertEquals(node1.getLongitude(), 20);
         assertEquals(node2.getLongitude(), 15);
     }
-
-    @Test
-    public void setDistTo() {
-        node1.setDistTo(30);
-        node2.setDistTo(60);
-
-        assertEquals(node1.getDistTo(), 30);
-        assertEquals(node2.getDistTo(), 60);
-    }
-
-    @Test
-    public void compareTo() {
-        node1.setDistTo(30);
-        node2.setDistTo(60);
-
-        assertEquals(node1.compareTo(node2), -1);
-        assertEquals(node2.compareTo(node1), 1);
-    }
 }
-
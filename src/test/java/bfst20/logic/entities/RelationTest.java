@@ -1,11 +1,10 @@
 package bfst20.logic.entities;
 
 import bfst20.logic.misc.OSMType;
+import bfst20.logic.nodestore.IdList;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
-import java.util.ArrayList;
-
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 public class RelationTest {
@@ -38,11 +37,9 @@ public class RelationTest {
 
     @Test
     public void get_addMember() {
-        ArrayList<Long> member = new ArrayList<>();
-        member.add((long) 500);
-
         relation.addMember(500, "way");
-        assertEquals(relation.getMembers(), member);
+        relation.addMember(600, "node");
+        assertEquals(relation.getMembers(), IdList.of(500));
     }
 
     @Test
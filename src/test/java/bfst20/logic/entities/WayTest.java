@@ -1,6 +1,7 @@
 package bfst20.logic.entities;
 
 import bfst20.logic.misc.OSMType;
+import bfst20.logic.nodestore.IdList;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
@@ -13,16 +14,14 @@ public class WayTest {
     public static Way way1;
     public static Way way2;
     public static Way way3;
-    public static List<Long> listLong;
+    public static IdList listLong;
     public static List<Node> list;
     public static Node node1;
     public static Node node2;
 
     @BeforeAll
     public static void setup() {
-        listLong = new ArrayList<>();
-        listLong.add((long) 100);
-        listLong.add((long) 500);
+        listLong = IdList.of(100, 500);
 
         node1 = new Node(1, (float) 55.6388937, (float) 12.6195664);
         node2 = new Node(2, (float) 55.6388541, (float) 12.6195888);
@@ -119,10 +118,10 @@ public class WayTest {
         assertEquals(way2.getNodeIds(), listLong);
 
         //Added extra to check if addNodeId works on way3, which is a copy of way2
-        listLong.add((long) 750);
+        listLong.add(750);
 
         assertEquals(way3.getNodeIds(), listLong);
-        listLong.remove((long) 750);
+        listLong.removeLast();
     }
 
     @Test
@@ -140,21 +139,18 @@ public class WayTest {
     @Test
     public void addAllNodeIds() {
         //needed since addAllNodeIds adds to the existing list
-        listLong.add((long) 100);
-        listLong.add((long) 500);
-        listLong.add((long) 750);
+        listLong.add(100);
+        listLong.add(500);
+        listLong.add(750);
 
         way2.addAllNodeIds(way3);
         assertEquals(way2.getNodeIds(), listLong);
 
         //Needed since the test runs randomly through the methods.
-        way2.getNodeIds().remove((long) 100);
-        way2.getNodeIds().remove((long) 500);
-        way2.getNodeIds().remove((long) 750);
-
-        listLong.remove((long) 100);
-        listLong.remove((long) 500);
-        listLong.remove((long) 750);
+        for (int i = 0; i < 3; i++) {
+            way2.getNodeIds().removeLast();
+            listLong.removeLast();
+        }
     }
 
     @Test
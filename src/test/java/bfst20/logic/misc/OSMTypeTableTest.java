@@ -0,0 +1,86 @@
+package bfst20.logic.misc;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+
+import static bfst20.logic.misc.OSMType.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OSMTypeTableTest {
+    private static OSMTypeTable table;
+    private static int natural, landuse, building, highway;
+
+    @BeforeAll
+    static void setup() {
+        table = OSMTypeTable.getDefault();
+        natural = table.getKeys().indexOf("natural");
+        landuse = table.getKeys().indexOf("landuse");
+        building = table.getKeys().indexOf("building");
+        highway = table.getKeys().indexOf("highway");
+    }
+
+    @Test
+    public void getKeys_keepsTheOldPrecedence() {
+        assertTrue(natural < landuse);
+        assertTrue(landuse < building);
+        assertTrue(building < highway);
+    }
+
+    @Test
+    public void classify_matchesValueOfIgnoringCase() {
+        for (OSMType type : OSMType.values()) {
+            assertEquals(type, table.classify(natural, type.name()));
+            assertEquals(type, table.classify(natural, type.name().toLowerCase()));
+        }
+
+        assertEquals(TREE_ROW, table.classify(natural, "Tree_Row"));
+        assertNull(table.classify(natural, "tree"));
+        assertNull(table.classify(natural, null));
+    }
+
+    @Test
+    public void classify_fallsBackPerKey() {
+        assertEquals(FARMLAND, table.classify(landuse, "farmland"));
+        assertEquals(LANDUSE, table.classify(landuse, "allotments"));
+        assertEquals(LANDUSE, table.classify(landuse, null));
+        assertEquals(BUILDING, table.classify(building, "house"));
+        assertEquals(HIGHWAY, table.classify(highway, "bus_stop"));
+        assertEquals(HIGHWAY, table.classify(highway, null));
+    }
+
+    @Test
+    public void classify_remapsHighways() {
+        assertEquals(RESIDENTIAL_HIGHWAY, table.classify(highway, "residential"));
+        assertEquals(RESIDENTIAL_HIGHWAY, table.classify(highway, "Residential"));
+        assertEquals(UNCLASSIFIED_HIGHWAY, table.classify(highway, "unclassified"));
+        assertEquals(PRIMARY, table.classify(highway, "primary"));
+        assertEquals(RESIDENTIAL, table.classify(landuse, "residential"));
+    }
+
+    @Test
+    public void load_readsNewFeatureClasses() throws Exception {
+        OSMTypeTable custom = OSMTypeTable.load(new StringReader(
+                "# parks are drawn as green\nleisure park GREEN\nleisure * -\nnatural  scrub  heath\nnatural * @\n"));
+
+        assertEquals(GREEN, custom.classify(0, "Park"));
+        assertNull(custom.classify(0, "pitch"));
+        assertEquals(HEATH, custom.classify(1, "scrub"));
+        assertEquals(WATER, custom.classify(1, "water"));
+    }
+
+    @Test
+    public void load_rejectsUnknownTypes() {
+        assertThrows(IllegalArgumentException.class, () -> OSMTypeTable.load(new StringReader("leisure park PARK\n")));
+        assertThrows(IllegalArgumentException.class, () -> OSMTypeTable.load(new StringReader("leisure park\n")));
+        assertThrows(IllegalArgumentException.class, () -> OSMTypeTable.load(new StringReader("leisure park @\n")));
+    }
+
+    @Test
+    public void byName_ignoresCase() {
+        assertEquals(BUILDING, OSMTypeTable.byName("building"));
+        assertNull(OSMTypeTable.byName("addr:city"));
+        assertNull(OSMTypeTable.byName(null));
+    }
+}
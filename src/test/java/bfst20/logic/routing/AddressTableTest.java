@@ -0,0 +1,66 @@
+package bfst20.logic.routing;
+
+import bfst20.logic.entities.Address;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AddressTableTest {
+
+    @Test
+    void add_growsAndKeepsEveryAddress() {
+        AddressTable table = new AddressTable(1);
+        List<Address> expected = new ArrayList<>();
+        Random random = new Random(3);
+
+        for (int i = 0; i < 1_000; i++) {
+            Address address = new Address("By " + random.nextInt(5), random.nextInt(3) == 0 ? null : "" + random.nextInt(40),
+                    "" + (1000 + random.nextInt(5)), "Vej " + random.nextInt(50), random.nextFloat(), random.nextFloat());
+
+            assertEquals(i, table.add(address));
+            expected.add(address);
+        }
+        table.trimToSize();
+
+        assertEquals(expected.size(), table.size());
+        for (int row = 0; row < expected.size(); row++) {
+            Address address = expected.get(row);
+
+            assertEquals(address, table.get(row));
+            assertEquals(address.getStreet(), table.getStreet(row));
+            assertEquals(address.getHouseNumber(), table.getHouseNumber(row));
+            assertEquals(address.getLat(), table.getLat(row));
+        }
+    }
+
+    @Test
+    void add_keepsEachDistinctValueOnce() {
+        AddressTable table = new AddressTable();
+        int first = table.add(new Address("Farum", "1", "3520", new String("Bytoften"), 1, 2));
+        int second = table.add(new Address("Farum", "2", "3520", new String("Bytoften"), 3, 4));
+
+        assertSame(table.getStreet(first), table.getStreet(second));
+        assertNotSame(table.get(first), table.get(first));
+        assertThrows(IndexOutOfBoundsException.class, () -> table.get(2));
+    }
+
+    @Test
+    void rowsWithPrefix_findsTheRowsLeftAfterRemove() {
+        TernarySearchTree tree = new TernarySearchTree();
+        int hello = tree.put("Hello", new Address("Hilleroed", "10", "3400", "Hello", 1, 1));
+        int hej = tree.put("Hej", new Address("Hilleroed", "12", "3400", "Hej", 1, 1));
+        int hej2 = tree.put("Hej", new Address("Hilleroed", "14", "3400", "Hej", 1, 1));
+
+        assertArrayEquals(new int[]{hej, hej2, hello}, tree.rowsWithPrefix("he"));
+        assertTrue(tree.remove("Hej", hej));
+        assertFalse(tree.remove("Hej", hej));
+
+        assertArrayEquals(new int[]{hej2}, tree.rowsWithPrefix("hej"));
+        assertEquals("14", tree.getAddresses().getHouseNumber(tree.rowsWithPrefix("hej")[0]));
+        assertEquals(0, tree.rowsWithPrefix("x").length);
+    }
+}
@@ -9,6 +9,10 @@ import org.junit.jupiter.api.Test;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -78,4 +82,46 @@ class DijkstraTest {
         assertEquals(true, dijkstra.hasPathTo(node4));
         assertEquals(false, dijkstra.hasPathTo(node8));
     }
-}
\ No newline at end of file
+
+    @Test
+    void findShortestPath_givesTheSameDistancesWhenSearchesRunAtTheSameTime() throws Exception {
+        int size = 40;
+        List<Node> gridNodes = new ArrayList<>();
+        for (int i = 0; i < size * size; i++) gridNodes.add(new Node(100 + i, i / size, i % size));
+
+        Graph grid = new Graph(new ArrayList<>(gridNodes));
+        Random random = new Random(3);
+        for (int i = 0; i < size * size; i++) {
+            if (i % size + 1 < size) {
+                grid.addEdge(new Edge(OSMType.RESIDENTIAL_HIGHWAY, gridNodes.get(i), gridNodes.get(i + 1), 1 + random.nextInt(9), "Vej", 50, false));
+            }
+            if (i + size < size * size) {
+                grid.addEdge(new Edge(OSMType.RESIDENTIAL_HIGHWAY, gridNodes.get(i), gridNodes.get(i + size), 1 + random.nextInt(9), "Vej", 50, false));
+            }
+        }
+
+        List<Node[]> queries = new ArrayList<>();
+        List<Double> expected = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Node source = gridNodes.get(random.nextInt(gridNodes.size()));
+            Node target = gridNodes.get(random.nextInt(gridNodes.size()));
+
+            queries.add(new Node[]{source, target});
+            expected.add(new Dijkstra(grid, source, target, Vehicle.WALK).distTo(target));
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Double>> results = new ArrayList<>();
+            for (int round = 0; round < 5; round++) {
+                for (Node[] query : queries) {
+                    results.add(pool.submit(() -> new Dijkstra(grid, query[0], query[1], Vehicle.WALK).distTo(query[1])));
+                }
+            }
+
+            for (int i = 0; i < results.size(); i++) assertEquals(expected.get(i % queries.size()), results.get(i).get());
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package bfst20.logic.routing;
 
 import bfst20.logic.entities.Node;
+import bfst20.logic.misc.HeapLayout;
 import bfst20.logic.misc.OSMType;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
@@ -62,4 +63,21 @@ class GraphTest {
         assertEquals(2, list.size());
 
     }
+
+    @Test
+    void heapBytes_countsTheSpareCapacityOfTheAdjacencyLists() {
+        Node node3 = new Node(5, 6, 7);
+        Graph growing = new Graph(new ArrayList<>(Collections.singletonList(node1)));
+        growing.addNode(node3);
+        growing.addEdge(new Edge(OSMType.PRIMARY, node1, node3, 3, "Gedevasevej", 75, false));
+        growing.trimToSize();
+        long trimmed = growing.heapBytes();
+
+        // Both lists grow from one edge to room for four.
+        growing.addEdge(new Edge(OSMType.PRIMARY, node3, node1, 3, "Gedevasevej", 75, false));
+        long grown = growing.heapBytes() - trimmed;
+
+        long edge = HeapLayout.shallow(Edge.class) + HeapLayout.list(2) - HeapLayout.list(1);
+        assertEquals(edge + 2 * (HeapLayout.references(4) - HeapLayout.references(1)), grown);
+    }
 }